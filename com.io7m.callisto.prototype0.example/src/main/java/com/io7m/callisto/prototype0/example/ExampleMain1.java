@@ -21,12 +21,14 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Slf4jReporter;
 import com.io7m.callisto.prototype0.client.CoClient;
-import com.io7m.callisto.prototype0.client.CoClientTickEvent;
+import com.io7m.callisto.prototype0.events.CoEventInstrumentation;
 import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerRegistryServiceLoader;
 import com.io7m.callisto.prototype0.events.CoEventService;
 import com.io7m.callisto.prototype0.network.CoNetworkProviderUDP;
+import com.io7m.callisto.prototype0.process.CoProcessExecution;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
 import com.io7m.callisto.prototype0.server.CoServer;
-import com.io7m.callisto.prototype0.server.CoServerTickEvent;
+import com.io7m.callisto.prototype0.server.CoServerTickMode;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolService;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolServiceType;
 import com.io7m.timehack6435126.TimeHack6435126;
@@ -37,6 +39,7 @@ import org.slf4j.LoggerFactory;
 import java.time.Clock;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -63,7 +66,9 @@ public final class ExampleMain1
     final Meter server_event_meter =
       metrics.meter("com.io7m.callisto.server.events");
 
-    final CoEventService client_events = new CoEventService();
+    final CoEventService client_events =
+      new CoEventService(CoEventInstrumentation.create(
+        metrics, "com.io7m.callisto.client.events"));
     client_events.onActivate();
     client_events.events()
       .observeOn(Schedulers.single())
@@ -71,10 +76,11 @@ public final class ExampleMain1
         client_event_meter.mark();
         return e;
       })
-      .filter(e -> !(e instanceof CoClientTickEvent))
       .subscribe(e -> LOG.trace("client event: {}", e));
 
-    final CoEventService server_events = new CoEventService();
+    final CoEventService server_events =
+      new CoEventService(CoEventInstrumentation.create(
+        metrics, "com.io7m.callisto.server.events"));
     server_events.onActivate();
     server_events.events()
       .observeOn(Schedulers.single())
@@ -82,7 +88,6 @@ public final class ExampleMain1
         server_event_meter.mark();
         return e;
       })
-      .filter(e -> !(e instanceof CoServerTickEvent))
       .subscribe(e -> LOG.trace("server event: {}", e));
 
     final Slf4jReporter reporter =
@@ -100,6 +105,10 @@ public final class ExampleMain1
 
     final CoNetworkProviderUDP network = new CoNetworkProviderUDP();
 
+    final ExecutorService pool =
+      CoProcessExecution.createSharedPool("com.io7m.callisto.example.pool");
+    final CoProcessExecutionType execution = CoProcessExecution.shared(pool);
+
     final CoEventNetworkSerializerRegistryServiceLoader client_serializers =
       new CoEventNetworkSerializerRegistryServiceLoader(client_events);
     client_serializers.onActivate();
@@ -114,7 +123,8 @@ public final class ExampleMain1
         network,
         client_strings,
         client_events,
-        client_serializers);
+        client_serializers,
+        execution);
     client.startSynchronously(3L, TimeUnit.SECONDS);
 
     final CoEventNetworkSerializerRegistryServiceLoader server_serializers =
@@ -131,7 +141,9 @@ public final class ExampleMain1
         network,
         server_strings,
         server_events,
-        server_serializers);
+        server_serializers,
+        CoServerTickMode.TICK_PIPELINED,
+        execution);
     server.startSynchronously(3L, TimeUnit.SECONDS);
 
     final Properties props = new Properties();
@@ -152,6 +164,7 @@ public final class ExampleMain1
         System.in.read();
         client.shutDownSynchronously(3L, TimeUnit.SECONDS);
         server.shutDownSynchronously(3L, TimeUnit.SECONDS);
+        pool.shutdown();
       } catch (final Exception e) {
         LOG.error("failed: ", e);
       }
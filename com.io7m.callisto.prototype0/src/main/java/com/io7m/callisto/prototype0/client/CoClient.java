@@ -16,13 +16,20 @@
 
 package com.io7m.callisto.prototype0.client;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerRegistryType;
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.network.CoNetworkProviderType;
+import com.io7m.callisto.prototype0.process.CoProcessExecution;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
 import com.io7m.callisto.prototype0.process.CoProcessSupervisor;
+import com.io7m.callisto.prototype0.process.CoProcessWatchdog;
 import com.io7m.callisto.prototype0.process.CoProcessType;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolServiceType;
+import com.io7m.callisto.prototype0.ticks.CoTickRate;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
+import com.io7m.callisto.prototype0.ticks.CoTickSchedulerStatistics;
 import com.io7m.jnull.NullCheck;
 import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import org.slf4j.Logger;
@@ -35,6 +42,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public final class CoClient implements CoClientType
@@ -42,10 +50,13 @@ public final class CoClient implements CoClientType
   private static final Logger LOG =
     LoggerFactory.getLogger(CoClient.class);
 
+  private static final AtomicInteger INSTANCES = new AtomicInteger(0);
+
   private final CoEventServiceType events;
   private final ReferenceArrayList<CoProcessType> processes;
   private final CoNetworkProviderType network;
   private final CoClientNetwork network_process;
+  private final CoTickScheduler ticks;
 
   public CoClient(
     final Clock in_clock,
@@ -55,11 +66,81 @@ public final class CoClient implements CoClientType
     final CoEventServiceType in_events,
     final CoEventNetworkSerializerRegistryType in_serializers)
   {
+    this(
+      in_clock,
+      in_metrics,
+      in_network,
+      in_strings,
+      in_events,
+      in_serializers,
+      CoProcessExecution.dedicated());
+  }
+
+  /**
+   * Construct a client. The rendering process always runs on threads of its
+   * own, because rendering contexts are bound to the thread that created
+   * them; all other processes use the given execution model.
+   *
+   * @param in_clock       The clock
+   * @param in_metrics     The metric registry
+   * @param in_network     The network provider
+   * @param in_strings     The string constant pool
+   * @param in_events      The event service
+   * @param in_serializers The event serializers
+   * @param in_execution   The process execution model
+   */
+
+  public CoClient(
+    final Clock in_clock,
+    final MetricRegistry in_metrics,
+    final CoNetworkProviderType in_network,
+    final CoStringConstantPoolServiceType in_strings,
+    final CoEventServiceType in_events,
+    final CoEventNetworkSerializerRegistryType in_serializers,
+    final CoProcessExecutionType in_execution)
+  {
+    final CoProcessWatchdog watchdog =
+      CoProcessWatchdog.createDefault(
+        in_metrics, MetricRegistry.name(CoClient.class, "processes"));
+    final CoProcessExecutionType execution =
+      CoProcessExecution.watched(
+        NullCheck.notNull(in_execution, "Execution"), watchdog);
+
     this.network =
       NullCheck.notNull(in_network, "Network");
     this.events =
       NullCheck.notNull(in_events, "Events");
 
+    this.ticks =
+      CoTickScheduler.create(CoTickRate.hertz(60L), 10, r -> {
+        final Thread th = new Thread(r);
+        th.setName("com.io7m.callisto.client.ticks." + th.getId());
+        th.setPriority(Thread.MAX_PRIORITY);
+        return th;
+      });
+
+    /*
+     * Each instance has its own tick scheduler, so the tick gauges are
+     * named per instance: Many instances may share a registry.
+     */
+
+    final String tick_prefix =
+      MetricRegistry.name(
+        CoClient.class,
+        Integer.toString(INSTANCES.getAndIncrement()),
+        "ticks");
+    final CoTickSchedulerStatistics tick_stats = this.ticks.statistics();
+    in_metrics.gauge(
+      MetricRegistry.name(tick_prefix, "late"),
+      () -> (Gauge<Long>) () -> Long.valueOf(tick_stats.ticksLate()));
+    in_metrics.gauge(
+      MetricRegistry.name(tick_prefix, "dropped"),
+      () -> (Gauge<Long>) () -> Long.valueOf(tick_stats.ticksDropped()));
+    in_metrics.gauge(
+      MetricRegistry.name(tick_prefix, "lateness_maximum"),
+      () -> (Gauge<Long>) () ->
+        Long.valueOf(tick_stats.latenessMaximumNanoseconds()));
+
     this.network_process =
       new CoClientNetwork(
         in_clock,
@@ -67,15 +148,26 @@ public final class CoClient implements CoClientType
         this.events,
         in_serializers,
         in_strings,
-        this.network);
+        this.network,
+        this.ticks,
+        execution);
 
     this.processes = new ReferenceArrayList<>();
-    this.processes.add(new CoClientAudio(this.events));
-    this.processes.add(new CoClientClock(this.events));
-    this.processes.add(new CoClientLogic(this.events));
-    this.processes.add(new CoClientRendering(this.events));
+    this.processes.add(
+      new CoClientAudio(this.events, execution));
+    this.processes.add(
+      new CoClientClock(this.events, this.ticks, execution));
+    this.processes.add(
+      new CoClientLogic(this.events, this.ticks, execution));
+    this.processes.add(
+      new CoClientRendering(
+        this.events,
+        this.ticks,
+        CoProcessExecution.watched(CoProcessExecution.dedicated(), watchdog)));
     this.processes.add(this.network_process);
-    this.processes.add(new CoProcessSupervisor(this.events, this.processes));
+    this.processes.add(
+      new CoProcessSupervisor(
+        this.events, this.processes, execution, watchdog));
   }
 
   private static void waitForFutures(
@@ -18,6 +18,7 @@ package com.io7m.callisto.prototype0.client;
 
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.process.CoProcessAbstract;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,7 +28,8 @@ public final class CoClientAudio extends CoProcessAbstract
     LoggerFactory.getLogger(CoClientAudio.class);
 
   public CoClientAudio(
-    final CoEventServiceType in_events)
+    final CoEventServiceType in_events,
+    final CoProcessExecutionType in_execution)
   {
     super(
       in_events,
@@ -35,7 +37,8 @@ public final class CoClientAudio extends CoProcessAbstract
         final Thread th = new Thread(r);
         th.setName("com.io7m.callisto.client.audio." + th.getId());
         return th;
-      });
+      },
+      in_execution);
   }
 
   @Override
@@ -18,25 +18,23 @@ package com.io7m.callisto.prototype0.client;
 
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.process.CoProcessAbstract;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
+import com.io7m.jnull.NullCheck;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
 public final class CoClientClock extends CoProcessAbstract
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(CoClientClock.class);
 
-  private static final CoClientTickEvent TICK =
-    CoClientTickEvent.of(60);
-
-  private final ScheduledExecutorService sched_exec;
+  private final CoTickScheduler ticks;
 
   public CoClientClock(
-    final CoEventServiceType in_events)
+    final CoEventServiceType in_events,
+    final CoTickScheduler in_ticks,
+    final CoProcessExecutionType in_execution)
   {
     super(
       in_events,
@@ -44,14 +42,10 @@ public final class CoClientClock extends CoProcessAbstract
         final Thread th = new Thread(r);
         th.setName("com.io7m.callisto.client.clock." + th.getId());
         return th;
-      });
+      },
+      in_execution);
 
-    this.sched_exec =
-      Executors.newScheduledThreadPool(1, r -> {
-        final Thread th = new Thread(r);
-        th.setName("com.io7m.callisto.client.clock.act." + th.getId());
-        return th;
-      });
+    this.ticks = NullCheck.notNull(in_ticks, "Ticks");
   }
 
   @Override
@@ -60,11 +54,6 @@ public final class CoClientClock extends CoProcessAbstract
     return "clock";
   }
 
-  private void doTick()
-  {
-    this.events().post(TICK);
-  }
-
   @Override
   protected Logger log()
   {
@@ -81,15 +70,18 @@ public final class CoClientClock extends CoProcessAbstract
   protected void doStart()
   {
     LOG.trace("start");
-    this.sched_exec.scheduleAtFixedRate(
-      this::doTick, 0L, 1000L / 60L, TimeUnit.MILLISECONDS);
+    this.ticks.start();
   }
 
   @Override
   protected void doStop()
   {
     LOG.trace("stop");
-    this.sched_exec.shutdown();
+    try {
+      this.ticks.stop();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   @Override
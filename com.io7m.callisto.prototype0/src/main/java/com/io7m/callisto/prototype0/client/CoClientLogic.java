@@ -18,6 +18,11 @@ package com.io7m.callisto.prototype0.client;
 
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.process.CoProcessAbstract;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
+import com.io7m.callisto.prototype0.ticks.CoTickRate;
+import com.io7m.callisto.prototype0.ticks.CoTickRegistration;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
+import com.io7m.jnull.NullCheck;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,8 +31,12 @@ public final class CoClientLogic extends CoProcessAbstract
   private static final Logger LOG =
     LoggerFactory.getLogger(CoClientLogic.class);
 
+  private final CoTickRegistration tick_registration;
+
   public CoClientLogic(
-    final CoEventServiceType in_events)
+    final CoEventServiceType in_events,
+    final CoTickScheduler in_ticks,
+    final CoProcessExecutionType in_execution)
   {
     super(
       in_events,
@@ -35,7 +44,24 @@ public final class CoClientLogic extends CoProcessAbstract
         final Thread th = new Thread(r);
         th.setName("com.io7m.callisto.client.logic." + th.getId());
         return th;
-      });
+      },
+      in_execution);
+
+    this.tick_registration =
+      this.registerTicks(
+        NullCheck.notNull(in_ticks, "Ticks"),
+        CoTickRate.hertz(60L),
+        this::onTick);
+  }
+
+  private void onTick(
+    final long tick,
+    final long skipped)
+  {
+    if (skipped > 0L && LOG.isTraceEnabled()) {
+      LOG.trace(
+        "tick {}: skipped {}", Long.valueOf(tick), Long.valueOf(skipped));
+    }
   }
 
   @Override
@@ -66,6 +92,7 @@ public final class CoClientLogic extends CoProcessAbstract
   protected void doStop()
   {
     LOG.trace("stop");
+    this.tick_registration.dispose();
   }
 
   @Override
@@ -21,8 +21,12 @@ import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerRegistryType;
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.network.CoNetworkProviderType;
 import com.io7m.callisto.prototype0.process.CoProcessAbstract;
-import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolReadableType;
-import com.io7m.callisto.prototype0.ticks.CoTickDivisor;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolCache;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolType;
+import com.io7m.callisto.prototype0.ticks.CoTickRate;
+import com.io7m.callisto.prototype0.ticks.CoTickRegistration;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
 import com.io7m.callisto.prototype0.transport.CoTransportClientConfiguration;
 import com.io7m.jnull.NullCheck;
 import com.io7m.jproperties.JPropertyNonexistent;
@@ -31,7 +35,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.Clock;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.concurrent.Future;
 
@@ -43,9 +49,8 @@ public final class CoClientNetwork extends CoProcessAbstract
   private static final int TICKS_PER_SECOND = 30;
 
   private final CoNetworkProviderType network;
-  private final Disposable sub_tick;
-  private final CoTickDivisor tick_divisor;
-  private final CoStringConstantPoolReadableType strings;
+  private final CoTickRegistration tick_registration;
+  private final CoStringConstantPoolType strings;
   private final Disposable sub_net_events;
   private final CoEventNetworkSerializerRegistryType event_serializers;
   private final MetricRegistry metrics;
@@ -57,8 +62,10 @@ public final class CoClientNetwork extends CoProcessAbstract
     final MetricRegistry in_metrics,
     final CoEventServiceType in_events,
     final CoEventNetworkSerializerRegistryType in_event_serializers,
-    final CoStringConstantPoolReadableType in_strings,
-    final CoNetworkProviderType in_network)
+    final CoStringConstantPoolType in_strings,
+    final CoNetworkProviderType in_network,
+    final CoTickScheduler in_ticks,
+    final CoProcessExecutionType in_execution)
   {
     super(
       in_events,
@@ -66,7 +73,8 @@ public final class CoClientNetwork extends CoProcessAbstract
         final Thread th = new Thread(r);
         th.setName("com.io7m.callisto.client.network." + th.getId());
         return th;
-      });
+      },
+      in_execution);
 
     this.clock =
       NullCheck.notNull(in_clock, "Clock");
@@ -79,20 +87,14 @@ public final class CoClientNetwork extends CoProcessAbstract
     this.network =
       NullCheck.notNull(in_network, "Network");
 
-    this.tick_divisor =
-      new CoTickDivisor(60.0, TICKS_PER_SECOND);
-
-    this.sub_tick =
-      in_events.events()
-        .ofType(CoClientTickEvent.class)
-        .observeOn(this.scheduler())
-        .subscribe(this::onTickEvent);
+    this.tick_registration =
+      this.registerTicks(
+        NullCheck.notNull(in_ticks, "Ticks"),
+        CoTickRate.hertz((long) TICKS_PER_SECOND),
+        this::onTick);
 
     this.sub_net_events =
-      in_events.events()
-        .ofType(CoClientNetworkEventType.class)
-        .observeOn(this.scheduler())
-        .subscribe(this::onNetworkEvent);
+      this.subscribe(CoClientNetworkEventType.class, this::onNetworkEvent);
   }
 
   private void onNetworkEvent(
@@ -118,14 +120,13 @@ public final class CoClientNetwork extends CoProcessAbstract
     }
   }
 
-  private void onTickEvent(
-    final CoClientTickEvent e)
+  private void onTick(
+    final long tick,
+    final long skipped)
   {
-    if (this.tick_divisor.tickNow()) {
-      final CoClientNetworkHandler h = this.handler;
-      if (h != null) {
-        h.tick();
-      }
+    final CoClientNetworkHandler h = this.handler;
+    if (h != null) {
+      h.tick();
     }
   }
 
@@ -157,7 +158,7 @@ public final class CoClientNetwork extends CoProcessAbstract
   protected void doStop()
   {
     LOG.trace("stop");
-    this.sub_tick.dispose();
+    this.tick_registration.dispose();
     this.sub_net_events.dispose();
 
     final CoClientNetworkHandler h = this.handler;
@@ -195,6 +196,10 @@ public final class CoClientNetwork extends CoProcessAbstract
         .setTicksPerSecond(TICKS_PER_SECOND)
         .build();
 
+    final Optional<CoStringConstantPoolCache> strings_cache =
+      Optional.ofNullable(props.getProperty("string_table_cache_directory"))
+        .map(directory -> new CoStringConstantPoolCache(Paths.get(directory)));
+
     this.handler =
       new CoClientNetworkHandler(
         this.metrics,
@@ -203,6 +208,7 @@ public final class CoClientNetwork extends CoProcessAbstract
         this.event_serializers,
         this.network,
         this.strings,
+        strings_cache,
         props, config);
 
     this.handler.start();
@@ -20,6 +20,9 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.io7m.callisto.prototype0.compression.CoCompressionConfiguration;
+import com.io7m.callisto.prototype0.compression.CoCompressionService;
+import com.io7m.callisto.prototype0.compression.CoCompressionServiceType;
 import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerRegistryType;
 import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerType;
 import com.io7m.callisto.prototype0.events.CoEventNetworkType;
@@ -27,13 +30,22 @@ import com.io7m.callisto.prototype0.events.CoEventSerializationException;
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.network.CoNetworkPacketSocketType;
 import com.io7m.callisto.prototype0.network.CoNetworkProviderType;
-import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolReadableType;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolCache;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolEventUpdateReceived;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolMessages;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolSnapshot;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolType;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolUpdateType;
+import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantPoolUpdate;
 import com.io7m.callisto.prototype0.transport.CoTransportClient;
 import com.io7m.callisto.prototype0.transport.CoTransportClientConfiguration;
 import com.io7m.callisto.prototype0.transport.CoTransportClientListenerType;
 import com.io7m.callisto.prototype0.transport.CoTransportConnectionUsableType;
 import com.io7m.callisto.prototype0.transport.messages.CoPacket;
+import com.io7m.jaffirm.core.PreconditionViolationException;
 import com.io7m.jnull.NullCheck;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,7 +54,11 @@ import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.time.Clock;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public final class CoClientNetworkHandler
   implements Closeable, CoTransportClientListenerType
@@ -55,6 +71,14 @@ public final class CoClientNetworkHandler
   private final CoEventServiceType events;
   private final CoEventNetworkSerializerRegistryType event_serializers;
   private final Metrics metrics;
+  private final CoStringConstantPoolType strings;
+  private final Optional<CoStringConstantPoolCache> strings_cache;
+  private final ExecutorService strings_cache_exec;
+  private final CoCompressionServiceType strings_codecs;
+  private volatile CoStringConstantPoolSnapshot strings_cached;
+  private CoStringConstantPoolSnapshot strings_server;
+  private long strings_version;
+  private boolean strings_resend_requested;
 
   public CoClientNetworkHandler(
     final MetricRegistry in_metrics,
@@ -62,12 +86,41 @@ public final class CoClientNetworkHandler
     final CoEventServiceType in_events,
     final CoEventNetworkSerializerRegistryType in_event_serializers,
     final CoNetworkProviderType in_network,
-    final CoStringConstantPoolReadableType in_strings,
+    final CoStringConstantPoolType in_strings,
+    final Optional<CoStringConstantPoolCache> in_strings_cache,
     final Properties props,
-    final CoTransportClientConfiguration config)
+    final CoTransportClientConfiguration in_config)
   {
     this.metrics =
       new Metrics(NullCheck.notNull(in_metrics, "Metrics"));
+    this.strings =
+      NullCheck.notNull(in_strings, "Strings");
+    this.strings_cache =
+      NullCheck.notNull(in_strings_cache, "Strings cache");
+
+    this.strings_server = CoStringConstantPoolSnapshot.empty();
+    this.strings_cached =
+      this.strings_cache.flatMap(CoStringConstantPoolCache::load)
+        .orElse(CoStringConstantPoolSnapshot.empty());
+    this.strings_codecs =
+      new CoCompressionService(CoCompressionConfiguration.builder().build());
+    this.strings_cache_exec =
+      Executors.newSingleThreadExecutor(r -> {
+        final Thread th = new Thread(r);
+        th.setName("com.io7m.callisto.client.strings_cache." + th.getId());
+        th.setDaemon(true);
+        return th;
+      });
+
+    final CoTransportClientConfiguration config;
+    if (this.strings_cached.size() > 0) {
+      config = CoTransportClientConfiguration.builder()
+        .from(NullCheck.notNull(in_config, "Config"))
+        .setStringTableHash(this.strings_cached.contentHash())
+        .build();
+    } else {
+      config = NullCheck.notNull(in_config, "Config");
+    }
     this.events =
       NullCheck.notNull(in_events, "Events");
     this.event_serializers =
@@ -122,6 +175,11 @@ public final class CoClientNetworkHandler
     final String type_name,
     final ByteBuffer data)
   {
+    if (CoStringConstantPoolMessages.eventCompressedUpdateTypeName().equals(type_name)) {
+      this.onStringTableUpdateReceived(connection, data);
+      return;
+    }
+
     try {
       final CoEventNetworkSerializerType serializer =
         this.event_serializers.lookupSerializer(type_name);
@@ -136,6 +194,148 @@ public final class CoClientNetworkHandler
     }
   }
 
+  /**
+   * Apply a string table update directly to the pool, so that messages that
+   * follow it on the same connection can refer to the new constants, and
+   * acknowledge the version of the table now held.
+   */
+
+  private void onStringTableUpdateReceived(
+    final CoTransportConnectionUsableType connection,
+    final ByteBuffer data)
+  {
+    final CoStringConstantPoolUpdate update;
+    try {
+      update =
+        CoStringConstantPoolMessages.parseEventUpdateCompressedDecompressDirectly(
+          this.strings_codecs, data);
+    } catch (final CoEventSerializationException e) {
+      LOG.error(
+        "could not parse string table update: size {}: ",
+        Integer.valueOf(data.remaining()), e);
+      return;
+    }
+
+    final long base = update.getVersionBase();
+    final byte[] base_hash = update.getHashBase().toByteArray();
+
+    /*
+     * Determine the table to which the update applies: nothing at all for
+     * a complete table, otherwise either the table most recently received
+     * from the server or the table loaded from the cache. The table received
+     * from the server is identified by its version so that it need not be
+     * hashed here; the cached table's hash is computed off the network
+     * thread before the table is published.
+     */
+
+    final CoStringConstantPoolSnapshot base_table;
+    if (base_hash.length == 0) {
+      base_table = CoStringConstantPoolSnapshot.empty();
+      this.strings_resend_requested = false;
+    } else if (this.strings_version != 0L && base == this.strings_version) {
+      base_table = this.strings_server;
+    } else if (this.strings_cached.hasContentHash(base_hash)) {
+      base_table = this.strings_cached;
+    } else {
+      LOG.warn(
+        "string table update applies to version {} but version {} is held; dropping it",
+        Long.valueOf(base),
+        Long.valueOf(this.strings_version));
+      this.requestStringTableResend(connection);
+      return;
+    }
+
+    final Map<Integer, String> values = update.getStringsMap();
+    final Int2ReferenceOpenHashMap<String> values_map =
+      new Int2ReferenceOpenHashMap<>(values.size());
+    for (final Map.Entry<Integer, String> e : values.entrySet()) {
+      values_map.put(e.getKey().intValue(), e.getValue());
+    }
+
+    final CoStringConstantPoolSnapshot next;
+    try {
+      next = base_table.withEntries(values_map);
+    } catch (final PreconditionViolationException e) {
+      LOG.error("string table update is malformed; dropping it: ", e);
+      this.requestStringTableResend(connection);
+      return;
+    }
+
+    final Int2ReferenceMap<String> changes =
+      next.changesSince(this.strings_server);
+
+    final CoStringConstantPoolUpdateType pool_update = this.strings.newUpdate();
+    for (final Int2ReferenceMap.Entry<String> e :
+      changes.int2ReferenceEntrySet()) {
+      pool_update.set(e.getIntKey(), e.getValue());
+    }
+    pool_update.execute();
+
+    this.strings_server = next;
+    this.strings_version = update.getVersion();
+
+    if (this.strings_cache.isPresent()) {
+      this.strings_cache_exec.execute(
+        () -> this.storeCached(this.strings_cache.get(), next));
+    }
+
+    if (LOG.isTraceEnabled()) {
+      LOG.trace(
+        "applied string table update {} -> {} ({} strings)",
+        Long.valueOf(base),
+        Long.valueOf(this.strings_version),
+        Integer.valueOf(values.size()));
+    }
+
+    connection.send(
+      CoTransportConnectionUsableType.Reliability.MESSAGE_RELIABLE,
+      0,
+      CoStringConstantPoolMessages.eventAcknowledgeTypeName(),
+      CoStringConstantPoolMessages.createEventAcknowledgeSerialized(
+        this.strings_version));
+
+    this.events.post(CoStringConstantPoolEventUpdateReceived.of(changes));
+  }
+
+  /**
+   * Store a table in the cache if it differs from the table most recently
+   * cached. Hashing and writing the table are comparatively expensive, so
+   * this is executed on the cache thread rather than the network thread.
+   */
+
+  private void storeCached(
+    final CoStringConstantPoolCache cache,
+    final CoStringConstantPoolSnapshot next)
+  {
+    if (!next.hasContentHash(this.strings_cached.contentHash())) {
+      cache.store(next);
+      this.strings_cached = next;
+    }
+  }
+
+  /**
+   * Ask the server to send the complete string table. Updates that are in
+   * flight when the request is made are based on tables that the client
+   * does not hold, and are dropped without making further requests until
+   * the complete table arrives.
+   */
+
+  private void requestStringTableResend(
+    final CoTransportConnectionUsableType connection)
+  {
+    if (this.strings_resend_requested) {
+      return;
+    }
+
+    this.strings_resend_requested = true;
+    connection.send(
+      CoTransportConnectionUsableType.Reliability.MESSAGE_RELIABLE,
+      0,
+      CoStringConstantPoolMessages.eventAcknowledgeTypeName(),
+      CoStringConstantPoolMessages.createEventResendRequestSerialized(
+        this.strings_version));
+  }
+
   @Override
   public void onConnectionReceiveDropUnreliable(
     final CoTransportConnectionUsableType connection,
@@ -367,7 +567,9 @@ public final class CoClientNetworkHandler
   public void close()
     throws IOException
   {
+    this.strings_cache_exec.shutdown();
     this.client.close();
+    this.strings_codecs.shutDown();
   }
 
   public void start()
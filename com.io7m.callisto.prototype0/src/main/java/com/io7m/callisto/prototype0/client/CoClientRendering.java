@@ -18,8 +18,12 @@ package com.io7m.callisto.prototype0.client;
 
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.process.CoProcessAbstract;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
+import com.io7m.callisto.prototype0.ticks.CoTickRate;
+import com.io7m.callisto.prototype0.ticks.CoTickRegistration;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
+import com.io7m.jnull.NullCheck;
 import com.io7m.junreachable.UnimplementedCodeException;
-import io.reactivex.disposables.Disposable;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.opengl.GL;
@@ -37,12 +41,14 @@ public final class CoClientRendering extends CoProcessAbstract
     LoggerFactory.getLogger(CoClientRendering.class);
 
   private final ExecutorService exec_back;
-  private final Disposable tick_sub;
+  private final CoTickRegistration tick_registration;
   private volatile long context_rendering;
   private volatile long context_background;
 
   public CoClientRendering(
-    final CoEventServiceType in_events)
+    final CoEventServiceType in_events,
+    final CoTickScheduler in_ticks,
+    final CoProcessExecutionType in_execution)
   {
     super(
       in_events,
@@ -50,7 +56,8 @@ public final class CoClientRendering extends CoProcessAbstract
         final Thread th = new Thread(r);
         th.setName("com.io7m.callisto.client.rendering.main." + th.getId());
         return th;
-      });
+      },
+      in_execution);
 
     this.exec_back =
       Executors.newSingleThreadExecutor(
@@ -60,21 +67,16 @@ public final class CoClientRendering extends CoProcessAbstract
           return th;
         });
 
-    this.tick_sub =
-      this.events().events()
-        .ofType(CoClientTickEvent.class)
-        .observeOn(this.scheduler())
-        .subscribe(this::onTickEvent, CoClientRendering::onTickEventError);
+    this.tick_registration =
+      this.registerTicks(
+        NullCheck.notNull(in_ticks, "Ticks"),
+        CoTickRate.hertz(60L),
+        this::onTick);
   }
 
-  private static void onTickEventError(
-    final Throwable ex)
-  {
-    LOG.error("onTickEvent: ", ex);
-  }
-
-  private void onTickEvent(
-    final CoClientTickEvent event)
+  private void onTick(
+    final long tick,
+    final long skipped)
   {
     GLFW.glfwPollEvents();
 
@@ -164,7 +166,7 @@ public final class CoClientRendering extends CoProcessAbstract
   protected void doStop()
   {
     LOG.trace("stop");
-    this.tick_sub.dispose();
+    this.tick_registration.dispose();
     this.stopMain();
     this.exec_back.submit(this::stopBackground);
   }
@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.compression;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import com.io7m.jranges.RangeCheck;
+import com.io7m.jranges.RangeInclusiveI;
+import org.immutables.value.Value;
+
+import java.util.zip.Deflater;
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoCompressionConfigurationType
+{
+  @Value.Parameter
+  @Value.Default
+  default int level()
+  {
+    return Deflater.BEST_COMPRESSION;
+  }
+
+  @Value.Parameter
+  @Value.Default
+  default byte[] dictionary()
+  {
+    return CoCompressionDictionaries.stringConstants();
+  }
+
+  @Value.Parameter
+  @Value.Default
+  default int decompressedSizeLimit()
+  {
+    return 16 * 1024 * 1024;
+  }
+
+  /**
+   * @return The maximum number of idle codecs that the service retains for
+   * reuse; codecs beyond this number release their native resources as soon
+   * as the operation that used them completes
+   */
+
+  @Value.Parameter
+  @Value.Default
+  default int codecsRetained()
+  {
+    return 4;
+  }
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    RangeCheck.checkIncludedInInteger(
+      this.level(),
+      "Compression level",
+      new RangeInclusiveI(Deflater.NO_COMPRESSION, Deflater.BEST_COMPRESSION),
+      "Valid compression levels");
+
+    RangeCheck.checkIncludedInInteger(
+      this.decompressedSizeLimit(),
+      "Decompressed size limit",
+      new RangeInclusiveI(1, Integer.MAX_VALUE),
+      "Valid size limits");
+
+    RangeCheck.checkIncludedInInteger(
+      this.codecsRetained(),
+      "Retained codecs",
+      new RangeInclusiveI(0, 1024),
+      "Valid retained codec counts");
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.compression;
+
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolMessages;
+import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantPoolUpdate;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Functions to produce preset dictionaries for compression.
+ */
+
+public final class CoCompressionDictionaries
+{
+  private static final int SEGMENT_SIZE = 8;
+
+  private static final byte[] STRING_CONSTANTS =
+    CoStringConstantPoolUpdate.newBuilder()
+      .putStrings(
+        0, CoStringConstantPoolMessages.eventCompressedUpdateTypeName())
+      .putStrings(
+        1, CoStringConstantPoolMessages.eventAcknowledgeTypeName())
+      .build()
+      .toByteArray();
+
+  private CoCompressionDictionaries()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * <p>The default dictionary is not trained: It is the serialized form of a
+   * string table containing only the builtin string pool message names at
+   * indices {@code 0} and {@code 1}. Every table sent by a server contains
+   * those two constants at those indices, and the serialized form also
+   * captures the framing of table entries. Names registered at run time
+   * (such as those of event serializers and replication messages) have no
+   * fixed index and are not included.</p>
+   *
+   * <p>Applications that have a corpus of real string tables (such as the
+   * tables stored by client caches) should instead produce a dictionary with
+   * {@link #train(Collection, int)} and configure it on both peers.</p>
+   *
+   * @return A dictionary containing the builtin string constants
+   */
+
+  public static byte[] stringConstants()
+  {
+    return STRING_CONSTANTS.clone();
+  }
+
+  /**
+   * <p>Train a dictionary from the given sample payloads.</p>
+   *
+   * <p>Every {@code 8} octet segment of every sample is counted, and the
+   * segments that occur in more than one place are added to the dictionary
+   * in order of decreasing frequency until the dictionary is full. Segments
+   * already present in the dictionary are skipped. The dictionary is then
+   * reversed, so that the most frequent segments appear at the end of the
+   * dictionary, where they are cheapest for the compressor to refer to.</p>
+   *
+   * @param samples The sample payloads
+   * @param size    The maximum size of the dictionary
+   *
+   * @return A dictionary of at most {@code size} octets
+   */
+
+  public static byte[] train(
+    final Collection<byte[]> samples,
+    final int size)
+  {
+    NullCheck.notNull(samples, "Samples");
+    Preconditions.checkPreconditionI(
+      size, size > 0, s -> "Dictionary size must be positive");
+
+    /*
+     * ISO-8859-1 maps each octet to exactly one character, so the segments
+     * can be held as strings without loss.
+     */
+
+    final Object2IntOpenHashMap<String> counts = new Object2IntOpenHashMap<>();
+    for (final byte[] sample : samples) {
+      final String text = new String(sample, StandardCharsets.ISO_8859_1);
+      for (int index = 0; index + SEGMENT_SIZE <= text.length(); ++index) {
+        counts.addTo(text.substring(index, index + SEGMENT_SIZE), 1);
+      }
+    }
+
+    final List<Object2IntMap.Entry<String>> entries =
+      new ArrayList<>(counts.object2IntEntrySet());
+    entries.sort((e0, e1) -> Integer.compare(e1.getIntValue(), e0.getIntValue()));
+
+    final List<String> chosen = new ArrayList<>();
+    final StringBuilder contents = new StringBuilder(size);
+    for (final Object2IntMap.Entry<String> e : entries) {
+      if (e.getIntValue() < 2) {
+        break;
+      }
+      final String segment = e.getKey();
+      if (contents.length() + segment.length() > size) {
+        break;
+      }
+      if (contents.indexOf(segment) == -1) {
+        chosen.add(segment);
+        contents.append(segment);
+      }
+    }
+
+    final StringBuilder result = new StringBuilder(contents.length());
+    for (int index = chosen.size() - 1; index >= 0; --index) {
+      result.append(chosen.get(index));
+    }
+    return result.toString().getBytes(StandardCharsets.ISO_8859_1);
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.compression;
+
+import com.io7m.callisto.prototype0.services.CoAbstractService;
+import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantCompression;
+import com.io7m.jnull.NullCheck;
+import com.io7m.junreachable.UnreachableCodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>The default compression service.</p>
+ *
+ * <p>Each operation borrows a set of deflaters, inflaters, and scratch
+ * buffers from a pool, and returns it when the operation completes. At most
+ * {@link CoCompressionConfigurationType#codecsRetained()} idle sets are
+ * retained; any others release their native resources immediately. Because
+ * codecs are not bound to threads, they are not leaked when threads that
+ * used the service terminate. The native resources held by the retained
+ * codecs are released when the service is shut down.</p>
+ */
+
+public final class CoCompressionService
+  extends CoAbstractService implements CoCompressionServiceType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoCompressionService.class);
+
+  private final CoCompressionConfiguration config;
+  private final byte[] dictionary;
+  private final long dictionary_id;
+  private final Queue<Codecs> codecs_idle;
+  private final AtomicInteger codecs_idle_count;
+  private volatile boolean shut_down;
+
+  public CoCompressionService(
+    final CoCompressionConfiguration in_config)
+  {
+    this.config = NullCheck.notNull(in_config, "Config");
+    this.dictionary = this.config.dictionary();
+
+    final Adler32 adler = new Adler32();
+    adler.update(this.dictionary);
+    this.dictionary_id = adler.getValue();
+
+    this.codecs_idle = new ConcurrentLinkedQueue<>();
+    this.codecs_idle_count = new AtomicInteger(0);
+
+    this.onActivateActual();
+  }
+
+  @Override
+  protected Logger log()
+  {
+    return LOG;
+  }
+
+  private Codecs codecsBorrow()
+  {
+    final Codecs c = this.codecs_idle.poll();
+    if (c != null) {
+      this.codecs_idle_count.decrementAndGet();
+      return c;
+    }
+    return new Codecs(this.config.level());
+  }
+
+  private void codecsReturn(
+    final Codecs c)
+  {
+    if (this.codecs_idle_count.incrementAndGet() <= this.config.codecsRetained()) {
+      this.codecs_idle.add(c);
+
+      /*
+       * The service may have been shut down concurrently, in which case the
+       * codecs just returned might not have been seen by the shutdown.
+       */
+
+      if (this.shut_down) {
+        this.codecsEndIdle();
+      }
+      return;
+    }
+
+    this.codecs_idle_count.decrementAndGet();
+    c.end();
+  }
+
+  private void codecsEndIdle()
+  {
+    while (true) {
+      final Codecs c = this.codecs_idle.poll();
+      if (c == null) {
+        break;
+      }
+      this.codecs_idle_count.decrementAndGet();
+      c.end();
+    }
+  }
+
+  @Override
+  public ByteBuffer compress(
+    final CoStringConstantCompression algorithm,
+    final ByteBuffer data)
+    throws CoCompressionException
+  {
+    NullCheck.notNull(algorithm, "Algorithm");
+    NullCheck.notNull(data, "Data");
+
+    final Codecs c = this.codecsBorrow();
+    try {
+      return this.compressWith(c, algorithm, data);
+    } finally {
+      this.codecsReturn(c);
+    }
+  }
+
+  private ByteBuffer compressWith(
+    final Codecs c,
+    final CoStringConstantCompression algorithm,
+    final ByteBuffer data)
+  {
+    final Deflater deflater = c.deflater;
+    deflater.reset();
+
+    switch (algorithm) {
+      case COMPRESSION_DEFLATE: {
+        break;
+      }
+      case COMPRESSION_DEFLATE_DICTIONARY: {
+        if (this.dictionary.length > 0) {
+          deflater.setDictionary(this.dictionary);
+        }
+        break;
+      }
+      case UNRECOGNIZED: {
+        throw new CoCompressionException(
+          "Unrecognized compression algorithm: " + algorithm);
+      }
+    }
+
+    c.input(data);
+    deflater.setInput(c.input_array, c.input_offset, c.input_length);
+    deflater.finish();
+
+    int written = 0;
+    while (!deflater.finished()) {
+      if (written == c.output.length) {
+        c.output = Arrays.copyOf(c.output, c.output.length * 2);
+      }
+      written += deflater.deflate(
+        c.output, written, c.output.length - written);
+    }
+
+    return ByteBuffer.wrap(Arrays.copyOf(c.output, written));
+  }
+
+  @Override
+  public ByteBuffer decompress(
+    final CoStringConstantCompression algorithm,
+    final ByteBuffer data)
+    throws CoCompressionException
+  {
+    NullCheck.notNull(algorithm, "Algorithm");
+    NullCheck.notNull(data, "Data");
+
+    switch (algorithm) {
+      case COMPRESSION_DEFLATE:
+      case COMPRESSION_DEFLATE_DICTIONARY: {
+        break;
+      }
+      case UNRECOGNIZED: {
+        throw new CoCompressionException(
+          "Unrecognized compression algorithm: " + algorithm);
+      }
+    }
+
+    final Codecs c = this.codecsBorrow();
+    try {
+      return this.decompressWith(c, algorithm, data);
+    } finally {
+      this.codecsReturn(c);
+    }
+  }
+
+  private ByteBuffer decompressWith(
+    final Codecs c,
+    final CoStringConstantCompression algorithm,
+    final ByteBuffer data)
+  {
+    final Inflater inflater = c.inflater;
+    inflater.reset();
+
+    c.input(data);
+    inflater.setInput(c.input_array, c.input_offset, c.input_length);
+
+    final int limit = this.config.decompressedSizeLimit();
+    int written = 0;
+    try {
+      while (!inflater.finished()) {
+        if (written >= limit) {
+          throw new CoCompressionException(
+            "Decompressed data exceeds the size limit of " + limit);
+        }
+        if (written == c.output.length) {
+          c.output = Arrays.copyOf(
+            c.output, (int) Math.min((long) limit, (long) c.output.length * 2L));
+        }
+
+        final int r = inflater.inflate(
+          c.output, written, Math.min(c.output.length, limit) - written);
+        written += r;
+
+        if (r == 0) {
+          if (inflater.needsDictionary()) {
+            this.inflaterSetDictionary(algorithm, inflater);
+          } else if (inflater.needsInput()) {
+            throw new CoCompressionException("Compressed data is truncated");
+          }
+        }
+      }
+    } catch (final DataFormatException e) {
+      throw new CoCompressionException("Malformed compressed data", e);
+    }
+
+    return ByteBuffer.wrap(Arrays.copyOf(c.output, written));
+  }
+
+  private void inflaterSetDictionary(
+    final CoStringConstantCompression algorithm,
+    final Inflater inflater)
+  {
+    switch (algorithm) {
+      case COMPRESSION_DEFLATE_DICTIONARY: {
+        if (((long) inflater.getAdler() & 0xffffffffL) == this.dictionary_id) {
+          inflater.setDictionary(this.dictionary);
+          return;
+        }
+        throw new CoCompressionException(
+          "Compressed data requires an unknown dictionary");
+      }
+      case COMPRESSION_DEFLATE:
+      case UNRECOGNIZED: {
+        throw new CoCompressionException(
+          "Compressed data unexpectedly requires a dictionary");
+      }
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  @Override
+  public void shutDown()
+  {
+    this.shut_down = true;
+    this.codecsEndIdle();
+  }
+
+  private static final class Codecs
+  {
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private byte[] output;
+    private byte[] input_scratch;
+    private byte[] input_array;
+    private int input_offset;
+    private int input_length;
+
+    Codecs(
+      final int level)
+    {
+      this.deflater = new Deflater(level);
+      this.inflater = new Inflater();
+      this.output = new byte[4096];
+      this.input_scratch = new byte[4096];
+    }
+
+    void end()
+    {
+      this.deflater.end();
+      this.inflater.end();
+    }
+
+    /**
+     * Use the backing array of {@code data} directly if it has one, and
+     * otherwise copy the data into the scratch buffer.
+     */
+
+    void input(
+      final ByteBuffer data)
+    {
+      this.input_length = data.remaining();
+      if (data.hasArray()) {
+        this.input_array = data.array();
+        this.input_offset = data.arrayOffset() + data.position();
+        return;
+      }
+
+      if (this.input_scratch.length < this.input_length) {
+        this.input_scratch = new byte[this.input_length];
+      }
+      data.duplicate().get(this.input_scratch, 0, this.input_length);
+      this.input_array = this.input_scratch;
+      this.input_offset = 0;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.compression;
+
+import com.io7m.callisto.prototype0.services.CoServiceType;
+import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantCompression;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A compression service. Implementations are required to be safe to use
+ * from any number of threads.
+ */
+
+public interface CoCompressionServiceType extends CoServiceType
+{
+  /**
+   * Compress the data between the position and limit of {@code data}. The
+   * position of {@code data} is not modified.
+   *
+   * @param algorithm The compression algorithm
+   * @param data      The data
+   *
+   * @return A freshly allocated buffer containing the compressed data
+   *
+   * @throws CoCompressionException On errors
+   */
+
+  ByteBuffer compress(
+    CoStringConstantCompression algorithm,
+    ByteBuffer data)
+    throws CoCompressionException;
+
+  /**
+   * Decompress the data between the position and limit of {@code data}. The
+   * position of {@code data} is not modified.
+   *
+   * @param algorithm The compression algorithm
+   * @param data      The compressed data
+   *
+   * @return A freshly allocated buffer containing the decompressed data
+   *
+   * @throws CoCompressionException On malformed or oversized data
+   */
+
+  ByteBuffer decompress(
+    CoStringConstantCompression algorithm,
+    ByteBuffer data)
+    throws CoCompressionException;
+}
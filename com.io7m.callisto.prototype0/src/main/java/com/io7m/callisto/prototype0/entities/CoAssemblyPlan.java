@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import io.vavr.collection.Map;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * An assembly compiled into arrays of trait providers, classes, and handle
+ * slots, so that many entities can be created from it without iterating
+ * over the assembly's map for each entity.
+ */
+
+final class CoAssemblyPlan
+{
+  private final Class<CoEntityTraitType>[] classes;
+  private final CoEntityTraitProviderType<CoEntityTraitType>[] providers;
+  private final int[] slots;
+
+  @SuppressWarnings("unchecked")
+  private CoAssemblyPlan(
+    final int size)
+  {
+    this.classes = new Class[size];
+    this.providers = new CoEntityTraitProviderType[size];
+    this.slots = new int[size];
+  }
+
+  static CoAssemblyPlan compile(
+    final CoAssemblyType assembly)
+  {
+    final Map<Class<CoEntityTraitType>,
+      CoEntityTraitProviderType<CoEntityTraitType>> providers =
+      assembly.traitProviders();
+
+    final CoAssemblyPlan plan = new CoAssemblyPlan(providers.size());
+    int index = 0;
+    for (final Class<CoEntityTraitType> c : providers.keySet()) {
+      final CoEntityTraitProviderType<CoEntityTraitType> provider =
+        providers.get(c).get();
+      plan.classes[index] = c;
+      plan.providers[index] = provider;
+      plan.slots[index] = provider.handle().slot();
+      ++index;
+    }
+    return plan;
+  }
+
+  int size()
+  {
+    return this.classes.length;
+  }
+
+  Class<CoEntityTraitType> traitClass(
+    final int index)
+  {
+    return this.classes[index];
+  }
+
+  CoEntityTraitProviderType<CoEntityTraitType> provider(
+    final int index)
+  {
+    return this.providers[index];
+  }
+
+  int slot(
+    final int index)
+  {
+    return this.slots[index];
+  }
+
+  void addClassesTo(
+    final Set<Class<? extends CoEntityTraitType>> out)
+  {
+    for (final Class<CoEntityTraitType> c : this.classes) {
+      out.add(c);
+    }
+  }
+
+  Iterable<Class<CoEntityTraitType>> classes()
+  {
+    return Arrays.asList(this.classes);
+  }
+}
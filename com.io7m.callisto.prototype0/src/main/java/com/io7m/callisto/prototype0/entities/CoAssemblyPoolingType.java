@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import com.io7m.jranges.RangeCheck;
+import com.io7m.jranges.RangeInclusiveI;
+import org.immutables.value.Value;
+
+/**
+ * <p>Pooling configuration for an assembly.</p>
+ *
+ * <p>When an entity created from a pooled assembly is destroyed, and all of
+ * its traits implement {@link CoEntityTraitRecyclableType}, its traits are
+ * given the chance to reset themselves via
+ * {@link CoEntityTraitRecyclableType#onRecycle()}. If they all succeed, the
+ * traits are kept and given to a new entity, with a new identifier, by a
+ * later call to {@link CoEntityServiceType#createEntity(CoAssemblyType)},
+ * which calls {@link CoEntityTraitRecyclableType#onReuse(CoEntityType)} on
+ * each of them. The destroyed entity itself is never reused, and stays
+ * destroyed.</p>
+ *
+ * <p>Pooling is a hint: {@link CoEntityArchetypeService} keeps entity state
+ * in columns that are already reused, and ignores it.</p>
+ */
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoAssemblyPoolingType
+{
+  /**
+   * @return The maximum number of entities held in the pool shared between
+   * threads
+   */
+
+  @Value.Parameter
+  @Value.Default
+  default int capacity()
+  {
+    return 1024;
+  }
+
+  /**
+   * @return The maximum number of entities held by each thread before
+   * entities are returned to the shared pool
+   */
+
+  @Value.Parameter
+  @Value.Default
+  default int threadCapacity()
+  {
+    return 64;
+  }
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    RangeCheck.checkIncludedInInteger(
+      this.capacity(),
+      "Capacity",
+      new RangeInclusiveI(0, Integer.MAX_VALUE),
+      "Valid capacities");
+
+    RangeCheck.checkIncludedInInteger(
+      this.threadCapacity(),
+      "Thread capacity",
+      new RangeInclusiveI(0, Integer.MAX_VALUE),
+      "Valid capacities");
+  }
+}
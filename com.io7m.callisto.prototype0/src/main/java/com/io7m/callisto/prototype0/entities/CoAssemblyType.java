@@ -18,6 +18,8 @@ package com.io7m.callisto.prototype0.entities;
 
 import io.vavr.collection.Map;
 
+import java.util.Optional;
+
 /**
  * The type of entity trait assemblies.
  */
@@ -40,4 +42,14 @@ public interface CoAssemblyType
 
   <T extends CoEntityTraitType>
   Map<Class<T>, CoEntityTraitProviderType<T>> traitProviders();
+
+  /**
+   * @return The pooling configuration for entities created from the
+   * assembly, if entities should be pooled
+   */
+
+  default Optional<CoAssemblyPooling> pooling()
+  {
+    return Optional.empty();
+  }
 }
@@ -0,0 +1,545 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>A table holding every entity that has exactly a given set of traits.</p>
+ *
+ * <p>Each row of the table is one entity. Every trait in the set has an
+ * object column holding the trait instances, and every primitive field of a
+ * columnar trait has a primitive array column. Rows are kept dense: removing
+ * a row moves the last row into its place.</p>
+ *
+ * <p>Archetypes are created and modified only by an
+ * {@link CoEntityArchetypeService}. The arrays returned by the column
+ * accessors are valid for rows {@code [0, size())} for as long as the caller
+ * holds the store's iteration lock.</p>
+ */
+
+public final class CoEntityArchetype
+{
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Set<Class<? extends CoEntityTraitType>> traits;
+  private final Class<? extends CoEntityTraitType>[] trait_classes;
+  private final Reference2IntOpenHashMap<Class<? extends CoEntityTraitType>> trait_index;
+  private final int[] trait_slots;
+  private final int[] column_base;
+  private final CoEntityColumnKind[] column_kinds;
+  private final Object[] columns;
+  private final CoEntityTraitType[][] objects;
+  private final Reference2ReferenceOpenHashMap<Class<? extends CoEntityTraitType>, CoEntityArchetype> edges_add;
+  private final Reference2ReferenceOpenHashMap<Class<? extends CoEntityTraitType>, CoEntityArchetype> edges_remove;
+  private CoEntityType[] entities;
+  private int size;
+
+  @SuppressWarnings("unchecked")
+  CoEntityArchetype(
+    final Set<Class<? extends CoEntityTraitType>> in_traits,
+    final Reference2ReferenceOpenHashMap<Class<? extends CoEntityTraitType>, List<CoEntityColumn>> layouts)
+  {
+    NullCheck.notNull(in_traits, "Traits");
+    NullCheck.notNull(layouts, "Layouts");
+
+    this.traits = Collections.unmodifiableSet(in_traits);
+    this.trait_classes = in_traits.toArray(new Class[in_traits.size()]);
+    Arrays.sort(this.trait_classes, (a, b) -> a.getName().compareTo(b.getName()));
+
+    this.trait_index = new Reference2IntOpenHashMap<>(this.trait_classes.length);
+    this.trait_index.defaultReturnValue(-1);
+    this.column_base = new int[this.trait_classes.length];
+
+    int slot_max = -1;
+    for (final Class<? extends CoEntityTraitType> c : this.trait_classes) {
+      slot_max = Math.max(slot_max, CoEntityTraitHandle.of(c).slot());
+    }
+    this.trait_slots = new int[slot_max + 1];
+    Arrays.fill(this.trait_slots, -1);
+
+    int column_count = 0;
+    for (int index = 0; index < this.trait_classes.length; ++index) {
+      final Class<? extends CoEntityTraitType> c = this.trait_classes[index];
+      this.trait_index.put(c, index);
+      this.trait_slots[CoEntityTraitHandle.of(c).slot()] = index;
+      this.column_base[index] = column_count;
+      final List<CoEntityColumn> layout = layouts.get(c);
+      if (layout != null) {
+        column_count += layout.size();
+      }
+    }
+
+    this.column_kinds = new CoEntityColumnKind[column_count];
+    this.columns = new Object[column_count];
+    for (int index = 0; index < this.trait_classes.length; ++index) {
+      final List<CoEntityColumn> layout = layouts.get(this.trait_classes[index]);
+      if (layout != null) {
+        for (int column = 0; column < layout.size(); ++column) {
+          final int target = this.column_base[index] + column;
+          final CoEntityColumnKind kind = layout.get(column).kind();
+          this.column_kinds[target] = kind;
+          this.columns[target] = allocateColumn(kind, INITIAL_CAPACITY);
+        }
+      }
+    }
+
+    this.objects = new CoEntityTraitType[this.trait_classes.length][];
+    for (int index = 0; index < this.objects.length; ++index) {
+      this.objects[index] = new CoEntityTraitType[INITIAL_CAPACITY];
+    }
+
+    this.entities = new CoEntityType[INITIAL_CAPACITY];
+    this.edges_add = new Reference2ReferenceOpenHashMap<>();
+    this.edges_remove = new Reference2ReferenceOpenHashMap<>();
+    this.size = 0;
+  }
+
+  private static Object allocateColumn(
+    final CoEntityColumnKind kind,
+    final int capacity)
+  {
+    switch (kind) {
+      case COLUMN_INT: {
+        return new int[capacity];
+      }
+      case COLUMN_LONG: {
+        return new long[capacity];
+      }
+      case COLUMN_FLOAT: {
+        return new float[capacity];
+      }
+      case COLUMN_DOUBLE: {
+        return new double[capacity];
+      }
+    }
+    throw new UnreachableCodeException();
+  }
+
+  private static Object growColumn(
+    final CoEntityColumnKind kind,
+    final Object column,
+    final int capacity)
+  {
+    switch (kind) {
+      case COLUMN_INT: {
+        return Arrays.copyOf((int[]) column, capacity);
+      }
+      case COLUMN_LONG: {
+        return Arrays.copyOf((long[]) column, capacity);
+      }
+      case COLUMN_FLOAT: {
+        return Arrays.copyOf((float[]) column, capacity);
+      }
+      case COLUMN_DOUBLE: {
+        return Arrays.copyOf((double[]) column, capacity);
+      }
+    }
+    throw new UnreachableCodeException();
+  }
+
+  private static void clearColumnValue(
+    final CoEntityColumnKind kind,
+    final Object column,
+    final int row)
+  {
+    switch (kind) {
+      case COLUMN_INT: {
+        ((int[]) column)[row] = 0;
+        break;
+      }
+      case COLUMN_LONG: {
+        ((long[]) column)[row] = 0L;
+        break;
+      }
+      case COLUMN_FLOAT: {
+        ((float[]) column)[row] = 0.0f;
+        break;
+      }
+      case COLUMN_DOUBLE: {
+        ((double[]) column)[row] = 0.0;
+        break;
+      }
+    }
+  }
+
+  /**
+   * @return The set of traits held by every entity in the archetype
+   */
+
+  public Set<Class<? extends CoEntityTraitType>> traits()
+  {
+    return this.traits;
+  }
+
+  /**
+   * @param c The trait class
+   *
+   * @return {@code true} iff entities in this archetype have the trait
+   */
+
+  public boolean hasTrait(
+    final Class<? extends CoEntityTraitType> c)
+  {
+    return this.trait_index.containsKey(c);
+  }
+
+  /**
+   * @return The number of entities in the archetype
+   */
+
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * @param row The row
+   *
+   * @return The entity in the given row
+   */
+
+  public CoEntityType entity(
+    final int row)
+  {
+    return this.entities[row];
+  }
+
+  /**
+   * @param c   The trait class
+   * @param row The row
+   * @param <T> The precise type of trait
+   *
+   * @return The trait instance of the entity in the given row
+   */
+
+  @SuppressWarnings("unchecked")
+  public <T extends CoEntityTraitType> T trait(
+    final Class<T> c,
+    final int row)
+  {
+    return (T) this.objects[this.traitIndexChecked(c)][row];
+  }
+
+  /**
+   * @param c      The trait class
+   * @param column The column index within the trait
+   *
+   * @return The values of the given {@code int} column
+   */
+
+  public int[] columnInts(
+    final Class<? extends CoEntityTraitType> c,
+    final int column)
+  {
+    return (int[]) this.column(c, column, CoEntityColumnKind.COLUMN_INT);
+  }
+
+  /**
+   * @param c      The trait class
+   * @param column The column index within the trait
+   *
+   * @return The values of the given {@code long} column
+   */
+
+  public long[] columnLongs(
+    final Class<? extends CoEntityTraitType> c,
+    final int column)
+  {
+    return (long[]) this.column(c, column, CoEntityColumnKind.COLUMN_LONG);
+  }
+
+  /**
+   * @param c      The trait class
+   * @param column The column index within the trait
+   *
+   * @return The values of the given {@code float} column
+   */
+
+  public float[] columnFloats(
+    final Class<? extends CoEntityTraitType> c,
+    final int column)
+  {
+    return (float[]) this.column(c, column, CoEntityColumnKind.COLUMN_FLOAT);
+  }
+
+  /**
+   * @param c      The trait class
+   * @param column The column index within the trait
+   *
+   * @return The values of the given {@code double} column
+   */
+
+  public double[] columnDoubles(
+    final Class<? extends CoEntityTraitType> c,
+    final int column)
+  {
+    return (double[]) this.column(c, column, CoEntityColumnKind.COLUMN_DOUBLE);
+  }
+
+  private Object column(
+    final Class<? extends CoEntityTraitType> c,
+    final int column,
+    final CoEntityColumnKind kind)
+  {
+    final int target = this.columnIndex(c, column);
+    if (target < 0 || this.column_kinds[target] != kind) {
+      throw new IllegalArgumentException(
+        new StringBuilder(128)
+          .append("No column of the requested type.")
+          .append(System.lineSeparator())
+          .append("  Trait: ")
+          .append(c)
+          .append(System.lineSeparator())
+          .append("  Column: ")
+          .append(column)
+          .append(System.lineSeparator())
+          .append("  Type: ")
+          .append(kind)
+          .append(System.lineSeparator())
+          .toString());
+    }
+    return this.columns[target];
+  }
+
+  private int traitIndexChecked(
+    final Class<? extends CoEntityTraitType> c)
+  {
+    final int index = this.trait_index.getInt(c);
+    if (index < 0) {
+      throw new IllegalArgumentException(
+        "Archetype does not contain trait: " + c);
+    }
+    return index;
+  }
+
+  int columnIndex(
+    final Class<? extends CoEntityTraitType> c,
+    final int column)
+  {
+    final int index = this.trait_index.getInt(c);
+    if (index < 0 || column < 0) {
+      return -1;
+    }
+    final int target = this.column_base[index] + column;
+    final int limit = index + 1 < this.column_base.length
+      ? this.column_base[index + 1]
+      : this.columns.length;
+    return target < limit ? target : -1;
+  }
+
+  Object columnAt(
+    final int target)
+  {
+    return this.columns[target];
+  }
+
+  int traitIndex(
+    final Class<? extends CoEntityTraitType> c)
+  {
+    return this.trait_index.getInt(c);
+  }
+
+  int traitIndexForSlot(
+    final int slot)
+  {
+    return slot < this.trait_slots.length ? this.trait_slots[slot] : -1;
+  }
+
+  CoEntityTraitType objectAt(
+    final int trait,
+    final int row)
+  {
+    final CoEntityTraitType[] column = this.objects[trait];
+    return row < column.length ? column[row] : null;
+  }
+
+  void objectSet(
+    final int trait,
+    final int row,
+    final CoEntityTraitType value)
+  {
+    this.objects[trait][row] = value;
+  }
+
+  CoEntityArchetype edgeAdd(
+    final Class<? extends CoEntityTraitType> c)
+  {
+    return this.edges_add.get(c);
+  }
+
+  void edgeAddSet(
+    final Class<? extends CoEntityTraitType> c,
+    final CoEntityArchetype target)
+  {
+    this.edges_add.put(c, target);
+  }
+
+  CoEntityArchetype edgeRemove(
+    final Class<? extends CoEntityTraitType> c)
+  {
+    return this.edges_remove.get(c);
+  }
+
+  void edgeRemoveSet(
+    final Class<? extends CoEntityTraitType> c,
+    final CoEntityArchetype target)
+  {
+    this.edges_remove.put(c, target);
+  }
+
+  /**
+   * Append a row for the given entity. All columns of the new row are
+   * zero, and all trait instances are {@code null}.
+   *
+   * @param entity The entity
+   *
+   * @return The new row
+   */
+
+  int add(
+    final CoEntityType entity)
+  {
+    final int row = this.size;
+    if (row == this.entities.length) {
+      this.grow(row * 2);
+    }
+
+    this.entities[row] = entity;
+    this.size = row + 1;
+    return row;
+  }
+
+  /**
+   * Ensure that at least {@code additional} rows can be added without any
+   * of the columns being reallocated.
+   *
+   * @param additional The number of rows
+   */
+
+  void reserve(
+    final int additional)
+  {
+    final int required = this.size + additional;
+    if (required > this.entities.length) {
+      this.grow(Math.max(required, this.entities.length * 2));
+    }
+  }
+
+  private void grow(
+    final int capacity)
+  {
+    this.entities = Arrays.copyOf(this.entities, capacity);
+    for (int index = 0; index < this.objects.length; ++index) {
+      this.objects[index] = Arrays.copyOf(this.objects[index], capacity);
+    }
+    for (int index = 0; index < this.columns.length; ++index) {
+      this.columns[index] =
+        growColumn(this.column_kinds[index], this.columns[index], capacity);
+    }
+  }
+
+  /**
+   * Remove the given row, moving the last row into its place.
+   *
+   * @param row The row
+   *
+   * @return The entity that was moved into {@code row}, or {@code null} if
+   * the removed row was the last row
+   */
+
+  CoEntityType remove(
+    final int row)
+  {
+    final int last = this.size - 1;
+    final CoEntityType moved;
+
+    if (row != last) {
+      moved = this.entities[last];
+      this.entities[row] = moved;
+      for (final CoEntityTraitType[] column : this.objects) {
+        column[row] = column[last];
+      }
+      for (int index = 0; index < this.columns.length; ++index) {
+        final Object column = this.columns[index];
+        System.arraycopy(column, last, column, row, 1);
+      }
+    } else {
+      moved = null;
+    }
+
+    this.entities[last] = null;
+    for (final CoEntityTraitType[] column : this.objects) {
+      column[last] = null;
+    }
+    for (int index = 0; index < this.columns.length; ++index) {
+      clearColumnValue(this.column_kinds[index], this.columns[index], last);
+    }
+
+    this.size = last;
+    return moved;
+  }
+
+  /**
+   * Copy the trait instances and column values of every trait that both
+   * archetypes have in common from a row of {@code source} to a row of this
+   * archetype.
+   *
+   * @param source     The source archetype
+   * @param source_row The source row
+   * @param target_row The target row
+   */
+
+  void copyFrom(
+    final CoEntityArchetype source,
+    final int source_row,
+    final int target_row)
+  {
+    for (int index = 0; index < this.trait_classes.length; ++index) {
+      final Class<? extends CoEntityTraitType> c = this.trait_classes[index];
+      final int source_index = source.trait_index.getInt(c);
+      if (source_index < 0) {
+        continue;
+      }
+
+      this.objects[index][target_row] = source.objects[source_index][source_row];
+
+      final int base = this.column_base[index];
+      final int source_base = source.column_base[source_index];
+      final int limit = index + 1 < this.column_base.length
+        ? this.column_base[index + 1]
+        : this.columns.length;
+
+      for (int column = base; column < limit; ++column) {
+        System.arraycopy(
+          source.columns[source_base + (column - base)],
+          source_row,
+          this.columns[column],
+          target_row,
+          1);
+      }
+    }
+  }
+}
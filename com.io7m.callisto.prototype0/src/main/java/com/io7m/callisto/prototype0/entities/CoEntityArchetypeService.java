@@ -0,0 +1,1109 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.callisto.core.CoException;
+import com.io7m.callisto.prototype0.events.CoEventServiceType;
+import com.io7m.callisto.prototype0.idpool.CoIDPoolGenerational;
+import com.io7m.callisto.prototype0.services.CoAbstractService;
+import com.io7m.jaffirm.core.Invariants;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import io.vavr.collection.Map;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+import static com.io7m.callisto.prototype0.entities.CoEntityLifecycle.ENTITY_CREATED;
+import static com.io7m.callisto.prototype0.entities.CoEntityLifecycle.ENTITY_DESTROYED;
+import static com.io7m.callisto.prototype0.entities.CoEntityLifecycle.ENTITY_TRAITS_CHANGED;
+
+/**
+ * <p>An entity service that stores entities in archetypes.</p>
+ *
+ * <p>Entities with the same set of traits share a {@link CoEntityArchetype},
+ * in which each trait is an object column and each field of a columnar trait
+ * is a contiguous primitive column. Adding or removing a trait moves the
+ * entity's row to the archetype for the new set of traits.</p>
+ *
+ * <p>Structural changes take an exclusive lock. Trait and column access from
+ * entities uses optimistic reads that do not write to shared memory, and
+ * falls back to a shared lock only if a structural change raced with the
+ * read. Systems iterate over archetypes with
+ * {@link #forEachArchetype(Set, Consumer)}.</p>
+ *
+ * <p>While its traits are being created, a new entity is held in a pending
+ * archetype that is never visible to systems, so that columnar traits can
+ * initialize their columns. The entity is moved to its real archetype once
+ * all of its traits exist.</p>
+ */
+
+public final class CoEntityArchetypeService
+  extends CoAbstractService implements CoEntityServiceType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoEntityArchetypeService.class);
+
+  private final StampedLock lock;
+  private final CoIDPoolGenerational ids;
+  private final CoEventServiceType events;
+  private final CoEntityTraitIndex index;
+  private final @GuardedBy("lock")
+  HashMap<Set<Class<? extends CoEntityTraitType>>, CoEntityArchetype> archetypes;
+  private final @GuardedBy("lock")
+  ReferenceArrayList<CoEntityArchetype> archetypes_ordered;
+  private final @GuardedBy("lock")
+  HashMap<Set<Class<? extends CoEntityTraitType>>, CoEntityArchetype> archetypes_pending;
+  private final @GuardedBy("lock")
+  Reference2ReferenceOpenHashMap<Class<? extends CoEntityTraitType>, List<CoEntityColumn>> layouts;
+
+  public CoEntityArchetypeService(
+    final CoEventServiceType in_events)
+  {
+    this.events = NullCheck.notNull(in_events, "Events");
+    this.lock = new StampedLock();
+    this.ids = new CoIDPoolGenerational();
+    this.index = new CoEntityTraitIndex();
+    this.archetypes = new HashMap<>();
+    this.archetypes_ordered = new ReferenceArrayList<>();
+    this.archetypes_pending = new HashMap<>();
+    this.layouts = new Reference2ReferenceOpenHashMap<>();
+  }
+
+  public void onActivate()
+  {
+    this.onActivateActual();
+  }
+
+  @Override
+  public CoEntityType createEntity(
+    final CoAssemblyType assembly)
+  {
+    NullCheck.notNull(assembly, "Assembly");
+    this.checkActivated();
+
+    final Map<Class<CoEntityTraitType>,
+      CoEntityTraitProviderType<CoEntityTraitType>> providers =
+      assembly.traitProviders();
+
+    final Entity e = new Entity(this, this.ids.fresh());
+
+    final long stamp = this.lock.writeLock();
+    try {
+      final Set<Class<? extends CoEntityTraitType>> key =
+        new ReferenceOpenHashSet<>(providers.size());
+      for (final Class<CoEntityTraitType> c : providers.keySet()) {
+        this.registerLayout(c, providers.get(c).get());
+        key.add(c);
+      }
+
+      final CoEntityArchetype pending = this.archetypePendingFor(key);
+      e.archetype = pending;
+      e.row = pending.add(e);
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+
+    /*
+     * Create all of the required traits. The entity already has a row in a
+     * pending archetype, so columnar traits can initialize their columns
+     * during creation.
+     */
+
+    final ArrayList<CoEntityTraitType> created = new ArrayList<>(providers.size());
+    CoException ex = null;
+    for (final Class<CoEntityTraitType> c : providers.keySet()) {
+      final CoEntityTraitProviderType<CoEntityTraitType> provider =
+        providers.get(c).get();
+
+      try {
+        final CoEntityTraitType trait = provider.create(e);
+        e.traitStore(c, trait);
+        created.add(trait);
+      } catch (final Exception t_ex) {
+        ex = CoException.chain(ex, new CoEntityTraitOnCreateException(t_ex));
+      }
+    }
+
+    /*
+     * If any of the traits failed, destroy any that did not.
+     */
+
+    if (ex != null) {
+      for (final CoEntityTraitType trait : created) {
+        try {
+          trait.onDestroy();
+        } catch (final Exception t_ex) {
+          ex = CoException.chain(ex, new CoEntityTraitOnDestroyException(t_ex));
+        }
+      }
+
+      e.destroyed.set(true);
+      this.removeRow(e);
+      this.ids.release(e.id.value());
+      throw ex;
+    }
+
+    final long stamp_publish = this.lock.writeLock();
+    try {
+      moveRow(e, this.archetypeFor(e.archetype.traits()));
+    } finally {
+      this.lock.unlockWrite(stamp_publish);
+    }
+
+    this.index.entityCreated(e, providers.keySet());
+    this.events.postEntityLifecycle(e, ENTITY_CREATED);
+    return e;
+  }
+
+  @Override
+  public List<CoEntityType> createEntities(
+    final CoAssemblyType assembly,
+    final int count)
+  {
+    NullCheck.notNull(assembly, "Assembly");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+    this.checkActivated();
+
+    final CoAssemblyPlan plan = CoAssemblyPlan.compile(assembly);
+    final int[] entity_ids = new int[count];
+    this.ids.freshBulk(entity_ids, 0, count);
+
+    final Entity[] batch = new Entity[count];
+    for (int index = 0; index < count; ++index) {
+      batch[index] = new Entity(this, entity_ids[index]);
+    }
+
+    /*
+     * Insert all of the rows into a pending archetype under a single lock
+     * acquisition. The archetype is reserved up front so that its columns
+     * are reallocated at most once.
+     */
+
+    final long stamp = this.lock.writeLock();
+    try {
+      final Set<Class<? extends CoEntityTraitType>> key =
+        new ReferenceOpenHashSet<>(plan.size());
+      for (int trait = 0; trait < plan.size(); ++trait) {
+        this.registerLayout(plan.traitClass(trait), plan.provider(trait));
+      }
+      plan.addClassesTo(key);
+
+      final CoEntityArchetype pending = this.archetypePendingFor(key);
+      pending.reserve(count);
+      for (final Entity e : batch) {
+        e.archetype = pending;
+        e.row = pending.add(e);
+      }
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+
+    /*
+     * Create all of the required traits, and then move the entities to their
+     * real archetype and store the traits under a single lock acquisition.
+     */
+
+    final int width = plan.size();
+    final CoEntityTraitType[] created = new CoEntityTraitType[count * width];
+    int created_entities = 0;
+    CoException ex = null;
+    while (created_entities < count && ex == null) {
+      final Entity e = batch[created_entities];
+      for (int trait = 0; trait < width; ++trait) {
+        try {
+          created[(created_entities * width) + trait] =
+            plan.provider(trait).create(e);
+        } catch (final Exception t_ex) {
+          ex = CoException.chain(ex, new CoEntityTraitOnCreateException(t_ex));
+        }
+      }
+      ++created_entities;
+    }
+
+    if (ex != null) {
+      for (final CoEntityTraitType trait : created) {
+        if (trait == null) {
+          continue;
+        }
+        try {
+          trait.onDestroy();
+        } catch (final Exception t_ex) {
+          ex = CoException.chain(ex, new CoEntityTraitOnDestroyException(t_ex));
+        }
+      }
+
+      final long stamp_remove = this.lock.writeLock();
+      try {
+        for (final Entity e : batch) {
+          e.destroyed.set(true);
+          final Entity moved = (Entity) e.archetype.remove(e.row);
+          if (moved != null) {
+            moved.row = e.row;
+          }
+          e.row = -1;
+        }
+      } finally {
+        this.lock.unlockWrite(stamp_remove);
+      }
+
+      this.ids.releaseBulk(entity_ids, 0, count);
+      throw ex;
+    }
+
+    final long stamp_store = this.lock.writeLock();
+    try {
+      if (count > 0) {
+        final CoEntityArchetype archetype =
+          this.archetypeFor(batch[0].archetype.traits());
+        archetype.reserve(count);
+
+        for (int index = 0; index < count; ++index) {
+          final Entity e = batch[index];
+          moveRow(e, archetype);
+          for (int trait = 0; trait < width; ++trait) {
+            archetype.objectSet(
+              archetype.traitIndex(plan.traitClass(trait)),
+              e.row,
+              created[(index * width) + trait]);
+          }
+        }
+      }
+    } finally {
+      this.lock.unlockWrite(stamp_store);
+    }
+
+    final List<CoEntityType> result =
+      Collections.unmodifiableList(Arrays.asList(batch));
+    this.index.entitiesCreated(result, plan.classes());
+    this.events.post(CoEntityLifecycleBatchEvent.of(result, ENTITY_CREATED));
+    return result;
+  }
+
+  @Override
+  public void destroyEntities(
+    final List<CoEntityType> entities)
+  {
+    NullCheck.notNull(entities, "Entities");
+    this.checkActivated();
+
+    final ReferenceArrayList<CoEntityType> destroyed =
+      new ReferenceArrayList<>(entities.size());
+    for (int index = 0; index < entities.size(); ++index) {
+      final CoEntityType entity = entities.get(index);
+      Preconditions.checkPrecondition(
+        entity,
+        entity instanceof Entity && ((Entity) entity).service == this,
+        e -> "Entity must have been created by this service");
+
+      final Entity e = (Entity) entity;
+      if (e.destroyed.compareAndSet(false, true)) {
+        destroyed.add(e);
+      }
+    }
+
+    if (destroyed.isEmpty()) {
+      return;
+    }
+
+    /*
+     * Remove all of the rows under a single lock acquisition, and then
+     * destroy the traits without holding the lock.
+     */
+
+    final ReferenceArrayList<CoEntityTraitType> traits =
+      new ReferenceArrayList<>(destroyed.size());
+    final int[] entity_ids = new int[destroyed.size()];
+    final long stamp = this.lock.writeLock();
+    try {
+      for (int index = 0; index < destroyed.size(); ++index) {
+        final Entity e = (Entity) destroyed.get(index);
+        e.removeRowCollectingTraits(traits);
+        entity_ids[index] = e.id.value();
+      }
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+
+    for (int index = 0; index < traits.size(); ++index) {
+      final CoEntityTraitType trait = traits.get(index);
+      try {
+        trait.onDestroy();
+      } catch (final Exception ex) {
+        LOG.error(
+          "error destroying entity {}: ", trait.owner(),
+          new CoEntityOnDestroyException(ex));
+      }
+    }
+
+    this.index.entitiesDestroyed(destroyed);
+    this.ids.releaseBulk(entity_ids, 0, destroyed.size());
+    this.events.post(
+      CoEntityLifecycleBatchEvent.of(destroyed, ENTITY_DESTROYED));
+  }
+
+  /**
+   * Call {@code receiver} for each non-empty archetype whose entities have
+   * at least the given traits. The store cannot be structurally modified
+   * until this method returns, so {@code receiver} must not create or destroy
+   * entities, or add or remove traits.
+   *
+   * @param required The required traits
+   * @param receiver The receiver
+   */
+
+  public void forEachArchetype(
+    final Set<Class<? extends CoEntityTraitType>> required,
+    final Consumer<CoEntityArchetype> receiver)
+  {
+    NullCheck.notNull(required, "Required");
+    NullCheck.notNull(receiver, "Receiver");
+
+    final long stamp = this.lock.readLock();
+    try {
+      for (int index = 0; index < this.archetypes_ordered.size(); ++index) {
+        final CoEntityArchetype archetype = this.archetypes_ordered.get(index);
+        if (archetype.size() > 0 && archetype.traits().containsAll(required)) {
+          receiver.accept(archetype);
+        }
+      }
+    } finally {
+      this.lock.unlockRead(stamp);
+    }
+  }
+
+  @GuardedBy("lock")
+  private void registerLayout(
+    final Class<? extends CoEntityTraitType> c,
+    final CoEntityTraitProviderType<?> provider)
+  {
+    if (provider instanceof CoEntityColumnarTraitProviderType
+      && !this.layouts.containsKey(c)) {
+      this.layouts.put(c, new ArrayList<>(
+        ((CoEntityColumnarTraitProviderType<?>) provider).columns()));
+    }
+  }
+
+  @GuardedBy("lock")
+  private CoEntityArchetype archetypeFor(
+    final Set<Class<? extends CoEntityTraitType>> key)
+  {
+    final CoEntityArchetype existing = this.archetypes.get(key);
+    if (existing != null) {
+      return existing;
+    }
+
+    final CoEntityArchetype archetype = new CoEntityArchetype(key, this.layouts);
+    this.archetypes.put(archetype.traits(), archetype);
+    this.archetypes_ordered.add(archetype);
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(
+        "created archetype {} (total {})",
+        key,
+        Integer.valueOf(this.archetypes_ordered.size()));
+    }
+    return archetype;
+  }
+
+  @GuardedBy("lock")
+  private CoEntityArchetype archetypePendingFor(
+    final Set<Class<? extends CoEntityTraitType>> key)
+  {
+    final CoEntityArchetype existing = this.archetypes_pending.get(key);
+    if (existing != null) {
+      return existing;
+    }
+
+    final CoEntityArchetype archetype = new CoEntityArchetype(key, this.layouts);
+    this.archetypes_pending.put(archetype.traits(), archetype);
+    return archetype;
+  }
+
+  @GuardedBy("lock")
+  private static void moveRow(
+    final Entity e,
+    final CoEntityArchetype target)
+  {
+    final CoEntityArchetype source = e.archetype;
+    final int source_row = e.row;
+    final int target_row = target.add(e);
+    target.copyFrom(source, source_row, target_row);
+
+    final Entity moved = (Entity) source.remove(source_row);
+    if (moved != null) {
+      moved.row = source_row;
+    }
+
+    e.archetype = target;
+    e.row = target_row;
+  }
+
+  private void removeRow(
+    final Entity e)
+  {
+    final long stamp = this.lock.writeLock();
+    try {
+      final Entity moved = (Entity) e.archetype.remove(e.row);
+      if (moved != null) {
+        moved.row = e.row;
+      }
+      e.row = -1;
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public boolean isLive(
+    final CoEntityID id)
+  {
+    NullCheck.notNull(id, "ID");
+    return this.ids.isLive(id.value());
+  }
+
+  @Override
+  public void query(
+    final CoEntityQuery query,
+    final Consumer<CoEntityType> receiver)
+  {
+    this.checkActivated();
+    this.index.query(query, receiver);
+  }
+
+  @Override
+  public CoEntityQueryView queryView(
+    final CoEntityQuery query)
+  {
+    this.checkActivated();
+    return this.index.view(query);
+  }
+
+  @Override
+  public void shutDown()
+  {
+    this.checkActivated();
+  }
+
+  @Override
+  protected Logger log()
+  {
+    return LOG;
+  }
+
+  private static final class Entity
+    implements CoEntityType, CoEntityColumnAccessType
+  {
+    private final CoEntityArchetypeService service;
+    private final CoEntityID id;
+    private final AtomicBoolean destroyed;
+    private final Object structure_lock;
+    private @GuardedBy("service.lock") CoEntityArchetype archetype;
+    private @GuardedBy("service.lock") int row;
+
+    private Entity(
+      final CoEntityArchetypeService in_service,
+      final int in_id)
+    {
+      this.service = NullCheck.notNull(in_service, "Service");
+      this.id = CoEntityID.of(in_id);
+      this.destroyed = new AtomicBoolean(false);
+      this.structure_lock = new Object();
+      this.row = -1;
+    }
+
+    private static CoEntityTraitType lookup(
+      final CoEntityArchetype archetype,
+      final int row,
+      final int slot)
+    {
+      if (archetype == null || row < 0) {
+        return null;
+      }
+
+      final int index = archetype.traitIndexForSlot(slot);
+      return index < 0 ? null : archetype.objectAt(index, row);
+    }
+
+    private static Object lookupColumn(
+      final CoEntityArchetype archetype,
+      final int row,
+      final Class<? extends CoEntityTraitType> c,
+      final int column)
+    {
+      if (archetype == null || row < 0) {
+        return null;
+      }
+
+      final int target = archetype.columnIndex(c, column);
+      return target < 0 ? null : archetype.columnAt(target);
+    }
+
+    @Override
+    public boolean equals(
+      final Object o)
+    {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || this.getClass() != o.getClass()) {
+        return false;
+      }
+
+      final Entity entity = (Entity) o;
+      return Objects.equals(this.id, entity.id);
+    }
+
+    @Override
+    public String toString()
+    {
+      return new StringBuilder(20)
+        .append("[Entity ")
+        .append(Integer.toUnsignedString(this.id.value()))
+        .append("]")
+        .toString();
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return this.id.hashCode();
+    }
+
+    @Override
+    public CoEntityID id()
+    {
+      return this.id;
+    }
+
+    private CoEntityTraitType traitObject(
+      final int slot)
+    {
+      final StampedLock lock = this.service.lock;
+      final long stamp = lock.tryOptimisticRead();
+      final CoEntityTraitType result = lookup(this.archetype, this.row, slot);
+      if (lock.validate(stamp)) {
+        return result;
+      }
+
+      final long stamp_read = lock.readLock();
+      try {
+        return lookup(this.archetype, this.row, slot);
+      } finally {
+        lock.unlockRead(stamp_read);
+      }
+    }
+
+    private void traitStore(
+      final Class<? extends CoEntityTraitType> c,
+      final CoEntityTraitType trait)
+    {
+      final long stamp = this.service.lock.readLock();
+      try {
+        this.archetype.objectSet(this.archetype.traitIndex(c), this.row, trait);
+      } finally {
+        this.service.lock.unlockRead(stamp);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends CoEntityTraitType> Optional<T> trait(
+      final Class<T> c)
+      throws CoEntityDestroyedException
+    {
+      NullCheck.notNull(c, "Class");
+      this.checkDestroyed();
+      return Optional.ofNullable(
+        (T) this.traitObject(CoEntityTraitHandle.of(c).slot()));
+    }
+
+    private void checkDestroyed()
+    {
+      if (this.isDestroyed()) {
+        throw this.destroyedException();
+      }
+    }
+
+    private CoEntityDestroyedException destroyedException()
+    {
+      return new CoEntityDestroyedException(
+        new StringBuilder(128)
+          .append("Entity has been destroyed.")
+          .append(System.lineSeparator())
+          .append("  Entity: ")
+          .append(this)
+          .append(System.lineSeparator())
+          .toString());
+    }
+
+    @Override
+    public <T extends CoEntityTraitType> T traitGet(
+      final Class<T> c)
+      throws CoEntityDestroyedException, CoEntityTraitNonexistentException
+    {
+      NullCheck.notNull(c, "Class");
+      return this.traitGet(CoEntityTraitHandle.of(c));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends CoEntityTraitType> T traitGet(
+      final CoEntityTraitHandle<T> handle)
+      throws CoEntityDestroyedException, CoEntityTraitNonexistentException
+    {
+      this.checkDestroyed();
+
+      final T trait = (T) this.traitObject(handle.slot());
+      if (trait == null) {
+        throw this.traitNonexistent(handle.type());
+      }
+      return trait;
+    }
+
+    private CoEntityTraitNonexistentException traitNonexistent(
+      final Class<?> c)
+    {
+      return new CoEntityTraitNonexistentException(
+        new StringBuilder(128)
+          .append("Entity does not have a trait registered for the given class.")
+          .append(System.lineSeparator())
+          .append("  Entity: ")
+          .append(this)
+          .append(System.lineSeparator())
+          .append("  Class: ")
+          .append(c)
+          .append(System.lineSeparator())
+          .toString());
+    }
+
+    private CoEntityTraitDuplicateException traitDuplicate(
+      final Class<?> c)
+    {
+      return new CoEntityTraitDuplicateException(
+        new StringBuilder(128)
+          .append("Entity already has a trait registered for the given class.")
+          .append(System.lineSeparator())
+          .append("  Entity: ")
+          .append(this)
+          .append(System.lineSeparator())
+          .append("  Class: ")
+          .append(c)
+          .append(System.lineSeparator())
+          .toString());
+    }
+
+    @Override
+    public <T extends CoEntityTraitType> void traitSet(
+      final Class<T> c,
+      final T trait)
+      throws CoEntityDestroyedException, CoEntityTraitDuplicateException
+    {
+      NullCheck.notNull(c, "Class");
+      NullCheck.notNull(trait, "Trait");
+      this.checkDestroyed();
+
+      /*
+       * The structure lock is held until the index has been updated, so
+       * that the index sees the trait changes of this entity in the order
+       * in which they were made. The store lock is released first, as
+       * query receivers hold the index lock while reading traits.
+       */
+
+      final CoEntityArchetypeService s = this.service;
+      synchronized (this.structure_lock) {
+        this.traitSetLocked(c, trait);
+        s.index.traitAdded(this, c);
+      }
+
+      s.events.postEntityLifecycle(this, ENTITY_TRAITS_CHANGED);
+    }
+
+    @GuardedBy("structure_lock")
+    private <T extends CoEntityTraitType> void traitSetLocked(
+      final Class<T> c,
+      final T trait)
+    {
+      final CoEntityArchetypeService s = this.service;
+      final long stamp = s.lock.writeLock();
+      try {
+        if (this.row < 0) {
+          throw this.destroyedException();
+        }
+
+        final CoEntityArchetype source = this.archetype;
+        if (source.hasTrait(c)) {
+          throw this.traitDuplicate(c);
+        }
+
+        CoEntityArchetype target = source.edgeAdd(c);
+        if (target == null) {
+          s.registerLayout(c, trait.provider());
+          final Set<Class<? extends CoEntityTraitType>> key =
+            new ReferenceOpenHashSet<>(source.traits());
+          key.add(c);
+          target = s.archetypeFor(key);
+          source.edgeAddSet(c, target);
+          target.edgeRemoveSet(c, source);
+        }
+
+        moveRow(this, target);
+        target.objectSet(target.traitIndex(c), this.row, trait);
+      } finally {
+        s.lock.unlockWrite(stamp);
+      }
+    }
+
+    @Override
+    public <T extends CoEntityTraitType> void traitDestroy(
+      final Class<T> c)
+      throws CoEntityDestroyedException, CoEntityTraitOnDestroyException
+    {
+      NullCheck.notNull(c, "Class");
+      this.checkDestroyed();
+
+      final CoEntityArchetypeService s = this.service;
+      final CoEntityTraitType trait;
+      synchronized (this.structure_lock) {
+        trait = this.traitDestroyLocked(c);
+        if (trait == null) {
+          return;
+        }
+        s.index.traitRemoved(this, c);
+      }
+
+      try {
+        trait.onDestroy();
+      } catch (final Exception ex) {
+        throw new CoEntityTraitOnDestroyException(ex);
+      }
+    }
+
+    @GuardedBy("structure_lock")
+    private @Nullable CoEntityTraitType traitDestroyLocked(
+      final Class<? extends CoEntityTraitType> c)
+    {
+      final CoEntityArchetypeService s = this.service;
+      final CoEntityTraitType trait;
+      final long stamp = s.lock.writeLock();
+      try {
+        if (this.row < 0) {
+          throw this.destroyedException();
+        }
+
+        final CoEntityArchetype source = this.archetype;
+        final int index = source.traitIndex(c);
+        if (index < 0) {
+          return null;
+        }
+
+        trait = source.objectAt(index, this.row);
+        Invariants.checkInvariant(
+          trait != null, "Published entities have all trait objects");
+
+        CoEntityArchetype target = source.edgeRemove(c);
+        if (target == null) {
+          final Set<Class<? extends CoEntityTraitType>> key =
+            new ReferenceOpenHashSet<>(source.traits());
+          key.remove(c);
+          target = s.archetypeFor(key);
+          source.edgeRemoveSet(c, target);
+          target.edgeAddSet(c, source);
+        }
+
+        moveRow(this, target);
+      } finally {
+        s.lock.unlockWrite(stamp);
+      }
+      return trait;
+    }
+
+    @Override
+    public boolean isDestroyed()
+    {
+      return this.destroyed.get();
+    }
+
+    @Override
+    public void destroy()
+    {
+      if (this.destroyed.compareAndSet(false, true)) {
+        final CoEntityArchetypeService s = this.service;
+        final ReferenceArrayList<CoEntityTraitType> t;
+
+        final long stamp = s.lock.writeLock();
+        try {
+          t = new ReferenceArrayList<>(this.archetype.traits().size());
+          this.removeRowCollectingTraits(t);
+        } finally {
+          s.lock.unlockWrite(stamp);
+        }
+
+        CoException e = null;
+        for (final CoEntityTraitType trait : t) {
+          try {
+            trait.onDestroy();
+          } catch (final Exception ex) {
+            e = CoException.chain(e, new CoEntityOnDestroyException(ex));
+          }
+        }
+
+        if (e != null) {
+          LOG.error("error destroying entity {}: ", this, e);
+        }
+
+        s.index.entityDestroyed(this);
+        s.ids.release(this.id.value());
+        s.events.postEntityLifecycle(this, ENTITY_DESTROYED);
+      }
+    }
+
+    @GuardedBy("service.lock")
+    private void removeRowCollectingTraits(
+      final List<CoEntityTraitType> traits)
+    {
+      final CoEntityArchetype source = this.archetype;
+      final int count = source.traits().size();
+      for (int index = 0; index < count; ++index) {
+        final CoEntityTraitType trait = source.objectAt(index, this.row);
+        if (trait != null) {
+          traits.add(trait);
+        }
+      }
+
+      final Entity moved = (Entity) source.remove(this.row);
+      if (moved != null) {
+        moved.row = this.row;
+      }
+      this.row = -1;
+    }
+
+    @GuardedBy("service.lock")
+    private Object columnRead(
+      final Class<? extends CoEntityTraitType> c,
+      final int column)
+    {
+      if (this.row < 0) {
+        throw this.destroyedException();
+      }
+
+      final Object values = lookupColumn(this.archetype, this.row, c, column);
+      if (values == null) {
+        throw new IllegalArgumentException(
+          new StringBuilder(128)
+            .append("Entity has no such trait column.")
+            .append(System.lineSeparator())
+            .append("  Entity: ")
+            .append(this)
+            .append(System.lineSeparator())
+            .append("  Class: ")
+            .append(c)
+            .append(System.lineSeparator())
+            .append("  Column: ")
+            .append(column)
+            .append(System.lineSeparator())
+            .toString());
+      }
+      return values;
+    }
+
+    @Override
+    public int columnGetInt(
+      final Class<? extends CoEntityTraitType> c,
+      final int column)
+    {
+      this.checkDestroyed();
+
+      final StampedLock lock = this.service.lock;
+      final long stamp = lock.tryOptimisticRead();
+      final int r = this.row;
+      final Object values = lookupColumn(this.archetype, r, c, column);
+      if (values instanceof int[] && r < ((int[]) values).length) {
+        final int x = ((int[]) values)[r];
+        if (lock.validate(stamp)) {
+          return x;
+        }
+      }
+
+      final long stamp_read = lock.readLock();
+      try {
+        return ((int[]) this.columnRead(c, column))[this.row];
+      } finally {
+        lock.unlockRead(stamp_read);
+      }
+    }
+
+    @Override
+    public long columnGetLong(
+      final Class<? extends CoEntityTraitType> c,
+      final int column)
+    {
+      this.checkDestroyed();
+
+      final StampedLock lock = this.service.lock;
+      final long stamp = lock.tryOptimisticRead();
+      final int r = this.row;
+      final Object values = lookupColumn(this.archetype, r, c, column);
+      if (values instanceof long[] && r < ((long[]) values).length) {
+        final long x = ((long[]) values)[r];
+        if (lock.validate(stamp)) {
+          return x;
+        }
+      }
+
+      final long stamp_read = lock.readLock();
+      try {
+        return ((long[]) this.columnRead(c, column))[this.row];
+      } finally {
+        lock.unlockRead(stamp_read);
+      }
+    }
+
+    @Override
+    public float columnGetFloat(
+      final Class<? extends CoEntityTraitType> c,
+      final int column)
+    {
+      this.checkDestroyed();
+
+      final StampedLock lock = this.service.lock;
+      final long stamp = lock.tryOptimisticRead();
+      final int r = this.row;
+      final Object values = lookupColumn(this.archetype, r, c, column);
+      if (values instanceof float[] && r < ((float[]) values).length) {
+        final float x = ((float[]) values)[r];
+        if (lock.validate(stamp)) {
+          return x;
+        }
+      }
+
+      final long stamp_read = lock.readLock();
+      try {
+        return ((float[]) this.columnRead(c, column))[this.row];
+      } finally {
+        lock.unlockRead(stamp_read);
+      }
+    }
+
+    @Override
+    public double columnGetDouble(
+      final Class<? extends CoEntityTraitType> c,
+      final int column)
+    {
+      this.checkDestroyed();
+
+      final StampedLock lock = this.service.lock;
+      final long stamp = lock.tryOptimisticRead();
+      final int r = this.row;
+      final Object values = lookupColumn(this.archetype, r, c, column);
+      if (values instanceof double[] && r < ((double[]) values).length) {
+        final double x = ((double[]) values)[r];
+        if (lock.validate(stamp)) {
+          return x;
+        }
+      }
+
+      final long stamp_read = lock.readLock();
+      try {
+        return ((double[]) this.columnRead(c, column))[this.row];
+      } finally {
+        lock.unlockRead(stamp_read);
+      }
+    }
+
+    @Override
+    public void columnSetInt(
+      final Class<? extends CoEntityTraitType> c,
+      final int column,
+      final int value)
+    {
+      this.checkDestroyed();
+
+      final long stamp = this.service.lock.readLock();
+      try {
+        ((int[]) this.columnRead(c, column))[this.row] = value;
+      } finally {
+        this.service.lock.unlockRead(stamp);
+      }
+    }
+
+    @Override
+    public void columnSetLong(
+      final Class<? extends CoEntityTraitType> c,
+      final int column,
+      final long value)
+    {
+      this.checkDestroyed();
+
+      final long stamp = this.service.lock.readLock();
+      try {
+        ((long[]) this.columnRead(c, column))[this.row] = value;
+      } finally {
+        this.service.lock.unlockRead(stamp);
+      }
+    }
+
+    @Override
+    public void columnSetFloat(
+      final Class<? extends CoEntityTraitType> c,
+      final int column,
+      final float value)
+    {
+      this.checkDestroyed();
+
+      final long stamp = this.service.lock.readLock();
+      try {
+        ((float[]) this.columnRead(c, column))[this.row] = value;
+      } finally {
+        this.service.lock.unlockRead(stamp);
+      }
+    }
+
+    @Override
+    public void columnSetDouble(
+      final Class<? extends CoEntityTraitType> c,
+      final int column,
+      final double value)
+    {
+      this.checkDestroyed();
+
+      final long stamp = this.service.lock.readLock();
+      try {
+        ((double[]) this.columnRead(c, column))[this.row] = value;
+      } finally {
+        this.service.lock.unlockRead(stamp);
+      }
+    }
+  }
+}
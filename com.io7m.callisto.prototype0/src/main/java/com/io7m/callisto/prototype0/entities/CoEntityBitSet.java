@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import java.util.Arrays;
+
+/**
+ * A minimal growable bit set that exposes its words, so that queries can
+ * combine several sets word by word without allocating.
+ */
+
+final class CoEntityBitSet
+{
+  private long[] words;
+
+  CoEntityBitSet()
+  {
+    this.words = new long[16];
+  }
+
+  int wordCount()
+  {
+    return this.words.length;
+  }
+
+  long word(
+    final int index)
+  {
+    return index < this.words.length ? this.words[index] : 0L;
+  }
+
+  boolean get(
+    final int bit)
+  {
+    final int index = bit >>> 6;
+    return index < this.words.length
+      && (this.words[index] & (1L << bit)) != 0L;
+  }
+
+  /**
+   * Set a bit.
+   *
+   * @param bit The bit
+   *
+   * @return {@code true} iff the bit was not already set
+   */
+
+  boolean set(
+    final int bit)
+  {
+    final int index = bit >>> 6;
+    if (index >= this.words.length) {
+      this.words = Arrays.copyOf(
+        this.words, Math.max(index + 1, this.words.length * 2));
+    }
+
+    final long before = this.words[index];
+    final long after = before | (1L << bit);
+    this.words[index] = after;
+    return before != after;
+  }
+
+  /**
+   * Clear a bit.
+   *
+   * @param bit The bit
+   *
+   * @return {@code true} iff the bit was set
+   */
+
+  boolean clear(
+    final int bit)
+  {
+    final int index = bit >>> 6;
+    if (index >= this.words.length) {
+      return false;
+    }
+
+    final long before = this.words[index];
+    final long after = before & ~(1L << bit);
+    this.words[index] = after;
+    return before != after;
+  }
+
+  void clearAll()
+  {
+    Arrays.fill(this.words, 0L);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+/**
+ * Access to the columns of an entity held in an archetype store. All
+ * methods raise {@link CoEntityDestroyedException} if the entity has been
+ * destroyed.
+ */
+
+interface CoEntityColumnAccessType
+{
+  int columnGetInt(
+    Class<? extends CoEntityTraitType> trait,
+    int column);
+
+  long columnGetLong(
+    Class<? extends CoEntityTraitType> trait,
+    int column);
+
+  float columnGetFloat(
+    Class<? extends CoEntityTraitType> trait,
+    int column);
+
+  double columnGetDouble(
+    Class<? extends CoEntityTraitType> trait,
+    int column);
+
+  void columnSetInt(
+    Class<? extends CoEntityTraitType> trait,
+    int column,
+    int value);
+
+  void columnSetLong(
+    Class<? extends CoEntityTraitType> trait,
+    int column,
+    long value);
+
+  void columnSetFloat(
+    Class<? extends CoEntityTraitType> trait,
+    int column,
+    float value);
+
+  void columnSetDouble(
+    Class<? extends CoEntityTraitType> trait,
+    int column,
+    double value);
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import org.immutables.value.Value;
+
+/**
+ * A primitive-typed field of a columnar trait.
+ */
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoEntityColumnType
+{
+  /**
+   * @return The name of the column
+   */
+
+  @Value.Parameter
+  String name();
+
+  /**
+   * @return The type of values in the column
+   */
+
+  @Value.Parameter
+  CoEntityColumnKind kind();
+}
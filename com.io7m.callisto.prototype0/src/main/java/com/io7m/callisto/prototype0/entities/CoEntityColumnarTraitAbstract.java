@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.jnull.NullCheck;
+
+/**
+ * <p>An abstract implementation of columnar traits.</p>
+ *
+ * <p>A columnar trait holds no field values of its own. Subclasses expose
+ * typed accessors implemented with the protected column methods, which read
+ * and write the owning entity's row in the columns of its archetype.</p>
+ */
+
+public abstract class CoEntityColumnarTraitAbstract implements CoEntityTraitType
+{
+  private final CoEntityType owner;
+  private final CoEntityColumnarTraitProviderType<?> provider;
+  private final Class<? extends CoEntityTraitType> type;
+  private final CoEntityColumnAccessType access;
+
+  protected CoEntityColumnarTraitAbstract(
+    final CoEntityType in_owner,
+    final CoEntityColumnarTraitProviderType<?> in_provider)
+  {
+    this.owner = NullCheck.notNull(in_owner, "Owner");
+    this.provider = NullCheck.notNull(in_provider, "Provider");
+    this.type = this.provider.type();
+
+    if (!(in_owner instanceof CoEntityColumnAccessType)) {
+      throw new IllegalArgumentException(
+        new StringBuilder(128)
+          .append("Columnar traits require an entity held in an archetype store.")
+          .append(System.lineSeparator())
+          .append("  Entity: ")
+          .append(in_owner)
+          .append(System.lineSeparator())
+          .toString());
+    }
+    this.access = (CoEntityColumnAccessType) in_owner;
+  }
+
+  @Override
+  public final CoEntityType owner()
+  {
+    return this.owner;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public final <T extends CoEntityTraitType>
+  CoEntityTraitProviderType<T> provider()
+  {
+    return (CoEntityTraitProviderType<T>) this.provider;
+  }
+
+  protected final int getInt(
+    final int column)
+  {
+    return this.access.columnGetInt(this.type, column);
+  }
+
+  protected final long getLong(
+    final int column)
+  {
+    return this.access.columnGetLong(this.type, column);
+  }
+
+  protected final float getFloat(
+    final int column)
+  {
+    return this.access.columnGetFloat(this.type, column);
+  }
+
+  protected final double getDouble(
+    final int column)
+  {
+    return this.access.columnGetDouble(this.type, column);
+  }
+
+  protected final void setInt(
+    final int column,
+    final int value)
+  {
+    this.access.columnSetInt(this.type, column, value);
+  }
+
+  protected final void setLong(
+    final int column,
+    final long value)
+  {
+    this.access.columnSetLong(this.type, column, value);
+  }
+
+  protected final void setFloat(
+    final int column,
+    final float value)
+  {
+    this.access.columnSetFloat(this.type, column, value);
+  }
+
+  protected final void setDouble(
+    final int column,
+    final double value)
+  {
+    this.access.columnSetDouble(this.type, column, value);
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import java.util.List;
+
+/**
+ * <p>A provider of columnar traits.</p>
+ *
+ * <p>When entities are held in an archetype store, the primitive fields of
+ * a columnar trait are not stored in the trait object. Instead, each field
+ * is stored in a column: a contiguous array shared by all entities with the
+ * same set of traits. Systems can iterate over columns directly, and the
+ * trait objects act as views onto the row of their owning entity.</p>
+ *
+ * @param <T> The precise type of trait
+ *
+ * @see CoEntityArchetypeService
+ * @see CoEntityColumnarTraitAbstract
+ */
+
+public interface CoEntityColumnarTraitProviderType<T extends CoEntityTraitType>
+  extends CoEntityTraitProviderType<T>
+{
+  /**
+   * @return The columns of the trait, in column index order
+   */
+
+  List<CoEntityColumn> columns();
+}
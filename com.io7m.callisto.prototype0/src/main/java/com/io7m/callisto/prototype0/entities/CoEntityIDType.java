@@ -17,6 +17,7 @@
 package com.io7m.callisto.prototype0.entities;
 
 import com.io7m.callisto.core.CoImmutableStyleType;
+import com.io7m.callisto.prototype0.idpool.CoIDPoolGenerational;
 import org.immutables.value.Value;
 
 /**
@@ -34,6 +35,29 @@ public interface CoEntityIDType extends Comparable<CoEntityIDType>
   @Value.Parameter
   int value();
 
+  /**
+   * @return The slot index of the identifier
+   *
+   * @see CoIDPoolGenerational#index(int)
+   */
+
+  default int index()
+  {
+    return CoIDPoolGenerational.index(this.value());
+  }
+
+  /**
+   * @return The generation of the identifier; a slot index is reused only
+   * with a different generation
+   *
+   * @see CoIDPoolGenerational#generation(int)
+   */
+
+  default int generation()
+  {
+    return CoIDPoolGenerational.generation(this.value());
+  }
+
   @Override
   default int compareTo(
     final CoEntityIDType o)
@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import com.io7m.callisto.prototype0.events.CoEventType;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+/**
+ * A lifecycle change that applies to a batch of entities at once. Batched
+ * operations post one event of this type instead of one
+ * {@link CoEntityLifecycleEvent} per entity.
+ */
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoEntityLifecycleBatchEventType extends CoEventType
+{
+  /**
+   * @return The entities to which the change applies
+   */
+
+  @Value.Parameter
+  List<CoEntityType> entities();
+
+  /**
+   * @return The lifecycle change
+   */
+
+  @Value.Parameter
+  CoEntityLifecycle lifecycle();
+}
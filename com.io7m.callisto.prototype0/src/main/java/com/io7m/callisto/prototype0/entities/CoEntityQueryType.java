@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import org.immutables.value.Value;
+
+import java.util.Set;
+
+/**
+ * A query over the traits of entities. An entity matches a query if it has
+ * all of the required traits and none of the excluded traits.
+ */
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoEntityQueryType
+{
+  /**
+   * @return The traits that matching entities must have
+   */
+
+  Set<Class<? extends CoEntityTraitType>> required();
+
+  /**
+   * @return The traits that matching entities must not have
+   */
+
+  Set<Class<? extends CoEntityTraitType>> excluded();
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    if (this.required().isEmpty()) {
+      throw new IllegalArgumentException(
+        "A query must require at least one trait");
+    }
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import io.reactivex.disposables.Disposable;
+import net.jcip.annotations.GuardedBy;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * <p>A cached, incrementally maintained view of the entities that match a
+ * query.</p>
+ *
+ * <p>The view holds its own membership bit set, which is updated whenever
+ * the traits of an entity change. Iterating over a view therefore costs
+ * time proportional to the number of words in the set and does not
+ * recompute the query.</p>
+ */
+
+public final class CoEntityQueryView implements Disposable
+{
+  private final CoEntityTraitIndex index;
+  private final CoEntityQuery query;
+  private final CoEntityBitSet[] required;
+  private final CoEntityBitSet[] excluded;
+  private final @GuardedBy("index.lock") CoEntityBitSet members;
+  private final AtomicBoolean disposed;
+  private @GuardedBy("index.lock") int count;
+
+  CoEntityQueryView(
+    final CoEntityTraitIndex in_index,
+    final CoEntityQuery in_query,
+    final CoEntityBitSet[] in_required,
+    final CoEntityBitSet[] in_excluded)
+  {
+    this.index = in_index;
+    this.query = in_query;
+    this.required = in_required;
+    this.excluded = in_excluded;
+    this.members = new CoEntityBitSet();
+    this.disposed = new AtomicBoolean(false);
+    this.count = 0;
+
+    int words = Integer.MAX_VALUE;
+    for (final CoEntityBitSet set : this.required) {
+      words = Math.min(words, set.wordCount());
+    }
+
+    for (int word = 0; word < words; ++word) {
+      long bits = this.required[0].word(word);
+      for (int i = 1; i < this.required.length; ++i) {
+        bits &= this.required[i].word(word);
+      }
+      for (final CoEntityBitSet set : this.excluded) {
+        bits &= ~set.word(word);
+      }
+
+      while (bits != 0L) {
+        this.members.set((word << 6) + Long.numberOfTrailingZeros(bits));
+        ++this.count;
+        bits &= bits - 1L;
+      }
+    }
+  }
+
+  /**
+   * @return The query
+   */
+
+  public CoEntityQuery query()
+  {
+    return this.query;
+  }
+
+  @GuardedBy("index.lock")
+  void update(
+    final int entity,
+    final boolean live)
+  {
+    boolean matches = live;
+    for (int i = 0; i < this.required.length && matches; ++i) {
+      matches = this.required[i].get(entity);
+    }
+    for (int i = 0; i < this.excluded.length && matches; ++i) {
+      matches = !this.excluded[i].get(entity);
+    }
+
+    if (matches) {
+      if (this.members.set(entity)) {
+        ++this.count;
+      }
+    } else {
+      if (this.members.clear(entity)) {
+        --this.count;
+      }
+    }
+  }
+
+  /**
+   * @return The number of entities currently matching the query
+   */
+
+  public int size()
+  {
+    this.index.lock().readLock().lock();
+    try {
+      return this.count;
+    } finally {
+      this.index.lock().readLock().unlock();
+    }
+  }
+
+  /**
+   * Copy the matching entities into {@code output}, starting at index
+   * {@code 0}. If {@code output} is too small to hold all of the matching
+   * entities, nothing is copied, and the caller should retry with an array
+   * of at least the returned size.
+   *
+   * @param output The output array
+   *
+   * @return The number of entities matching the query, which may be greater
+   * than {@code output.length}
+   */
+
+  public int copyTo(
+    final CoEntityType[] output)
+  {
+    this.index.lock().readLock().lock();
+    try {
+      if (this.count <= output.length) {
+        this.copyLocked(output);
+      }
+      return this.count;
+    } finally {
+      this.index.lock().readLock().unlock();
+    }
+  }
+
+  @GuardedBy("index.lock")
+  private void copyLocked(
+    final CoEntityType[] output)
+  {
+    int target = 0;
+    final int words = this.members.wordCount();
+    for (int word = 0; word < words; ++word) {
+      long bits = this.members.word(word);
+      while (bits != 0L) {
+        output[target] =
+          this.index.entity((word << 6) + Long.numberOfTrailingZeros(bits));
+        ++target;
+        bits &= bits - 1L;
+      }
+    }
+  }
+
+  /**
+   * Call {@code receiver} with the slot index of each matching entity. The
+   * indices are copied before {@code receiver} is called, so the receiver
+   * may create and destroy entities and add and remove traits; such changes
+   * are not reflected in the current iteration.
+   *
+   * @param receiver The receiver
+   *
+   * @see CoEntityID#index()
+   */
+
+  public void forEachIndex(
+    final IntConsumer receiver)
+  {
+    final int[] indices;
+    this.index.lock().readLock().lock();
+    try {
+      indices = new int[this.count];
+      int target = 0;
+      final int words = this.members.wordCount();
+      for (int word = 0; word < words; ++word) {
+        long bits = this.members.word(word);
+        while (bits != 0L) {
+          indices[target] = (word << 6) + Long.numberOfTrailingZeros(bits);
+          ++target;
+          bits &= bits - 1L;
+        }
+      }
+    } finally {
+      this.index.lock().readLock().unlock();
+    }
+
+    for (final int index : indices) {
+      receiver.accept(index);
+    }
+  }
+
+  /**
+   * Call {@code receiver} for each matching entity. The entities are copied
+   * before {@code receiver} is called, so the receiver may create and
+   * destroy entities and add and remove traits; such changes are not
+   * reflected in the current iteration.
+   *
+   * @param receiver The receiver
+   */
+
+  public void forEach(
+    final Consumer<CoEntityType> receiver)
+  {
+    final CoEntityType[] entities;
+    this.index.lock().readLock().lock();
+    try {
+      entities = new CoEntityType[this.count];
+      this.copyLocked(entities);
+    } finally {
+      this.index.lock().readLock().unlock();
+    }
+
+    for (final CoEntityType entity : entities) {
+      receiver.accept(entity);
+    }
+  }
+
+  @Override
+  public void dispose()
+  {
+    if (this.disposed.compareAndSet(false, true)) {
+      this.index.viewClose(this);
+    }
+  }
+
+  @Override
+  public boolean isDisposed()
+  {
+    return this.disposed.get();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A bounded pool of recycled objects.</p>
+ *
+ * <p>Each thread has a small cache that is accessed without any
+ * synchronization. Objects given back when a thread's cache is full go to a
+ * shared queue, and objects requested when a thread's cache is empty are
+ * taken from the shared queue. Objects given back when both are full are
+ * discarded.</p>
+ *
+ * @param <T> The type of pooled objects
+ */
+
+final class CoEntityRecyclePool<T>
+{
+  private final int capacity;
+  private final int thread_capacity;
+  private final ConcurrentLinkedQueue<T> shared;
+  private final AtomicInteger shared_size;
+  private final ThreadLocal<Cache> caches;
+
+  CoEntityRecyclePool(
+    final CoAssemblyPooling in_pooling)
+  {
+    this.capacity = in_pooling.capacity();
+    this.thread_capacity = in_pooling.threadCapacity();
+    this.shared = new ConcurrentLinkedQueue<>();
+    this.shared_size = new AtomicInteger(0);
+    this.caches = ThreadLocal.withInitial(() -> new Cache(this.thread_capacity));
+  }
+
+  /**
+   * @return A pooled object, or {@code null} if the pool is empty
+   */
+
+  @SuppressWarnings("unchecked")
+  T take()
+  {
+    final Cache cache = this.caches.get();
+    if (cache.size > 0) {
+      --cache.size;
+      final T x = (T) cache.items[cache.size];
+      cache.items[cache.size] = null;
+      return x;
+    }
+
+    final T x = this.shared.poll();
+    if (x != null) {
+      this.shared_size.decrementAndGet();
+    }
+    return x;
+  }
+
+  /**
+   * Give an object back to the pool.
+   *
+   * @param x The object
+   *
+   * @return {@code false} iff the pool is full and the object was discarded
+   */
+
+  boolean give(
+    final T x)
+  {
+    final Cache cache = this.caches.get();
+    if (cache.size < cache.items.length) {
+      cache.items[cache.size] = x;
+      ++cache.size;
+      return true;
+    }
+
+    while (true) {
+      final int current = this.shared_size.get();
+      if (current >= this.capacity) {
+        return false;
+      }
+      if (this.shared_size.compareAndSet(current, current + 1)) {
+        this.shared.add(x);
+        return true;
+      }
+    }
+  }
+
+  private static final class Cache
+  {
+    private final Object[] items;
+    private int size;
+
+    Cache(
+      final int in_capacity)
+    {
+      this.items = new Object[in_capacity];
+      this.size = 0;
+    }
+  }
+}
@@ -18,14 +18,13 @@ package com.io7m.callisto.prototype0.entities;
 
 import com.io7m.callisto.core.CoException;
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
-import com.io7m.callisto.prototype0.idpool.CoIDPool;
+import com.io7m.callisto.prototype0.idpool.CoIDPoolGenerational;
 import com.io7m.callisto.prototype0.services.CoAbstractService;
+import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jnull.NullCheck;
-import com.io7m.junreachable.UnimplementedCodeException;
+import com.io7m.jnull.Nullable;
 import io.vavr.collection.Map;
-import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import net.jcip.annotations.GuardedBy;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -34,11 +33,14 @@ import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import static com.io7m.callisto.prototype0.entities.CoEntityLifecycle.ENTITY_CREATED;
 import static com.io7m.callisto.prototype0.entities.CoEntityLifecycle.ENTITY_DESTROYED;
@@ -51,14 +53,16 @@ public final class CoEntityService
   private static final Logger LOG =
     LoggerFactory.getLogger(CoEntityService.class);
 
-  private final Int2ReferenceOpenHashMap<Entity> entities;
-  private final CoIDPool ids;
+  private final CoIDPoolGenerational ids;
+  private final CoEntityTraitIndex index;
+  private final ConcurrentHashMap<CoAssemblyName, CoEntityRecyclePool<CoEntityTraitType[]>> pools;
   private volatile CoEventServiceType events;
 
-  private CoEntityService()
+  public CoEntityService()
   {
-    this.ids = new CoIDPool();
-    this.entities = new Int2ReferenceOpenHashMap<>();
+    this.ids = new CoIDPoolGenerational();
+    this.index = new CoEntityTraitIndex();
+    this.pools = new ConcurrentHashMap<>();
   }
 
   @Reference
@@ -81,13 +85,34 @@ public final class CoEntityService
     NullCheck.notNull(assembly, "Assembly");
     this.checkActivated();
 
-    final Entity e =
-      new Entity(this.events, this.ids.fresh(), this::onEntityDestroyed);
-
     final Map<Class<CoEntityTraitType>,
       CoEntityTraitProviderType<CoEntityTraitType>> providers =
       assembly.traitProviders();
 
+    /*
+     * If the assembly is pooled, try to reuse the traits of a recycled
+     * entity. The traits have already been reset. A new entity is always
+     * created, so that references to the destroyed entity stay destroyed.
+     */
+
+    final CoEntityRecyclePool<CoEntityTraitType[]> pool =
+      this.poolFor(assembly);
+    if (pool != null) {
+      final CoEntityTraitType[] reused = pool.take();
+      if (reused != null) {
+        return this.createEntityReused(providers, pool, reused);
+      }
+    }
+
+    final Entity e =
+      new Entity(
+        this.events,
+        this.index,
+        this.ids.fresh(),
+        pool,
+        this::onEntityDestroyed,
+        new CoEntityTraitType[CoEntityTraitHandle.slotCount()]);
+
     /*
      * Create all of the required traits.
      */
@@ -99,9 +124,7 @@ public final class CoEntityService
 
       try {
         final CoEntityTraitType trait = provider.create(e);
-        synchronized (e.traits_lock) {
-          e.traits.put(c, trait);
-        }
+        e.traitStore(provider.handle().slot(), trait);
       } catch (final Exception t_ex) {
         ex = CoException.chain(ex, new CoEntityTraitOnCreateException(t_ex));
       }
@@ -112,13 +135,10 @@ public final class CoEntityService
      */
 
     if (ex != null) {
-      final ReferenceOpenHashSet<CoEntityTraitType> existing;
-
-      synchronized (e.traits_lock) {
-        existing = new ReferenceOpenHashSet<>(e.traits.values());
-      }
-
-      for (final CoEntityTraitType trait : existing) {
+      for (final CoEntityTraitType trait : e.traits) {
+        if (trait == null) {
+          continue;
+        }
         try {
           trait.onDestroy();
         } catch (final Exception t_ex) {
@@ -130,24 +150,233 @@ public final class CoEntityService
       throw ex;
     }
 
-    synchronized (this.entities) {
-      this.entities.put(e.id.value(), e);
+    e.captureLayout();
+    this.index.entityCreated(e, providers.keySet());
+    this.events.postEntityLifecycle(e, ENTITY_CREATED);
+    return e;
+  }
+
+  private CoEntityType createEntityReused(
+    final Map<Class<CoEntityTraitType>,
+      CoEntityTraitProviderType<CoEntityTraitType>> providers,
+    final CoEntityRecyclePool<CoEntityTraitType[]> pool,
+    final CoEntityTraitType[] traits)
+  {
+    final Entity e =
+      new Entity(
+        this.events,
+        this.index,
+        this.ids.fresh(),
+        pool,
+        this::onEntityDestroyed,
+        traits);
+
+    CoException ex = null;
+    for (final CoEntityTraitType trait : traits) {
+      if (trait == null) {
+        continue;
+      }
+      try {
+        ((CoEntityTraitRecyclableType) trait).onReuse(e);
+      } catch (final Exception t_ex) {
+        ex = CoException.chain(ex, new CoEntityTraitOnCreateException(t_ex));
+      }
+    }
+
+    if (ex != null) {
+      final Optional<CoException> d_opt = e.destroyTraits();
+      if (d_opt.isPresent()) {
+        ex = CoException.chain(
+          ex, new CoEntityTraitOnDestroyException(d_opt.get()));
+      }
+
+      this.ids.release(e.id.value());
+      throw ex;
     }
 
-    this.events.post(CoEntityLifecycleEvent.of(e, ENTITY_CREATED));
+    e.captureLayout();
+    this.index.entityCreated(e, providers.keySet());
+    this.events.postEntityLifecycle(e, ENTITY_CREATED);
     return e;
   }
 
+  private CoEntityRecyclePool<CoEntityTraitType[]> poolFor(
+    final CoAssemblyType assembly)
+  {
+    final Optional<CoAssemblyPooling> pooling = assembly.pooling();
+    if (!pooling.isPresent()) {
+      return null;
+    }
+
+    final CoAssemblyName name = assembly.name();
+    final CoEntityRecyclePool<CoEntityTraitType[]> existing =
+      this.pools.get(name);
+    if (existing != null) {
+      return existing;
+    }
+    return this.pools.computeIfAbsent(
+      name, k -> new CoEntityRecyclePool<>(pooling.get()));
+  }
+
+  @Override
+  public List<CoEntityType> createEntities(
+    final CoAssemblyType assembly,
+    final int count)
+  {
+    NullCheck.notNull(assembly, "Assembly");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+    this.checkActivated();
+
+    final CoAssemblyPlan plan = CoAssemblyPlan.compile(assembly);
+    final CoEntityRecyclePool<CoEntityTraitType[]> pool =
+      this.poolFor(assembly);
+    final int[] entity_ids = new int[count];
+    this.ids.freshBulk(entity_ids, 0, count);
+
+    /*
+     * Create all of the required traits. The entities are not visible to
+     * any other thread yet, so traits are stored without locking.
+     */
+
+    final Entity[] batch = new Entity[count];
+    int created = 0;
+    CoException ex = null;
+    while (created < count && ex == null) {
+      final Entity e =
+        new Entity(
+          this.events,
+          this.index,
+          entity_ids[created],
+          pool,
+          this::onEntityDestroyed,
+          new CoEntityTraitType[CoEntityTraitHandle.slotCount()]);
+      batch[created] = e;
+      ++created;
+
+      for (int trait = 0; trait < plan.size(); ++trait) {
+        try {
+          e.traitStoreInitial(plan.slot(trait), plan.provider(trait).create(e));
+        } catch (final Exception t_ex) {
+          ex = CoException.chain(ex, new CoEntityTraitOnCreateException(t_ex));
+        }
+      }
+    }
+
+    /*
+     * If any of the traits failed, destroy all of the traits that did not,
+     * and give back all of the identifiers.
+     */
+
+    if (ex != null) {
+      for (int index = 0; index < created; ++index) {
+        final Optional<CoException> d_opt = batch[index].destroyTraits();
+        if (d_opt.isPresent()) {
+          ex = CoException.chain(
+            ex, new CoEntityTraitOnDestroyException(d_opt.get()));
+        }
+      }
+
+      this.ids.releaseBulk(entity_ids, 0, count);
+      throw ex;
+    }
+
+    for (final Entity e : batch) {
+      e.captureLayout();
+    }
+
+    final List<CoEntityType> result =
+      Collections.unmodifiableList(Arrays.asList(batch));
+    this.index.entitiesCreated(result, plan.classes());
+    this.events.post(CoEntityLifecycleBatchEvent.of(result, ENTITY_CREATED));
+    return result;
+  }
+
+  @Override
+  public void destroyEntities(
+    final List<CoEntityType> entities)
+  {
+    NullCheck.notNull(entities, "Entities");
+    this.checkActivated();
+
+    final ReferenceArrayList<CoEntityType> destroyed =
+      new ReferenceArrayList<>(entities.size());
+    final ReferenceArrayList<Entity> recycled = new ReferenceArrayList<>();
+    final int[] entity_ids = new int[entities.size()];
+
+    for (int index = 0; index < entities.size(); ++index) {
+      final CoEntityType entity = entities.get(index);
+      Preconditions.checkPrecondition(
+        entity,
+        entity instanceof Entity && ((Entity) entity).index == this.index,
+        e -> "Entity must have been created by this service");
+
+      final Entity e = (Entity) entity;
+      if (e.destroyed.compareAndSet(false, true)) {
+        if (e.recycleTraits()) {
+          recycled.add(e);
+        } else {
+          e.destroyTraitsLogged();
+        }
+        entity_ids[destroyed.size()] = e.id.value();
+        destroyed.add(e);
+      }
+    }
+
+    if (destroyed.isEmpty()) {
+      return;
+    }
+
+    this.index.entitiesDestroyed(destroyed);
+    this.ids.releaseBulk(entity_ids, 0, destroyed.size());
+    this.events.post(
+      CoEntityLifecycleBatchEvent.of(destroyed, ENTITY_DESTROYED));
+
+    for (int index = 0; index < recycled.size(); ++index) {
+      recycled.get(index).recycle();
+    }
+  }
+
   private void onEntityDestroyed(
-    final Entity entity,
-    final Optional<CoException> ex_opt)
+    final Entity entity)
   {
-    synchronized (this.entities) {
-      this.entities.remove(entity.id.value());
-      this.ids.release(entity.id.value());
+    final boolean recycled = entity.recycleTraits();
+    if (!recycled) {
+      entity.destroyTraitsLogged();
     }
 
-    this.events.post(CoEntityLifecycleEvent.of(entity, ENTITY_DESTROYED));
+    this.index.entityDestroyed(entity);
+    this.ids.release(entity.id.value());
+    this.events.postEntityLifecycle(entity, ENTITY_DESTROYED);
+
+    if (recycled) {
+      entity.recycle();
+    }
+  }
+
+  @Override
+  public boolean isLive(
+    final CoEntityID id)
+  {
+    NullCheck.notNull(id, "ID");
+    return this.ids.isLive(id.value());
+  }
+
+  @Override
+  public void query(
+    final CoEntityQuery query,
+    final Consumer<CoEntityType> receiver)
+  {
+    this.checkActivated();
+    this.index.query(query, receiver);
+  }
+
+  @Override
+  public CoEntityQueryView queryView(
+    final CoEntityQuery query)
+  {
+    this.checkActivated();
+    return this.index.view(query);
   }
 
   @Deactivate
@@ -165,23 +394,36 @@ public final class CoEntityService
 
   private static final class Entity implements CoEntityType
   {
-    private final CoEntityID id;
     private final AtomicBoolean destroyed;
     private final CoEventServiceType events;
-    private final BiConsumer<Entity, Optional<CoException>> on_destroy;
+    private final CoEntityTraitIndex index;
+    private final @Nullable CoEntityRecyclePool<CoEntityTraitType[]> pool;
+    private final Consumer<Entity> on_destroy;
     private final Object traits_lock;
-    private final @GuardedBy("traits_lock")
-    Reference2ReferenceOpenHashMap<Class<CoEntityTraitType>, CoEntityTraitType> traits;
+    private final CoEntityID id;
+    private int[] layout;
+
+    /**
+     * The traits of the entity, indexed by trait handle slot. The array is
+     * replaced rather than modified, so that it can be read without locking.
+     */
+
+    private volatile CoEntityTraitType[] traits;
 
     private Entity(
       final CoEventServiceType in_events,
+      final CoEntityTraitIndex in_index,
       final int in_id,
-      final BiConsumer<Entity, Optional<CoException>> in_on_destroy)
+      final @Nullable CoEntityRecyclePool<CoEntityTraitType[]> in_pool,
+      final Consumer<Entity> in_on_destroy,
+      final CoEntityTraitType[] in_traits)
     {
       this.events = NullCheck.notNull(in_events, "Events");
+      this.index = NullCheck.notNull(in_index, "Index");
+      this.pool = in_pool;
       this.on_destroy = NullCheck.notNull(in_on_destroy, "On Destroy");
       this.id = CoEntityID.of(in_id);
-      this.traits = new Reference2ReferenceOpenHashMap<>();
+      this.traits = NullCheck.notNull(in_traits, "Traits");
       this.traits_lock = new Object();
       this.destroyed = new AtomicBoolean(false);
     }
@@ -231,10 +473,50 @@ public final class CoEntityService
     {
       NullCheck.notNull(c, "Class");
       this.checkDestroyed();
+      return Optional.ofNullable((T) this.traitAt(CoEntityTraitHandle.of(c).slot()));
+    }
 
+    private CoEntityTraitType traitAt(
+      final int slot)
+    {
+      final CoEntityTraitType[] current = this.traits;
+      return slot < current.length ? current[slot] : null;
+    }
+
+    @GuardedBy("traits_lock")
+    private CoEntityTraitType traitReplace(
+      final int slot,
+      final CoEntityTraitType trait)
+    {
+      final CoEntityTraitType[] current = this.traits;
+      final CoEntityTraitType[] next = Arrays.copyOf(
+        current,
+        Math.max(current.length, Math.max(slot + 1, CoEntityTraitHandle.slotCount())));
+      final CoEntityTraitType previous = next[slot];
+      next[slot] = trait;
+      this.traits = next;
+      return previous;
+    }
+
+    /**
+     * Store a trait in an entity that has not yet been published to any other
+     * thread. The trait array was sized when the entity was constructed, and
+     * no copy is made.
+     */
+
+    private void traitStoreInitial(
+      final int slot,
+      final CoEntityTraitType trait)
+    {
+      this.traits[slot] = trait;
+    }
+
+    private void traitStore(
+      final int slot,
+      final CoEntityTraitType trait)
+    {
       synchronized (this.traits_lock) {
-        final Class<CoEntityTraitType> cc = (Class<CoEntityTraitType>) c;
-        return Optional.ofNullable((T) this.traits.get(cc));
+        this.traitReplace(slot, trait);
       }
     }
 
@@ -252,20 +534,28 @@ public final class CoEntityService
       }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T extends CoEntityTraitType> T traitGet(
       final Class<T> c)
       throws CoEntityDestroyedException, CoEntityTraitNonexistentException
     {
       NullCheck.notNull(c, "Class");
+      return this.traitGet(CoEntityTraitHandle.of(c));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends CoEntityTraitType> T traitGet(
+      final CoEntityTraitHandle<T> handle)
+      throws CoEntityDestroyedException, CoEntityTraitNonexistentException
+    {
       this.checkDestroyed();
 
-      synchronized (this.traits_lock) {
-        final Class<CoEntityTraitType> cc = (Class<CoEntityTraitType>) c;
-        return Optional.ofNullable((T) this.traits.get(cc))
-          .orElseThrow(() -> this.traitNonexistent(c));
+      final T trait = (T) this.traitAt(handle.slot());
+      if (trait == null) {
+        throw this.traitNonexistent(handle.type());
       }
+      return trait;
     }
 
     private CoEntityTraitNonexistentException traitNonexistent(
@@ -300,7 +590,6 @@ public final class CoEntityService
           .toString());
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T extends CoEntityTraitType> void traitSet(
       final Class<T> c,
@@ -311,38 +600,49 @@ public final class CoEntityService
       NullCheck.notNull(trait, "Trait");
       this.checkDestroyed();
 
+      /*
+       * The index is updated while holding the trait lock, so that the
+       * index sees the trait changes of this entity in the order in which
+       * they were made.
+       */
+
+      final int slot = CoEntityTraitHandle.of(c).slot();
       synchronized (this.traits_lock) {
-        final Class<CoEntityTraitType> cc = (Class<CoEntityTraitType>) c;
-        if (this.traits.containsKey(cc)) {
-          throw this.traitDuplicate(cc);
+        this.checkDestroyed();
+        if (this.traitAt(slot) != null) {
+          throw this.traitDuplicate(c);
         }
-        this.traits.put(cc, trait);
+        this.traitReplace(slot, trait);
+        this.index.traitAdded(this, c);
       }
 
-      this.events.post(CoEntityLifecycleEvent.of(this, ENTITY_TRAITS_CHANGED));
+      this.events.postEntityLifecycle(this, ENTITY_TRAITS_CHANGED);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T extends CoEntityTraitType> void traitDestroy(
       final Class<T> c)
-      throws CoEntityDestroyedException
+      throws CoEntityDestroyedException, CoEntityTraitOnDestroyException
     {
       NullCheck.notNull(c, "Class");
       this.checkDestroyed();
 
-      final Class<CoEntityTraitType> cc = (Class<CoEntityTraitType>) c;
+      final int slot = CoEntityTraitHandle.of(c).slot();
       final Optional<CoEntityTraitType> tr_opt;
       synchronized (this.traits_lock) {
-        tr_opt = Optional.ofNullable(this.traits.get(cc));
-        this.traits.remove(cc);
+        this.checkDestroyed();
+        tr_opt = Optional.ofNullable(
+          this.traitAt(slot) == null ? null : this.traitReplace(slot, null));
+        if (tr_opt.isPresent()) {
+          this.index.traitRemoved(this, c);
+        }
       }
 
       tr_opt.ifPresent(tr -> {
         try {
           tr.onDestroy();
         } catch (final Exception ex) {
-          throw new UnimplementedCodeException();
+          throw new CoEntityTraitOnDestroyException(ex);
         }
       });
     }
@@ -357,22 +657,118 @@ public final class CoEntityService
     public void destroy()
     {
       if (this.destroyed.compareAndSet(false, true)) {
-        final Set<CoEntityTraitType> t;
-        synchronized (this.traits_lock) {
-          t = new ReferenceOpenHashSet<>(this.traits.values());
+        this.on_destroy.accept(this);
+      }
+    }
+
+    /**
+     * Record the trait slots that the entity had when it was created, so
+     * that an entity that has gained or lost traits is never recycled.
+     */
+
+    private void captureLayout()
+    {
+      if (this.pool == null) {
+        return;
+      }
+
+      final CoEntityTraitType[] current = this.traits;
+      int count = 0;
+      for (final CoEntityTraitType trait : current) {
+        if (trait != null) {
+          ++count;
+        }
+      }
+
+      this.layout = new int[count];
+      count = 0;
+      for (int slot = 0; slot < current.length; ++slot) {
+        if (current[slot] != null) {
+          this.layout[count] = slot;
+          ++count;
+        }
+      }
+    }
+
+    /**
+     * Reset all of the traits of a destroyed entity for reuse.
+     *
+     * @return {@code true} iff the entity is pooled, its layout is unchanged,
+     * and all of its traits are recyclable and have been reset
+     */
+
+    private boolean recycleTraits()
+    {
+      if (this.pool == null || this.layout == null) {
+        return false;
+      }
+
+      final CoEntityTraitType[] current = this.traits;
+      int count = 0;
+      for (final CoEntityTraitType trait : current) {
+        if (trait != null) {
+          ++count;
         }
+      }
+      if (count != this.layout.length) {
+        return false;
+      }
 
-        CoException e = null;
-        for (final CoEntityTraitType trait : t) {
-          try {
-            trait.onDestroy();
-          } catch (final Exception ex) {
-            e = CoException.chain(e, new CoEntityOnDestroyException(ex));
+      for (final int slot : this.layout) {
+        final CoEntityTraitType trait = current[slot];
+        try {
+          if (!(trait instanceof CoEntityTraitRecyclableType)) {
+            return false;
+          }
+          if (!((CoEntityTraitRecyclableType) trait).onRecycle()) {
+            return false;
           }
+        } catch (final Exception ex) {
+          LOG.error("error recycling entity {}: ", this, ex);
+          return false;
         }
+      }
+      return true;
+    }
+
+    /**
+     * Give the reset traits of a destroyed entity to the pool. If the pool is
+     * full, the traits are destroyed instead. The entity itself is never
+     * reused.
+     */
+
+    private void recycle()
+    {
+      final CoEntityTraitType[] current = this.traits;
+      this.traits = new CoEntityTraitType[0];
+      if (!this.pool.give(current)) {
+        this.traits = current;
+        this.destroyTraitsLogged();
+      }
+    }
+
+    private void destroyTraitsLogged()
+    {
+      final Optional<CoException> ex_opt = this.destroyTraits();
+      if (ex_opt.isPresent()) {
+        LOG.error("error destroying entity {}: ", this, ex_opt.get());
+      }
+    }
 
-        this.on_destroy.accept(this, Optional.ofNullable(e));
+    private Optional<CoException> destroyTraits()
+    {
+      CoException e = null;
+      for (final CoEntityTraitType trait : this.traits) {
+        if (trait == null) {
+          continue;
+        }
+        try {
+          trait.onDestroy();
+        } catch (final Exception ex) {
+          e = CoException.chain(e, new CoEntityOnDestroyException(ex));
+        }
       }
+      return Optional.ofNullable(e);
     }
   }
 }
@@ -18,8 +18,81 @@ package com.io7m.callisto.prototype0.entities;
 
 import com.io7m.callisto.prototype0.services.CoServiceType;
 
+import java.util.List;
+import java.util.function.Consumer;
+
 public interface CoEntityServiceType extends CoServiceType
 {
   CoEntityType createEntity(
     CoAssemblyType assembly);
+
+  /**
+   * Create {@code count} entities from the same assembly in a single
+   * operation. Identifiers are reserved in bulk, the assembly is examined
+   * once rather than once per entity, and a single
+   * {@link CoEntityLifecycleBatchEvent} is posted instead of one event per
+   * entity. If any trait cannot be created, no entities are created.
+   *
+   * @param assembly The assembly
+   * @param count    The number of entities
+   *
+   * @return The new entities
+   */
+
+  List<CoEntityType> createEntities(
+    CoAssemblyType assembly,
+    int count);
+
+  /**
+   * Destroy a batch of entities in a single operation, posting a single
+   * {@link CoEntityLifecycleBatchEvent}. Entities that have already been
+   * destroyed are ignored.
+   *
+   * @param entities The entities, which must have been created by this
+   *                 service
+   */
+
+  void destroyEntities(
+    List<CoEntityType> entities);
+
+  /**
+   * Determine whether an entity is live. The check does not take any locks,
+   * and an identifier of a destroyed entity is never considered live, even
+   * if the underlying slot has since been reused by a new entity.
+   *
+   * @param id The entity identifier
+   *
+   * @return {@code true} iff the entity exists and has not been destroyed
+   */
+
+  boolean isLive(
+    CoEntityID id);
+
+  /**
+   * Call {@code receiver} for each live entity that has all of the required
+   * traits of {@code query} and none of the excluded traits. The matching
+   * entities are determined before {@code receiver} is first called, so the
+   * receiver may create and destroy entities and add and remove traits;
+   * such changes are not reflected in the current iteration.
+   *
+   * @param query    The query
+   * @param receiver The receiver
+   */
+
+  void query(
+    CoEntityQuery query,
+    Consumer<CoEntityType> receiver);
+
+  /**
+   * Create a view of the entities matching {@code query}. The view is kept
+   * up-to-date as entities are created and destroyed and as traits are
+   * added and removed, until it is disposed.
+   *
+   * @param query The query
+   *
+   * @return A new view
+   */
+
+  CoEntityQueryView queryView(
+    CoEntityQuery query);
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.jnull.NullCheck;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A handle to a trait type.</p>
+ *
+ * <p>Each trait type is assigned a small, dense slot index the first time a
+ * handle is requested for it. Entities store their traits in arrays indexed
+ * by slot, so retrieving a trait through a handle is a plain array read.
+ * Handles are intended to be obtained once (typically from
+ * {@link CoEntityTraitProviderType#handle()}) and kept in fields.</p>
+ *
+ * @param <T> The precise type of trait
+ */
+
+public final class CoEntityTraitHandle<T extends CoEntityTraitType>
+{
+  private static final AtomicInteger NEXT_SLOT = new AtomicInteger(0);
+  private static final ConcurrentHashMap<Class<?>, CoEntityTraitHandle<?>> HANDLES =
+    new ConcurrentHashMap<>(64);
+
+  private final Class<T> type;
+  private final int slot;
+
+  private CoEntityTraitHandle(
+    final Class<T> in_type,
+    final int in_slot)
+  {
+    this.type = in_type;
+    this.slot = in_slot;
+  }
+
+  /**
+   * Retrieve the handle for the given trait type, assigning a new slot if the
+   * type has not been seen before.
+   *
+   * @param c   The trait type
+   * @param <T> The precise type of trait
+   *
+   * @return The handle for {@code c}
+   */
+
+  @SuppressWarnings("unchecked")
+  public static <T extends CoEntityTraitType> CoEntityTraitHandle<T> of(
+    final Class<T> c)
+  {
+    final CoEntityTraitHandle<?> existing = HANDLES.get(c);
+    if (existing != null) {
+      return (CoEntityTraitHandle<T>) existing;
+    }
+
+    NullCheck.notNull(c, "Class");
+    return (CoEntityTraitHandle<T>) HANDLES.computeIfAbsent(
+      c, k -> new CoEntityTraitHandle<>(c, NEXT_SLOT.getAndIncrement()));
+  }
+
+  /**
+   * @return The number of slots assigned so far
+   */
+
+  public static int slotCount()
+  {
+    return NEXT_SLOT.get();
+  }
+
+  /**
+   * @return The trait type
+   */
+
+  public Class<T> type()
+  {
+    return this.type;
+  }
+
+  /**
+   * @return The slot index assigned to the trait type
+   */
+
+  public int slot()
+  {
+    return this.slot;
+  }
+
+  @Override
+  public String toString()
+  {
+    return new StringBuilder(64)
+      .append("[CoEntityTraitHandle ")
+      .append(this.type.getName())
+      .append(" ")
+      .append(this.slot)
+      .append("]")
+      .toString();
+  }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.jnull.NullCheck;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import net.jcip.annotations.GuardedBy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * <p>An index of entity trait membership.</p>
+ *
+ * <p>The index keeps one bit set per trait type, with one bit per entity
+ * slot index, and is updated incrementally as entities are created and
+ * destroyed and as traits are added and removed. Queries combine the sets
+ * for their traits word by word, and cached query views are updated for
+ * each entity whose traits change.</p>
+ *
+ * <p>Callers must report the trait changes of a given entity in the order
+ * in which they were made, typically by reporting each change while holding
+ * the lock that serializes structural changes to the entity. Changes
+ * reported for an entity that is not, or is no longer, the entity held in
+ * its slot are ignored.</p>
+ */
+
+final class CoEntityTraitIndex
+{
+  private final ReentrantReadWriteLock lock;
+  private final @GuardedBy("lock")
+  Reference2ReferenceOpenHashMap<Class<? extends CoEntityTraitType>, CoEntityBitSet> sets;
+  private final @GuardedBy("lock") ReferenceArrayList<CoEntityQueryView> views;
+  private @GuardedBy("lock") CoEntityType[] entities;
+
+  CoEntityTraitIndex()
+  {
+    this.lock = new ReentrantReadWriteLock();
+    this.sets = new Reference2ReferenceOpenHashMap<>();
+    this.views = new ReferenceArrayList<>();
+    this.entities = new CoEntityType[1024];
+  }
+
+  ReentrantReadWriteLock lock()
+  {
+    return this.lock;
+  }
+
+  @GuardedBy("lock")
+  CoEntityType entity(
+    final int index)
+  {
+    return this.entities[index];
+  }
+
+  @GuardedBy("lock")
+  CoEntityBitSet set(
+    final Class<? extends CoEntityTraitType> c)
+  {
+    final CoEntityBitSet existing = this.sets.get(c);
+    if (existing != null) {
+      return existing;
+    }
+
+    final CoEntityBitSet created = new CoEntityBitSet();
+    this.sets.put(c, created);
+    return created;
+  }
+
+  /**
+   * An entity has been created with the given traits.
+   *
+   * @param entity The entity
+   * @param traits The traits
+   */
+
+  void entityCreated(
+    final CoEntityType entity,
+    final Iterable<? extends Class<? extends CoEntityTraitType>> traits)
+  {
+    this.lock.writeLock().lock();
+    try {
+      this.insert(entity, traits);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * A batch of entities has been created, each with the given traits.
+   *
+   * @param batch  The entities
+   * @param traits The traits
+   */
+
+  void entitiesCreated(
+    final List<? extends CoEntityType> batch,
+    final Iterable<? extends Class<? extends CoEntityTraitType>> traits)
+  {
+    this.lock.writeLock().lock();
+    try {
+      for (int index = 0; index < batch.size(); ++index) {
+        this.insert(batch.get(index), traits);
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void insert(
+    final CoEntityType entity,
+    final Iterable<? extends Class<? extends CoEntityTraitType>> traits)
+  {
+    final int index = entity.id().index();
+    if (index >= this.entities.length) {
+      this.entities = Arrays.copyOf(
+        this.entities, Math.max(index + 1, this.entities.length * 2));
+    }
+    this.entities[index] = entity;
+
+    for (final Class<? extends CoEntityTraitType> c : traits) {
+      this.set(c).set(index);
+    }
+    this.updateViews(index);
+  }
+
+  /**
+   * An entity has been destroyed.
+   *
+   * @param entity The entity
+   */
+
+  void entityDestroyed(
+    final CoEntityType entity)
+  {
+    this.lock.writeLock().lock();
+    try {
+      this.remove(entity);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * A batch of entities has been destroyed.
+   *
+   * @param batch The entities
+   */
+
+  void entitiesDestroyed(
+    final List<? extends CoEntityType> batch)
+  {
+    this.lock.writeLock().lock();
+    try {
+      for (int index = 0; index < batch.size(); ++index) {
+        this.remove(batch.get(index));
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void remove(
+    final CoEntityType entity)
+  {
+    final int index = entity.id().index();
+    if (this.isCurrent(entity, index)) {
+      this.entities[index] = null;
+      for (final CoEntityBitSet set : this.sets.values()) {
+        set.clear(index);
+      }
+      this.updateViews(index);
+    }
+  }
+
+  @GuardedBy("lock")
+  private boolean isCurrent(
+    final CoEntityType entity,
+    final int index)
+  {
+    return index < this.entities.length && this.entities[index] == entity;
+  }
+
+  /**
+   * A trait has been added to an entity.
+   *
+   * @param entity The entity
+   * @param c      The trait
+   */
+
+  void traitAdded(
+    final CoEntityType entity,
+    final Class<? extends CoEntityTraitType> c)
+  {
+    final int index = entity.id().index();
+
+    this.lock.writeLock().lock();
+    try {
+      if (this.isCurrent(entity, index) && this.set(c).set(index)) {
+        this.updateViews(index);
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * A trait has been removed from an entity.
+   *
+   * @param entity The entity
+   * @param c      The trait
+   */
+
+  void traitRemoved(
+    final CoEntityType entity,
+    final Class<? extends CoEntityTraitType> c)
+  {
+    final int index = entity.id().index();
+
+    this.lock.writeLock().lock();
+    try {
+      if (!this.isCurrent(entity, index)) {
+        return;
+      }
+
+      final CoEntityBitSet set = this.sets.get(c);
+      if (set != null && set.clear(index)) {
+        this.updateViews(index);
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void updateViews(
+    final int index)
+  {
+    for (int view = 0; view < this.views.size(); ++view) {
+      this.views.get(view).update(index, this.entities[index] != null);
+    }
+  }
+
+  /**
+   * Call {@code receiver} for each entity matching {@code query}. The
+   * matching entities are copied while the lock is held, and
+   * {@code receiver} is called after the lock is released, so the receiver
+   * may modify entities.
+   *
+   * @param query    The query
+   * @param receiver The receiver
+   */
+
+  void query(
+    final CoEntityQuery query,
+    final Consumer<CoEntityType> receiver)
+  {
+    NullCheck.notNull(query, "Query");
+    NullCheck.notNull(receiver, "Receiver");
+
+    final ReferenceArrayList<CoEntityType> matching =
+      new ReferenceArrayList<>();
+    this.lock.readLock().lock();
+    try {
+      final CoEntityBitSet[] required = this.resolve(query.required());
+      if (required == null) {
+        return;
+      }
+      final CoEntityBitSet[] excluded = this.resolveExcluded(query.excluded());
+
+      int words = Integer.MAX_VALUE;
+      for (final CoEntityBitSet set : required) {
+        words = Math.min(words, set.wordCount());
+      }
+
+      for (int word = 0; word < words; ++word) {
+        long bits = required[0].word(word);
+        for (int index = 1; index < required.length && bits != 0L; ++index) {
+          bits &= required[index].word(word);
+        }
+        for (int index = 0; index < excluded.length && bits != 0L; ++index) {
+          bits &= ~excluded[index].word(word);
+        }
+
+        while (bits != 0L) {
+          final int bit = Long.numberOfTrailingZeros(bits);
+          matching.add(this.entities[(word << 6) + bit]);
+          bits &= bits - 1L;
+        }
+      }
+    } finally {
+      this.lock.readLock().unlock();
+    }
+
+    for (int index = 0; index < matching.size(); ++index) {
+      receiver.accept(matching.get(index));
+    }
+  }
+
+  @GuardedBy("lock")
+  private CoEntityBitSet[] resolve(
+    final Set<Class<? extends CoEntityTraitType>> classes)
+  {
+    final CoEntityBitSet[] result = new CoEntityBitSet[classes.size()];
+    int index = 0;
+    for (final Class<? extends CoEntityTraitType> c : classes) {
+      final CoEntityBitSet set = this.sets.get(c);
+      if (set == null) {
+        return null;
+      }
+      result[index] = set;
+      ++index;
+    }
+    return result;
+  }
+
+  @GuardedBy("lock")
+  private CoEntityBitSet[] resolveExcluded(
+    final Set<Class<? extends CoEntityTraitType>> classes)
+  {
+    final ReferenceArrayList<CoEntityBitSet> result =
+      new ReferenceArrayList<>(classes.size());
+    for (final Class<? extends CoEntityTraitType> c : classes) {
+      final CoEntityBitSet set = this.sets.get(c);
+      if (set != null) {
+        result.add(set);
+      }
+    }
+    return result.toArray(new CoEntityBitSet[result.size()]);
+  }
+
+  /**
+   * Create a cached view of the entities matching {@code query}.
+   *
+   * @param query The query
+   *
+   * @return A new view
+   */
+
+  CoEntityQueryView view(
+    final CoEntityQuery query)
+  {
+    NullCheck.notNull(query, "Query");
+
+    this.lock.writeLock().lock();
+    try {
+      final CoEntityBitSet[] required = new CoEntityBitSet[query.required().size()];
+      int index = 0;
+      for (final Class<? extends CoEntityTraitType> c : query.required()) {
+        required[index] = this.set(c);
+        ++index;
+      }
+
+      final CoEntityBitSet[] excluded = new CoEntityBitSet[query.excluded().size()];
+      index = 0;
+      for (final Class<? extends CoEntityTraitType> c : query.excluded()) {
+        excluded[index] = this.set(c);
+        ++index;
+      }
+
+      final CoEntityQueryView view =
+        new CoEntityQueryView(this, query, required, excluded);
+      this.views.add(view);
+      return view;
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  void viewClose(
+    final CoEntityQueryView view)
+  {
+    this.lock.writeLock().lock();
+    try {
+      this.views.remove(view);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+}
@@ -21,4 +21,16 @@ public interface CoEntityTraitProviderType<T extends CoEntityTraitType>
   Class<T> type();
 
   T create(CoEntityType e);
+
+  /**
+   * @return The handle assigned to the type of traits created by this
+   * provider
+   *
+   * @see CoEntityTraitHandle#of(Class)
+   */
+
+  default CoEntityTraitHandle<T> handle()
+  {
+    return CoEntityTraitHandle.of(this.type());
+  }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.entities;
+
+import com.io7m.callisto.core.CoException;
+
+/**
+ * The type of traits that can be reset and reused by a later entity when
+ * the entity that owns them is destroyed. Only traits of this type are
+ * pooled; an entity with any trait that is not of this type is never
+ * pooled.
+ *
+ * @see CoAssemblyPoolingType
+ */
+
+public interface CoEntityTraitRecyclableType extends CoEntityTraitType
+{
+  /**
+   * The entity that owns the trait has been destroyed, and the entity was
+   * created from an assembly that is pooled. The trait should reset itself to
+   * the state in which its provider would have created it, so that it can be
+   * reused by a later entity. If any trait of the entity cannot be reused,
+   * the entity is not pooled, and {@link #onDestroy()} is called on all of
+   * its traits, including any that have already been reset.
+   *
+   * @return {@code true} iff the trait has been reset and can be reused
+   *
+   * @throws CoException On errors
+   *
+   * @see #onReuse(CoEntityType)
+   */
+
+  boolean onRecycle()
+    throws CoException;
+
+  /**
+   * The trait, previously reset by {@link #onRecycle()}, has been given to a
+   * newly created entity. The trait must return {@code owner} from
+   * {@link #owner()} from now on.
+   *
+   * @param owner The new owner of the trait
+   *
+   * @throws CoException On errors; the new entity is not created
+   */
+
+  void onReuse(
+    CoEntityType owner)
+    throws CoException;
+}
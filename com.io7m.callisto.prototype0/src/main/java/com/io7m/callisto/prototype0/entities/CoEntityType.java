@@ -65,6 +65,25 @@ public interface CoEntityType
     Class<T> c)
     throws CoEntityDestroyedException, CoEntityTraitNonexistentException;
 
+  /**
+   * Retrieve the trait registered under the given handle. Implementations
+   * are required to perform the lookup without locking or hashing.
+   *
+   * @param handle The trait handle
+   * @param <T>    The precise type of trait
+   *
+   * @return The trait
+   *
+   * @throws CoEntityTraitNonexistentException If no trait is registered under
+   *                                           the given handle
+   * @throws CoEntityDestroyedException        If the entity has already been
+   *                                           destroyed
+   */
+
+  <T extends CoEntityTraitType> T traitGet(
+    CoEntityTraitHandle<T> handle)
+    throws CoEntityDestroyedException, CoEntityTraitNonexistentException;
+
   /**
    * Register the trait under the given class.
    *
@@ -90,13 +109,16 @@ public interface CoEntityType
    * @param c   The class
    * @param <T> The precise type of trait
    *
-   * @throws CoEntityDestroyedException If the entity has already been
-   *                                    destroyed
+   * @throws CoEntityDestroyedException      If the entity has already been
+   *                                         destroyed
+   * @throws CoEntityTraitOnDestroyException If the trait raised an exception
+   *                                         when destroyed; the trait is
+   *                                         removed regardless
    */
 
   <T extends CoEntityTraitType> void traitDestroy(
     Class<T> c)
-    throws CoEntityDestroyedException;
+    throws CoEntityDestroyedException, CoEntityTraitOnDestroyException;
 
   /**
    * @return {@code true} if the entity has been destroyed
@@ -0,0 +1,317 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import com.io7m.junreachable.UnreachableCodeException;
+import io.reactivex.disposables.Disposable;
+import net.jcip.annotations.GuardedBy;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A subscription that buffers events from an unbounded source in a
+ * bounded queue, applying a delivery policy on overflow, and delivers them
+ * to a subscriber as the subscriber requests them.</p>
+ *
+ * <p>Events are enqueued on the posting thread, so the
+ * {@link CoEventOverflowPolicy#OVERFLOW_BLOCK} policy blocks the thread
+ * that posted the event.</p>
+ *
+ * @param <T> The type of events
+ */
+
+final class CoEventBoundedSubscription<T extends CoEventType>
+  implements Subscription, CoEventTypeDispatcher.ReceiverType
+{
+  private final Class<T> type;
+  private final Subscriber<? super T> downstream;
+  private final CoEventDeliveryPolicy<T> policy;
+  private final CoEventQueueStatistics statistics;
+  private final ReentrantLock lock;
+  private final Condition not_full;
+  private final @GuardedBy("lock") ArrayDeque<T> queue;
+  private final AtomicLong requested;
+  private final AtomicInteger wip;
+  private volatile boolean cancelled;
+  private volatile boolean done;
+  private volatile @Nullable Disposable upstream;
+
+  CoEventBoundedSubscription(
+    final Class<T> in_type,
+    final Subscriber<? super T> in_downstream,
+    final CoEventDeliveryPolicy<T> in_policy,
+    final CoEventQueueStatistics in_statistics)
+  {
+    this.type = NullCheck.notNull(in_type, "Type");
+    this.downstream = NullCheck.notNull(in_downstream, "Downstream");
+    this.policy = NullCheck.notNull(in_policy, "Policy");
+    this.statistics = NullCheck.notNull(in_statistics, "Statistics");
+    this.lock = new ReentrantLock();
+    this.not_full = this.lock.newCondition();
+    this.queue = new ArrayDeque<>(Math.min(in_policy.capacity(), 64));
+    this.requested = new AtomicLong();
+    this.wip = new AtomicInteger();
+  }
+
+  void connect(
+    final CoEventTypeDispatcher dispatcher)
+  {
+    this.upstream = dispatcher.receive(this.type, this);
+
+    if (this.cancelled) {
+      this.disposeUpstream();
+    }
+  }
+
+  @Override
+  public void onReceiveComplete()
+  {
+    this.done = true;
+    this.lock.lock();
+    try {
+      this.not_full.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+    this.drain();
+  }
+
+  @Override
+  public void onReceive(
+    final CoEventType e)
+  {
+    if (this.cancelled || this.done) {
+      return;
+    }
+
+    this.lock.lock();
+    try {
+      this.enqueue(this.type.cast(e));
+    } finally {
+      this.lock.unlock();
+    }
+
+    this.drain();
+  }
+
+  @GuardedBy("lock")
+  private void enqueue(
+    final T e)
+  {
+    if (this.queue.size() < this.policy.capacity()) {
+      this.queue.addLast(e);
+      this.statistics.onEnqueued();
+      return;
+    }
+
+    switch (this.policy.overflow()) {
+      case OVERFLOW_BLOCK: {
+        this.statistics.onBlocked();
+        while (this.queue.size() >= this.policy.capacity()) {
+          if (this.cancelled || this.done) {
+            this.statistics.onDropped();
+            return;
+          }
+          try {
+            this.not_full.await();
+          } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.statistics.onDropped();
+            return;
+          }
+        }
+        this.queue.addLast(e);
+        this.statistics.onEnqueued();
+        return;
+      }
+
+      case OVERFLOW_DROP_OLDEST: {
+        this.queue.pollFirst();
+        this.queue.addLast(e);
+        this.statistics.onDropped();
+        return;
+      }
+
+      case OVERFLOW_DROP_NEWEST: {
+        this.statistics.onDropped();
+        return;
+      }
+
+      case OVERFLOW_COALESCE: {
+        final CoEventCoalescerType<T> c =
+          this.policy.coalescer().orElseThrow(UnreachableCodeException::new);
+        final T newest = this.queue.pollLast();
+        this.queue.addLast(c.coalesce(newest, e));
+        this.statistics.onCoalesced();
+        return;
+      }
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  private @Nullable T poll()
+  {
+    this.lock.lock();
+    try {
+      final T e = this.queue.pollFirst();
+      if (e != null) {
+        this.statistics.onDequeued();
+        this.not_full.signal();
+      }
+      return e;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private boolean isEmpty()
+  {
+    this.lock.lock();
+    try {
+      return this.queue.isEmpty();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void clear()
+  {
+    this.lock.lock();
+    try {
+      for (int index = 0; index < this.queue.size(); ++index) {
+        this.statistics.onDequeued();
+      }
+      this.queue.clear();
+      this.not_full.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void drain()
+  {
+    if (this.wip.getAndIncrement() != 0) {
+      return;
+    }
+
+    int missed = 1;
+    while (true) {
+      final long r = this.requested.get();
+      long emitted = 0L;
+
+      while (emitted != r) {
+        if (this.cancelled) {
+          this.clear();
+          return;
+        }
+
+        final boolean finished = this.done;
+        final T e = this.poll();
+        if (e == null) {
+          if (finished) {
+            this.downstream.onComplete();
+            return;
+          }
+          break;
+        }
+
+        this.downstream.onNext(e);
+        ++emitted;
+      }
+
+      if (emitted == r) {
+        if (this.cancelled) {
+          this.clear();
+          return;
+        }
+        if (this.done && this.isEmpty()) {
+          this.downstream.onComplete();
+          return;
+        }
+      }
+
+      if (emitted != 0L) {
+        this.statistics.onDelivered(emitted);
+        if (r != Long.MAX_VALUE) {
+          this.requested.addAndGet(-emitted);
+        }
+      }
+
+      missed = this.wip.addAndGet(-missed);
+      if (missed == 0) {
+        break;
+      }
+    }
+  }
+
+  @Override
+  public void request(
+    final long n)
+  {
+    if (n <= 0L) {
+      this.cancel();
+      this.downstream.onError(new IllegalArgumentException(
+        "Request count must be positive"));
+      return;
+    }
+
+    while (true) {
+      final long current = this.requested.get();
+      if (current == Long.MAX_VALUE) {
+        break;
+      }
+      long next = current + n;
+      if (next < 0L) {
+        next = Long.MAX_VALUE;
+      }
+      if (this.requested.compareAndSet(current, next)) {
+        break;
+      }
+    }
+
+    this.drain();
+  }
+
+  @Override
+  public void cancel()
+  {
+    if (!this.cancelled) {
+      this.cancelled = true;
+      this.disposeUpstream();
+      if (this.wip.getAndIncrement() == 0) {
+        this.clear();
+      }
+    }
+  }
+
+  private void disposeUpstream()
+  {
+    final Disposable d = this.upstream;
+    if (d != null) {
+      d.dispose();
+    }
+  }
+}
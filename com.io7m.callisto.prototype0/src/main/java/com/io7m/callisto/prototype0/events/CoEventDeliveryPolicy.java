@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.Optional;
+
+/**
+ * <p>A bounded delivery policy for event subscriptions.</p>
+ *
+ * <p>A policy specifies the capacity of each subscriber's queue and what
+ * happens when an event arrives for a subscriber whose queue is full. A
+ * policy holds no state, and may be shared between subscriptions.</p>
+ *
+ * @param <T> The type of events
+ */
+
+public final class CoEventDeliveryPolicy<T extends CoEventType>
+{
+  private final int capacity;
+  private final CoEventOverflowPolicy overflow;
+  private final @Nullable CoEventCoalescerType<T> coalescer;
+
+  private CoEventDeliveryPolicy(
+    final int in_capacity,
+    final CoEventOverflowPolicy in_overflow,
+    final @Nullable CoEventCoalescerType<T> in_coalescer)
+  {
+    this.capacity = Preconditions.checkPreconditionI(
+      in_capacity, in_capacity > 0, c -> "Capacity must be positive");
+    this.overflow = NullCheck.notNull(in_overflow, "Overflow");
+    this.coalescer = in_coalescer;
+  }
+
+  /**
+   * @param capacity The queue capacity
+   * @param <T>      The type of events
+   *
+   * @return A policy that blocks posting threads when the queue is full
+   *
+   * @see CoEventOverflowPolicy#OVERFLOW_BLOCK
+   */
+
+  public static <T extends CoEventType> CoEventDeliveryPolicy<T> block(
+    final int capacity)
+  {
+    return new CoEventDeliveryPolicy<>(
+      capacity, CoEventOverflowPolicy.OVERFLOW_BLOCK, null);
+  }
+
+  /**
+   * @param capacity The queue capacity
+   * @param <T>      The type of events
+   *
+   * @return A policy that discards the oldest queued event when the queue is
+   * full
+   *
+   * @see CoEventOverflowPolicy#OVERFLOW_DROP_OLDEST
+   */
+
+  public static <T extends CoEventType> CoEventDeliveryPolicy<T> dropOldest(
+    final int capacity)
+  {
+    return new CoEventDeliveryPolicy<>(
+      capacity, CoEventOverflowPolicy.OVERFLOW_DROP_OLDEST, null);
+  }
+
+  /**
+   * @param capacity The queue capacity
+   * @param <T>      The type of events
+   *
+   * @return A policy that discards new events when the queue is full
+   *
+   * @see CoEventOverflowPolicy#OVERFLOW_DROP_NEWEST
+   */
+
+  public static <T extends CoEventType> CoEventDeliveryPolicy<T> dropNewest(
+    final int capacity)
+  {
+    return new CoEventDeliveryPolicy<>(
+      capacity, CoEventOverflowPolicy.OVERFLOW_DROP_NEWEST, null);
+  }
+
+  /**
+   * @param capacity  The queue capacity
+   * @param coalescer A function that merges events
+   * @param <T>       The type of events
+   *
+   * @return A policy that merges new events into the newest queued event
+   * when the queue is full
+   *
+   * @see CoEventOverflowPolicy#OVERFLOW_COALESCE
+   */
+
+  public static <T extends CoEventType> CoEventDeliveryPolicy<T> coalesce(
+    final int capacity,
+    final CoEventCoalescerType<T> coalescer)
+  {
+    return new CoEventDeliveryPolicy<>(
+      capacity,
+      CoEventOverflowPolicy.OVERFLOW_COALESCE,
+      NullCheck.notNull(coalescer, "Coalescer"));
+  }
+
+  /**
+   * @return The capacity of each subscriber's queue
+   */
+
+  public int capacity()
+  {
+    return this.capacity;
+  }
+
+  /**
+   * @return The overflow policy
+   */
+
+  public CoEventOverflowPolicy overflow()
+  {
+    return this.overflow;
+  }
+
+  /**
+   * @return The coalescing function, if the overflow policy is
+   * {@link CoEventOverflowPolicy#OVERFLOW_COALESCE}
+   */
+
+  public Optional<CoEventCoalescerType<T>> coalescer()
+  {
+    return Optional.ofNullable(this.coalescer);
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+import net.jcip.annotations.GuardedBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A set of per-entity event channels keyed by entity ID.</p>
+ *
+ * <p>Channels are created lazily when the first subscriber subscribes to an
+ * entity, and are removed when the last subscriber disposes of its
+ * subscription or when the entity is closed. Entities that nobody subscribes
+ * to therefore cost nothing.</p>
+ *
+ * <p>Channels are held in a fixed number of independently locked stripes,
+ * so that posting to or subscribing to one entity only contends with
+ * operations on entities that happen to share a stripe. Locks are only held
+ * for the duration of a map lookup or update; events are delivered outside
+ * of any lock.</p>
+ */
+
+public final class CoEventEntityChannels
+{
+  private static final int STRIPES = 32;
+
+  private final Stripe[] stripes;
+  private final AtomicInteger open;
+
+  public CoEventEntityChannels()
+  {
+    this.open = new AtomicInteger(0);
+    this.stripes = new Stripe[STRIPES];
+    for (int index = 0; index < STRIPES; ++index) {
+      this.stripes[index] = new Stripe();
+    }
+  }
+
+  private Stripe stripe(
+    final int id)
+  {
+    return this.stripes[HashCommon.mix(id) & (STRIPES - 1)];
+  }
+
+  private @Nullable Channel lookup(
+    final int id)
+  {
+    final Stripe s = this.stripe(id);
+    synchronized (s) {
+      return s.channels.get(id);
+    }
+  }
+
+  private Channel acquire(
+    final int id)
+  {
+    final Stripe s = this.stripe(id);
+    synchronized (s) {
+      Channel c = s.channels.get(id);
+      if (c == null) {
+        c = new Channel();
+        s.channels.put(id, c);
+        this.open.incrementAndGet();
+      }
+      ++c.subscribers;
+      return c;
+    }
+  }
+
+  private void release(
+    final int id,
+    final Channel c)
+  {
+    final Stripe s = this.stripe(id);
+    synchronized (s) {
+      --c.subscribers;
+      if (c.subscribers == 0 && s.channels.get(id) == c) {
+        s.channels.remove(id);
+        this.open.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * @return The number of channels that currently exist
+   */
+
+  public int size()
+  {
+    return this.open.get();
+  }
+
+  /**
+   * Close the channel for the given entity, completing any subscriptions.
+   * Closing an entity that has no channel has no effect and does not take
+   * any lock if no channels exist at all.
+   *
+   * @param id The entity ID
+   */
+
+  public void close(
+    final int id)
+  {
+    if (this.open.get() == 0) {
+      return;
+    }
+
+    final Channel removed;
+    final Stripe s = this.stripe(id);
+    synchronized (s) {
+      removed = s.channels.remove(id);
+      if (removed != null) {
+        this.open.decrementAndGet();
+      }
+    }
+
+    if (removed != null) {
+      removed.subject.onComplete();
+    }
+  }
+
+  /**
+   * Post an event to the given entity.
+   *
+   * @param id The entity ID
+   * @param e  The event
+   *
+   * @return {@code true} iff the entity has at least one subscriber
+   */
+
+  public boolean post(
+    final int id,
+    final CoEventType e)
+  {
+    NullCheck.notNull(e, "Event");
+
+    if (this.open.get() == 0) {
+      return false;
+    }
+
+    final Channel c = this.lookup(id);
+    if (c != null) {
+      c.subject.onNext(e);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Each subscription to the returned observable subscribes to the channel
+   * for the given entity, creating the channel if it does not already exist.
+   * The subscription completes when the entity is closed.
+   *
+   * @param id The entity ID
+   *
+   * @return An observable that receives events posted to the given entity
+   */
+
+  public Observable<CoEventType> events(
+    final int id)
+  {
+    return Observable.defer(() -> {
+      final Channel c = this.acquire(id);
+      return c.subject.doFinally(() -> this.release(id, c));
+    });
+  }
+
+  /**
+   * Close all channels.
+   */
+
+  public void closeAll()
+  {
+    final List<Channel> removed = new ArrayList<>();
+    for (int index = 0; index < STRIPES; ++index) {
+      final Stripe s = this.stripes[index];
+      synchronized (s) {
+        removed.addAll(s.channels.values());
+        this.open.addAndGet(-s.channels.size());
+        s.channels.clear();
+      }
+    }
+
+    for (final Channel c : removed) {
+      c.subject.onComplete();
+    }
+  }
+
+  private static final class Channel
+  {
+    private final Subject<CoEventType> subject;
+    private int subscribers;
+
+    Channel()
+    {
+      this.subject = PublishSubject.<CoEventType>create().toSerialized();
+    }
+  }
+
+  private static final class Stripe
+  {
+    private final @GuardedBy("this")
+    Int2ReferenceOpenHashMap<Channel> channels;
+
+    Stripe()
+    {
+      this.channels = new Int2ReferenceOpenHashMap<>();
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import io.reactivex.functions.Consumer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Optional instrumentation for the event service.</p>
+ *
+ * <p>When enabled, the rate at which events are posted is recorded for each
+ * event type, and for each named subscriber the number of events waiting
+ * to be handled, the time spent in the handler, and the time between an
+ * event being posted and the handler starting are recorded. Subscribers
+ * with bounded queues instead record their queue depth as
+ * {@code queue_depth_bounded}, along with the number of dropped and
+ * coalesced events. All metrics are registered in the given registry under
+ * the given prefix.</p>
+ *
+ * <p>When disabled, the event service does not touch the instrumentation
+ * on any delivery path.</p>
+ */
+
+public final class CoEventInstrumentation
+{
+  private static final CoEventInstrumentation DISABLED =
+    new CoEventInstrumentation(null, "");
+
+  private final @Nullable MetricRegistry metrics;
+  private final String prefix;
+  private final Map<Class<?>, Meter> posted;
+
+  private CoEventInstrumentation(
+    final @Nullable MetricRegistry in_metrics,
+    final String in_prefix)
+  {
+    this.metrics = in_metrics;
+    this.prefix = in_prefix;
+    this.posted = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @return Instrumentation that records nothing
+   */
+
+  public static CoEventInstrumentation disabled()
+  {
+    return DISABLED;
+  }
+
+  /**
+   * @param metrics The metric registry
+   * @param prefix  The prefix used for all metric names
+   *
+   * @return Instrumentation that records into the given registry
+   */
+
+  public static CoEventInstrumentation create(
+    final MetricRegistry metrics,
+    final String prefix)
+  {
+    return new CoEventInstrumentation(
+      NullCheck.notNull(metrics, "Metrics"),
+      NullCheck.notNull(prefix, "Prefix"));
+  }
+
+  /**
+   * @return {@code true} iff instrumentation is enabled
+   */
+
+  public boolean isEnabled()
+  {
+    return this.metrics != null;
+  }
+
+  private MetricRegistry registry()
+  {
+    return NullCheck.notNull(this.metrics, "Metrics");
+  }
+
+  void onPost(
+    final CoEventType e)
+  {
+    final MetricRegistry m = this.registry();
+    this.posted.computeIfAbsent(
+      e.getClass(),
+      c -> m.meter(MetricRegistry.name(
+        this.prefix, "posted", c.getSimpleName()))).mark();
+  }
+
+  <T extends CoEventType> Subscriber<T> subscriber(
+    final String name,
+    final Class<T> type)
+  {
+    return new Subscriber<>(this.registry(), this.prefix, name, type, true);
+  }
+
+  <T extends CoEventType> Subscriber<T> subscriberBounded(
+    final String name,
+    final Class<T> type)
+  {
+    return new Subscriber<>(this.registry(), this.prefix, name, type, false);
+  }
+
+  void registerQueue(
+    final String name,
+    final Class<?> type,
+    final CoEventQueueStatistics statistics)
+  {
+    final String base =
+      MetricRegistry.name(
+        this.prefix, "subscribers", name, type.getSimpleName());
+
+    this.registry().gauge(
+      MetricRegistry.name(base, "queue_depth_bounded"),
+      () -> (Gauge<Integer>) () -> Integer.valueOf(statistics.depth()));
+    this.registry().gauge(
+      MetricRegistry.name(base, "dropped"),
+      () -> (Gauge<Long>) () -> Long.valueOf(statistics.dropped()));
+    this.registry().gauge(
+      MetricRegistry.name(base, "coalesced"),
+      () -> (Gauge<Long>) () -> Long.valueOf(statistics.coalesced()));
+  }
+
+  static final class Stamped<T>
+  {
+    private final T event;
+    private final long time;
+
+    Stamped(
+      final T in_event,
+      final long in_time)
+    {
+      this.event = in_event;
+      this.time = in_time;
+    }
+  }
+
+  static final class Subscriber<T extends CoEventType>
+  {
+    private final @Nullable Counter depth;
+    private final Timer handler_time;
+    private final @Nullable Timer latency;
+
+    Subscriber(
+      final MetricRegistry metrics,
+      final String prefix,
+      final String name,
+      final Class<T> type,
+      final boolean stamped)
+    {
+      final String base =
+        MetricRegistry.name(prefix, "subscribers", name, type.getSimpleName());
+
+      this.depth = stamped
+        ? metrics.counter(MetricRegistry.name(base, "queue_depth"))
+        : null;
+      this.handler_time =
+        metrics.timer(MetricRegistry.name(base, "handler_time"));
+      this.latency = stamped
+        ? metrics.timer(MetricRegistry.name(base, "latency"))
+        : null;
+    }
+
+    Stamped<T> enqueue(
+      final T e)
+    {
+      NullCheck.notNull(this.depth, "Depth").inc();
+      return new Stamped<>(e, System.nanoTime());
+    }
+
+    void handle(
+      final Stamped<T> s,
+      final Consumer<? super T> handler)
+      throws Exception
+    {
+      NullCheck.notNull(this.depth, "Depth").dec();
+
+      final long time_start = System.nanoTime();
+      NullCheck.notNull(this.latency, "Latency")
+        .update(time_start - s.time, TimeUnit.NANOSECONDS);
+      try {
+        handler.accept(s.event);
+      } finally {
+        this.handler_time.update(
+          System.nanoTime() - time_start, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    void time(
+      final T e,
+      final Consumer<? super T> handler)
+      throws Exception
+    {
+      final long time_start = System.nanoTime();
+      try {
+        handler.accept(e);
+      } finally {
+        this.handler_time.update(
+          System.nanoTime() - time_start, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+/**
+ * The policy applied when an event arrives for a subscriber whose queue is
+ * full.
+ */
+
+public enum CoEventOverflowPolicy
+{
+  /**
+   * The posting thread waits until the subscriber has consumed an event.
+   * This must not be used by subscribers that post events of the same type
+   * from their own thread.
+   */
+
+  OVERFLOW_BLOCK,
+
+  /**
+   * The oldest queued event is discarded to make room for the new event.
+   */
+
+  OVERFLOW_DROP_OLDEST,
+
+  /**
+   * The new event is discarded.
+   */
+
+  OVERFLOW_DROP_NEWEST,
+
+  /**
+   * The newest queued event and the new event are merged into a single
+   * event.
+   */
+
+  OVERFLOW_COALESCE
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live statistics for a bounded event queue. A statistics value is updated
+ * by every subscription to the bounded flowable with which it was
+ * supplied.
+ */
+
+public final class CoEventQueueStatistics
+{
+  private final AtomicInteger depth;
+  private final AtomicInteger depth_maximum;
+  private final AtomicLong delivered;
+  private final AtomicLong dropped;
+  private final AtomicLong coalesced;
+  private final AtomicLong blocked;
+
+  /**
+   * Construct a set of statistics with all values set to zero.
+   */
+
+  public CoEventQueueStatistics()
+  {
+    this.depth = new AtomicInteger();
+    this.depth_maximum = new AtomicInteger();
+    this.delivered = new AtomicLong();
+    this.dropped = new AtomicLong();
+    this.coalesced = new AtomicLong();
+    this.blocked = new AtomicLong();
+  }
+
+  /**
+   * @return The number of events currently queued
+   */
+
+  public int depth()
+  {
+    return this.depth.get();
+  }
+
+  /**
+   * @return The largest number of events that have been queued at once
+   */
+
+  public int depthMaximum()
+  {
+    return this.depth_maximum.get();
+  }
+
+  /**
+   * @return The number of events delivered to subscribers
+   */
+
+  public long delivered()
+  {
+    return this.delivered.get();
+  }
+
+  /**
+   * @return The number of events discarded due to overflow
+   */
+
+  public long dropped()
+  {
+    return this.dropped.get();
+  }
+
+  /**
+   * @return The number of events merged into other events due to overflow
+   */
+
+  public long coalesced()
+  {
+    return this.coalesced.get();
+  }
+
+  /**
+   * @return The number of times a posting thread had to wait for space
+   */
+
+  public long blocked()
+  {
+    return this.blocked.get();
+  }
+
+  void onEnqueued()
+  {
+    final int d = this.depth.incrementAndGet();
+    int m = this.depth_maximum.get();
+    while (d > m) {
+      if (this.depth_maximum.compareAndSet(m, d)) {
+        break;
+      }
+      m = this.depth_maximum.get();
+    }
+  }
+
+  void onDequeued()
+  {
+    this.depth.decrementAndGet();
+  }
+
+  void onDelivered(
+    final long count)
+  {
+    this.delivered.addAndGet(count);
+  }
+
+  void onDropped()
+  {
+    this.dropped.incrementAndGet();
+  }
+
+  void onCoalesced()
+  {
+    this.coalesced.incrementAndGet();
+  }
+
+  void onBlocked()
+  {
+    this.blocked.incrementAndGet();
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * <p>A bounded ring of preallocated, reusable event slots.</p>
+ *
+ * <p>Any number of threads may publish into the ring. Publishing claims the
+ * next sequence number, writes into the slot for that sequence in place, and
+ * then marks the sequence as published. Each consumer tracks the last
+ * sequence it has processed; a publisher that would overwrite a slot that
+ * has not yet been processed by every consumer waits until it has been.
+ * Consumers are woken on their own executor at most once per batch of
+ * published events, rather than once per event.</p>
+ *
+ * <p>As publishers wait for slow consumers, a consumer must never publish
+ * into a full ring from its own executor, as it would then be waiting for
+ * itself. Rings should be sized generously.</p>
+ *
+ * @param <S> The type of slots
+ */
+
+public final class CoEventRing<S>
+{
+  private static final int SPIN_TRIES = 100;
+  private static final long PARK_NANOS = 1_000L;
+
+  private final Object[] slots;
+  private final int mask;
+  private final int capacity;
+  private final AtomicLong claim;
+  private final AtomicLongArray published;
+  private final Object consumers_lock;
+  private volatile CoEventRingConsumer<?>[] consumers;
+
+  private CoEventRing(
+    final int in_capacity,
+    final Supplier<S> in_slots)
+  {
+    this.capacity = in_capacity;
+    this.mask = in_capacity - 1;
+    this.slots = new Object[in_capacity];
+    this.published = new AtomicLongArray(in_capacity);
+    for (int index = 0; index < in_capacity; ++index) {
+      this.slots[index] = NullCheck.notNull(in_slots.get(), "Slot");
+      this.published.set(index, -1L);
+    }
+    this.claim = new AtomicLong(0L);
+    this.consumers_lock = new Object();
+    this.consumers = new CoEventRingConsumer<?>[0];
+  }
+
+  /**
+   * Create a new ring.
+   *
+   * @param capacity The number of slots, which must be a power of two
+   * @param slots    A supplier of slots, evaluated {@code capacity} times
+   * @param <S>      The type of slots
+   *
+   * @return A new ring
+   */
+
+  public static <S> CoEventRing<S> create(
+    final int capacity,
+    final Supplier<S> slots)
+  {
+    Preconditions.checkPreconditionI(
+      capacity,
+      capacity > 0 && Integer.bitCount(capacity) == 1,
+      c -> "Capacity must be a positive power of two");
+    NullCheck.notNull(slots, "Slots");
+    return new CoEventRing<>(capacity, slots);
+  }
+
+  /**
+   * @return The number of slots in the ring
+   */
+
+  public int capacity()
+  {
+    return this.capacity;
+  }
+
+  /**
+   * @return {@code true} iff at least one consumer is attached to the ring
+   */
+
+  public boolean hasConsumers()
+  {
+    return this.consumers.length > 0;
+  }
+
+  /**
+   * Publish an event. The given translator is evaluated to write the event
+   * into a slot in place; if neither the translator nor the arguments
+   * allocate, publishing does not allocate.
+   *
+   * @param translator The slot translator
+   * @param a          The first argument passed to the translator
+   * @param b          The second argument passed to the translator
+   * @param <A>        The type of the first argument
+   * @param <B>        The type of the second argument
+   */
+
+  @SuppressWarnings("unchecked")
+  public <A, B> void publish(
+    final CoEventRingTranslatorType<S, A, B> translator,
+    final A a,
+    final B b)
+  {
+    final long sequence = this.claim.getAndIncrement();
+    final long wrap = sequence - (long) this.capacity;
+    if (wrap >= 0L) {
+      this.awaitConsumers(wrap);
+    }
+
+    final int index = (int) (sequence & (long) this.mask);
+    translator.translate((S) this.slots[index], a, b);
+    this.published.set(index, sequence);
+
+    final CoEventRingConsumer<?>[] current = this.consumers;
+    for (int c = 0; c < current.length; ++c) {
+      current[c].signal();
+    }
+  }
+
+  private void awaitConsumers(
+    final long wrap)
+  {
+    int tries = 0;
+    while (this.minimumConsumerSequence() < wrap) {
+      if (tries < SPIN_TRIES) {
+        ++tries;
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(PARK_NANOS);
+      }
+    }
+  }
+
+  private long minimumConsumerSequence()
+  {
+    final CoEventRingConsumer<?>[] current = this.consumers;
+    long minimum = Long.MAX_VALUE;
+    for (int c = 0; c < current.length; ++c) {
+      minimum = Math.min(minimum, current[c].sequence());
+    }
+    return minimum;
+  }
+
+  /**
+   * Attach a consumer to the ring. The consumer will observe all events
+   * published after this method returns. The handler is only ever evaluated
+   * on the given executor, and is never evaluated concurrently with itself.
+   *
+   * @param executor The executor on which the handler is evaluated
+   * @param handler  The handler
+   *
+   * @return A new consumer
+   */
+
+  public CoEventRingConsumer<S> consumer(
+    final Executor executor,
+    final CoEventRingHandlerType<S> handler)
+  {
+    NullCheck.notNull(executor, "Executor");
+    NullCheck.notNull(handler, "Handler");
+
+    synchronized (this.consumers_lock) {
+      final CoEventRingConsumer<S> consumer =
+        new CoEventRingConsumer<>(
+          this, executor, handler, this.claim.get() - 1L);
+      final CoEventRingConsumer<?>[] current = this.consumers;
+      final CoEventRingConsumer<?>[] next =
+        Arrays.copyOf(current, current.length + 1);
+      next[current.length] = consumer;
+      this.consumers = next;
+      return consumer;
+    }
+  }
+
+  void remove(
+    final CoEventRingConsumer<?> consumer)
+  {
+    synchronized (this.consumers_lock) {
+      final CoEventRingConsumer<?>[] current = this.consumers;
+      int found = -1;
+      for (int c = 0; c < current.length; ++c) {
+        if (current[c] == consumer) {
+          found = c;
+          break;
+        }
+      }
+
+      if (found >= 0) {
+        final CoEventRingConsumer<?>[] next =
+          new CoEventRingConsumer<?>[current.length - 1];
+        System.arraycopy(current, 0, next, 0, found);
+        System.arraycopy(
+          current, found + 1, next, found, current.length - found - 1);
+        this.consumers = next;
+      }
+    }
+  }
+
+  /**
+   * Detach all consumers from the ring. Publishers waiting for consumers
+   * are released.
+   */
+
+  public void shutDown()
+  {
+    final CoEventRingConsumer<?>[] current = this.consumers;
+    for (int c = 0; c < current.length; ++c) {
+      current[c].dispose();
+    }
+  }
+
+  long highestPublished(
+    final long from)
+  {
+    final long limit = this.claim.get();
+    long highest = from - 1L;
+    for (long s = from; s < limit; ++s) {
+      if (this.published.get((int) (s & (long) this.mask)) != s) {
+        break;
+      }
+      highest = s;
+    }
+    return highest;
+  }
+
+  @SuppressWarnings("unchecked")
+  S slot(
+    final long sequence)
+  {
+    return (S) this.slots[(int) (sequence & (long) this.mask)];
+  }
+}
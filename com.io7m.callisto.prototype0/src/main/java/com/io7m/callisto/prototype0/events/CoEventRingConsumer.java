@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+import io.reactivex.disposables.Disposable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A consumer attached to a {@link CoEventRing}.</p>
+ *
+ * <p>Publishing into the ring signals the consumer, and the first signal
+ * after the consumer has last drained the ring schedules a single drain on
+ * the consumer's executor. All events published by the time the drain runs
+ * are delivered in one batch, and the consumer's sequence is advanced once
+ * per batch.</p>
+ *
+ * @param <S> The type of slots
+ */
+
+public final class CoEventRingConsumer<S> implements Disposable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoEventRingConsumer.class);
+
+  private final CoEventRing<S> ring;
+  private final Executor executor;
+  private final CoEventRingHandlerType<S> handler;
+  private final AtomicLong sequence;
+  private final AtomicBoolean scheduled;
+  private volatile boolean disposed;
+
+  CoEventRingConsumer(
+    final CoEventRing<S> in_ring,
+    final Executor in_executor,
+    final CoEventRingHandlerType<S> in_handler,
+    final long in_sequence)
+  {
+    this.ring = in_ring;
+    this.executor = in_executor;
+    this.handler = in_handler;
+    this.sequence = new AtomicLong(in_sequence);
+    this.scheduled = new AtomicBoolean(false);
+    this.disposed = false;
+  }
+
+  /**
+   * @return The sequence number of the last slot processed by the consumer
+   */
+
+  public long sequence()
+  {
+    return this.sequence.get();
+  }
+
+  void signal()
+  {
+    if (!this.disposed && this.scheduled.compareAndSet(false, true)) {
+      try {
+        this.executor.execute(this::run);
+      } catch (final RejectedExecutionException e) {
+        LOG.debug("executor rejected drain, disposing consumer: ", e);
+        this.dispose();
+      }
+    }
+  }
+
+  private void run()
+  {
+    this.scheduled.set(false);
+    if (!this.disposed) {
+      this.drain();
+    }
+  }
+
+  /**
+   * Deliver all events published so far to the handler. This method is
+   * called automatically on the consumer's executor, but may also be called
+   * directly from that executor to poll the ring.
+   *
+   * @return The number of events delivered
+   */
+
+  public int drain()
+  {
+    final long first = this.sequence.get() + 1L;
+    final long last = this.ring.highestPublished(first);
+    if (last < first) {
+      return 0;
+    }
+
+    for (long s = first; s <= last; ++s) {
+      try {
+        this.handler.onEvent(this.ring.slot(s), s, s == last);
+      } catch (final Exception e) {
+        LOG.error("event handler raised exception: ", e);
+      }
+    }
+
+    this.sequence.set(last);
+    return (int) (last - first + 1L);
+  }
+
+  @Override
+  public void dispose()
+  {
+    this.disposed = true;
+    this.ring.remove(this);
+  }
+
+  @Override
+  public boolean isDisposed()
+  {
+    return this.disposed;
+  }
+}
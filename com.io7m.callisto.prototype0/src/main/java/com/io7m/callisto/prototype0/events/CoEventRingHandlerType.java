@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+/**
+ * A handler for events drained from a ring.
+ *
+ * @param <S> The type of slots
+ */
+
+@FunctionalInterface
+public interface CoEventRingHandlerType<S>
+{
+  /**
+   * Handle a published slot. The slot is only valid for the duration of the
+   * call and must not be retained.
+   *
+   * @param slot         The slot
+   * @param sequence     The sequence number of the slot
+   * @param end_of_batch {@code true} iff this is the last slot in the
+   *                     current batch
+   */
+
+  void onEvent(
+    S slot,
+    long sequence,
+    boolean end_of_batch);
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+import com.io7m.callisto.prototype0.entities.CoEntityLifecycle;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import com.io7m.junreachable.UnreachableCodeException;
+
+/**
+ * <p>A reusable event slot in the event service ring.</p>
+ *
+ * <p>A slot either holds an ordinary event, or the components of an entity
+ * lifecycle event. The latter are stored unboxed so that high-frequency
+ * lifecycle events can be published without allocating an event value.</p>
+ */
+
+public final class CoEventRingSlot
+{
+  private Kind kind;
+  private @Nullable CoEventType event;
+  private @Nullable CoEntityType entity;
+  private @Nullable CoEntityLifecycle lifecycle;
+
+  /**
+   * Construct an empty slot.
+   */
+
+  public CoEventRingSlot()
+  {
+    this.kind = Kind.SLOT_EMPTY;
+  }
+
+  /**
+   * @return The kind of value held in the slot
+   */
+
+  public Kind kind()
+  {
+    return this.kind;
+  }
+
+  /**
+   * Set the slot to hold an ordinary event.
+   *
+   * @param in_event The event
+   */
+
+  public void setEvent(
+    final CoEventType in_event)
+  {
+    this.event = NullCheck.notNull(in_event, "Event");
+    this.entity = null;
+    this.lifecycle = null;
+    this.kind = Kind.SLOT_EVENT;
+  }
+
+  /**
+   * Set the slot to hold an entity lifecycle event.
+   *
+   * @param in_entity    The entity
+   * @param in_lifecycle The lifecycle change
+   */
+
+  public void setEntityLifecycle(
+    final CoEntityType in_entity,
+    final CoEntityLifecycle in_lifecycle)
+  {
+    this.entity = NullCheck.notNull(in_entity, "Entity");
+    this.lifecycle = NullCheck.notNull(in_lifecycle, "Lifecycle");
+    this.event = null;
+    this.kind = Kind.SLOT_ENTITY_LIFECYCLE;
+  }
+
+  /**
+   * @return The event held in the slot
+   *
+   * @throws IllegalStateException If the slot is not of kind
+   *                               {@link Kind#SLOT_EVENT}
+   */
+
+  public CoEventType event()
+  {
+    this.checkKind(Kind.SLOT_EVENT);
+    return NullCheck.notNull(this.event, "Event");
+  }
+
+  /**
+   * @return The entity of the lifecycle event held in the slot
+   *
+   * @throws IllegalStateException If the slot is not of kind
+   *                               {@link Kind#SLOT_ENTITY_LIFECYCLE}
+   */
+
+  public CoEntityType entity()
+  {
+    this.checkKind(Kind.SLOT_ENTITY_LIFECYCLE);
+    return NullCheck.notNull(this.entity, "Entity");
+  }
+
+  /**
+   * @return The lifecycle change of the lifecycle event held in the slot
+   *
+   * @throws IllegalStateException If the slot is not of kind
+   *                               {@link Kind#SLOT_ENTITY_LIFECYCLE}
+   */
+
+  public CoEntityLifecycle lifecycle()
+  {
+    this.checkKind(Kind.SLOT_ENTITY_LIFECYCLE);
+    return NullCheck.notNull(this.lifecycle, "Lifecycle");
+  }
+
+  private void checkKind(
+    final Kind expected)
+  {
+    if (this.kind != expected) {
+      throw new IllegalStateException(
+        new StringBuilder(64)
+          .append("Slot is of the wrong kind.")
+          .append(System.lineSeparator())
+          .append("  Expected: ")
+          .append(expected)
+          .append(System.lineSeparator())
+          .append("  Received: ")
+          .append(this.kind)
+          .append(System.lineSeparator())
+          .toString());
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    switch (this.kind) {
+      case SLOT_EMPTY: {
+        return "[CoEventRingSlot empty]";
+      }
+      case SLOT_EVENT: {
+        return "[CoEventRingSlot " + this.event + "]";
+      }
+      case SLOT_ENTITY_LIFECYCLE: {
+        return "[CoEventRingSlot " + this.entity + " " + this.lifecycle + "]";
+      }
+    }
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * The kind of value held in a slot.
+   */
+
+  public enum Kind
+  {
+    /**
+     * The slot has never been written.
+     */
+
+    SLOT_EMPTY,
+
+    /**
+     * The slot holds an ordinary event.
+     */
+
+    SLOT_EVENT,
+
+    /**
+     * The slot holds an entity lifecycle event.
+     */
+
+    SLOT_ENTITY_LIFECYCLE
+  }
+}
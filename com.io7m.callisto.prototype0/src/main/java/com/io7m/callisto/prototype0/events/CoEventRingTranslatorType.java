@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+/**
+ * A function that writes values into a preallocated ring slot.
+ *
+ * @param <S> The type of slots
+ * @param <A> The type of the first argument
+ * @param <B> The type of the second argument
+ */
+
+@FunctionalInterface
+public interface CoEventRingTranslatorType<S, A, B>
+{
+  /**
+   * Write the given values into {@code slot}.
+   *
+   * @param slot The slot
+   * @param a    The first argument
+   * @param b    The second argument
+   */
+
+  void translate(
+    S slot,
+    A a,
+    B b);
+}
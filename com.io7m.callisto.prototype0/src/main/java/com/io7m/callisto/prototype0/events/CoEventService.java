@@ -16,20 +16,32 @@
 
 package com.io7m.callisto.prototype0.events;
 
+import com.io7m.callisto.prototype0.entities.CoEntityID;
+import com.io7m.callisto.prototype0.entities.CoEntityLifecycle;
+import com.io7m.callisto.prototype0.entities.CoEntityLifecycleBatchEventType;
 import com.io7m.callisto.prototype0.entities.CoEntityLifecycleEvent;
+import com.io7m.callisto.prototype0.entities.CoEntityLifecycleEventType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
 import com.io7m.callisto.prototype0.services.CoAbstractService;
 import com.io7m.jnull.NullCheck;
 import com.io7m.junreachable.UnreachableCodeException;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
 import io.reactivex.subjects.PublishSubject;
-import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
 @Component
 public final class CoEventService
   extends CoAbstractService implements CoEventServiceType
@@ -37,44 +49,53 @@ public final class CoEventService
   private static final Logger LOG =
     LoggerFactory.getLogger(CoEventService.class);
 
+  private static final int RING_CAPACITY = 16384;
+
+  private static final
+  CoEventRingTranslatorType<CoEventRingSlot, CoEventType, Void> TRANSLATE_EVENT =
+    (slot, event, unused) -> slot.setEvent(event);
+
+  private static final
+  CoEventRingTranslatorType<CoEventRingSlot, CoEntityType, CoEntityLifecycle>
+    TRANSLATE_LIFECYCLE = CoEventRingSlot::setEntityLifecycle;
+
   private final PublishSubject<CoEventType> events;
-  private final Disposable entity_events;
-  private final Int2ReferenceOpenHashMap<PublishSubject<CoEventType>> entity_subjects;
+  private final CoEventTypeDispatcher dispatcher;
+  private final CoEventRing<CoEventRingSlot> ring;
+  private final CoEventInstrumentation instrumentation;
+  private final CoEventEntityChannels entity_channels;
 
   public CoEventService()
   {
-    this.events = PublishSubject.create();
+    this(CoEventInstrumentation.disabled());
+  }
 
-    this.entity_events =
-      this.events.ofType(CoEntityLifecycleEvent.class)
-        .subscribe(this::onEntityLifecycleEvent);
+  public CoEventService(
+    final CoEventInstrumentation in_instrumentation)
+  {
+    this.instrumentation =
+      NullCheck.notNull(in_instrumentation, "Instrumentation");
+    this.events = PublishSubject.create();
+    this.dispatcher = new CoEventTypeDispatcher();
+    this.ring = CoEventRing.create(RING_CAPACITY, CoEventRingSlot::new);
 
-    this.entity_subjects =
-      new Int2ReferenceOpenHashMap<>();
+    this.entity_channels =
+      new CoEventEntityChannels();
   }
 
-  private void onEntityLifecycleEvent(
-    final CoEntityLifecycleEvent e)
+  private void onEntityLifecycle(
+    final CoEntityType entity,
+    final CoEntityLifecycle lifecycle)
   {
-    switch (e.lifecycle()) {
-
-      case ENTITY_CREATED: {
-        synchronized (this.entity_subjects) {
-          this.entity_subjects.put(
-            e.entity().id().value(), PublishSubject.create());
-        }
-        return;
-      }
+    switch (lifecycle) {
 
+      case ENTITY_CREATED:
       case ENTITY_TRAITS_CHANGED: {
         return;
       }
 
       case ENTITY_DESTROYED: {
-        synchronized (this.entity_subjects) {
-          this.entity_subjects.remove(
-            e.entity().id().value());
-        }
+        this.entity_channels.close(entity.id().value());
         return;
       }
     }
@@ -94,24 +115,204 @@ public final class CoEventService
   {
     this.checkActivated();
 
+    this.ring.shutDown();
     this.events.onComplete();
+    this.dispatcher.complete();
+
+    this.entity_channels.closeAll();
+  }
+
+  @Override
+  public void post(
+    final CoEventType e)
+  {
+    NullCheck.notNull(e, "Event");
+    this.checkActivated();
 
-    synchronized (this.entity_subjects) {
-      for (final PublishSubject<CoEventType> s : this.entity_subjects.values()) {
-        s.onComplete();
+    if (this.instrumentation.isEnabled()) {
+      this.instrumentation.onPost(e);
+    }
+
+    if (e instanceof CoEntityLifecycleEventType) {
+      final CoEntityLifecycleEventType le = (CoEntityLifecycleEventType) e;
+      this.onEntityLifecycle(le.entity(), le.lifecycle());
+    } else if (e instanceof CoEntityLifecycleBatchEventType) {
+      final CoEntityLifecycleBatchEventType be =
+        (CoEntityLifecycleBatchEventType) e;
+      if (be.lifecycle() == CoEntityLifecycle.ENTITY_DESTROYED) {
+        final List<CoEntityType> batch = be.entities();
+        for (int index = 0; index < batch.size(); ++index) {
+          this.onEntityLifecycle(batch.get(index), be.lifecycle());
+        }
       }
     }
 
-    this.entity_events.dispose();
+    if (this.ring.hasConsumers()) {
+      this.ring.publish(TRANSLATE_EVENT, e, null);
+    }
+
+    this.dispatcher.post(e);
+    if (this.events.hasObservers()) {
+      this.events.onNext(e);
+    }
   }
 
   @Override
-  public void post(
+  public void postEntityLifecycle(
+    final CoEntityType entity,
+    final CoEntityLifecycle lifecycle)
+  {
+    NullCheck.notNull(entity, "Entity");
+    NullCheck.notNull(lifecycle, "Lifecycle");
+    this.checkActivated();
+
+    this.onEntityLifecycle(entity, lifecycle);
+
+    if (this.ring.hasConsumers()) {
+      this.ring.publish(TRANSLATE_LIFECYCLE, entity, lifecycle);
+    }
+
+    final boolean typed =
+      this.dispatcher.hasObservers(CoEntityLifecycleEvent.class);
+    final boolean untyped =
+      this.events.hasObservers();
+
+    if (typed || untyped) {
+      final CoEntityLifecycleEvent e =
+        CoEntityLifecycleEvent.of(entity, lifecycle);
+      this.dispatcher.post(e);
+      if (untyped) {
+        this.events.onNext(e);
+      }
+    }
+  }
+
+  @Override
+  public <T extends CoEventType> Flowable<T> eventsOfTypeBounded(
+    final Class<T> c,
+    final CoEventDeliveryPolicy<T> policy)
+  {
+    return this.bounded(c, policy, CoEventQueueStatistics::new);
+  }
+
+  @Override
+  public <T extends CoEventType> Flowable<T> eventsOfTypeBounded(
+    final Class<T> c,
+    final CoEventDeliveryPolicy<T> policy,
+    final CoEventQueueStatistics statistics)
+  {
+    NullCheck.notNull(statistics, "Statistics");
+    return this.bounded(c, policy, () -> statistics);
+  }
+
+  private <T extends CoEventType> Flowable<T> bounded(
+    final Class<T> c,
+    final CoEventDeliveryPolicy<T> policy,
+    final Supplier<CoEventQueueStatistics> statistics)
+  {
+    NullCheck.notNull(c, "Class");
+    NullCheck.notNull(policy, "Policy");
+
+    final Publisher<T> publisher = subscriber -> {
+      final CoEventBoundedSubscription<T> s =
+        new CoEventBoundedSubscription<>(
+          c, subscriber, policy, statistics.get());
+      subscriber.onSubscribe(s);
+      s.connect(this.dispatcher);
+    };
+
+    return Flowable.fromPublisher(publisher);
+  }
+
+  @Override
+  public <T extends CoEventType> Disposable subscribe(
+    final String subscriber,
+    final Class<T> c,
+    final Scheduler scheduler,
+    final Consumer<? super T> handler)
+  {
+    NullCheck.notNull(subscriber, "Subscriber");
+    NullCheck.notNull(scheduler, "Scheduler");
+    NullCheck.notNull(handler, "Handler");
+
+    if (!this.instrumentation.isEnabled()) {
+      return this.eventsOfType(c)
+        .observeOn(scheduler)
+        .subscribe(handler, ex -> onHandlerError(subscriber, ex));
+    }
+
+    final CoEventInstrumentation.Subscriber<T> m =
+      this.instrumentation.subscriber(subscriber, c);
+
+    return this.eventsOfType(c)
+      .map(m::enqueue)
+      .observeOn(scheduler)
+      .subscribe(
+        s -> m.handle(s, handler),
+        ex -> onHandlerError(subscriber, ex));
+  }
+
+  @Override
+  public <T extends CoEventType> Disposable subscribeBounded(
+    final String subscriber,
+    final Class<T> c,
+    final CoEventDeliveryPolicy<T> policy,
+    final Scheduler scheduler,
+    final Consumer<? super T> handler)
+  {
+    NullCheck.notNull(subscriber, "Subscriber");
+    NullCheck.notNull(scheduler, "Scheduler");
+    NullCheck.notNull(handler, "Handler");
+
+    if (!this.instrumentation.isEnabled()) {
+      return this.eventsOfTypeBounded(c, policy)
+        .observeOn(scheduler, false, 1)
+        .subscribe(handler, ex -> onHandlerError(subscriber, ex));
+    }
+
+    final CoEventQueueStatistics statistics = new CoEventQueueStatistics();
+    final CoEventInstrumentation.Subscriber<T> m =
+      this.instrumentation.subscriberBounded(subscriber, c);
+    this.instrumentation.registerQueue(subscriber, c, statistics);
+
+    return this.eventsOfTypeBounded(c, policy, statistics)
+      .observeOn(scheduler, false, 1)
+      .subscribe(e -> m.time(e, handler), ex -> onHandlerError(subscriber, ex));
+  }
+
+  private static void onHandlerError(
+    final String subscriber,
+    final Throwable ex)
+  {
+    LOG.error("{}: event handler raised exception: ", subscriber, ex);
+  }
+
+  @Override
+  public boolean postToEntity(
+    final CoEntityID entity,
     final CoEventType e)
   {
+    NullCheck.notNull(entity, "Entity");
     NullCheck.notNull(e, "Event");
     this.checkActivated();
-    this.events.onNext(e);
+    return this.entity_channels.post(entity.value(), e);
+  }
+
+  @Override
+  public Observable<CoEventType> eventsForEntity(
+    final CoEntityID entity)
+  {
+    NullCheck.notNull(entity, "Entity");
+    return this.entity_channels.events(entity.value());
+  }
+
+  @Override
+  public Disposable eventsBatched(
+    final Executor executor,
+    final CoEventRingHandlerType<CoEventRingSlot> handler)
+  {
+    this.checkActivated();
+    return this.ring.consumer(executor, handler);
   }
 
   @Override
@@ -120,6 +321,13 @@ public final class CoEventService
     return this.events;
   }
 
+  @Override
+  public <T extends CoEventType> Observable<T> eventsOfType(
+    final Class<T> c)
+  {
+    return this.dispatcher.eventsOfType(c);
+  }
+
   @Override
   protected Logger log()
   {
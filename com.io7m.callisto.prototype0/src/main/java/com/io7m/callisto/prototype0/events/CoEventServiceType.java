@@ -16,12 +16,181 @@
 
 package com.io7m.callisto.prototype0.events;
 
+import com.io7m.callisto.prototype0.entities.CoEntityID;
+import com.io7m.callisto.prototype0.entities.CoEntityLifecycle;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
 import com.io7m.callisto.prototype0.services.CoServiceType;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+
+import java.util.concurrent.Executor;
 
 public interface CoEventServiceType extends CoServiceType
 {
   void post(CoEventType e);
 
+  /**
+   * Post an entity lifecycle event. Batched consumers receive the event
+   * without an event value being allocated; a value is only allocated if
+   * there are observers that require one.
+   *
+   * @param entity    The entity
+   * @param lifecycle The lifecycle change
+   */
+
+  void postEntityLifecycle(
+    CoEntityType entity,
+    CoEntityLifecycle lifecycle);
+
+  /**
+   * Subscribe to events of a given type, handling them on the given
+   * scheduler. This is equivalent to
+   * {@code eventsOfType(c).observeOn(scheduler).subscribe(handler)}, except
+   * that if the service is instrumented, queue depth, handler time, and
+   * post-to-handle latency are recorded under the given subscriber name.
+   * Exceptions raised by the handler are logged and end the subscription.
+   *
+   * @param subscriber The subscriber name
+   * @param c          The event type
+   * @param scheduler  The scheduler on which the handler is evaluated
+   * @param handler    The handler
+   * @param <T>        The event type
+   *
+   * @return A disposable that cancels the subscription
+   */
+
+  <T extends CoEventType> Disposable subscribe(
+    String subscriber,
+    Class<T> c,
+    Scheduler scheduler,
+    Consumer<? super T> handler);
+
+  /**
+   * Subscribe to events of a given type through a bounded queue, handling
+   * them on the given scheduler one at a time. If the service is
+   * instrumented, the queue statistics and handler time are recorded under
+   * the given subscriber name. Post-to-handle latency is not recorded, as
+   * queued events may be merged by the delivery policy.
+   *
+   * @param subscriber The subscriber name
+   * @param c          The event type
+   * @param policy     The delivery policy
+   * @param scheduler  The scheduler on which the handler is evaluated
+   * @param handler    The handler
+   * @param <T>        The event type
+   *
+   * @return A disposable that cancels the subscription
+   *
+   * @see #eventsOfTypeBounded(Class, CoEventDeliveryPolicy)
+   */
+
+  <T extends CoEventType> Disposable subscribeBounded(
+    String subscriber,
+    Class<T> c,
+    CoEventDeliveryPolicy<T> policy,
+    Scheduler scheduler,
+    Consumer<? super T> handler);
+
+  /**
+   * Post an event to a single entity. The event is delivered only to
+   * subscribers of {@link #eventsForEntity(CoEntityID)} for that entity, and
+   * not to subscribers of the global event stream.
+   *
+   * @param entity The entity
+   * @param e      The event
+   *
+   * @return {@code true} iff the entity currently has at least one subscriber
+   */
+
+  boolean postToEntity(
+    CoEntityID entity,
+    CoEventType e);
+
+  /**
+   * @param entity The entity
+   *
+   * @return An observable that receives events posted to the given entity,
+   * and that completes when the entity is destroyed; a subscription made
+   * after the entity has been destroyed does not complete and must be
+   * disposed of by the subscriber
+   */
+
+  Observable<CoEventType> eventsForEntity(
+    CoEntityID entity);
+
+  /**
+   * Subscribe to all events in batches. The handler is evaluated on the
+   * given executor at most once per batch of posted events, rather than once
+   * per event, and is never evaluated concurrently with itself.
+   *
+   * @param executor The executor on which the handler is evaluated
+   * @param handler  The handler
+   *
+   * @return A disposable that cancels the subscription
+   */
+
+  Disposable eventsBatched(
+    Executor executor,
+    CoEventRingHandlerType<CoEventRingSlot> handler);
+
+  /**
+   * @return An observable that receives every event; prefer
+   * {@link #eventsOfType(Class)}, which does not deliver events of
+   * unrelated types
+   */
+
   Observable<CoEventType> events();
+
+  /**
+   * @param c   The event type
+   * @param <T> The event type
+   *
+   * @return An observable that receives only events that are instances of
+   * {@code c}
+   */
+
+  <T extends CoEventType> Observable<T> eventsOfType(Class<T> c);
+
+  /**
+   * Subscribe to events of a given type through a bounded queue. Each
+   * subscription has its own queue of at most {@code policy.capacity()}
+   * events, and events are taken from the queue only as the subscriber
+   * requests them. When the queue is full, the policy's overflow behaviour
+   * is applied. Events are queued on the thread that posted them, so the
+   * {@link CoEventOverflowPolicy#OVERFLOW_BLOCK} policy blocks that thread
+   * until the subscriber has taken an event from the queue.
+   *
+   * @param c      The event type
+   * @param policy The delivery policy
+   * @param <T>    The event type
+   *
+   * @return A flowable that receives only events that are instances of
+   * {@code c}
+   */
+
+  <T extends CoEventType> Flowable<T> eventsOfTypeBounded(
+    Class<T> c,
+    CoEventDeliveryPolicy<T> policy);
+
+  /**
+   * Equivalent to {@link #eventsOfTypeBounded(Class, CoEventDeliveryPolicy)}
+   * except that the given statistics are updated by every subscription to
+   * the returned flowable.
+   *
+   * @param c          The event type
+   * @param policy     The delivery policy
+   * @param statistics The queue statistics
+   * @param <T>        The event type
+   *
+   * @return A flowable that receives only events that are instances of
+   * {@code c}
+   */
+
+  <T extends CoEventType> Flowable<T> eventsOfTypeBounded(
+    Class<T> c,
+    CoEventDeliveryPolicy<T> policy,
+    CoEventQueueStatistics statistics);
 }
@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.events;
+
+import com.io7m.jnull.NullCheck;
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>A dispatcher that delivers events only to the subscribers registered
+ * for the class of the event or one of its supertypes.</p>
+ *
+ * <p>The set of subjects interested in a given concrete event class is
+ * resolved the first time an event of that class is posted and cached
+ * thereafter. Registering a subscription for a previously unseen type
+ * invalidates the cache.</p>
+ *
+ * <p>Subjects are serialized, so an event posted while another thread is
+ * emitting to the same subject may be queued and emitted later by that
+ * other thread. Receivers registered with {@link #receive(Class,
+ * ReceiverType)} are instead invoked directly on the posting thread, and
+ * may therefore apply backpressure to the poster.</p>
+ */
+
+public final class CoEventTypeDispatcher
+{
+  @SuppressWarnings("unchecked")
+  private static final Subject<CoEventType>[] NO_SUBJECTS = new Subject[0];
+  private static final Receiver[] NO_RECEIVERS = new Receiver[0];
+
+  private final Map<Class<?>, Subject<CoEventType>> subjects;
+  private final CopyOnWriteArrayList<Receiver> receivers;
+  private final Map<Class<?>, Resolved> resolved;
+  private volatile int generation;
+
+  public CoEventTypeDispatcher()
+  {
+    this.subjects = new ConcurrentHashMap<>();
+    this.receivers = new CopyOnWriteArrayList<>();
+    this.resolved = new ConcurrentHashMap<>();
+    this.generation = 0;
+  }
+
+  /**
+   * @param c   The event type
+   * @param <T> The event type
+   *
+   * @return An observable that receives all events that are instances of
+   * {@code c}
+   */
+
+  public <T extends CoEventType> Observable<T> eventsOfType(
+    final Class<T> c)
+  {
+    NullCheck.notNull(c, "Class");
+
+    final Subject<CoEventType> existing = this.subjects.get(c);
+    if (existing != null) {
+      return existing.cast(c);
+    }
+
+    synchronized (this.subjects) {
+      final Subject<CoEventType> again = this.subjects.get(c);
+      if (again != null) {
+        return again.cast(c);
+      }
+
+      final Subject<CoEventType> created =
+        PublishSubject.<CoEventType>create().toSerialized();
+      this.subjects.put(c, created);
+      ++this.generation;
+      return created.cast(c);
+    }
+  }
+
+  /**
+   * Register a receiver that is invoked on the posting thread for every
+   * event that is an instance of {@code c}. The receiver may be invoked by
+   * several posting threads at once.
+   *
+   * @param c        The event type
+   * @param receiver The receiver
+   *
+   * @return A disposable that removes the receiver
+   */
+
+  Disposable receive(
+    final Class<? extends CoEventType> c,
+    final ReceiverType receiver)
+  {
+    NullCheck.notNull(c, "Class");
+    NullCheck.notNull(receiver, "Receiver");
+
+    final Receiver r = new Receiver(c, receiver);
+    synchronized (this.subjects) {
+      this.receivers.add(r);
+      ++this.generation;
+    }
+    return r;
+  }
+
+  /**
+   * Deliver an event to all interested subscribers.
+   *
+   * @param e The event
+   */
+
+  public void post(
+    final CoEventType e)
+  {
+    NullCheck.notNull(e, "Event");
+
+    final Resolved r = this.targets(e.getClass());
+    final Subject<CoEventType>[] targets = r.targets;
+    for (int index = 0; index < targets.length; ++index) {
+      targets[index].onNext(e);
+    }
+    final Receiver[] direct = r.receivers;
+    for (int index = 0; index < direct.length; ++index) {
+      direct[index].receiver.onReceive(e);
+    }
+  }
+
+  /**
+   * @param c The event class
+   *
+   * @return {@code true} iff an event of class {@code c} posted now would be
+   * delivered to at least one observer
+   */
+
+  public boolean hasObservers(
+    final Class<?> c)
+  {
+    NullCheck.notNull(c, "Class");
+
+    final Resolved r = this.targets(c);
+    if (r.receivers.length > 0) {
+      return true;
+    }
+
+    final Subject<CoEventType>[] targets = r.targets;
+    for (int index = 0; index < targets.length; ++index) {
+      if (targets[index].hasObservers()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Complete all subjects and receivers.
+   */
+
+  public void complete()
+  {
+    for (final Subject<CoEventType> s : this.subjects.values()) {
+      s.onComplete();
+    }
+    for (final Receiver r : this.receivers) {
+      r.receiver.onReceiveComplete();
+    }
+  }
+
+  private Resolved targets(
+    final Class<?> c)
+  {
+    final int current = this.generation;
+    final Resolved r = this.resolved.get(c);
+    if (r != null && r.generation == current) {
+      return r;
+    }
+
+    final Resolved fresh =
+      new Resolved(current, this.resolveSubjects(c), this.resolveReceivers(c));
+    this.resolved.put(c, fresh);
+    return fresh;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Subject<CoEventType>[] resolveSubjects(
+    final Class<?> c)
+  {
+    final List<Subject<CoEventType>> targets = new ArrayList<>(4);
+    for (final Map.Entry<Class<?>, Subject<CoEventType>> e :
+      this.subjects.entrySet()) {
+      if (e.getKey().isAssignableFrom(c)) {
+        targets.add(e.getValue());
+      }
+    }
+
+    if (targets.isEmpty()) {
+      return NO_SUBJECTS;
+    }
+    return targets.toArray(new Subject[targets.size()]);
+  }
+
+  private Receiver[] resolveReceivers(
+    final Class<?> c)
+  {
+    final List<Receiver> targets = new ArrayList<>(4);
+    for (final Receiver r : this.receivers) {
+      if (r.type.isAssignableFrom(c)) {
+        targets.add(r);
+      }
+    }
+
+    if (targets.isEmpty()) {
+      return NO_RECEIVERS;
+    }
+    return targets.toArray(new Receiver[targets.size()]);
+  }
+
+  /**
+   * A receiver of events delivered on the posting thread.
+   */
+
+  interface ReceiverType
+  {
+    /**
+     * An event was posted.
+     *
+     * @param e The event
+     */
+
+    void onReceive(CoEventType e);
+
+    /**
+     * The dispatcher has completed.
+     */
+
+    void onReceiveComplete();
+  }
+
+  private final class Receiver implements Disposable
+  {
+    private final Class<?> type;
+    private final ReceiverType receiver;
+    private final AtomicBoolean disposed;
+
+    Receiver(
+      final Class<?> in_type,
+      final ReceiverType in_receiver)
+    {
+      this.type = in_type;
+      this.receiver = in_receiver;
+      this.disposed = new AtomicBoolean(false);
+    }
+
+    @Override
+    public void dispose()
+    {
+      if (this.disposed.compareAndSet(false, true)) {
+        final CoEventTypeDispatcher d = CoEventTypeDispatcher.this;
+        synchronized (d.subjects) {
+          d.receivers.remove(this);
+          ++d.generation;
+        }
+      }
+    }
+
+    @Override
+    public boolean isDisposed()
+    {
+      return this.disposed.get();
+    }
+  }
+
+  private static final class Resolved
+  {
+    private final int generation;
+    private final Subject<CoEventType>[] targets;
+    private final Receiver[] receivers;
+
+    Resolved(
+      final int in_generation,
+      final Subject<CoEventType>[] in_targets,
+      final Receiver[] in_receivers)
+    {
+      this.generation = in_generation;
+      this.targets = in_targets;
+      this.receivers = in_receivers;
+    }
+  }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.idpool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A lock-free pool of generational identifiers.</p>
+ *
+ * <p>An identifier packs a slot index into its low {@link #INDEX_BITS} bits
+ * and a generation into the remaining high bits. Each slot's generation is
+ * incremented both when the slot is allocated and when it is released, so
+ * live identifiers always have odd generations and a released identifier
+ * can never compare equal to the current generation of its slot. Checking
+ * whether an identifier is still live is therefore a single array read.</p>
+ *
+ * <p>Generations wrap after {@link #GENERATION_LIVE_COUNT} allocations of
+ * a slot. Rather than allowing a wrapped generation to validate an old
+ * identifier again, a slot is retired when an identifier with the largest
+ * generation is released: the slot is never returned to the free list, and
+ * so is never allocated again. Every retired slot reduces the capacity of
+ * the pool by one.</p>
+ *
+ * <p>Released slots are pushed onto a lock-free LIFO free list (a Treiber
+ * stack whose head carries a modification count to avoid ABA problems), so
+ * that recently released slots, which are likely to still be in cache, are
+ * reused first. Slot state is held in chunks that are allocated on
+ * demand.</p>
+ */
+
+public final class CoIDPoolGenerational implements CoIDPoolType
+{
+  /**
+   * The number of bits used for the slot index.
+   */
+
+  public static final int INDEX_BITS = 20;
+
+  /**
+   * The maximum number of simultaneously live identifiers.
+   */
+
+  public static final int CAPACITY = 1 << INDEX_BITS;
+
+  private static final int INDEX_MASK = CAPACITY - 1;
+  private static final int GENERATION_MASK = (1 << (32 - INDEX_BITS)) - 1;
+
+  /**
+   * The number of times that a slot can be allocated before it is retired.
+   */
+
+  public static final int GENERATION_LIVE_COUNT = (GENERATION_MASK + 1) / 2;
+
+  private static final int CHUNK_BITS = 10;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  private static final int FREE_NONE = -1;
+
+  private final AtomicReferenceArray<AtomicIntegerArray> generations;
+  private final AtomicReferenceArray<AtomicIntegerArray> free_next;
+  private final AtomicInteger index_next;
+  private final AtomicLong free_head;
+
+  public CoIDPoolGenerational()
+  {
+    this.generations = new AtomicReferenceArray<>(CAPACITY >>> CHUNK_BITS);
+    this.free_next = new AtomicReferenceArray<>(CAPACITY >>> CHUNK_BITS);
+    this.index_next = new AtomicInteger(0);
+    this.free_head = new AtomicLong(pack(0, FREE_NONE));
+  }
+
+  /**
+   * @param id An identifier
+   *
+   * @return The slot index of the identifier
+   */
+
+  public static int index(
+    final int id)
+  {
+    return id & INDEX_MASK;
+  }
+
+  /**
+   * @param id An identifier
+   *
+   * @return The generation of the identifier
+   */
+
+  public static int generation(
+    final int id)
+  {
+    return (id >>> INDEX_BITS) & GENERATION_MASK;
+  }
+
+  private static int identifier(
+    final int index,
+    final int generation)
+  {
+    return (generation << INDEX_BITS) | index;
+  }
+
+  private static long pack(
+    final int count,
+    final int index)
+  {
+    return ((long) count << 32) | (index & 0xffffffffL);
+  }
+
+  private static AtomicIntegerArray chunk(
+    final AtomicReferenceArray<AtomicIntegerArray> chunks,
+    final int index)
+  {
+    final int chunk_index = index >>> CHUNK_BITS;
+    final AtomicIntegerArray existing = chunks.get(chunk_index);
+    if (existing != null) {
+      return existing;
+    }
+
+    final AtomicIntegerArray created = new AtomicIntegerArray(CHUNK_SIZE);
+    if (chunks.compareAndSet(chunk_index, null, created)) {
+      return created;
+    }
+    return chunks.get(chunk_index);
+  }
+
+  @Override
+  public int fresh()
+  {
+    final int index = this.allocateIndex();
+    final AtomicIntegerArray gens = chunk(this.generations, index);
+    final int offset = index & CHUNK_MASK;
+    final int generation = (gens.get(offset) + 1) & GENERATION_MASK;
+    gens.set(offset, generation);
+    return identifier(index, generation);
+  }
+
+  @Override
+  public void release(
+    final int x)
+  {
+    final int index = index(x);
+    final int generation = generation(x);
+
+    final AtomicIntegerArray gens = this.generations.get(index >>> CHUNK_BITS);
+    if (gens == null
+      || (generation & 1) == 0
+      || !gens.compareAndSet(
+      index & CHUNK_MASK, generation, (generation + 1) & GENERATION_MASK)) {
+      throw new IllegalArgumentException(
+        "Identifier is not live: " + Integer.toUnsignedString(x));
+    }
+
+    if (generation != GENERATION_MASK) {
+      this.freePush(index);
+    }
+  }
+
+  /**
+   * Allocate {@code count} identifiers at once. Released slots are reused
+   * first, and any remaining slots are reserved with a single atomic
+   * update.
+   *
+   * @param out    The array that will receive the identifiers
+   * @param offset The starting offset in {@code out}
+   * @param count  The number of identifiers to allocate
+   *
+   * @throws IllegalStateException If the pool does not have enough capacity
+   */
+
+  public void freshBulk(
+    final int[] out,
+    final int offset,
+    final int count)
+  {
+    int taken = 0;
+    while (taken < count) {
+      final int index = this.allocateFreeIndex();
+      if (index == FREE_NONE) {
+        break;
+      }
+      out[offset + taken] = index;
+      ++taken;
+    }
+
+    final int remaining = count - taken;
+    if (remaining > 0) {
+      while (true) {
+        final int start = this.index_next.get();
+        if (start + remaining > CAPACITY) {
+          for (int index = 0; index < taken; ++index) {
+            this.freePush(out[offset + index]);
+          }
+          throw new IllegalStateException("Identifier pool overflow.");
+        }
+        if (this.index_next.compareAndSet(start, start + remaining)) {
+          for (int index = 0; index < remaining; ++index) {
+            out[offset + taken + index] = start + index;
+          }
+          break;
+        }
+      }
+    }
+
+    for (int index = 0; index < count; ++index) {
+      final int slot = out[offset + index];
+      final AtomicIntegerArray gens = chunk(this.generations, slot);
+      final int slot_offset = slot & CHUNK_MASK;
+      final int generation = (gens.get(slot_offset) + 1) & GENERATION_MASK;
+      gens.set(slot_offset, generation);
+      out[offset + index] = identifier(slot, generation);
+    }
+  }
+
+  /**
+   * Release {@code count} identifiers at once. The released slots are linked
+   * together and pushed onto the free list with a single atomic update.
+   *
+   * @param ids    The identifiers
+   * @param offset The starting offset in {@code ids}
+   * @param count  The number of identifiers to release
+   *
+   * @throws IllegalArgumentException If any of the identifiers is not live;
+   *                                  the identifiers preceding it are still
+   *                                  released
+   */
+
+  public void releaseBulk(
+    final int[] ids,
+    final int offset,
+    final int count)
+  {
+    int first = FREE_NONE;
+    int last = FREE_NONE;
+    IllegalArgumentException failure = null;
+
+    for (int index = 0; index < count; ++index) {
+      final int x = ids[offset + index];
+      final int slot = index(x);
+      final int generation = generation(x);
+
+      final AtomicIntegerArray gens = this.generations.get(slot >>> CHUNK_BITS);
+      if (gens == null
+        || (generation & 1) == 0
+        || !gens.compareAndSet(
+        slot & CHUNK_MASK, generation, (generation + 1) & GENERATION_MASK)) {
+        failure = new IllegalArgumentException(
+          "Identifier is not live: " + Integer.toUnsignedString(x));
+        break;
+      }
+
+      if (generation == GENERATION_MASK) {
+        continue;
+      }
+
+      if (first == FREE_NONE) {
+        first = slot;
+      } else {
+        chunk(this.free_next, last).set(last & CHUNK_MASK, slot);
+      }
+      last = slot;
+    }
+
+    if (first != FREE_NONE) {
+      final AtomicIntegerArray next = chunk(this.free_next, last);
+      while (true) {
+        final long head = this.free_head.get();
+        next.set(last & CHUNK_MASK, (int) head);
+        final int mod = (int) (head >>> 32);
+        if (this.free_head.compareAndSet(head, pack(mod + 1, first))) {
+          break;
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * @param x An identifier
+   *
+   * @return {@code true} iff the identifier was returned by {@link #fresh()}
+   * and has not since been released
+   */
+
+  public boolean isLive(
+    final int x)
+  {
+    final int generation = generation(x);
+    if ((generation & 1) == 0) {
+      return false;
+    }
+
+    final int index = index(x);
+    final AtomicIntegerArray gens = this.generations.get(index >>> CHUNK_BITS);
+    return gens != null && gens.get(index & CHUNK_MASK) == generation;
+  }
+
+  private int allocateFreeIndex()
+  {
+    while (true) {
+      final long head = this.free_head.get();
+      final int top = (int) head;
+      if (top == FREE_NONE) {
+        return FREE_NONE;
+      }
+
+      final int next = chunk(this.free_next, top).get(top & CHUNK_MASK);
+      final int count = (int) (head >>> 32);
+      if (this.free_head.compareAndSet(head, pack(count + 1, next))) {
+        return top;
+      }
+    }
+  }
+
+  private int allocateIndex()
+  {
+    final int free = this.allocateFreeIndex();
+    if (free != FREE_NONE) {
+      return free;
+    }
+
+    final int index = this.index_next.getAndIncrement();
+    if (index >= CAPACITY) {
+      this.index_next.decrementAndGet();
+      throw new IllegalStateException("Identifier pool overflow.");
+    }
+    return index;
+  }
+
+  private void freePush(
+    final int index)
+  {
+    final AtomicIntegerArray next = chunk(this.free_next, index);
+    while (true) {
+      final long head = this.free_head.get();
+      next.set(index & CHUNK_MASK, (int) head);
+      final int count = (int) (head >>> 32);
+      if (this.free_head.compareAndSet(head, pack(count + 1, index))) {
+        return;
+      }
+    }
+  }
+}
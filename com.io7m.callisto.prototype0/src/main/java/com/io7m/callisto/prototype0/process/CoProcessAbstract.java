@@ -1,15 +1,23 @@
 package com.io7m.callisto.prototype0.process;
 
+import com.io7m.callisto.prototype0.events.CoEventDeliveryPolicy;
+import com.io7m.callisto.prototype0.events.CoEventRingHandlerType;
+import com.io7m.callisto.prototype0.events.CoEventRingSlot;
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
+import com.io7m.callisto.prototype0.events.CoEventType;
+import com.io7m.callisto.prototype0.ticks.CoTickRateType;
+import com.io7m.callisto.prototype0.ticks.CoTickReceiverType;
+import com.io7m.callisto.prototype0.ticks.CoTickRegistration;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
 import com.io7m.jnull.NullCheck;
 import io.reactivex.Scheduler;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
 import io.reactivex.schedulers.Schedulers;
 import org.slf4j.Logger;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 
@@ -17,26 +25,40 @@ public abstract class CoProcessAbstract implements CoProcessType
 {
   private final ExecutorService exec;
   private final CoEventServiceType events;
-  private final CoProcessSupervisorEventResponse response;
   private final Scheduler scheduler;
   private volatile State state;
-  private Disposable sub_supervisor;
 
   protected CoProcessAbstract(
     final CoEventServiceType in_events,
     final ThreadFactory factory)
+  {
+    this(in_events, factory, CoProcessExecution.dedicated());
+  }
+
+  /**
+   * Construct a process. The process's {@link #name()} is passed to the
+   * execution model during construction, and so must not depend on the
+   * state of subclasses.
+   *
+   * @param in_events    The event service
+   * @param factory      The factory used to create a thread for the process,
+   *                     if the execution model requires one
+   * @param in_execution The execution model
+   */
+
+  protected CoProcessAbstract(
+    final CoEventServiceType in_events,
+    final ThreadFactory factory,
+    final CoProcessExecutionType in_execution)
   {
     this.events =
       NullCheck.notNull(in_events, "Events");
     this.exec =
-      Executors.newSingleThreadExecutor(
-        NullCheck.notNull(factory, "Factory"));
+      NullCheck.notNull(in_execution, "Execution")
+        .createExecutor(this.name(), NullCheck.notNull(factory, "Factory"));
     this.scheduler =
       Schedulers.from(this.exec);
 
-    this.response =
-      CoProcessSupervisorEventResponse.of(this);
-
     this.state = State.PROCESS_UNINITIALIZED;
   }
 
@@ -72,6 +94,81 @@ public abstract class CoProcessAbstract implements CoProcessType
     return this.events;
   }
 
+  /**
+   * Subscribe to events of the given type, handled on this process's
+   * executor and named after this process in event instrumentation.
+   *
+   * @param c       The event type
+   * @param handler The event handler
+   * @param <T>     The event type
+   *
+   * @return A disposable that cancels the subscription
+   */
+
+  protected final <T extends CoEventType> Disposable subscribe(
+    final Class<T> c,
+    final Consumer<? super T> handler)
+  {
+    return this.events.subscribe(this.name(), c, this.scheduler, handler);
+  }
+
+  /**
+   * Subscribe to events of the given type through a bounded queue, handled
+   * on this process's executor and named after this process in event
+   * instrumentation.
+   *
+   * @param c       The event type
+   * @param policy  The delivery policy
+   * @param handler The event handler
+   * @param <T>     The event type
+   *
+   * @return A disposable that cancels the subscription
+   */
+
+  protected final <T extends CoEventType> Disposable subscribeBounded(
+    final Class<T> c,
+    final CoEventDeliveryPolicy<T> policy,
+    final Consumer<? super T> handler)
+  {
+    return this.events.subscribeBounded(
+      this.name(), c, policy, this.scheduler, handler);
+  }
+
+  /**
+   * Register this process with a tick scheduler. Ticks are delivered on
+   * this process's executor.
+   *
+   * @param ticks    The tick scheduler
+   * @param rate     The rate at which this process receives ticks
+   * @param receiver The tick receiver
+   *
+   * @return The registration
+   */
+
+  protected final CoTickRegistration registerTicks(
+    final CoTickScheduler ticks,
+    final CoTickRateType rate,
+    final CoTickReceiverType receiver)
+  {
+    return ticks.register(this.name(), rate, this.exec, receiver);
+  }
+
+  /**
+   * Subscribe to all events in batches, delivered on this process's
+   * executor. The process is woken once per batch of posted events rather
+   * than once per event.
+   *
+   * @param handler The event handler
+   *
+   * @return A disposable that cancels the subscription
+   */
+
+  protected final Disposable eventsBatched(
+    final CoEventRingHandlerType<CoEventRingSlot> handler)
+  {
+    return this.events.eventsBatched(this.exec, handler);
+  }
+
   @Override
   public final Future<Void> initialize()
   {
@@ -79,12 +176,6 @@ public abstract class CoProcessAbstract implements CoProcessType
       return CompletableFuture.completedFuture(null);
     }
 
-    this.sub_supervisor =
-      this.events().events()
-        .ofType(CoProcessSupervisorEventRequest.class)
-        .observeOn(this.scheduler)
-        .subscribe(this::onSupervisorRequest);
-
     return this.exec.submit(() -> {
       switch (this.state) {
         case PROCESS_UNINITIALIZED: {
@@ -104,12 +195,6 @@ public abstract class CoProcessAbstract implements CoProcessType
     });
   }
 
-  private void onSupervisorRequest(
-    final CoProcessSupervisorEventRequest event)
-  {
-    this.events.post(this.response);
-  }
-
   @Override
   public final String toString()
   {
@@ -157,7 +242,6 @@ public abstract class CoProcessAbstract implements CoProcessType
         }
         case PROCESS_INITIALIZED:
         case PROCESS_STARTED: {
-          this.sub_supervisor.dispose();
           this.doStop();
           this.state = State.PROCESS_STOPPED;
           break;
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.process;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Standard process execution models.
+ */
+
+public final class CoProcessExecution
+{
+  private CoProcessExecution()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Each process runs on a platform thread of its own, created with the
+   * process's own thread factory.
+   *
+   * @return A thread-per-process execution model
+   */
+
+  public static CoProcessExecutionType dedicated()
+  {
+    return (name, threads) -> Executors.newSingleThreadExecutor(threads);
+  }
+
+  /**
+   * Each process runs on a thread of its own, created with the given thread
+   * factory instead of the process's own. This allows, for example, a
+   * factory that produces lightweight threads to be used on platforms that
+   * provide them.
+   *
+   * @param threads The thread factory
+   *
+   * @return A thread-per-process execution model
+   */
+
+  public static CoProcessExecutionType dedicated(
+    final ThreadFactory threads)
+  {
+    NullCheck.notNull(threads, "Threads");
+    return (name, ignored) -> Executors.newSingleThreadExecutor(threads);
+  }
+
+  /**
+   * Each process is a serial actor on the given pool. A process occupies a
+   * pool thread only while it has tasks to run, and gives up the thread
+   * after a bounded batch of tasks so that other processes on the same pool
+   * are not starved.
+   *
+   * @param pool The shared pool
+   *
+   * @return A shared pool execution model
+   */
+
+  public static CoProcessExecutionType shared(
+    final Executor pool)
+  {
+    NullCheck.notNull(pool, "Pool");
+    return (name, ignored) -> new CoProcessSerialExecutor(pool);
+  }
+
+  /**
+   * Each process uses the given execution model, and every task run by the
+   * process is observed by the given watchdog.
+   *
+   * @param execution The underlying execution model
+   * @param watchdog  The watchdog
+   *
+   * @return A watched execution model
+   */
+
+  public static CoProcessExecutionType watched(
+    final CoProcessExecutionType execution,
+    final CoProcessWatchdog watchdog)
+  {
+    NullCheck.notNull(execution, "Execution");
+    NullCheck.notNull(watchdog, "Watchdog");
+    return (name, threads) ->
+      watchdog.watch(name, execution.createExecutor(name, threads));
+  }
+
+  /**
+   * Create a pool suitable for use with {@link #shared(Executor)}, with one
+   * daemon thread per available processor.
+   *
+   * @param name The prefix used for thread names
+   *
+   * @return A new pool
+   */
+
+  public static ExecutorService createSharedPool(
+    final String name)
+  {
+    NullCheck.notNull(name, "Name");
+    return Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(),
+      r -> {
+        final Thread th = new Thread(r);
+        th.setName(name + "." + th.getId());
+        th.setDaemon(true);
+        return th;
+      });
+  }
+
+  /**
+   * Return a scheduled executor shared by all processes in the JVM. The
+   * executor is only suitable for short tasks that hand work off to a
+   * process executor after a delay.
+   *
+   * @return The shared timer
+   */
+
+  public static ScheduledExecutorService timer()
+  {
+    return TimerHolder.TIMER;
+  }
+
+  private static final class TimerHolder
+  {
+    private static final ScheduledExecutorService TIMER =
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread th = new Thread(r);
+        th.setName("com.io7m.callisto.process.timer." + th.getId());
+        th.setDaemon(true);
+        th.setPriority(Thread.MIN_PRIORITY);
+        return th;
+      });
+
+    private TimerHolder()
+    {
+      throw new UnreachableCodeException();
+    }
+  }
+}
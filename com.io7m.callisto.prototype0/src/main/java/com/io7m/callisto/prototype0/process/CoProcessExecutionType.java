@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>The execution model of a process.</p>
+ *
+ * <p>Every executor returned by an execution model must run submitted tasks
+ * one at a time, in submission order, with each task observing the effects
+ * of the tasks that preceded it. Processes rely on this to avoid locking
+ * their own state.</p>
+ *
+ * @see CoProcessExecution
+ */
+
+@FunctionalInterface
+public interface CoProcessExecutionType
+{
+  /**
+   * Create an executor for a process.
+   *
+   * @param name    The process name
+   * @param threads The thread factory the process would use for a thread of
+   *                its own
+   *
+   * @return A new serial executor
+   */
+
+  ExecutorService createExecutor(
+    String name,
+    ThreadFactory threads);
+}
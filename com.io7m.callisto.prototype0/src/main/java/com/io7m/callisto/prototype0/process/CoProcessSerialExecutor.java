@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.process;
+
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>An executor that runs tasks one at a time, in submission order, on
+ * threads borrowed from an underlying pool.</p>
+ *
+ * <p>At most one drain of the task queue is scheduled on the pool at any
+ * given time. A drain runs at most {@link #BATCH} tasks before giving the
+ * pool thread back and rescheduling itself, so that many serial executors
+ * can share a small pool fairly.</p>
+ */
+
+public final class CoProcessSerialExecutor extends AbstractExecutorService
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoProcessSerialExecutor.class);
+
+  private static final int BATCH = 64;
+
+  private final Executor pool;
+  private final Queue<Runnable> tasks;
+  private final AtomicBoolean scheduled;
+  private final AtomicBoolean terminated_flag;
+  private final CountDownLatch terminated;
+  private volatile boolean shutdown;
+
+  /**
+   * Construct an executor.
+   *
+   * @param in_pool The underlying pool
+   */
+
+  public CoProcessSerialExecutor(
+    final Executor in_pool)
+  {
+    this.pool = NullCheck.notNull(in_pool, "Pool");
+    this.tasks = new ConcurrentLinkedQueue<>();
+    this.scheduled = new AtomicBoolean(false);
+    this.terminated_flag = new AtomicBoolean(false);
+    this.terminated = new CountDownLatch(1);
+  }
+
+  @Override
+  public void execute(
+    final Runnable command)
+  {
+    NullCheck.notNull(command, "Command");
+    if (this.shutdown) {
+      throw new RejectedExecutionException("Executor has been shut down");
+    }
+    this.tasks.add(command);
+    this.schedule();
+  }
+
+  private void schedule()
+  {
+    if (this.scheduled.compareAndSet(false, true)) {
+      try {
+        this.pool.execute(this::drain);
+      } catch (final RejectedExecutionException e) {
+        this.scheduled.set(false);
+        throw e;
+      }
+    }
+  }
+
+  private void drain()
+  {
+    try {
+      for (int index = 0; index < BATCH; ++index) {
+        final Runnable task = this.tasks.poll();
+        if (task == null) {
+          break;
+        }
+        try {
+          task.run();
+        } catch (final RuntimeException e) {
+          LOG.error("uncaught exception in task: ", e);
+        }
+      }
+    } finally {
+      this.scheduled.set(false);
+    }
+
+    if (!this.tasks.isEmpty()) {
+      this.schedule();
+      return;
+    }
+
+    if (this.shutdown && this.terminated_flag.compareAndSet(false, true)) {
+      this.terminated.countDown();
+    }
+  }
+
+  @Override
+  public void shutdown()
+  {
+    this.shutdown = true;
+    this.schedule();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow()
+  {
+    this.shutdown = true;
+    final List<Runnable> pending = new ArrayList<>(this.tasks.size());
+    while (true) {
+      final Runnable task = this.tasks.poll();
+      if (task == null) {
+        break;
+      }
+      pending.add(task);
+    }
+    this.schedule();
+    return pending;
+  }
+
+  @Override
+  public boolean isShutdown()
+  {
+    return this.shutdown;
+  }
+
+  @Override
+  public boolean isTerminated()
+  {
+    return this.terminated.getCount() == 0L;
+  }
+
+  @Override
+  public boolean awaitTermination(
+    final long timeout,
+    final TimeUnit unit)
+    throws InterruptedException
+  {
+    return this.terminated.await(timeout, unit);
+  }
+}
@@ -17,38 +17,41 @@
 package com.io7m.callisto.prototype0.process;
 
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
+import com.io7m.jnull.NullCheck;
 import io.reactivex.disposables.Disposable;
-import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
-import net.jcip.annotations.GuardedBy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * <p>A process that supervises a set of processes.</p>
+ *
+ * <p>Processes are observed by a {@link CoProcessWatchdog}, which reports
+ * any process that spends too long in a single task within a few
+ * milliseconds. The supervisor publishes each report as a
+ * {@link CoProcessSupervisorEventTimedOut} event.</p>
+ */
 
 public final class CoProcessSupervisor extends CoProcessAbstract
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(CoProcessSupervisor.class);
 
-  private static final CoProcessSupervisorEventRequest REQUEST =
-    CoProcessSupervisorEventRequest.builder().build();
-
-  private final ReferenceOpenHashSet<CoProcessType> watched;
-  private final
-  @GuardedBy("watched") ReferenceOpenHashSet<CoProcessType> unresponsive;
+  private final List<CoProcessType> processes;
+  private final CoProcessWatchdog watchdog;
+  private final Consumer<CoProcessWatchdogStall> listener;
   private final Disposable supervise_sub;
-  private final ScheduledExecutorService sched_exec;
-  private Future<?> send;
-  private ScheduledFuture<?> check;
+  private volatile Map<String, CoProcessType> by_name;
 
   public CoProcessSupervisor(
     final CoEventServiceType in_events,
-    final List<CoProcessType> in_processes)
+    final List<CoProcessType> in_processes,
+    final CoProcessExecutionType in_execution,
+    final CoProcessWatchdog in_watchdog)
   {
     super(
       in_events,
@@ -56,31 +59,26 @@ public final class CoProcessSupervisor extends CoProcessAbstract
         final Thread th = new Thread(r);
         th.setName("com.io7m.callisto.supervisor." + th.getId());
         return th;
-      });
-
-    this.watched = new ReferenceOpenHashSet<>(in_processes);
-    this.unresponsive = new ReferenceOpenHashSet<>();
+      },
+      in_execution);
 
-    this.sched_exec = Executors.newScheduledThreadPool(1, r -> {
-      final Thread th = new Thread(r);
-      th.setName("com.io7m.callisto.supervisor.timed." + th.getId());
-      th.setPriority(Thread.MIN_PRIORITY);
-      return th;
-    });
+    this.processes = NullCheck.notNull(in_processes, "Processes");
+    this.watchdog = NullCheck.notNull(in_watchdog, "Watchdog");
+    this.listener = this::onStall;
+    this.by_name = new HashMap<>();
 
     this.supervise_sub =
-      this.events().events()
-        .ofType(CoProcessSupervisorEventType.class)
-        .observeOn(this.scheduler())
-        .subscribe(
-          this::onSupervisorEvent,
-          CoProcessSupervisor::onSupervisorEventError);
+      this.subscribe(
+        CoProcessSupervisorEventType.class, this::onSupervisorEvent);
   }
 
-  private static void onSupervisorEventError(
-    final Throwable ex)
+  private void onStall(
+    final CoProcessWatchdogStall stall)
   {
-    LOG.error("onSupervisorEventError: ", ex);
+    final CoProcessType process = this.by_name.get(stall.process());
+    if (process != null) {
+      this.events().post(CoProcessSupervisorEventTimedOut.of(process));
+    }
   }
 
   private void onSupervisorEvent(
@@ -105,11 +103,6 @@ public final class CoProcessSupervisor extends CoProcessAbstract
   private Void onSupervisorEventResponse(
     final CoProcessSupervisorEventResponseType input)
   {
-    LOG.trace("process {} responded", input.subsystem());
-
-    synchronized (this.watched) {
-      this.unresponsive.remove(input.subsystem());
-    }
     return null;
   }
 
@@ -142,11 +135,15 @@ public final class CoProcessSupervisor extends CoProcessAbstract
   {
     LOG.trace("start");
 
-    synchronized (this.watched) {
-      this.unresponsive.clear();
+    final Map<String, CoProcessType> names =
+      new HashMap<>(this.processes.size());
+    for (final CoProcessType process : this.processes) {
+      names.put(process.name(), process);
     }
+    this.by_name = names;
 
-    this.scheduleNextRequest();
+    this.watchdog.addListener(this.listener);
+    this.watchdog.start();
   }
 
   @Override
@@ -160,70 +157,7 @@ public final class CoProcessSupervisor extends CoProcessAbstract
   {
     LOG.trace("stop");
     this.supervise_sub.dispose();
-
-    final Future<?> s = this.send;
-    if (s != null) {
-      s.cancel(true);
-    }
-
-    final ScheduledFuture<?> c = this.check;
-    if (c != null) {
-      c.cancel(true);
-    }
-
-    this.sched_exec.shutdown();
-  }
-
-  private void doSendRequests()
-  {
-    /*
-     * Mark all processes as unresponsive and then allow them to mark themselves
-     * as active when requested.
-     */
-
-    synchronized (this.watched) {
-      this.unresponsive.addAll(this.watched);
-    }
-
-    LOG.trace("sending process request");
-    this.events().post(REQUEST);
-
-    this.scheduleNextCheck();
-  }
-
-  private void scheduleNextCheck()
-  {
-    this.check = this.sched_exec.schedule(
-      () -> this.executor().execute(this::doCheckResponses),
-      10L,
-      TimeUnit.SECONDS);
-  }
-
-  private void doCheckResponses()
-  {
-    /*
-     * Check if all processes have removed themselves from the unresponsive set.
-     */
-
-    LOG.trace("checking processes");
-
-    final ReferenceOpenHashSet<CoProcessType> current_unresponsive;
-    synchronized (this.watched) {
-      current_unresponsive = new ReferenceOpenHashSet<>(this.unresponsive);
-    }
-
-    LOG.trace("unresponsive: {}", current_unresponsive);
-
-    if (!current_unresponsive.isEmpty()) {
-      current_unresponsive.forEach(
-        c -> this.events().post(CoProcessSupervisorEventTimedOut.of(c)));
-    }
-
-    this.scheduleNextRequest();
-  }
-
-  private void scheduleNextRequest()
-  {
-    this.send = this.executor().submit(this::doSendRequests);
+    this.watchdog.removeListener(this.listener);
+    this.watchdog.stop();
   }
 }
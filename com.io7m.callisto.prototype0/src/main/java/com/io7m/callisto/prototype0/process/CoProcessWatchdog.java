@@ -0,0 +1,389 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.process;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * <p>A watchdog that detects processes that spend too long in a single
+ * task.</p>
+ *
+ * <p>Each registered process owns a slot in a shared array. The thread
+ * running a task for the process writes the task start time into the slot
+ * before the task and clears it afterwards, also recording the time the
+ * task waited in the process queue and the time it took. Slots are padded
+ * to {@link #SLOT_STRIDE} longs so that processes writing their own slots do
+ * not contend on cache lines.</p>
+ *
+ * <p>A sampling thread reads every slot at a short fixed period. If a task
+ * has been running for longer than the threshold, the stack of the thread
+ * running it is captured and the stall is reported to all listeners, once
+ * per task.</p>
+ */
+
+public final class CoProcessWatchdog
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoProcessWatchdog.class);
+
+  private static final int SLOT_STRIDE = 16;
+  private static final int SLOT_TASK_STARTED = 0;
+  private static final int SLOT_HEARTBEAT = 1;
+  private static final int SLOT_TASK_COUNT = 2;
+
+  private final AtomicLongArray slots;
+  private final AtomicReferenceArray<Thread> threads;
+  private final CoProcessWatchdogSlot[] registered;
+  private final long[] reported;
+  private final long threshold;
+  private final long period;
+  private final MetricRegistry metrics;
+  private final String prefix;
+  private final Meter stalls;
+  private final ThreadFactory thread_factory;
+  private final CopyOnWriteArrayList<Consumer<CoProcessWatchdogStall>> listeners;
+  private volatile int count;
+  private volatile Thread sampler;
+
+  private CoProcessWatchdog(
+    final MetricRegistry in_metrics,
+    final String in_prefix,
+    final int in_capacity,
+    final long in_threshold,
+    final long in_period,
+    final ThreadFactory in_threads)
+  {
+    this.metrics = in_metrics;
+    this.prefix = in_prefix;
+    this.threshold = in_threshold;
+    this.period = in_period;
+    this.thread_factory = in_threads;
+    this.slots = new AtomicLongArray(in_capacity * SLOT_STRIDE);
+    this.threads = new AtomicReferenceArray<>(in_capacity);
+    this.registered = new CoProcessWatchdogSlot[in_capacity];
+    this.reported = new long[in_capacity];
+    Arrays.fill(this.reported, -1L);
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.stalls = in_metrics.meter(MetricRegistry.name(in_prefix, "stalls"));
+    this.count = 0;
+  }
+
+  /**
+   * Create a watchdog.
+   *
+   * @param metrics   A metric registry
+   * @param prefix    The prefix used for metric names
+   * @param capacity  The maximum number of processes that can be registered
+   * @param threshold The time after which a running task is considered to
+   *                  have stalled
+   * @param period    The period at which slots are sampled
+   * @param unit      The unit of {@code threshold} and {@code period}
+   * @param threads   A factory for the sampling thread
+   *
+   * @return A new watchdog
+   */
+
+  public static CoProcessWatchdog create(
+    final MetricRegistry metrics,
+    final String prefix,
+    final int capacity,
+    final long threshold,
+    final long period,
+    final TimeUnit unit,
+    final ThreadFactory threads)
+  {
+    NullCheck.notNull(metrics, "Metrics");
+    NullCheck.notNull(prefix, "Prefix");
+    NullCheck.notNull(unit, "Unit");
+    NullCheck.notNull(threads, "Threads");
+
+    Preconditions.checkPreconditionI(
+      capacity, capacity > 0, c -> "Capacity must be positive");
+    Preconditions.checkPreconditionL(
+      threshold, threshold > 0L, t -> "Threshold must be positive");
+    Preconditions.checkPreconditionL(
+      period, period > 0L, p -> "Period must be positive");
+
+    return new CoProcessWatchdog(
+      metrics,
+      prefix,
+      capacity,
+      unit.toNanos(threshold),
+      unit.toNanos(period),
+      threads);
+  }
+
+  /**
+   * Create a watchdog with room for 32 processes that reports tasks running
+   * for longer than 50ms, sampling every 5ms.
+   *
+   * @param metrics A metric registry
+   * @param prefix  The prefix used for metric names
+   *
+   * @return A new watchdog
+   */
+
+  public static CoProcessWatchdog createDefault(
+    final MetricRegistry metrics,
+    final String prefix)
+  {
+    NullCheck.notNull(prefix, "Prefix");
+    return create(
+      metrics, prefix, 32, 50L, 5L, TimeUnit.MILLISECONDS, r -> {
+        final Thread th = new Thread(r);
+        th.setName(prefix + ".watchdog." + th.getId());
+        th.setDaemon(true);
+        th.setPriority(Thread.MAX_PRIORITY);
+        return th;
+      });
+  }
+
+  /**
+   * Register a process with the watchdog.
+   *
+   * @param name The process name
+   *
+   * @return The slot allocated to the process
+   */
+
+  public synchronized CoProcessWatchdogSlot register(
+    final String name)
+  {
+    NullCheck.notNull(name, "Name");
+
+    final int index = this.count;
+    Preconditions.checkPreconditionI(
+      index,
+      index < this.registered.length,
+      i -> "Watchdog capacity exceeded");
+
+    final CoProcessWatchdogSlot slot =
+      new CoProcessWatchdogSlot(
+        this,
+        index,
+        name,
+        this.metrics.histogram(
+          MetricRegistry.name(this.prefix, name, "queue_lag_us")),
+        this.metrics.histogram(
+          MetricRegistry.name(this.prefix, name, "task_time_us")));
+
+    this.registered[index] = slot;
+    this.count = index + 1;
+    return slot;
+  }
+
+  /**
+   * Wrap an executor such that all tasks run through a new slot.
+   *
+   * @param name     The process name
+   * @param executor The executor
+   *
+   * @return A watched executor
+   */
+
+  public ExecutorService watch(
+    final String name,
+    final ExecutorService executor)
+  {
+    return new CoProcessWatchedExecutor(executor, this.register(name));
+  }
+
+  /**
+   * Add a listener that will be called on the sampling thread for each
+   * detected stall.
+   *
+   * @param listener The listener
+   */
+
+  public void addListener(
+    final Consumer<CoProcessWatchdogStall> listener)
+  {
+    this.listeners.add(NullCheck.notNull(listener, "Listener"));
+  }
+
+  /**
+   * Remove a listener.
+   *
+   * @param listener The listener
+   */
+
+  public void removeListener(
+    final Consumer<CoProcessWatchdogStall> listener)
+  {
+    this.listeners.remove(NullCheck.notNull(listener, "Listener"));
+  }
+
+  void taskStarted(
+    final int index,
+    final long time)
+  {
+    final Thread current = Thread.currentThread();
+    if (this.threads.get(index) != current) {
+      this.threads.lazySet(index, current);
+    }
+    this.slots.set(index * SLOT_STRIDE + SLOT_TASK_STARTED, time);
+  }
+
+  void taskFinished(
+    final int index,
+    final long time)
+  {
+    final int base = index * SLOT_STRIDE;
+    this.slots.lazySet(base + SLOT_HEARTBEAT, time);
+    this.slots.lazySet(
+      base + SLOT_TASK_COUNT, this.slots.get(base + SLOT_TASK_COUNT) + 1L);
+    this.slots.set(base + SLOT_TASK_STARTED, 0L);
+  }
+
+  /**
+   * @param name The process name
+   *
+   * @return The time at which the named process last finished a task, or
+   * {@code 0} if it has not finished any task or is not registered
+   */
+
+  public long heartbeat(
+    final String name)
+  {
+    NullCheck.notNull(name, "Name");
+    final int size = this.count;
+    for (int index = 0; index < size; ++index) {
+      if (name.equals(this.registered[index].name())) {
+        return this.slots.get(index * SLOT_STRIDE + SLOT_HEARTBEAT);
+      }
+    }
+    return 0L;
+  }
+
+  /**
+   * Start the sampling thread, if it is not already running.
+   */
+
+  public synchronized void start()
+  {
+    if (this.sampler == null) {
+      final Thread th = this.thread_factory.newThread(this::run);
+      this.sampler = th;
+      th.start();
+    }
+  }
+
+  /**
+   * Stop the sampling thread.
+   */
+
+  public synchronized void stop()
+  {
+    final Thread th = this.sampler;
+    if (th != null) {
+      this.sampler = null;
+      th.interrupt();
+    }
+  }
+
+  private void run()
+  {
+    final Thread self = Thread.currentThread();
+    while (this.sampler == self) {
+      this.sample(System.nanoTime());
+      try {
+        TimeUnit.NANOSECONDS.sleep(this.period);
+      } catch (final InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void sample(
+    final long time_now)
+  {
+    final int size = this.count;
+    for (int index = 0; index < size; ++index) {
+      final int base = index * SLOT_STRIDE;
+      final long started = this.slots.get(base + SLOT_TASK_STARTED);
+      if (started == 0L) {
+        continue;
+      }
+
+      final long duration = time_now - started;
+      if (duration < this.threshold) {
+        continue;
+      }
+
+      final long task = this.slots.get(base + SLOT_TASK_COUNT);
+      if (this.reported[index] == task) {
+        continue;
+      }
+      this.reported[index] = task;
+      this.report(index, duration);
+    }
+  }
+
+  private void report(
+    final int index,
+    final long duration)
+  {
+    this.stalls.mark();
+
+    final Thread thread = this.threads.get(index);
+    final StackTraceElement[] stack =
+      thread != null ? thread.getStackTrace() : new StackTraceElement[0];
+
+    final CoProcessWatchdogStall stall =
+      CoProcessWatchdogStall.of(
+        this.registered[index].name(),
+        duration,
+        Arrays.asList(stack));
+
+    if (LOG.isWarnEnabled()) {
+      final StringBuilder sb = new StringBuilder(256);
+      for (final StackTraceElement e : stack) {
+        sb.append(System.lineSeparator());
+        sb.append("  at ");
+        sb.append(e);
+      }
+      LOG.warn(
+        "process {} stalled: task running for {}ms on {}{}",
+        stall.process(),
+        Long.valueOf(TimeUnit.NANOSECONDS.toMillis(duration)),
+        thread,
+        sb);
+    }
+
+    for (final Consumer<CoProcessWatchdogStall> listener : this.listeners) {
+      try {
+        listener.accept(stall);
+      } catch (final RuntimeException e) {
+        LOG.error("stall listener raised exception: ", e);
+      }
+    }
+  }
+}
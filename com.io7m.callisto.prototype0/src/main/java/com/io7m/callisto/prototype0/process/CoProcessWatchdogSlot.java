@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.process;
+
+import com.codahale.metrics.Histogram;
+import com.io7m.jnull.NullCheck;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>The watchdog slot of a single process.</p>
+ *
+ * <p>A slot is written only by the thread currently running a task for the
+ * process, and is read by the watchdog's sampling thread. Writing a slot
+ * costs two clock reads and a few ordered stores per task.</p>
+ */
+
+public final class CoProcessWatchdogSlot
+{
+  private final CoProcessWatchdog watchdog;
+  private final int index;
+  private final String name;
+  private final Histogram queue_lag;
+  private final Histogram task_time;
+
+  CoProcessWatchdogSlot(
+    final CoProcessWatchdog in_watchdog,
+    final int in_index,
+    final String in_name,
+    final Histogram in_queue_lag,
+    final Histogram in_task_time)
+  {
+    this.watchdog = NullCheck.notNull(in_watchdog, "Watchdog");
+    this.index = in_index;
+    this.name = NullCheck.notNull(in_name, "Name");
+    this.queue_lag = NullCheck.notNull(in_queue_lag, "Queue lag");
+    this.task_time = NullCheck.notNull(in_task_time, "Task time");
+  }
+
+  /**
+   * @return The name of the process that owns the slot
+   */
+
+  public String name()
+  {
+    return this.name;
+  }
+
+  /**
+   * Run a task, recording its queueing delay and duration.
+   *
+   * @param task           The task
+   * @param time_submitted The time at which the task was submitted
+   */
+
+  public void run(
+    final Runnable task,
+    final long time_submitted)
+  {
+    final long time_start = System.nanoTime();
+    this.queue_lag.update(
+      TimeUnit.NANOSECONDS.toMicros(time_start - time_submitted));
+    this.watchdog.taskStarted(this.index, time_start);
+
+    try {
+      task.run();
+    } finally {
+      final long time_end = System.nanoTime();
+      this.watchdog.taskFinished(this.index, time_end);
+      this.task_time.update(
+        TimeUnit.NANOSECONDS.toMicros(time_end - time_start));
+    }
+  }
+}
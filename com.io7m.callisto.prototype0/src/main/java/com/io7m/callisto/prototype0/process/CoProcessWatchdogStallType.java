@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.process;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+/**
+ * A report that a process has been running a single task for longer than
+ * the watchdog threshold.
+ */
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoProcessWatchdogStallType
+{
+  /**
+   * @return The name of the stalled process
+   */
+
+  @Value.Parameter
+  String process();
+
+  /**
+   * @return The time that the current task had been running when the stall
+   * was detected
+   */
+
+  @Value.Parameter
+  long durationNanoseconds();
+
+  /**
+   * @return The stack of the thread running the task at the time the stall
+   * was detected
+   */
+
+  @Value.Parameter
+  List<StackTraceElement> stack();
+}
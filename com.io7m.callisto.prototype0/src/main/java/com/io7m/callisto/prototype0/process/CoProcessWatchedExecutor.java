@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.process;
+
+import com.io7m.jnull.NullCheck;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor that runs every task through a watchdog slot.
+ */
+
+final class CoProcessWatchedExecutor extends AbstractExecutorService
+{
+  private final ExecutorService delegate;
+  private final CoProcessWatchdogSlot slot;
+
+  CoProcessWatchedExecutor(
+    final ExecutorService in_delegate,
+    final CoProcessWatchdogSlot in_slot)
+  {
+    this.delegate = NullCheck.notNull(in_delegate, "Delegate");
+    this.slot = NullCheck.notNull(in_slot, "Slot");
+  }
+
+  @Override
+  public void execute(
+    final Runnable command)
+  {
+    NullCheck.notNull(command, "Command");
+    final long time = System.nanoTime();
+    this.delegate.execute(() -> this.slot.run(command, time));
+  }
+
+  @Override
+  public void shutdown()
+  {
+    this.delegate.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow()
+  {
+    return this.delegate.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown()
+  {
+    return this.delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated()
+  {
+    return this.delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(
+    final long timeout,
+    final TimeUnit unit)
+    throws InterruptedException
+  {
+    return this.delegate.awaitTermination(timeout, unit);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.replication;
+
+import com.io7m.callisto.prototype0.entities.CoEntityTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>An abstract implementation of replicated traits.</p>
+ *
+ * <p>Subclasses call {@link #fieldChanged(int)} from each setter. All fields
+ * are initially dirty, so that the first replication of a new trait sends
+ * its complete state.</p>
+ */
+
+public abstract class CoReplicatedTraitAbstract implements CoReplicatedTraitType
+{
+  private final CoEntityType owner;
+  private final CoEntityTraitProviderType<?> provider;
+  private final int field_count;
+  private final AtomicLong dirty;
+
+  protected CoReplicatedTraitAbstract(
+    final CoEntityType in_owner,
+    final CoEntityTraitProviderType<?> in_provider,
+    final int in_field_count)
+  {
+    this.owner = NullCheck.notNull(in_owner, "Owner");
+    this.provider = NullCheck.notNull(in_provider, "Provider");
+
+    Preconditions.checkPreconditionI(
+      in_field_count,
+      in_field_count > 0 && in_field_count <= FIELDS_MAXIMUM,
+      c -> "Field count must be in the range [1, " + FIELDS_MAXIMUM + "]");
+
+    this.field_count = in_field_count;
+    this.dirty = new AtomicLong(this.replicatedFieldsAll());
+  }
+
+  @Override
+  public final CoEntityType owner()
+  {
+    return this.owner;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public final <T extends CoEntityTraitType>
+  CoEntityTraitProviderType<T> provider()
+  {
+    return (CoEntityTraitProviderType<T>) this.provider;
+  }
+
+  @Override
+  public final int replicatedFieldCount()
+  {
+    return this.field_count;
+  }
+
+  @Override
+  public final long replicatedDirtyTake()
+  {
+    return this.dirty.getAndSet(0L);
+  }
+
+  /**
+   * Mark a field as having been written.
+   *
+   * @param field The field index
+   */
+
+  protected final void fieldChanged(
+    final int field)
+  {
+    final long bit = 1L << field;
+    while (true) {
+      final long current = this.dirty.get();
+      if ((current & bit) != 0L) {
+        return;
+      }
+      if (this.dirty.compareAndSet(current, current | bit)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Mark all fields as having been written.
+   */
+
+  protected final void fieldsChangedAll()
+  {
+    this.dirty.set(this.replicatedFieldsAll());
+  }
+}
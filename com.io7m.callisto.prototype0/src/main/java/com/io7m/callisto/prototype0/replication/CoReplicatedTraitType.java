@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.replication;
+
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The type of traits whose state is replicated to clients.</p>
+ *
+ * <p>A replicated trait declares a fixed number of fields, at most 64. Each
+ * write to a field sets the bit corresponding to the field in the trait's
+ * dirty mask. The replicator takes the dirty mask once per tick, and sends
+ * each connection only the fields that have changed since the connection
+ * last acknowledged them.</p>
+ *
+ * @see CoReplicatedTraitAbstract
+ */
+
+public interface CoReplicatedTraitType extends CoEntityTraitType
+{
+  /**
+   * The maximum number of fields in a replicated trait.
+   */
+
+  int FIELDS_MAXIMUM = 64;
+
+  /**
+   * @return The number of fields in the trait, in the range {@code [1, 64]}
+   */
+
+  int replicatedFieldCount();
+
+  /**
+   * @return A mask with one bit set for each field in the trait
+   */
+
+  default long replicatedFieldsAll()
+  {
+    final int count = this.replicatedFieldCount();
+    return count >= FIELDS_MAXIMUM ? -1L : (1L << count) - 1L;
+  }
+
+  /**
+   * Atomically retrieve and clear the set of fields that have been written
+   * since the last call to this method.
+   *
+   * @return A mask with one bit set for each field that has been written
+   */
+
+  long replicatedDirtyTake();
+
+  /**
+   * The relative importance of the trait. Entities with more important traits
+   * accumulate replication priority more quickly, and are therefore sent more
+   * often when bandwidth is limited.
+   *
+   * @return The importance of the trait
+   */
+
+  default double replicatedImportance()
+  {
+    return 1.0;
+  }
+
+  /**
+   * Write the current value of a field.
+   *
+   * @param field  The field index
+   * @param buffer The output buffer
+   */
+
+  void replicatedFieldSerialize(
+    int field,
+    ByteBuffer buffer);
+
+  /**
+   * Read a new value for a field, as written by
+   * {@link #replicatedFieldSerialize(int, ByteBuffer)}.
+   *
+   * @param field  The field index
+   * @param buffer The input buffer
+   */
+
+  void replicatedFieldDeserialize(
+    int field,
+    ByteBuffer buffer);
+}
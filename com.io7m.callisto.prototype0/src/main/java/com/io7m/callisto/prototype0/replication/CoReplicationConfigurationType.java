@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.replication;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jranges.RangeCheck;
+import com.io7m.jranges.RangeInclusiveI;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+/**
+ * <p>Replication configuration.</p>
+ *
+ * <p>The server and all clients must be configured with the same list of
+ * replicated traits, in the same order: traits are identified on the wire
+ * by their index in the list.</p>
+ */
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoReplicationConfigurationType
+{
+  /**
+   * @return The replicated traits
+   */
+
+  List<Class<? extends CoReplicatedTraitType>> traits();
+
+  /**
+   * @return The maximum size in octets of the replication message sent to
+   * each connection on each tick
+   */
+
+  @Value.Default
+  default int bytesPerTick()
+  {
+    return 1000;
+  }
+
+  /**
+   * @return The transport channel on which replication messages are sent
+   */
+
+  @Value.Default
+  default int channel()
+  {
+    return 0;
+  }
+
+  /**
+   * @return The number of sent replication messages remembered per
+   * connection, which must be a power of two; a message that has not been
+   * acknowledged by the time its record is reused is considered lost
+   */
+
+  @Value.Default
+  default int history()
+  {
+    return 64;
+  }
+
+  /**
+   * @return The distance at which an entity accumulates priority at half the
+   * rate of an entity at the same position as the observer
+   */
+
+  @Value.Default
+  default double distanceReference()
+  {
+    return 32.0;
+  }
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    RangeCheck.checkIncludedInInteger(
+      this.traits().size(),
+      "Trait count",
+      new RangeInclusiveI(1, 255),
+      "Valid trait counts");
+
+    RangeCheck.checkIncludedInInteger(
+      this.bytesPerTick(),
+      "Bytes per tick",
+      new RangeInclusiveI(64, 65507),
+      "Valid message sizes");
+
+    RangeCheck.checkIncludedInInteger(
+      this.history(),
+      "History",
+      new RangeInclusiveI(64, 65536),
+      "Valid history sizes");
+
+    Preconditions.checkPreconditionI(
+      this.history(),
+      Integer.bitCount(this.history()) == 1,
+      h -> "History must be a power of two");
+
+    Preconditions.checkPreconditionD(
+      this.distanceReference(),
+      this.distanceReference() > 0.0,
+      d -> "Distance reference must be positive");
+  }
+}
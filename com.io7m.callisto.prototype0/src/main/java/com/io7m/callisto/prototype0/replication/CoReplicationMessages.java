@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.replication;
+
+import com.io7m.callisto.prototype0.events.CoEventSerializationMalformedException;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolServiceType;
+import com.io7m.jnull.NullCheck;
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Functions over replication messages.</p>
+ *
+ * <p>A replication update message, sent unreliably from the server to a
+ * client, has the following layout. All values are big-endian.</p>
+ *
+ * <pre>
+ * int32   sequence
+ * int64   frame
+ * uint16  removed entity count
+ * int32[] removed entities
+ * uint16  updated entity count
+ *   int32   entity
+ *   uint8   trait count
+ *     uint8   trait index
+ *     int64   field mask
+ *     ...     fields, in ascending order of field index
+ * </pre>
+ *
+ * <p>A replication acknowledgement message, sent unreliably from a client
+ * to the server, consists of the most recent sequence number received
+ * followed by a 32 bit mask in which bit {@code n} is set iff sequence
+ * number {@code sequence - (n + 1)} was also received.</p>
+ */
+
+public final class CoReplicationMessages
+{
+  /**
+   * The number of sequence numbers preceding the most recent that are
+   * covered by an acknowledgement.
+   */
+
+  public static final int ACKNOWLEDGE_WINDOW = 32;
+
+  /**
+   * The size of an acknowledgement message.
+   */
+
+  public static final int ACKNOWLEDGE_SIZE = 8;
+
+  private CoReplicationMessages()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  public static String updateTypeName()
+  {
+    return "event:com.io7m.callisto.replication.update";
+  }
+
+  public static String acknowledgeTypeName()
+  {
+    return "event:com.io7m.callisto.replication.acknowledge";
+  }
+
+  /**
+   * Add the type names of replication messages to the server's string
+   * constant pool, if they are not already present. Clients receive the
+   * names along with the rest of the server's pool, and must not add them
+   * to their own pools.
+   *
+   * @param strings The server's string constant pool
+   */
+
+  public static void registerTypeNames(
+    final CoStringConstantPoolServiceType strings)
+  {
+    NullCheck.notNull(strings, "Strings");
+
+    for (final String name : new String[]{
+      updateTypeName(), acknowledgeTypeName()}) {
+      if (!strings.lookupReference(name).isPresent()) {
+        strings.add(name);
+      }
+    }
+  }
+
+  public static ByteBuffer createAcknowledgeSerialized(
+    final int sequence,
+    final int received)
+  {
+    final ByteBuffer data = ByteBuffer.allocate(ACKNOWLEDGE_SIZE);
+    data.putInt(sequence);
+    data.putInt(received);
+    data.flip();
+    return data;
+  }
+
+  static void checkAcknowledge(
+    final ByteBuffer data)
+  {
+    if (data.remaining() != ACKNOWLEDGE_SIZE) {
+      throw new CoEventSerializationMalformedException(
+        new StringBuilder(64)
+          .append("Malformed replication acknowledgement.")
+          .append(System.lineSeparator())
+          .append("  Expected size: ")
+          .append(ACKNOWLEDGE_SIZE)
+          .append(System.lineSeparator())
+          .append("  Received size: ")
+          .append(data.remaining())
+          .append(System.lineSeparator())
+          .toString());
+    }
+  }
+}
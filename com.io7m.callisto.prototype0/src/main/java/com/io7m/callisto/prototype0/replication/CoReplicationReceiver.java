@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.replication;
+
+import com.io7m.callisto.prototype0.events.CoEventSerializationMalformedException;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * <p>The client side of entity state replication.</p>
+ *
+ * <p>Update messages that arrive out of order, or more than once, are
+ * discarded and not acknowledged: the server will then consider them lost,
+ * and resend the current values of any fields they carried. Applying only
+ * messages newer than all previously applied messages guarantees that a
+ * field is never overwritten with an older value.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+
+public final class CoReplicationReceiver
+{
+  private final List<Class<? extends CoReplicatedTraitType>> traits;
+  private boolean received_any;
+  private int sequence;
+  private int received;
+  private long frame;
+
+  /**
+   * Construct a receiver.
+   *
+   * @param in_config The replication configuration, which must match that of
+   *                  the server
+   */
+
+  public CoReplicationReceiver(
+    final CoReplicationConfiguration in_config)
+  {
+    this.traits = NullCheck.notNull(in_config, "Configuration").traits();
+    this.received_any = false;
+    this.sequence = 0;
+    this.received = 0;
+    this.frame = -1L;
+  }
+
+  /**
+   * @return The server frame of the most recently applied update, or
+   * {@code -1} if no update has been applied
+   */
+
+  public long frame()
+  {
+    return this.frame;
+  }
+
+  /**
+   * Apply an update message.
+   *
+   * @param data     The message
+   * @param listener The listener that will receive entity updates
+   *
+   * @return {@code true} iff the message was applied; {@code false} if it
+   * was discarded as being out of date
+   */
+
+  public boolean receive(
+    final ByteBuffer data,
+    final CoReplicationReceiverListenerType listener)
+  {
+    NullCheck.notNull(data, "Data");
+    NullCheck.notNull(listener, "Listener");
+
+    try {
+      final int message_sequence = data.getInt();
+      if (!this.sequenceReceive(message_sequence)) {
+        return false;
+      }
+
+      this.frame = data.getLong();
+
+      final int removed_count = data.getShort() & 0xffff;
+      for (int index = 0; index < removed_count; ++index) {
+        listener.onEntityRemoved(data.getInt());
+      }
+
+      final int updated_count = data.getShort() & 0xffff;
+      for (int index = 0; index < updated_count; ++index) {
+        this.receiveEntity(data, listener);
+      }
+      return true;
+    } catch (final BufferUnderflowException e) {
+      throw new CoEventSerializationMalformedException(
+        "Truncated replication update", e);
+    }
+  }
+
+  private void receiveEntity(
+    final ByteBuffer data,
+    final CoReplicationReceiverListenerType listener)
+  {
+    final int entity = data.getInt();
+    final int trait_count = data.get() & 0xff;
+
+    for (int index = 0; index < trait_count; ++index) {
+      final int trait_index = data.get() & 0xff;
+      if (trait_index >= this.traits.size()) {
+        throw new CoEventSerializationMalformedException(
+          new StringBuilder(128)
+            .append("Unrecognized replicated trait.")
+            .append(System.lineSeparator())
+            .append("  Trait index: ")
+            .append(trait_index)
+            .append(System.lineSeparator())
+            .append("  Trait count: ")
+            .append(this.traits.size())
+            .append(System.lineSeparator())
+            .toString());
+      }
+
+      final long mask = data.getLong();
+      final CoReplicatedTraitType trait =
+        NullCheck.notNull(
+          listener.onEntityTrait(entity, this.traits.get(trait_index)),
+          "Trait");
+
+      long remaining = mask;
+      while (remaining != 0L) {
+        trait.replicatedFieldDeserialize(
+          Long.numberOfTrailingZeros(remaining), data);
+        remaining &= remaining - 1L;
+      }
+    }
+  }
+
+  private boolean sequenceReceive(
+    final int message_sequence)
+  {
+    if (!this.received_any) {
+      this.received_any = true;
+      this.sequence = message_sequence;
+      this.received = 0;
+      return true;
+    }
+
+    final int distance = message_sequence - this.sequence;
+    if (distance <= 0) {
+      return false;
+    }
+
+    if (distance > CoReplicationMessages.ACKNOWLEDGE_WINDOW) {
+      this.received = 0;
+    } else {
+      final long shifted = ((long) this.received << distance)
+        | (1L << (distance - 1));
+      this.received = (int) shifted;
+    }
+
+    this.sequence = message_sequence;
+    return true;
+  }
+
+  /**
+   * Produce an acknowledgement of all recently applied updates. The message
+   * should be sent to the server unreliably, typically once per tick.
+   *
+   * @return A serialized acknowledgement message
+   *
+   * @see CoReplicationMessages#acknowledgeTypeName()
+   */
+
+  public ByteBuffer acknowledgement()
+  {
+    Preconditions.checkPrecondition(
+      this.received_any, "At least one update must have been received");
+    return CoReplicationMessages.createAcknowledgeSerialized(
+      this.sequence, this.received);
+  }
+
+  /**
+   * @return {@code true} iff at least one update has been applied
+   */
+
+  public boolean hasReceived()
+  {
+    return this.received_any;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.replication;
+
+/**
+ * A listener that applies received replication updates to the entities of
+ * a client.
+ */
+
+public interface CoReplicationReceiverListenerType
+{
+  /**
+   * The server has stopped replicating the given entity, because it is no
+   * longer visible to this client.
+   *
+   * @param entity The entity
+   */
+
+  void onEntityRemoved(
+    int entity);
+
+  /**
+   * New values have been received for fields of the given trait of the given
+   * entity. The listener must return the trait into which the values will be
+   * read, creating the entity or trait if necessary.
+   *
+   * @param entity The entity
+   * @param trait  The class of the trait
+   *
+   * @return The trait
+   */
+
+  CoReplicatedTraitType onEntityTrait(
+    int entity,
+    Class<? extends CoReplicatedTraitType> trait);
+}
@@ -0,0 +1,772 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.replication;
+
+import com.io7m.callisto.prototype0.entities.CoEntityDestroyedException;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.rooms.CoRoomObserver;
+import com.io7m.callisto.prototype0.rooms.CoRoomSystemType;
+import com.io7m.callisto.prototype0.rooms.CoRoomType;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolServiceType;
+import com.io7m.callisto.prototype0.transport.CoTransportConnectionUsableType;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.io7m.callisto.prototype0.transport.CoTransportConnectionUsableType.Reliability;
+
+/**
+ * <p>The server side of entity state replication.</p>
+ *
+ * <p>Each connection observes a room via the {@link CoRoomObserver} with the
+ * same identifier as the connection. On each tick of a room, the dirty masks
+ * of the replicated traits of every entity visible to any connection are
+ * taken once, and merged into the pending field masks that each connection
+ * keeps for each entity it can see. An entity that becomes visible to a
+ * connection has all of its fields pending.</p>
+ *
+ * <p>Each connection keeps a priority accumulator per visible entity. On
+ * each tick, every entity with pending fields adds its importance, scaled
+ * down with distance from the observer, to its accumulator; entities that
+ * are not sent therefore grow more urgent the longer they remain stale.
+ * Entities are then written in descending order of priority until the
+ * per-tick byte budget is exhausted, and the accumulators of the entities
+ * written are reset.</p>
+ *
+ * <p>Messages are sent unreliably. The fields and removals carried by each
+ * message are recorded; when a client acknowledges a message, its record is
+ * discarded, and when a message is known to have been lost (because a later
+ * message has been acknowledged without it, or because its record is about
+ * to be reused) its fields are made pending again. Fields are therefore
+ * resent only when lost, and only if the entity is still visible.</p>
+ *
+ * <p>Rooms may be ticked concurrently with each other and with the
+ * delivery of acknowledgements, but a connection should observe at most one
+ * room.</p>
+ *
+ * <p>A replicator given to {@code CoServer} is added to every room as a
+ * shared system via {@link #roomSystem()}, so that {@link #tick(CoRoomType,
+ * long)} is called for every room at the end of each of its ticks.</p>
+ */
+
+public final class CoReplicator
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoReplicator.class);
+
+  private static final int ENTITY_SIZE_MINIMUM = 4 + 1 + 1 + 8;
+
+  private final CoReplicationConfiguration config;
+  private final List<Class<? extends CoReplicatedTraitType>> traits;
+  private final ConcurrentHashMap<Integer, Connection> connections;
+  private final ThreadLocal<Snapshot> snapshots;
+  private final RoomSystem room_system;
+
+  private CoReplicator(
+    final CoReplicationConfiguration in_config)
+  {
+    this.config = NullCheck.notNull(in_config, "Configuration");
+    this.traits = this.config.traits();
+    this.connections = new ConcurrentHashMap<>();
+    this.snapshots =
+      ThreadLocal.withInitial(() -> new Snapshot(this.traits.size()));
+    this.room_system = new RoomSystem(this);
+  }
+
+  /**
+   * Create a replicator, and add the type names of replication messages to
+   * the server's string constant pool.
+   *
+   * @param in_config  The replication configuration
+   * @param in_strings The server's string constant pool
+   *
+   * @return A new replicator
+   *
+   * @see CoReplicationMessages#registerTypeNames(CoStringConstantPoolServiceType)
+   */
+
+  public static CoReplicator create(
+    final CoReplicationConfiguration in_config,
+    final CoStringConstantPoolServiceType in_strings)
+  {
+    CoReplicationMessages.registerTypeNames(in_strings);
+    return new CoReplicator(in_config);
+  }
+
+  /**
+   * @return A room system that calls {@link #tick(CoRoomType, long)} for
+   * each room after the room's interest has been updated
+   *
+   * @see com.io7m.callisto.prototype0.rooms.CoRoomServiceType#systemAddShared(CoRoomSystemType)
+   */
+
+  public CoRoomSystemType roomSystem()
+  {
+    return this.room_system;
+  }
+
+  /**
+   * @return The replication configuration
+   */
+
+  public CoReplicationConfiguration configuration()
+  {
+    return this.config;
+  }
+
+  /**
+   * Start replicating to a connection.
+   *
+   * @param connection The connection identifier
+   */
+
+  public void connectionAdd(
+    final int connection)
+  {
+    this.connections.computeIfAbsent(
+      Integer.valueOf(connection),
+      k -> new Connection(this.config, connection));
+  }
+
+  /**
+   * Stop replicating to a connection, and discard all state held for it.
+   *
+   * @param connection The connection identifier
+   */
+
+  public void connectionRemove(
+    final int connection)
+  {
+    this.connections.remove(Integer.valueOf(connection));
+  }
+
+  /**
+   * Process an acknowledgement message received from a connection.
+   *
+   * @param connection The connection identifier
+   * @param data       The message
+   *
+   * @see CoReplicationMessages#createAcknowledgeSerialized(int, int)
+   */
+
+  public void acknowledge(
+    final int connection,
+    final ByteBuffer data)
+  {
+    NullCheck.notNull(data, "Data");
+    CoReplicationMessages.checkAcknowledge(data);
+
+    final int sequence = data.getInt();
+    final int received = data.getInt();
+
+    final Connection c = this.connections.get(Integer.valueOf(connection));
+    if (c != null) {
+      c.acknowledge(sequence, received);
+    }
+  }
+
+  /**
+   * Update the replication state of every connection that observes the
+   * given room, and produce a message for each connection that has anything
+   * to send. This must be called on every tick of the room, after the
+   * room's interest has been updated; the system returned by
+   * {@link #roomSystem()} does this.
+   *
+   * @param room  The room
+   * @param frame The current frame
+   *
+   * @see CoRoomType#updateInterest()
+   */
+
+  public void tick(
+    final CoRoomType room,
+    final long frame)
+  {
+    NullCheck.notNull(room, "Room");
+
+    final Snapshot snapshot = this.snapshots.get();
+    snapshot.clear();
+
+    try {
+      for (final Connection connection : this.connections.values()) {
+        final Optional<CoRoomObserver> observer_opt =
+          room.observer(connection.id);
+        if (observer_opt.isPresent()) {
+          connection.tick(
+            this.traits, room, observer_opt.get(), snapshot, frame);
+        }
+      }
+    } finally {
+      snapshot.clear();
+    }
+  }
+
+  /**
+   * Send all messages produced for the given connection since the last call
+   * to this method. This must be called on the thread that owns the
+   * connection.
+   *
+   * @param connection The connection
+   */
+
+  public void send(
+    final CoTransportConnectionUsableType connection)
+  {
+    NullCheck.notNull(connection, "Connection");
+
+    final Connection c = this.connections.get(Integer.valueOf(connection.id()));
+    if (c == null) {
+      return;
+    }
+
+    while (true) {
+      final ByteBuffer data = c.outbox.poll();
+      if (data == null) {
+        return;
+      }
+      connection.send(
+        Reliability.MESSAGE_UNRELIABLE,
+        this.config.channel(),
+        CoReplicationMessages.updateTypeName(),
+        data);
+    }
+  }
+
+  /**
+   * The replicated traits, dirty masks, and importance of the entities
+   * examined during a single room tick. The dirty mask of each trait is
+   * taken exactly once per tick, regardless of the number of connections
+   * that can see the entity.
+   */
+
+  private static final class RoomSystem implements CoRoomSystemType
+  {
+    private final CoReplicator replicator;
+
+    RoomSystem(
+      final CoReplicator in_replicator)
+    {
+      this.replicator = in_replicator;
+    }
+
+    @Override
+    public String name()
+    {
+      return "replication";
+    }
+
+    @Override
+    public void tick(
+      final CoRoomType room,
+      final long frame)
+    {
+
+    }
+
+    @Override
+    public void onInterestUpdated(
+      final CoRoomType room,
+      final long frame)
+    {
+      this.replicator.tick(room, frame);
+    }
+  }
+
+  private static final class Snapshot
+  {
+    private static final int MISSING = -2;
+
+    private final int trait_count;
+    private final Int2IntOpenHashMap indices;
+    private final ReferenceArrayList<CoReplicatedTraitType> traits;
+    private final LongArrayList dirty;
+    private final DoubleArrayList importance;
+
+    Snapshot(
+      final int in_trait_count)
+    {
+      this.trait_count = in_trait_count;
+      this.indices = new Int2IntOpenHashMap();
+      this.indices.defaultReturnValue(-1);
+      this.traits = new ReferenceArrayList<>();
+      this.dirty = new LongArrayList();
+      this.importance = new DoubleArrayList();
+    }
+
+    void clear()
+    {
+      this.indices.clear();
+      this.traits.clear();
+      this.dirty.clear();
+      this.importance.clear();
+    }
+
+    int index(
+      final List<Class<? extends CoReplicatedTraitType>> classes,
+      final CoRoomType room,
+      final int entity)
+    {
+      final int existing = this.indices.get(entity);
+      if (existing != -1) {
+        return existing;
+      }
+
+      final Optional<CoEntityType> entity_opt = room.entity(entity);
+      if (!entity_opt.isPresent()) {
+        this.indices.put(entity, MISSING);
+        return MISSING;
+      }
+
+      final CoEntityType e = entity_opt.get();
+      final int index = this.importance.size();
+      double entity_importance = 0.0;
+
+      try {
+        for (int t = 0; t < this.trait_count; ++t) {
+          final Optional<? extends CoReplicatedTraitType> trait_opt =
+            e.trait(classes.get(t));
+          if (trait_opt.isPresent()) {
+            final CoReplicatedTraitType trait = trait_opt.get();
+            this.traits.add(trait);
+            this.dirty.add(trait.replicatedDirtyTake());
+            entity_importance =
+              Math.max(entity_importance, trait.replicatedImportance());
+          } else {
+            this.traits.add(null);
+            this.dirty.add(0L);
+          }
+        }
+      } catch (final CoEntityDestroyedException ex) {
+        this.traits.size(index * this.trait_count);
+        this.dirty.size(index * this.trait_count);
+        this.indices.put(entity, MISSING);
+        return MISSING;
+      }
+
+      this.importance.add(entity_importance);
+      this.indices.put(entity, index);
+      return index;
+    }
+
+    @Nullable
+    CoReplicatedTraitType trait(
+      final int index,
+      final int trait)
+    {
+      return this.traits.get((index * this.trait_count) + trait);
+    }
+
+    long dirty(
+      final int index,
+      final int trait)
+    {
+      return this.dirty.getLong((index * this.trait_count) + trait);
+    }
+
+    double importance(
+      final int index)
+    {
+      return this.importance.getDouble(index);
+    }
+  }
+
+  /**
+   * The replication state of a single entity, as seen by a single
+   * connection.
+   */
+
+  private static final class EntityState
+  {
+    private final int entity;
+    private final long[] pending;
+    private double priority;
+    private int snapshot;
+
+    EntityState(
+      final int in_entity,
+      final int trait_count)
+    {
+      this.entity = in_entity;
+      this.pending = new long[trait_count];
+    }
+
+    boolean isPending()
+    {
+      for (int index = 0; index < this.pending.length; ++index) {
+        if (this.pending[index] != 0L) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The contents of a sent message.
+   */
+
+  private static final class Record
+  {
+    private final IntArrayList entity_traits;
+    private final LongArrayList masks;
+    private final IntArrayList removed;
+    private int sequence;
+    private boolean live;
+
+    Record()
+    {
+      this.entity_traits = new IntArrayList();
+      this.masks = new LongArrayList();
+      this.removed = new IntArrayList();
+    }
+
+    void reset(
+      final int in_sequence)
+    {
+      this.sequence = in_sequence;
+      this.live = true;
+      this.entity_traits.clear();
+      this.masks.clear();
+      this.removed.clear();
+    }
+  }
+
+  private static final class Connection
+  {
+    private static final Comparator<EntityState> BY_PRIORITY =
+      (x, y) -> Double.compare(y.priority, x.priority);
+
+    private final int id;
+    private final int trait_count;
+    private final int bytes_per_tick;
+    private final double distance_reference;
+    private final ConcurrentLinkedQueue<ByteBuffer> outbox;
+    @GuardedBy("this")
+    private final Int2ReferenceOpenHashMap<EntityState> entities;
+    @GuardedBy("this")
+    private final IntOpenHashSet removed;
+    @GuardedBy("this")
+    private final Record[] records;
+    @GuardedBy("this")
+    private final ReferenceArrayList<EntityState> candidates;
+    @GuardedBy("this")
+    private final ByteBuffer scratch;
+    @GuardedBy("this")
+    private final IntArrayList scratch_traits;
+    @GuardedBy("this")
+    private int sequence;
+
+    Connection(
+      final CoReplicationConfiguration config,
+      final int in_id)
+    {
+      this.id = in_id;
+      this.trait_count = config.traits().size();
+      this.bytes_per_tick = config.bytesPerTick();
+      this.distance_reference = config.distanceReference();
+      this.outbox = new ConcurrentLinkedQueue<>();
+      this.entities = new Int2ReferenceOpenHashMap<>();
+      this.removed = new IntOpenHashSet();
+      this.candidates = new ReferenceArrayList<>();
+      this.scratch = ByteBuffer.allocate(this.bytes_per_tick);
+      this.scratch_traits = new IntArrayList();
+      this.records = new Record[config.history()];
+      for (int index = 0; index < this.records.length; ++index) {
+        this.records[index] = new Record();
+      }
+    }
+
+    private Record record(
+      final int in_sequence)
+    {
+      return this.records[in_sequence & (this.records.length - 1)];
+    }
+
+    synchronized void acknowledge(
+      final int acknowledged,
+      final int received)
+    {
+      final int window = CoReplicationMessages.ACKNOWLEDGE_WINDOW;
+      for (int back = 0; back <= window; ++back) {
+        final int s = acknowledged - back;
+        final Record r = this.record(s);
+        if (!r.live || r.sequence != s) {
+          continue;
+        }
+
+        final boolean ok = back == 0 || (received & (1 << (back - 1))) != 0;
+        if (ok) {
+          r.live = false;
+        } else {
+          this.lose(r);
+        }
+      }
+    }
+
+    private void lose(
+      final Record r)
+    {
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(
+          "[{}]: message {} lost ({} traits, {} removals)",
+          Integer.valueOf(this.id),
+          Integer.valueOf(r.sequence),
+          Integer.valueOf(r.masks.size()),
+          Integer.valueOf(r.removed.size()));
+      }
+
+      for (int index = 0; index < r.masks.size(); ++index) {
+        final int entity = r.entity_traits.getInt(index * 2);
+        final int trait = r.entity_traits.getInt((index * 2) + 1);
+        final EntityState state = this.entities.get(entity);
+        if (state != null) {
+          state.pending[trait] |= r.masks.getLong(index);
+        }
+      }
+
+      for (int index = 0; index < r.removed.size(); ++index) {
+        final int entity = r.removed.getInt(index);
+        if (!this.entities.containsKey(entity)) {
+          this.removed.add(entity);
+        }
+      }
+
+      r.live = false;
+    }
+
+    synchronized void tick(
+      final List<Class<? extends CoReplicatedTraitType>> classes,
+      final CoRoomType room,
+      final CoRoomObserver observer,
+      final Snapshot snapshot,
+      final long frame)
+    {
+      final IntList left = observer.left();
+      for (int index = 0; index < left.size(); ++index) {
+        final int entity = left.getInt(index);
+        if (this.entities.remove(entity) != null) {
+          this.removed.add(entity);
+        }
+      }
+
+      this.candidates.clear();
+
+      final IntIterator iter = observer.visible().iterator();
+      while (iter.hasNext()) {
+        final int entity = iter.nextInt();
+        final int index = snapshot.index(classes, room, entity);
+        if (index < 0) {
+          continue;
+        }
+
+        EntityState state = this.entities.get(entity);
+        if (state == null) {
+          state = new EntityState(entity, this.trait_count);
+          this.entities.put(entity, state);
+          this.removed.remove(entity);
+          for (int t = 0; t < this.trait_count; ++t) {
+            final CoReplicatedTraitType trait = snapshot.trait(index, t);
+            if (trait != null) {
+              state.pending[t] = trait.replicatedFieldsAll();
+            }
+          }
+        } else {
+          for (int t = 0; t < this.trait_count; ++t) {
+            state.pending[t] |= snapshot.dirty(index, t);
+          }
+        }
+
+        if (state.isPending()) {
+          final double reference = this.distance_reference;
+          final double distance = observer.distanceTo(entity);
+          state.priority +=
+            snapshot.importance(index) * (reference / (reference + distance));
+          state.snapshot = index;
+          this.candidates.add(state);
+        }
+      }
+
+      if (this.candidates.isEmpty() && this.removed.isEmpty()) {
+        return;
+      }
+
+      this.candidates.sort(BY_PRIORITY);
+      this.outbox.add(this.write(snapshot, frame));
+    }
+
+    private ByteBuffer write(
+      final Snapshot snapshot,
+      final long frame)
+    {
+      final int s = this.sequence;
+      this.sequence = s + 1;
+
+      final Record r = this.record(s);
+      if (r.live) {
+        this.lose(r);
+      }
+      r.reset(s);
+
+      final ByteBuffer out = ByteBuffer.allocate(this.bytes_per_tick);
+      out.putInt(s);
+      out.putLong(frame);
+
+      final int removed_count =
+        Math.min(this.removed.size(), (out.remaining() - 4) / 4);
+      out.putShort((short) removed_count);
+
+      final IntIterator removed_iter = this.removed.iterator();
+      for (int index = 0; index < removed_count; ++index) {
+        final int entity = removed_iter.nextInt();
+        removed_iter.remove();
+        out.putInt(entity);
+        r.removed.add(entity);
+      }
+
+      final int updated_position = out.position();
+      out.putShort((short) 0);
+
+      int updated_count = 0;
+      for (int index = 0; index < this.candidates.size(); ++index) {
+        if (out.remaining() < ENTITY_SIZE_MINIMUM
+          || updated_count == 0xffff) {
+          break;
+        }
+
+        final EntityState state = this.candidates.get(index);
+        if (!this.writeEntity(snapshot, state)) {
+          continue;
+        }
+
+        this.scratch.flip();
+        if (this.scratch.remaining() > out.remaining()) {
+          continue;
+        }
+
+        out.put(this.scratch);
+        r.entity_traits.addAll(this.scratch_traits);
+        state.priority = 0.0;
+        ++updated_count;
+      }
+
+      out.putShort(updated_position, (short) updated_count);
+      out.flip();
+
+      /*
+       * Only now that the set of entities written is final are the pending
+       * masks of the written traits cleared and recorded.
+       */
+
+      for (int index = 0; index < r.entity_traits.size(); index += 2) {
+        final EntityState state =
+          this.entities.get(r.entity_traits.getInt(index));
+        final int trait = r.entity_traits.getInt(index + 1);
+        r.masks.add(state.pending[trait]);
+        state.pending[trait] = 0L;
+      }
+
+      return out;
+    }
+
+    /**
+     * Write the pending fields of an entity to the scratch buffer, and the
+     * written (entity, trait) pairs to the scratch trait list.
+     *
+     * @return {@code false} if there was nothing to write, or if the entity
+     * does not fit in the scratch buffer
+     */
+
+    private boolean writeEntity(
+      final Snapshot snapshot,
+      final EntityState state)
+    {
+      final ByteBuffer b = this.scratch;
+      b.clear();
+      this.scratch_traits.clear();
+
+      try {
+        b.putInt(state.entity);
+        final int count_position = b.position();
+        b.put((byte) 0);
+
+        int count = 0;
+        for (int t = 0; t < this.trait_count; ++t) {
+          final long pending = state.pending[t];
+          if (pending == 0L) {
+            continue;
+          }
+
+          final CoReplicatedTraitType trait =
+            snapshot.trait(state.snapshot, t);
+          if (trait == null) {
+            state.pending[t] = 0L;
+            continue;
+          }
+
+          final long mask = pending & trait.replicatedFieldsAll();
+          state.pending[t] = mask;
+          if (mask == 0L) {
+            continue;
+          }
+
+          b.put((byte) t);
+          b.putLong(mask);
+
+          long remaining = mask;
+          while (remaining != 0L) {
+            trait.replicatedFieldSerialize(
+              Long.numberOfTrailingZeros(remaining), b);
+            remaining &= remaining - 1L;
+          }
+
+          this.scratch_traits.add(state.entity);
+          this.scratch_traits.add(t);
+          ++count;
+        }
+
+        b.put(count_position, (byte) count);
+        return count > 0;
+      } catch (final BufferOverflowException e) {
+        LOG.error(
+          "[{}]: entity {} does not fit in a replication message of {} octets",
+          Integer.valueOf(this.id),
+          Integer.valueOf(state.entity),
+          Integer.valueOf(this.bytes_per_tick));
+        return false;
+      }
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.rooms;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntLists;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
+
+/**
+ * <p>An observer in a room, typically the viewpoint of a single client
+ * connection.</p>
+ *
+ * <p>Each time the room's interest is updated, the set of entities within
+ * the observer's radius is recomputed from the room's spatial hash grid and
+ * compared to the previous set. The entities that became visible, the
+ * entities that stopped being visible, and the entities that are visible
+ * are then available until the next update.</p>
+ */
+
+public final class CoRoomObserver
+{
+  private final int id;
+  private final CoRoomSpatialHash grid;
+  private final IntOpenHashSet visible;
+  private final IntOpenHashSet visible_next;
+  private final IntArrayList entered;
+  private final IntArrayList left;
+  private final IntSet visible_view;
+  private final IntList entered_view;
+  private final IntList left_view;
+  private double x;
+  private double y;
+  private double radius;
+  private boolean moved;
+
+  CoRoomObserver(
+    final CoRoomSpatialHash in_grid,
+    final int in_id,
+    final double in_x,
+    final double in_y,
+    final double in_radius)
+  {
+    this.grid = in_grid;
+    this.id = in_id;
+    this.x = in_x;
+    this.y = in_y;
+    this.radius = in_radius;
+    this.moved = true;
+    this.visible = new IntOpenHashSet();
+    this.visible_next = new IntOpenHashSet();
+    this.entered = new IntArrayList();
+    this.left = new IntArrayList();
+    this.visible_view = IntSets.unmodifiable(this.visible);
+    this.entered_view = IntLists.unmodifiable(this.entered);
+    this.left_view = IntLists.unmodifiable(this.left);
+  }
+
+  /**
+   * @return The observer identifier
+   */
+
+  public int id()
+  {
+    return this.id;
+  }
+
+  /**
+   * @return The identifiers of the entities that became visible in the most
+   * recent update
+   */
+
+  public IntList entered()
+  {
+    return this.entered_view;
+  }
+
+  /**
+   * @return The identifiers of the entities that stopped being visible in the
+   * most recent update
+   */
+
+  public IntList left()
+  {
+    return this.left_view;
+  }
+
+  /**
+   * @return The identifiers of all entities visible as of the most recent
+   * update
+   */
+
+  public IntSet visible()
+  {
+    return this.visible_view;
+  }
+
+  /**
+   * @param entity The entity
+   *
+   * @return The distance between the observer and the entity, or positive
+   * infinity if the entity is not in the room
+   */
+
+  public double distanceTo(
+    final int entity)
+  {
+    return this.grid.distance(entity, this.x, this.y);
+  }
+
+  void move(
+    final double in_x,
+    final double in_y,
+    final double in_radius)
+  {
+    this.x = in_x;
+    this.y = in_y;
+    this.radius = in_radius;
+    this.moved = true;
+  }
+
+  /**
+   * Recompute the visible set.
+   *
+   * @param grid          The room's grid
+   * @param grid_changed  {@code true} iff any entity in the room has been
+   *                      inserted, moved, or removed since the last update
+   */
+
+  void update(
+    final CoRoomSpatialHash grid,
+    final boolean grid_changed)
+  {
+    this.entered.clear();
+    this.left.clear();
+
+    if (!this.moved && !grid_changed) {
+      return;
+    }
+    this.moved = false;
+
+    this.visible_next.clear();
+    grid.query(this.x, this.y, this.radius, this.visible_next::add);
+
+    final IntIterator iter_next = this.visible_next.iterator();
+    while (iter_next.hasNext()) {
+      final int entity = iter_next.nextInt();
+      if (!this.visible.contains(entity)) {
+        this.entered.add(entity);
+      }
+    }
+
+    final IntIterator iter = this.visible.iterator();
+    while (iter.hasNext()) {
+      final int entity = iter.nextInt();
+      if (!this.visible_next.contains(entity)) {
+        this.left.add(entity);
+      }
+    }
+
+    for (int index = 0; index < this.entered.size(); ++index) {
+      this.visible.add(this.entered.getInt(index));
+    }
+    for (int index = 0; index < this.left.size(); ++index) {
+      this.visible.remove(this.left.getInt(index));
+    }
+  }
+}
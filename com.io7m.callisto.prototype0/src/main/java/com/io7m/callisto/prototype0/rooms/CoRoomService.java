@@ -16,15 +16,34 @@
 
 package com.io7m.callisto.prototype0.rooms;
 
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityID;
+import com.io7m.callisto.prototype0.entities.CoEntityService;
 import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventServiceType;
+import com.io7m.callisto.prototype0.events.CoEventType;
 import com.io7m.callisto.prototype0.services.CoAbstractService;
+import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jnull.NullCheck;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Component
 public final class CoRoomService
   extends CoAbstractService implements CoRoomServiceType
@@ -32,9 +51,73 @@ public final class CoRoomService
   private static final Logger LOG =
     LoggerFactory.getLogger(CoRoomService.class);
 
+  private final ConcurrentHashMap<CoRoomID, Room> rooms;
+  private final AtomicInteger room_ids;
+  private final ForkJoinPool pool;
+  private final boolean pool_owned;
+  private final CopyOnWriteArrayList<CoRoomSystemType> systems_shared;
+  private volatile CoEventServiceType events;
+
+  /**
+   * Construct a room service that ticks rooms on a worker pool of its own,
+   * with one worker per processor. The pool is shut down when the service
+   * is shut down.
+   */
+
   public CoRoomService()
   {
+    this(createPool(), true);
+  }
+
+  /**
+   * Construct a room service that ticks rooms on the given pool. Rooms are
+   * submitted to the pool as separate tasks, so idle workers steal rooms
+   * from busy workers, and rooms whose systems fork subtasks of their own
+   * are balanced across all workers. The pool is owned by the caller, and
+   * is not shut down when the service is shut down.
+   *
+   * @param in_events The event service used by the entities of rooms
+   * @param in_pool   The worker pool
+   */
 
+  public CoRoomService(
+    final CoEventServiceType in_events,
+    final ForkJoinPool in_pool)
+  {
+    this(in_pool, false);
+    this.events = NullCheck.notNull(in_events, "Events");
+  }
+
+  private CoRoomService(
+    final ForkJoinPool in_pool,
+    final boolean in_pool_owned)
+  {
+    this.pool = NullCheck.notNull(in_pool, "Pool");
+    this.pool_owned = in_pool_owned;
+    this.systems_shared = new CopyOnWriteArrayList<>();
+    this.rooms = new ConcurrentHashMap<>();
+    this.room_ids = new AtomicInteger(0);
+  }
+
+  private static ForkJoinPool createPool()
+  {
+    return new ForkJoinPool(
+      Runtime.getRuntime().availableProcessors(),
+      pool -> {
+        final ForkJoinWorkerThread th =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        th.setName("com.io7m.callisto.rooms." + th.getId());
+        return th;
+      },
+      null,
+      false);
+  }
+
+  @Reference
+  public void onEventServiceRegister(
+    final CoEventServiceType in_events)
+  {
+    this.events = NullCheck.notNull(in_events, "Events");
   }
 
   @Activate
@@ -43,10 +126,16 @@ public final class CoRoomService
     this.onActivateActual();
   }
 
+  @Deactivate
   @Override
   public void shutDown()
   {
-
+    for (final Room room : this.rooms.values()) {
+      this.roomDestroy(room.id);
+    }
+    if (this.pool_owned) {
+      this.pool.shutdown();
+    }
   }
 
   @Override
@@ -55,16 +144,155 @@ public final class CoRoomService
     return LOG;
   }
 
+  @Override
+  public CoRoomType roomCreate(
+    final double cell_size)
+  {
+    this.checkActivated();
+
+    final Room room =
+      new Room(
+        this,
+        CoRoomID.of(this.room_ids.getAndIncrement()),
+        NullCheck.notNull(this.events, "Events"),
+        cell_size);
+    this.rooms.put(room.id, room);
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("created room {}", Integer.valueOf(room.id.value()));
+    }
+    return room;
+  }
+
+  @Override
+  public Optional<CoRoomType> room(
+    final CoRoomID id)
+  {
+    NullCheck.notNull(id, "ID");
+    return Optional.ofNullable(this.rooms.get(id));
+  }
+
+  @Override
+  public boolean roomDestroy(
+    final CoRoomID id)
+  {
+    NullCheck.notNull(id, "ID");
+
+    final Room room = this.rooms.remove(id);
+    if (room == null) {
+      return false;
+    }
+    room.entities.shutDown();
+    return true;
+  }
+
+  @Override
+  public void systemAddShared(
+    final CoRoomSystemType system)
+  {
+    this.systems_shared.add(NullCheck.notNull(system, "System"));
+  }
+
+  @Override
+  public boolean systemRemoveShared(
+    final CoRoomSystemType system)
+  {
+    return this.systems_shared.remove(NullCheck.notNull(system, "System"));
+  }
+
+  @Override
+  public void updateInterest()
+  {
+    this.checkActivated();
+
+    for (final Room room : this.rooms.values()) {
+      room.updateInterest();
+    }
+  }
+
+  @Override
+  public void tick(
+    final long frame)
+  {
+    this.checkActivated();
+
+    final Room[] current = this.rooms.values().toArray(new Room[0]);
+    if (current.length == 0) {
+      return;
+    }
+
+    final RoomTick[] tasks = new RoomTick[current.length];
+    for (int index = 0; index < current.length; ++index) {
+      tasks[index] = new RoomTick(current[index], frame);
+    }
+
+    this.pool.invoke(new RecursiveAction()
+    {
+      @Override
+      protected void compute()
+      {
+        ForkJoinTask.invokeAll(tasks);
+      }
+    });
+  }
+
+  private static final class RoomTick extends RecursiveAction
+  {
+    private final Room room;
+    private final long frame;
+
+    RoomTick(
+      final Room in_room,
+      final long in_frame)
+    {
+      this.room = in_room;
+      this.frame = in_frame;
+    }
+
+    @Override
+    protected void compute()
+    {
+      try {
+        this.room.tick(this.frame);
+      } catch (final Exception e) {
+        LOG.error(
+          "room {}: tick {} failed: ",
+          Integer.valueOf(this.room.id.value()),
+          Long.valueOf(this.frame),
+          e);
+      }
+    }
+  }
+
   private static final class Room implements CoRoomType
   {
+    private final CoRoomService service;
     private final CoRoomID id;
-    private final Int2ReferenceOpenHashMap<CoEntityType> entities;
+    private final CopyOnWriteArrayList<CoRoomSystemType> systems;
+    private final ConcurrentLinkedQueue<CoRoomMessage> inbox;
+    private final CoEntityService entities;
+    private final Int2ReferenceOpenHashMap<CoEntityType> entities_by_id;
+    private final Int2ReferenceOpenHashMap<CoRoomObserver> observers;
+    private final CoRoomSpatialHash grid;
+    private boolean grid_changed;
 
     private Room(
-      final CoRoomID in_id)
+      final CoRoomService in_service,
+      final CoRoomID in_id,
+      final CoEventServiceType in_events,
+      final double in_cell_size)
     {
+      this.service = NullCheck.notNull(in_service, "Service");
       this.id = NullCheck.notNull(in_id, "ID");
-      this.entities = new Int2ReferenceOpenHashMap<>();
+      this.systems = new CopyOnWriteArrayList<>();
+      this.inbox = new ConcurrentLinkedQueue<>();
+      this.entities = new CoEntityService();
+      this.entities.onEventServiceRegister(in_events);
+      this.entities.onActivate();
+      this.entities_by_id = new Int2ReferenceOpenHashMap<>();
+      this.observers = new Int2ReferenceOpenHashMap<>();
+      this.grid = new CoRoomSpatialHash(in_cell_size);
+      this.grid_changed = false;
     }
 
     @Override
@@ -72,5 +300,204 @@ public final class CoRoomService
     {
       return this.id;
     }
+
+    @Override
+    public int entityCount()
+    {
+      return this.entities_by_id.size();
+    }
+
+    @Override
+    public CoEntityType entityCreate(
+      final CoAssemblyType assembly,
+      final double x,
+      final double y)
+    {
+      NullCheck.notNull(assembly, "Assembly");
+      Preconditions.checkPreconditionD(
+        x, Double.isFinite(x), v -> "X coordinate must be finite");
+      Preconditions.checkPreconditionD(
+        y, Double.isFinite(y), v -> "Y coordinate must be finite");
+
+      final CoEntityType entity = this.entities.createEntity(assembly);
+      final int key = entity.id().value();
+      this.grid.put(key, x, y);
+      this.entities_by_id.put(key, entity);
+      this.grid_changed = true;
+      return entity;
+    }
+
+    @Override
+    public boolean entityMove(
+      final CoEntityID entity,
+      final double x,
+      final double y)
+    {
+      NullCheck.notNull(entity, "Entity");
+
+      final int key = entity.value();
+      if (this.entities_by_id.containsKey(key)) {
+        this.grid.put(key, x, y);
+        this.grid_changed = true;
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean entityDestroy(
+      final CoEntityID entity)
+    {
+      NullCheck.notNull(entity, "Entity");
+
+      final int key = entity.value();
+      final CoEntityType removed = this.entities_by_id.remove(key);
+      if (removed != null) {
+        this.grid.remove(key);
+        this.grid_changed = true;
+        removed.destroy();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public Optional<CoEntityType> entity(
+      final int entity)
+    {
+      return Optional.ofNullable(this.entities_by_id.get(entity));
+    }
+
+    @Override
+    public CoRoomObserver observerPut(
+      final int observer,
+      final double x,
+      final double y,
+      final double radius)
+    {
+      Preconditions.checkPreconditionD(
+        x, Double.isFinite(x), v -> "X coordinate must be finite");
+      Preconditions.checkPreconditionD(
+        y, Double.isFinite(y), v -> "Y coordinate must be finite");
+      Preconditions.checkPreconditionD(
+        radius,
+        Double.isFinite(radius) && radius >= 0.0,
+        r -> "Radius must be finite and non-negative");
+
+      final CoRoomObserver existing = this.observers.get(observer);
+      if (existing != null) {
+        existing.move(x, y, radius);
+        return existing;
+      }
+
+      final CoRoomObserver created =
+        new CoRoomObserver(this.grid, observer, x, y, radius);
+      this.observers.put(observer, created);
+      return created;
+    }
+
+    @Override
+    public Optional<CoRoomObserver> observer(
+      final int observer)
+    {
+      return Optional.ofNullable(this.observers.get(observer));
+    }
+
+    @Override
+    public boolean observerRemove(
+      final int observer)
+    {
+      return this.observers.remove(observer) != null;
+    }
+
+    @Override
+    public void updateInterest()
+    {
+      final boolean changed = this.grid_changed;
+      this.grid_changed = false;
+
+      final ObjectIterator<CoRoomObserver> iter =
+        this.observers.values().iterator();
+      while (iter.hasNext()) {
+        iter.next().update(this.grid, changed);
+      }
+    }
+
+    @Override
+    public void systemAdd(
+      final CoRoomSystemType system)
+    {
+      this.systems.add(NullCheck.notNull(system, "System"));
+    }
+
+    @Override
+    public boolean systemRemove(
+      final CoRoomSystemType system)
+    {
+      return this.systems.remove(NullCheck.notNull(system, "System"));
+    }
+
+    @Override
+    public void post(
+      final CoEventType content)
+    {
+      NullCheck.notNull(content, "Content");
+      this.inbox.add(CoRoomMessage.of(this.id, this.id, content));
+    }
+
+    @Override
+    public boolean send(
+      final CoRoomID target,
+      final CoEventType content)
+    {
+      NullCheck.notNull(target, "Target");
+      NullCheck.notNull(content, "Content");
+
+      final Room room = this.service.rooms.get(target);
+      if (room == null) {
+        return false;
+      }
+      room.inbox.add(CoRoomMessage.of(this.id, target, content));
+      return true;
+    }
+
+    private void tick(
+      final long frame)
+    {
+      /*
+       * Only deliver the messages that were queued before the tick started,
+       * so that rooms that message each other cannot keep each other busy
+       * within a single tick.
+       */
+
+      for (int count = this.inbox.size(); count > 0; --count) {
+        final CoRoomMessage message = this.inbox.poll();
+        if (message == null) {
+          break;
+        }
+        for (final CoRoomSystemType system : this.systems) {
+          system.onMessage(this, message);
+        }
+        for (final CoRoomSystemType system : this.service.systems_shared) {
+          system.onMessage(this, message);
+        }
+      }
+
+      for (final CoRoomSystemType system : this.systems) {
+        system.tick(this, frame);
+      }
+      for (final CoRoomSystemType system : this.service.systems_shared) {
+        system.tick(this, frame);
+      }
+
+      this.updateInterest();
+
+      for (final CoRoomSystemType system : this.systems) {
+        system.onInterestUpdated(this, frame);
+      }
+      for (final CoRoomSystemType system : this.service.systems_shared) {
+        system.onInterestUpdated(this, frame);
+      }
+    }
   }
 }
@@ -16,7 +16,86 @@
 
 package com.io7m.callisto.prototype0.rooms;
 
-public interface CoRoomServiceType
+import com.io7m.callisto.prototype0.services.CoServiceType;
+
+import java.util.Optional;
+
+public interface CoRoomServiceType extends CoServiceType
 {
+  /**
+   * Create a new room.
+   *
+   * @param cell_size The size of the cells of the room's spatial hash grid;
+   *                  this should be roughly the typical observer radius
+   *
+   * @return A new room
+   */
+
+  CoRoomType roomCreate(
+    double cell_size);
+
+  /**
+   * @param id The room identifier
+   *
+   * @return The room with the given identifier, if any
+   */
+
+  Optional<CoRoomType> room(
+    CoRoomID id);
+
+  /**
+   * Destroy a room.
+   *
+   * @param id The room identifier
+   *
+   * @return {@code true} iff the room existed
+   */
+
+  boolean roomDestroy(
+    CoRoomID id);
+
+  /**
+   * Add a system that is evaluated in every room, including rooms that are
+   * created later, after the room's own systems. The system may be
+   * evaluated for different rooms concurrently.
+   *
+   * @param system The system
+   */
+
+  void systemAddShared(
+    CoRoomSystemType system);
+
+  /**
+   * Remove a system added with {@link #systemAddShared(CoRoomSystemType)}.
+   *
+   * @param system The system
+   *
+   * @return {@code true} iff the system was present
+   */
+
+  boolean systemRemoveShared(
+    CoRoomSystemType system);
+
+  /**
+   * Update the interest sets of all observers in all rooms. This is
+   * typically called once per tick, after the simulation has moved
+   * entities, and before entities are replicated to clients.
+   */
+
+  void updateInterest();
+
+  /**
+   * Tick all rooms. Each room is evaluated as a separate task on the
+   * service's worker pool: the room's queued messages are delivered, its
+   * systems and then the shared systems are evaluated in order, and its
+   * interest sets are updated.
+   * The method returns when all rooms have been ticked. An exception raised
+   * by one room is logged and does not prevent other rooms from being
+   * ticked.
+   *
+   * @param frame The frame number
+   */
 
+  void tick(
+    long frame);
 }
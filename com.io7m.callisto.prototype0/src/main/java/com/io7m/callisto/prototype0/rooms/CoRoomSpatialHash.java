@@ -0,0 +1,313 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.rooms;
+
+import com.io7m.jaffirm.core.Preconditions;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import java.util.function.IntConsumer;
+
+/**
+ * <p>A spatial hash grid of entity positions.</p>
+ *
+ * <p>The plane is divided into square cells, and each entity is listed in
+ * the cell that contains its position. Only the cells that actually contain
+ * entities are stored, so the memory used depends on the number of entities
+ * rather than the size of the world. A radius query examines the cells that
+ * overlap the query circle or, if there are fewer occupied cells than that,
+ * each occupied cell.</p>
+ *
+ * <p>The grid is not thread-safe.</p>
+ */
+
+public final class CoRoomSpatialHash
+{
+  private final double cell_size;
+  private final Long2ReferenceOpenHashMap<IntArrayList> cells;
+  private final Int2LongOpenHashMap entity_cells;
+  private final Int2DoubleOpenHashMap entity_x;
+  private final Int2DoubleOpenHashMap entity_y;
+
+  /**
+   * Construct a grid.
+   *
+   * @param in_cell_size The size of cells
+   */
+
+  public CoRoomSpatialHash(
+    final double in_cell_size)
+  {
+    Preconditions.checkPreconditionD(
+      in_cell_size, in_cell_size > 0.0, s -> "Cell size must be positive");
+
+    this.cell_size = in_cell_size;
+    this.cells = new Long2ReferenceOpenHashMap<>();
+    this.entity_cells = new Int2LongOpenHashMap();
+    this.entity_x = new Int2DoubleOpenHashMap();
+    this.entity_y = new Int2DoubleOpenHashMap();
+  }
+
+  private static long cellKey(
+    final int cx,
+    final int cy)
+  {
+    return ((long) cx << 32) | (cy & 0xffffffffL);
+  }
+
+  private static int cellX(
+    final long key)
+  {
+    return (int) (key >> 32);
+  }
+
+  private static int cellY(
+    final long key)
+  {
+    return (int) key;
+  }
+
+  private int cellOf(
+    final double v)
+  {
+    return (int) Math.floor(v / this.cell_size);
+  }
+
+  private static void checkPosition(
+    final double x,
+    final double y)
+  {
+    Preconditions.checkPreconditionD(
+      x, Double.isFinite(x), v -> "X coordinate must be finite");
+    Preconditions.checkPreconditionD(
+      y, Double.isFinite(y), v -> "Y coordinate must be finite");
+  }
+
+  /**
+   * @return The number of entities in the grid
+   */
+
+  public int size()
+  {
+    return this.entity_cells.size();
+  }
+
+  /**
+   * @param entity The entity
+   *
+   * @return {@code true} iff the entity is in the grid
+   */
+
+  public boolean contains(
+    final int entity)
+  {
+    return this.entity_cells.containsKey(entity);
+  }
+
+  /**
+   * Insert an entity into the grid, or move it if it is already present.
+   *
+   * @param entity The entity
+   * @param x      The x coordinate of the entity
+   * @param y      The y coordinate of the entity
+   *
+   * @return {@code true} iff the entity was not already in the grid
+   */
+
+  public boolean put(
+    final int entity,
+    final double x,
+    final double y)
+  {
+    checkPosition(x, y);
+
+    final long key = cellKey(this.cellOf(x), this.cellOf(y));
+    this.entity_x.put(entity, x);
+    this.entity_y.put(entity, y);
+
+    if (this.entity_cells.containsKey(entity)) {
+      final long previous = this.entity_cells.get(entity);
+      if (previous == key) {
+        return false;
+      }
+      this.cellRemove(previous, entity);
+      this.entity_cells.put(entity, key);
+      this.cellAdd(key, entity);
+      return false;
+    }
+
+    this.entity_cells.put(entity, key);
+    this.cellAdd(key, entity);
+    return true;
+  }
+
+  /**
+   * Remove an entity from the grid.
+   *
+   * @param entity The entity
+   *
+   * @return {@code true} iff the entity was in the grid
+   */
+
+  public boolean remove(
+    final int entity)
+  {
+    if (!this.entity_cells.containsKey(entity)) {
+      return false;
+    }
+
+    this.cellRemove(this.entity_cells.remove(entity), entity);
+    this.entity_x.remove(entity);
+    this.entity_y.remove(entity);
+    return true;
+  }
+
+  /**
+   * @param entity The entity
+   * @param x      The x coordinate of a position
+   * @param y      The y coordinate of a position
+   *
+   * @return The distance between the entity and the given position, or
+   * positive infinity if the entity is not in the grid
+   */
+
+  public double distance(
+    final int entity,
+    final double x,
+    final double y)
+  {
+    if (!this.entity_cells.containsKey(entity)) {
+      return Double.POSITIVE_INFINITY;
+    }
+
+    final double dx = this.entity_x.get(entity) - x;
+    final double dy = this.entity_y.get(entity) - y;
+    return Math.sqrt((dx * dx) + (dy * dy));
+  }
+
+  private void cellAdd(
+    final long key,
+    final int entity)
+  {
+    IntArrayList cell = this.cells.get(key);
+    if (cell == null) {
+      cell = new IntArrayList(4);
+      this.cells.put(key, cell);
+    }
+    cell.add(entity);
+  }
+
+  private void cellRemove(
+    final long key,
+    final int entity)
+  {
+    final IntArrayList cell = this.cells.get(key);
+    final int index = cell.indexOf(entity);
+    final int last = cell.size() - 1;
+    cell.set(index, cell.getInt(last));
+    cell.removeInt(last);
+    if (cell.isEmpty()) {
+      this.cells.remove(key);
+    }
+  }
+
+  /**
+   * Call {@code receiver} for each entity within {@code radius} of the given
+   * position.
+   *
+   * @param x        The x coordinate of the center of the query
+   * @param y        The y coordinate of the center of the query
+   * @param radius   The radius of the query, which must be finite and
+   *                 non-negative
+   * @param receiver The receiver
+   */
+
+  public void query(
+    final double x,
+    final double y,
+    final double radius,
+    final IntConsumer receiver)
+  {
+    checkPosition(x, y);
+    Preconditions.checkPreconditionD(
+      radius,
+      Double.isFinite(radius) && radius >= 0.0,
+      r -> "Radius must be finite and non-negative");
+
+    final int cx_min = this.cellOf(x - radius);
+    final int cx_max = this.cellOf(x + radius);
+    final int cy_min = this.cellOf(y - radius);
+    final int cy_max = this.cellOf(y + radius);
+    final double radius_sq = radius * radius;
+
+    /*
+     * The cell coordinates saturate at the integer range for very large
+     * queries, so the loops use long counters, and the occupied cells are
+     * scanned instead if there are fewer of them than cells in the query
+     * box.
+     */
+
+    final double box =
+      ((double) cx_max - (double) cx_min + 1.0)
+        * ((double) cy_max - (double) cy_min + 1.0);
+
+    if (box > (double) this.cells.size()) {
+      final ObjectIterator<Long2ReferenceMap.Entry<IntArrayList>> iter =
+        this.cells.long2ReferenceEntrySet().fastIterator();
+      while (iter.hasNext()) {
+        final Long2ReferenceMap.Entry<IntArrayList> entry = iter.next();
+        final long key = entry.getLongKey();
+        final int cx = cellX(key);
+        final int cy = cellY(key);
+        if (cx >= cx_min && cx <= cx_max && cy >= cy_min && cy <= cy_max) {
+          this.queryCell(entry.getValue(), x, y, radius_sq, receiver);
+        }
+      }
+      return;
+    }
+
+    for (long cx = cx_min; cx <= cx_max; ++cx) {
+      for (long cy = cy_min; cy <= cy_max; ++cy) {
+        final IntArrayList cell = this.cells.get(cellKey((int) cx, (int) cy));
+        if (cell != null) {
+          this.queryCell(cell, x, y, radius_sq, receiver);
+        }
+      }
+    }
+  }
+
+  private void queryCell(
+    final IntArrayList cell,
+    final double x,
+    final double y,
+    final double radius_sq,
+    final IntConsumer receiver)
+  {
+    for (int index = 0; index < cell.size(); ++index) {
+      final int entity = cell.getInt(index);
+      final double dx = this.entity_x.get(entity) - x;
+      final double dy = this.entity_y.get(entity) - y;
+      if ((dx * dx) + (dy * dy) <= radius_sq) {
+        receiver.accept(entity);
+      }
+    }
+  }
+}
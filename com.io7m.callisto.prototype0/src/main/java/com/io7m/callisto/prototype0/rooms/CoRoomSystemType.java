@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.rooms;
+
+/**
+ * <p>The type of systems that belong to a single room.</p>
+ *
+ * <p>A room's systems are only ever evaluated by the task that is ticking the
+ * room, so they may access the room and its entities without any
+ * synchronization. Systems that need to affect other rooms must send
+ * messages with {@link CoRoomType#send(CoRoomID, com.io7m.callisto.prototype0.events.CoEventType)}.</p>
+ */
+
+public interface CoRoomSystemType
+{
+  /**
+   * @return The name of the system
+   */
+
+  String name();
+
+  /**
+   * A message has been received from the room's event queue, either posted
+   * by the room itself or sent by another room. Messages queued during one
+   * tick are received at the start of the next tick of the target room.
+   *
+   * @param room    The room
+   * @param message The message
+   */
+
+  default void onMessage(
+    final CoRoomType room,
+    final CoRoomMessage message)
+  {
+
+  }
+
+  /**
+   * Update the room.
+   *
+   * @param room  The room
+   * @param frame The frame number
+   */
+
+  void tick(
+    CoRoomType room,
+    long frame);
+
+  /**
+   * The interest of the room has been updated at the end of a tick, after
+   * all systems have been ticked.
+   *
+   * @param room  The room
+   * @param frame The frame number
+   *
+   * @see CoRoomType#updateInterest()
+   */
+
+  default void onInterestUpdated(
+    final CoRoomType room,
+    final long frame)
+  {
+
+  }
+}
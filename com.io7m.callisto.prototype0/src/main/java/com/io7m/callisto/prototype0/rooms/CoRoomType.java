@@ -16,8 +16,28 @@
 
 package com.io7m.callisto.prototype0.rooms;
 
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityID;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventType;
+
+import java.util.Optional;
+
 /**
- * The type of loaded and active room instances.
+ * <p>The type of loaded and active room instances.</p>
+ *
+ * <p>A room is an interest-management partition: it keeps a spatial hash
+ * grid of the positions of its entities, and a set of observers, each of
+ * which sees only the entities within its radius.</p>
+ *
+ * <p>A room is also a unit of execution: it owns its entities, its systems,
+ * and its event queue, and each tick is evaluated as a single task on a
+ * shared worker pool, independently of all other rooms. The entities of a
+ * room are created by the room, with identifiers that are only unique
+ * within the room. Rooms are not thread-safe; apart from
+ * {@link #post(CoEventType)}, {@link #send(CoRoomID, CoEventType)}, and the
+ * system registration methods, a room must only be accessed by its own
+ * systems, or while the room service is not ticking.</p>
  */
 
 public interface CoRoomType
@@ -27,4 +47,158 @@ public interface CoRoomType
    */
 
   CoRoomID id();
+
+  /**
+   * @return The number of entities in the room
+   */
+
+  int entityCount();
+
+  /**
+   * Create an entity that belongs to the room.
+   *
+   * @param assembly The entity assembly
+   * @param x        The x coordinate of the entity, which must be finite
+   * @param y        The y coordinate of the entity, which must be finite
+   *
+   * @return A new entity
+   */
+
+  CoEntityType entityCreate(
+    CoAssemblyType assembly,
+    double x,
+    double y);
+
+  /**
+   * Update the position of an entity of the room.
+   *
+   * @param entity The entity
+   * @param x      The x coordinate of the entity, which must be finite
+   * @param y      The y coordinate of the entity, which must be finite
+   *
+   * @return {@code true} iff the entity is in the room
+   */
+
+  boolean entityMove(
+    CoEntityID entity,
+    double x,
+    double y);
+
+  /**
+   * Destroy an entity of the room. Entities of a room must be destroyed with
+   * this method rather than {@link CoEntityType#destroy()}, so that they are
+   * also removed from the room.
+   *
+   * @param entity The entity
+   *
+   * @return {@code true} iff the entity was in the room
+   */
+
+  boolean entityDestroy(
+    CoEntityID entity);
+
+  /**
+   * @param entity The raw value of an entity identifier
+   *
+   * @return The entity, if it is in the room
+   */
+
+  Optional<CoEntityType> entity(
+    int entity);
+
+  /**
+   * Add an observer to the room, or update its position and radius if it is
+   * already present.
+   *
+   * @param observer The observer identifier
+   * @param x        The x coordinate of the observer, which must be finite
+   * @param y        The y coordinate of the observer, which must be finite
+   * @param radius   The radius within which the observer sees entities,
+   *                 which must be finite and non-negative
+   *
+   * @return The observer
+   */
+
+  CoRoomObserver observerPut(
+    int observer,
+    double x,
+    double y,
+    double radius);
+
+  /**
+   * @param observer The observer identifier
+   *
+   * @return The observer, if it is in the room
+   */
+
+  Optional<CoRoomObserver> observer(
+    int observer);
+
+  /**
+   * Remove an observer from the room.
+   *
+   * @param observer The observer identifier
+   *
+   * @return {@code true} iff the observer was in the room
+   */
+
+  boolean observerRemove(
+    int observer);
+
+  /**
+   * Update the visible sets of all observers. Observers that have not moved
+   * are not updated unless entities have been inserted, moved, or removed
+   * since the last update.
+   */
+
+  void updateInterest();
+
+  /**
+   * Add a system to the room. The system is evaluated on every subsequent
+   * tick, after all previously added systems.
+   *
+   * @param system The system
+   */
+
+  void systemAdd(
+    CoRoomSystemType system);
+
+  /**
+   * Remove a system from the room.
+   *
+   * @param system The system
+   *
+   * @return {@code true} iff the system was in the room
+   */
+
+  boolean systemRemove(
+    CoRoomSystemType system);
+
+  /**
+   * Post an event to the room's own event queue. This method may be called
+   * from any thread. The event is delivered to the room's systems at the
+   * start of the room's next tick, as a message whose source and target are
+   * both this room.
+   *
+   * @param content The event
+   */
+
+  void post(
+    CoEventType content);
+
+  /**
+   * Send a message to another room. This method may be called from any
+   * thread. The message is placed on the event queue of the target room,
+   * and delivered to its systems at the start of its next tick. Messages to
+   * rooms that do not exist are discarded.
+   *
+   * @param target  The target room
+   * @param content The message content
+   *
+   * @return {@code true} iff the target room exists
+   */
+
+  boolean send(
+    CoRoomID target,
+    CoEventType content);
 }
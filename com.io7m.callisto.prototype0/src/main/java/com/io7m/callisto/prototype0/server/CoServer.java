@@ -16,24 +16,42 @@
 
 package com.io7m.callisto.prototype0.server;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerRegistryType;
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.network.CoNetworkProviderType;
+import com.io7m.callisto.prototype0.replication.CoReplicator;
+import com.io7m.callisto.prototype0.process.CoProcessExecution;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
 import com.io7m.callisto.prototype0.process.CoProcessSupervisor;
+import com.io7m.callisto.prototype0.process.CoProcessWatchdog;
 import com.io7m.callisto.prototype0.process.CoProcessType;
+import com.io7m.callisto.prototype0.rooms.CoRoomServiceType;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolServiceType;
+import com.io7m.callisto.prototype0.systems.CoSystemScheduler;
+import com.io7m.callisto.prototype0.ticks.CoTickPipeline;
+import com.io7m.callisto.prototype0.ticks.CoTickPipelinePhase;
+import com.io7m.callisto.prototype0.ticks.CoTickRate;
+import com.io7m.callisto.prototype0.ticks.CoTickRegistration;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
+import com.io7m.callisto.prototype0.ticks.CoTickSchedulerStatistics;
 import com.io7m.jnull.NullCheck;
 import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public final class CoServer implements CoServerType
@@ -41,9 +59,18 @@ public final class CoServer implements CoServerType
   private static final Logger LOG =
     LoggerFactory.getLogger(CoServer.class);
 
+  private static final AtomicInteger INSTANCES = new AtomicInteger(0);
+
   private final CoEventServiceType events;
   private final ReferenceArrayList<CoProcessType> processes;
   private final CoNetworkProviderType network;
+  private final CoTickScheduler ticks;
+  private final CoServerTickMode mode;
+  private final CoTickPipeline pipeline;
+  private final CoSystemScheduler systems;
+  private final CoRoomServiceType rooms;
+  private final Optional<CoReplicator> replication;
+  private CoTickRegistration pipeline_registration;
 
   public CoServer(
     final Clock in_clock,
@@ -53,26 +80,224 @@ public final class CoServer implements CoServerType
     final CoEventServiceType in_events,
     final CoEventNetworkSerializerRegistryType in_events_serializers)
   {
+    this(
+      in_clock,
+      in_metrics,
+      in_network,
+      in_strings,
+      in_events,
+      in_events_serializers,
+      CoServerTickMode.TICK_PIPELINED);
+  }
+
+  public CoServer(
+    final Clock in_clock,
+    final MetricRegistry in_metrics,
+    final CoNetworkProviderType in_network,
+    final CoStringConstantPoolServiceType in_strings,
+    final CoEventServiceType in_events,
+    final CoEventNetworkSerializerRegistryType in_events_serializers,
+    final CoServerTickMode in_mode)
+  {
+    this(
+      in_clock,
+      in_metrics,
+      in_network,
+      in_strings,
+      in_events,
+      in_events_serializers,
+      in_mode,
+      CoProcessExecution.dedicated());
+  }
+
+  public CoServer(
+    final Clock in_clock,
+    final MetricRegistry in_metrics,
+    final CoNetworkProviderType in_network,
+    final CoStringConstantPoolServiceType in_strings,
+    final CoEventServiceType in_events,
+    final CoEventNetworkSerializerRegistryType in_events_serializers,
+    final CoServerTickMode in_mode,
+    final CoProcessExecutionType in_execution)
+  {
+    this(
+      in_clock,
+      in_metrics,
+      in_network,
+      in_strings,
+      in_events,
+      in_events_serializers,
+      in_mode,
+      in_execution,
+      Optional.empty());
+  }
+
+  public CoServer(
+    final Clock in_clock,
+    final MetricRegistry in_metrics,
+    final CoNetworkProviderType in_network,
+    final CoStringConstantPoolServiceType in_strings,
+    final CoEventServiceType in_events,
+    final CoEventNetworkSerializerRegistryType in_events_serializers,
+    final CoServerTickMode in_mode,
+    final CoProcessExecutionType in_execution,
+    final Optional<CoReplicator> in_replication)
+  {
+    this(
+      in_clock,
+      in_metrics,
+      in_network,
+      in_strings,
+      in_events,
+      in_events_serializers,
+      in_mode,
+      in_execution,
+      in_replication,
+      Optional.empty());
+  }
+
+  /**
+   * Construct a server.
+   *
+   * @param in_clock              The clock
+   * @param in_metrics            A metric registry
+   * @param in_network            The network provider
+   * @param in_strings            The string constant pool
+   * @param in_events             The event service
+   * @param in_events_serializers The network event serializers
+   * @param in_mode               The tick mode
+   * @param in_execution          The process execution model
+   * @param in_replication        The replicator, if replication is enabled
+   * @param in_systems_pool       The pool on which systems and rooms are
+   *                              run, if it is shared with other servers; if
+   *                              no pool is given, the server creates and
+   *                              owns a pool of its own
+   */
+
+  public CoServer(
+    final Clock in_clock,
+    final MetricRegistry in_metrics,
+    final CoNetworkProviderType in_network,
+    final CoStringConstantPoolServiceType in_strings,
+    final CoEventServiceType in_events,
+    final CoEventNetworkSerializerRegistryType in_events_serializers,
+    final CoServerTickMode in_mode,
+    final CoProcessExecutionType in_execution,
+    final Optional<CoReplicator> in_replication,
+    final Optional<ForkJoinPool> in_systems_pool)
+  {
+    NullCheck.notNull(in_systems_pool, "Systems pool");
+
+    this.mode =
+      NullCheck.notNull(in_mode, "Mode");
     this.network =
       NullCheck.notNull(in_network, "Network");
     this.events =
       NullCheck.notNull(in_events, "Events");
+    this.replication =
+      NullCheck.notNull(in_replication, "Replication");
 
-    this.processes = new ReferenceArrayList<>();
-    this.processes.add(
-      new CoServerClock(this.events));
-    this.processes.add(
-      new CoServerLogic(this.events));
-    this.processes.add(
+    this.ticks =
+      CoTickScheduler.create(CoTickRate.hertz(60L), 10, r -> {
+        final Thread th = new Thread(r);
+        th.setName("com.io7m.callisto.server.ticks." + th.getId());
+        th.setPriority(Thread.MAX_PRIORITY);
+        return th;
+      });
+
+    /*
+     * Each instance has its own tick scheduler, so the tick gauges are
+     * named per instance: Many instances may share a registry.
+     */
+
+    final String tick_prefix =
+      MetricRegistry.name(
+        CoServer.class,
+        Integer.toString(INSTANCES.getAndIncrement()),
+        "ticks");
+    final CoTickSchedulerStatistics tick_stats = this.ticks.statistics();
+    in_metrics.gauge(
+      MetricRegistry.name(tick_prefix, "late"),
+      () -> (Gauge<Long>) () -> Long.valueOf(tick_stats.ticksLate()));
+    in_metrics.gauge(
+      MetricRegistry.name(tick_prefix, "dropped"),
+      () -> (Gauge<Long>) () -> Long.valueOf(tick_stats.ticksDropped()));
+    in_metrics.gauge(
+      MetricRegistry.name(tick_prefix, "lateness_maximum"),
+      () -> (Gauge<Long>) () ->
+        Long.valueOf(tick_stats.latenessMaximumNanoseconds()));
+
+    final CoProcessWatchdog watchdog =
+      CoProcessWatchdog.createDefault(
+        in_metrics, MetricRegistry.name(CoServer.class, "processes"));
+    final CoProcessExecutionType execution =
+      CoProcessExecution.watched(
+        NullCheck.notNull(in_execution, "Execution"), watchdog);
+
+    final CoServerFrame frame = new CoServerFrame();
+    final CoServerLogic logic;
+    if (in_systems_pool.isPresent()) {
+      logic = new CoServerLogic(
+        this.events,
+        in_metrics,
+        this.ticks,
+        this.mode,
+        frame,
+        execution,
+        in_systems_pool.get());
+    } else {
+      logic = new CoServerLogic(
+        this.events, in_metrics, this.ticks, this.mode, frame, execution);
+    }
+    final CoServerNetwork net =
       new CoServerNetwork(
         in_clock,
         in_metrics,
         this.events,
         in_events_serializers,
         in_strings,
-        in_network));
+        in_network,
+        this.ticks,
+        this.mode,
+        frame,
+        this.replication,
+        execution);
+
+    this.systems = logic.systems();
+    this.rooms = logic.rooms();
+    this.replication.ifPresent(
+      r -> this.rooms.systemAddShared(r.roomSystem()));
+
+    this.processes = new ReferenceArrayList<>();
     this.processes.add(
-      new CoProcessSupervisor(this.events, this.processes));
+      new CoServerClock(this.events, this.ticks, execution));
+    this.processes.add(logic);
+    this.processes.add(net);
+    this.processes.add(
+      new CoProcessSupervisor(
+        this.events, this.processes, execution, watchdog));
+
+    /*
+     * In pipelined mode, each frame receives, then updates, then sends. The
+     * steps still run on the executors of the processes that own them, so
+     * no process state is shared across threads. Frames run at the same
+     * rate as the logic in independent mode; the network steps only do work
+     * on the subset of frames that fall on network ticks (see
+     * CoServerNetwork), so that simulation and network rates are the same
+     * in both modes.
+     */
+
+    this.pipeline =
+      CoTickPipeline.create(
+        Arrays.asList(
+          CoTickPipelinePhase.of(
+            "receive", Collections.singletonList(net.stepReceive())),
+          CoTickPipelinePhase.of(
+            "logic", Collections.singletonList(logic.stepLogic())),
+          CoTickPipelinePhase.of(
+            "send", Collections.singletonList(net.stepSend()))),
+        in_metrics,
+        MetricRegistry.name(CoServer.class, "frames"));
   }
 
   private static void waitForFutures(
@@ -91,6 +316,34 @@ public final class CoServer implements CoServerType
     }
   }
 
+  /**
+   * @return The scheduler that runs the systems of the simulation
+   */
+
+  public CoSystemScheduler systems()
+  {
+    return this.systems;
+  }
+
+  /**
+   * @return The rooms of the simulation
+   */
+
+  public CoRoomServiceType rooms()
+  {
+    return this.rooms;
+  }
+
+  /**
+   * @return The replicator that sends entity state to clients, if
+   * replication is enabled
+   */
+
+  public Optional<CoReplicator> replication()
+  {
+    return this.replication;
+  }
+
   public void startSynchronously(
     final long time,
     final TimeUnit unit)
@@ -115,6 +368,22 @@ public final class CoServer implements CoServerType
 
     LOG.trace("waiting for processes to start");
     waitForFutures(futures1, time, unit);
+
+    switch (this.mode) {
+      case TICK_INDEPENDENT: {
+        break;
+      }
+      case TICK_PIPELINED: {
+        LOG.trace("starting frame pipeline");
+        this.pipeline_registration =
+          this.ticks.register(
+            "frames",
+            CoTickRate.hertz((long) CoServerLogic.TICKS_PER_SECOND),
+            Runnable::run,
+            this.pipeline);
+        break;
+      }
+    }
   }
 
   public void shutDownSynchronously(
@@ -122,6 +391,13 @@ public final class CoServer implements CoServerType
     final TimeUnit unit)
     throws TimeoutException, ExecutionException
   {
+    final CoTickRegistration r = this.pipeline_registration;
+    if (r != null) {
+      LOG.trace("stopping frame pipeline");
+      r.dispose();
+      this.pipeline_registration = null;
+    }
+
     LOG.trace("stopping processes");
 
     final List<Future<Void>> futures0 =
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.server;
+
+import com.io7m.callisto.prototype0.events.CoEventNetworkType;
+import com.io7m.callisto.prototype0.ticks.CoTickPipelineBuffer;
+import com.io7m.jnull.NullCheck;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * <p>The buffers through which the phases of a server frame hand off work.
+ * The network receive phase adds inputs, the logic phase drains inputs and
+ * adds outputs, and the network send phase drains outputs.</p>
+ *
+ * <p>The time at which the earliest input of the current frame was received
+ * is tracked so that input-to-send latency can be measured.</p>
+ */
+
+public final class CoServerFrame
+{
+  private static final long NO_INPUT = Long.MAX_VALUE;
+
+  private final CoTickPipelineBuffer<CoServerFrameInput> inputs;
+  private final CoTickPipelineBuffer<CoServerFrameOutput> outputs;
+  private final AtomicLong input_earliest;
+
+  public CoServerFrame()
+  {
+    this.inputs = new CoTickPipelineBuffer<>();
+    this.outputs = new CoTickPipelineBuffer<>();
+    this.input_earliest = new AtomicLong(NO_INPUT);
+  }
+
+  /**
+   * Add an event received from a client.
+   *
+   * @param connection The connection ID
+   * @param event      The event
+   */
+
+  public void addInput(
+    final int connection,
+    final CoEventNetworkType event)
+  {
+    final long time = System.nanoTime();
+    this.input_earliest.accumulateAndGet(time, Math::min);
+    this.inputs.add(CoServerFrameInput.of(connection, event, time));
+  }
+
+  /**
+   * Add an event to be sent to a client in the send phase of the current
+   * frame. This is typically called by input handlers and systems during
+   * the logic phase.
+   *
+   * @param connection The connection ID
+   * @param type_name  The event type name
+   * @param event      The event
+   */
+
+  public void addOutput(
+    final int connection,
+    final String type_name,
+    final CoEventNetworkType event)
+  {
+    this.outputs.add(CoServerFrameOutput.of(connection, type_name, event));
+  }
+
+  /**
+   * Remove and process all received inputs.
+   *
+   * @param receiver The receiver
+   *
+   * @return The number of inputs processed
+   */
+
+  public int drainInputs(
+    final Consumer<CoServerFrameInput> receiver)
+  {
+    return this.inputs.drain(NullCheck.notNull(receiver, "Receiver"));
+  }
+
+  /**
+   * Remove and process all pending outputs.
+   *
+   * @param receiver The receiver
+   *
+   * @return The number of outputs processed
+   */
+
+  public int drainOutputs(
+    final Consumer<CoServerFrameOutput> receiver)
+  {
+    return this.outputs.drain(NullCheck.notNull(receiver, "Receiver"));
+  }
+
+  /**
+   * Reset the earliest input time for the next frame.
+   *
+   * @return The time at which the earliest input received since the last
+   * call was received, or {@code -1} if no input was received
+   */
+
+  public long takeEarliestInputTime()
+  {
+    final long time = this.input_earliest.getAndSet(NO_INPUT);
+    return time == NO_INPUT ? -1L : time;
+  }
+}
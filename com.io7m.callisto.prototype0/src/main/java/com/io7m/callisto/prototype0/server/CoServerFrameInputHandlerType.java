@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.server;
+
+import com.io7m.callisto.prototype0.events.CoEventNetworkType;
+
+/**
+ * A handler for client inputs, evaluated on the logic thread during the
+ * logic phase of the frame in which the inputs were received.
+ *
+ * @param <T> The type of input events
+ */
+
+@FunctionalInterface
+public interface CoServerFrameInputHandlerType<T extends CoEventNetworkType>
+{
+  /**
+   * Handle an input. Any responses added to {@code frame} with
+   * {@link CoServerFrame#addOutput(int, String, CoEventNetworkType)} are
+   * sent in the send phase of the same frame.
+   *
+   * @param frame      The current frame
+   * @param connection The ID of the connection that sent the input
+   * @param event      The input
+   */
+
+  void onInput(
+    CoServerFrame frame,
+    int connection,
+    T event);
+}
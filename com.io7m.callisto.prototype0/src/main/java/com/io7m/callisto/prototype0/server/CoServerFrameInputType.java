@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.server;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import com.io7m.callisto.prototype0.events.CoEventNetworkType;
+import org.immutables.value.Value;
+
+/**
+ * An event received from a client during the receive phase of a frame.
+ */
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoServerFrameInputType
+{
+  /**
+   * @return The ID of the connection that sent the event
+   */
+
+  @Value.Parameter
+  int connection();
+
+  /**
+   * @return The received event
+   */
+
+  @Value.Parameter
+  CoEventNetworkType event();
+
+  /**
+   * @return The time, in nanoseconds, at which the event was received
+   */
+
+  @Value.Parameter
+  long timeReceived();
+}
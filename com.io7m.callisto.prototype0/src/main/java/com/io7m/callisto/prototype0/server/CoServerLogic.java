@@ -16,18 +16,123 @@
 
 package com.io7m.callisto.prototype0.server;
 
+import com.codahale.metrics.MetricRegistry;
+import com.io7m.callisto.prototype0.events.CoEventNetworkType;
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.process.CoProcessAbstract;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
+import com.io7m.callisto.prototype0.rooms.CoRoomService;
+import com.io7m.callisto.prototype0.rooms.CoRoomServiceType;
+import com.io7m.callisto.prototype0.systems.CoSystemScheduler;
+import com.io7m.callisto.prototype0.ticks.CoTickPipelineStep;
+import com.io7m.callisto.prototype0.ticks.CoTickRate;
+import com.io7m.callisto.prototype0.ticks.CoTickRegistration;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
+import com.io7m.jnull.NullCheck;
+import com.io7m.junreachable.UnreachableCodeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
 public final class CoServerLogic extends CoProcessAbstract
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(CoServerLogic.class);
 
+  /**
+   * The rate at which the simulation is ticked, in both tick modes.
+   */
+
+  static final int TICKS_PER_SECOND = 60;
+
+  private final CoTickRegistration tick_registration;
+  private final CoServerFrame frame;
+  private final ForkJoinPool systems_pool;
+  private final boolean systems_pool_owned;
+  private final CoSystemScheduler systems;
+  private final CoRoomService rooms;
+  private final List<InputHandler<?>> input_handlers;
+
+  /**
+   * Construct a logic process that runs systems and rooms on a worker pool
+   * of its own, with one worker per processor. The pool is shut down when
+   * the process is destroyed.
+   *
+   * @param in_events    The event service
+   * @param in_metrics   A metric registry
+   * @param in_ticks     The tick scheduler
+   * @param in_mode      The tick mode
+   * @param in_frame     The frame shared with the network process
+   * @param in_execution The process execution model
+   */
+
+  public CoServerLogic(
+    final CoEventServiceType in_events,
+    final MetricRegistry in_metrics,
+    final CoTickScheduler in_ticks,
+    final CoServerTickMode in_mode,
+    final CoServerFrame in_frame,
+    final CoProcessExecutionType in_execution)
+  {
+    this(
+      in_events,
+      in_metrics,
+      in_ticks,
+      in_mode,
+      in_frame,
+      in_execution,
+      createPool(),
+      true);
+  }
+
+  /**
+   * Construct a logic process that runs systems and rooms on the given
+   * pool. Several servers may share a single pool, so that a host running
+   * many servers does not create a pool per server. The pool is owned by
+   * the caller, and is not shut down when the process is destroyed.
+   *
+   * @param in_events       The event service
+   * @param in_metrics      A metric registry
+   * @param in_ticks        The tick scheduler
+   * @param in_mode         The tick mode
+   * @param in_frame        The frame shared with the network process
+   * @param in_execution    The process execution model
+   * @param in_systems_pool The pool on which systems and rooms are run
+   */
+
   public CoServerLogic(
-    final CoEventServiceType in_events)
+    final CoEventServiceType in_events,
+    final MetricRegistry in_metrics,
+    final CoTickScheduler in_ticks,
+    final CoServerTickMode in_mode,
+    final CoServerFrame in_frame,
+    final CoProcessExecutionType in_execution,
+    final ForkJoinPool in_systems_pool)
+  {
+    this(
+      in_events,
+      in_metrics,
+      in_ticks,
+      in_mode,
+      in_frame,
+      in_execution,
+      in_systems_pool,
+      false);
+  }
+
+  private CoServerLogic(
+    final CoEventServiceType in_events,
+    final MetricRegistry in_metrics,
+    final CoTickScheduler in_ticks,
+    final CoServerTickMode in_mode,
+    final CoServerFrame in_frame,
+    final CoProcessExecutionType in_execution,
+    final ForkJoinPool in_systems_pool,
+    final boolean in_systems_pool_owned)
   {
     super(
       in_events,
@@ -35,7 +140,143 @@ public final class CoServerLogic extends CoProcessAbstract
         final Thread th = new Thread(r);
         th.setName("com.io7m.callisto.server.logic." + th.getId());
         return th;
-      });
+      },
+      in_execution);
+
+    this.frame = NullCheck.notNull(in_frame, "Frame");
+    this.input_handlers = new CopyOnWriteArrayList<>();
+    this.systems_pool = NullCheck.notNull(in_systems_pool, "Systems pool");
+    this.systems_pool_owned = in_systems_pool_owned;
+
+    this.systems =
+      CoSystemScheduler.create(
+        this.systems_pool,
+        NullCheck.notNull(in_metrics, "Metrics"),
+        MetricRegistry.name(CoServerLogic.class, "systems"),
+        256);
+    this.rooms = new CoRoomService(in_events, this.systems_pool);
+    this.rooms.onActivate();
+
+    NullCheck.notNull(in_ticks, "Ticks");
+    switch (NullCheck.notNull(in_mode, "Mode")) {
+      case TICK_INDEPENDENT: {
+        this.tick_registration =
+          this.registerTicks(
+            in_ticks,
+            CoTickRate.hertz((long) TICKS_PER_SECOND),
+            this::onTick);
+        break;
+      }
+      case TICK_PIPELINED: {
+        this.tick_registration = null;
+        break;
+      }
+      default: {
+        throw new UnreachableCodeException();
+      }
+    }
+  }
+
+  private static ForkJoinPool createPool()
+  {
+    return new ForkJoinPool(
+      Runtime.getRuntime().availableProcessors(),
+      pool -> {
+        final ForkJoinWorkerThread th =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        th.setName("com.io7m.callisto.server.systems." + th.getId());
+        return th;
+      },
+      null,
+      false);
+  }
+
+  /**
+   * @return The scheduler that runs the systems of the simulation
+   */
+
+  public CoSystemScheduler systems()
+  {
+    return this.systems;
+  }
+
+  /**
+   * @return The rooms of the simulation, which are ticked after the systems
+   * on every tick, on the same worker pool
+   */
+
+  public CoRoomServiceType rooms()
+  {
+    return this.rooms;
+  }
+
+  /**
+   * Register a handler for client inputs of the given type. In pipelined
+   * mode, each input received in a frame is passed to the first registered
+   * handler whose type matches, on the logic thread, before the systems
+   * are ticked. Inputs for which no handler is registered are posted to
+   * the event service instead.
+   *
+   * @param c       The input type
+   * @param handler The handler
+   * @param <T>     The input type
+   */
+
+  public <T extends CoEventNetworkType> void registerInputHandler(
+    final Class<T> c,
+    final CoServerFrameInputHandlerType<T> handler)
+  {
+    this.input_handlers.add(new InputHandler<>(
+      NullCheck.notNull(c, "Class"),
+      NullCheck.notNull(handler, "Handler")));
+  }
+
+  /**
+   * @return The pipeline step that processes the inputs received in the
+   * current frame and updates the simulation
+   */
+
+  public CoTickPipelineStep stepLogic()
+  {
+    return CoTickPipelineStep.of("logic", this.executor(), this::onStepLogic);
+  }
+
+  private void onStepLogic(
+    final long frame_number)
+  {
+    this.frame.drainInputs(this::onInput);
+    this.onTick(frame_number, 0L);
+  }
+
+  private void onInput(
+    final CoServerFrameInput input)
+  {
+    final CoEventNetworkType event = input.event();
+    for (final InputHandler<?> h : this.input_handlers) {
+      if (h.type.isInstance(event)) {
+        try {
+          h.handle(this.frame, input.connection(), event);
+        } catch (final Exception e) {
+          LOG.error("input handler raised exception: ", e);
+        }
+        return;
+      }
+    }
+
+    this.events().post(event);
+  }
+
+  private void onTick(
+    final long tick,
+    final long skipped)
+  {
+    if (skipped > 0L && LOG.isTraceEnabled()) {
+      LOG.trace(
+        "tick {}: skipped {}", Long.valueOf(tick), Long.valueOf(skipped));
+    }
+
+    this.systems.tick(tick);
+    this.rooms.tick(tick);
   }
 
   @Override
@@ -66,11 +307,41 @@ public final class CoServerLogic extends CoProcessAbstract
   protected void doStop()
   {
     LOG.trace("stop");
+    final CoTickRegistration r = this.tick_registration;
+    if (r != null) {
+      r.dispose();
+    }
   }
 
   @Override
   protected void doDestroy()
   {
     LOG.trace("destroy");
+    this.rooms.shutDown();
+    if (this.systems_pool_owned) {
+      this.systems_pool.shutdown();
+    }
+  }
+
+  private static final class InputHandler<T extends CoEventNetworkType>
+  {
+    private final Class<T> type;
+    private final CoServerFrameInputHandlerType<T> handler;
+
+    InputHandler(
+      final Class<T> in_type,
+      final CoServerFrameInputHandlerType<T> in_handler)
+    {
+      this.type = in_type;
+      this.handler = in_handler;
+    }
+
+    void handle(
+      final CoServerFrame frame,
+      final int connection,
+      final CoEventNetworkType event)
+    {
+      this.handler.onInput(frame, connection, this.type.cast(event));
+    }
   }
 }
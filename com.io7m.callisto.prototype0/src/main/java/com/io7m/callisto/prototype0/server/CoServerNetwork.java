@@ -17,35 +17,56 @@
 package com.io7m.callisto.prototype0.server;
 
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerRegistryType;
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.network.CoNetworkProviderType;
 import com.io7m.callisto.prototype0.process.CoProcessAbstract;
+import com.io7m.callisto.prototype0.process.CoProcessExecutionType;
+import com.io7m.callisto.prototype0.replication.CoReplicator;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolServiceType;
-import com.io7m.callisto.prototype0.ticks.CoTickDivisor;
+import com.io7m.callisto.prototype0.ticks.CoTickPipelineStep;
+import com.io7m.callisto.prototype0.ticks.CoTickRate;
+import com.io7m.callisto.prototype0.ticks.CoTickRationalDivisor;
+import com.io7m.callisto.prototype0.ticks.CoTickRegistration;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
 import com.io7m.callisto.prototype0.transport.CoTransportServerConfiguration;
 import com.io7m.jnull.NullCheck;
-import io.reactivex.disposables.Disposable;
+import com.io7m.junreachable.UnreachableCodeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Clock;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public final class CoServerNetwork extends CoProcessAbstract
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(CoServerNetwork.class);
 
+  /**
+   * The rate at which the transport is ticked. This is deliberately lower
+   * than the simulation rate: the transport's timers are expressed in
+   * network ticks, and sending at half the simulation rate halves the
+   * packet rate while each packet carries the outputs of two frames.
+   */
+
   private static final int TICKS_PER_SECOND = 30;
 
   private final CoNetworkProviderType network;
-  private final CoTickDivisor tick_divisor;
-  private final Disposable sub_tick;
+  private final CoTickRegistration tick_registration;
   private final CoStringConstantPoolServiceType strings;
   private final MetricRegistry metrics;
   private final CoEventNetworkSerializerRegistryType events_serializers;
   private final Clock clock;
+  private final CoServerTickMode mode;
+  private final CoServerFrame frame;
+  private final Timer input_to_send;
+  private final Optional<CoReplicator> replication;
+  private final CoTickRationalDivisor frame_divisor;
+  private boolean frame_network;
   private CoServerNetworkHandler handler;
 
   public CoServerNetwork(
@@ -54,7 +75,12 @@ public final class CoServerNetwork extends CoProcessAbstract
     final CoEventServiceType in_events,
     final CoEventNetworkSerializerRegistryType in_event_serializers,
     final CoStringConstantPoolServiceType in_strings,
-    final CoNetworkProviderType in_network)
+    final CoNetworkProviderType in_network,
+    final CoTickScheduler in_ticks,
+    final CoServerTickMode in_mode,
+    final CoServerFrame in_frame,
+    final Optional<CoReplicator> in_replication,
+    final CoProcessExecutionType in_execution)
   {
     super(
       in_events,
@@ -62,7 +88,8 @@ public final class CoServerNetwork extends CoProcessAbstract
         final Thread th = new Thread(r);
         th.setName("com.io7m.callisto.server.network." + th.getId());
         return th;
-      });
+      },
+      in_execution);
 
     this.clock =
       NullCheck.notNull(in_clock, "Clock");
@@ -74,24 +101,114 @@ public final class CoServerNetwork extends CoProcessAbstract
       NullCheck.notNull(in_network, "Network");
     this.strings =
       NullCheck.notNull(in_strings, "Strings");
-    this.tick_divisor =
-      new CoTickDivisor(60.0, TICKS_PER_SECOND);
-
-    this.sub_tick =
-      in_events.events()
-        .ofType(CoServerTickEvent.class)
-        .observeOn(this.scheduler())
-        .subscribe(this::onTickEvent);
+    this.mode =
+      NullCheck.notNull(in_mode, "Mode");
+    this.frame =
+      NullCheck.notNull(in_frame, "Frame");
+    this.replication =
+      NullCheck.notNull(in_replication, "Replication");
+
+    /*
+     * The divisor and the frame flag are only accessed by the pipeline
+     * steps, which both run on the network executor.
+     */
+
+    this.frame_divisor =
+      new CoTickRationalDivisor(
+        CoTickRate.hertz((long) CoServerLogic.TICKS_PER_SECOND),
+        CoTickRate.hertz((long) TICKS_PER_SECOND));
+
+    this.input_to_send =
+      this.metrics.timer(
+        MetricRegistry.name(CoServerNetwork.class, "input_to_send"));
+
+    NullCheck.notNull(in_ticks, "Ticks");
+    switch (this.mode) {
+      case TICK_INDEPENDENT: {
+        this.tick_registration =
+          this.registerTicks(
+            in_ticks,
+            CoTickRate.hertz((long) TICKS_PER_SECOND),
+            this::onTick);
+        break;
+      }
+      case TICK_PIPELINED: {
+        this.tick_registration = null;
+        break;
+      }
+      default: {
+        throw new UnreachableCodeException();
+      }
+    }
+  }
+
+  /**
+   * The returned step only does work on frames that fall on network ticks.
+   * The pipeline runs at the simulation rate, and frames in between
+   * network ticks leave their inputs and outputs for the next network tick.
+   *
+   * @return The pipeline step that receives and decodes packets
+   */
+
+  public CoTickPipelineStep stepReceive()
+  {
+    return CoTickPipelineStep.of(
+      "network_receive", this.executor(), this::onStepReceive);
   }
 
-  private void onTickEvent(
-    final CoServerTickEvent e)
+  /**
+   * The returned step only does work on frames on which the step returned
+   * by {@link #stepReceive()} did work.
+   *
+   * @return The pipeline step that encodes and sends packets
+   */
+
+  public CoTickPipelineStep stepSend()
   {
-    if (this.tick_divisor.tickNow()) {
-      final CoServerNetworkHandler h = this.handler;
-      if (h != null) {
-        h.tick();
-      }
+    return CoTickPipelineStep.of(
+      "network_send", this.executor(), this::onStepSend);
+  }
+
+  private void onStepReceive(
+    final long frame_number)
+  {
+    this.frame_network = this.frame_divisor.tickNow();
+    if (!this.frame_network) {
+      return;
+    }
+
+    final CoServerNetworkHandler h = this.handler;
+    if (h != null) {
+      h.tickReceive();
+    }
+  }
+
+  private void onStepSend(
+    final long frame_number)
+  {
+    if (!this.frame_network) {
+      return;
+    }
+
+    final CoServerNetworkHandler h = this.handler;
+    if (h != null) {
+      h.tickSend();
+    }
+
+    final long time_input = this.frame.takeEarliestInputTime();
+    if (time_input >= 0L) {
+      this.input_to_send.update(
+        System.nanoTime() - time_input, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void onTick(
+    final long tick,
+    final long skipped)
+  {
+    final CoServerNetworkHandler h = this.handler;
+    if (h != null) {
+      h.tick();
     }
   }
 
@@ -129,7 +246,11 @@ public final class CoServerNetwork extends CoProcessAbstract
         this.events_serializers,
         this.events(),
         this.strings,
-        props, config);
+        props,
+        config,
+        this.mode,
+        this.frame,
+        this.replication);
   }
 
   @Override
@@ -152,7 +273,10 @@ public final class CoServerNetwork extends CoProcessAbstract
       }
     }
 
-    this.sub_tick.dispose();
+    final CoTickRegistration r = this.tick_registration;
+    if (r != null) {
+      r.dispose();
+    }
   }
 
   @Override
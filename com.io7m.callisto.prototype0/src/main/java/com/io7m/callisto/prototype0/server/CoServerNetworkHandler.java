@@ -16,6 +16,10 @@
 
 package com.io7m.callisto.prototype0.server;
 
+import com.google.protobuf.ByteString;
+import com.io7m.callisto.prototype0.compression.CoCompressionConfiguration;
+import com.io7m.callisto.prototype0.compression.CoCompressionService;
+import com.io7m.callisto.prototype0.compression.CoCompressionServiceType;
 import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerRegistryType;
 import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerType;
 import com.io7m.callisto.prototype0.events.CoEventNetworkType;
@@ -23,15 +27,22 @@ import com.io7m.callisto.prototype0.events.CoEventSerializationException;
 import com.io7m.callisto.prototype0.events.CoEventServiceType;
 import com.io7m.callisto.prototype0.network.CoNetworkPacketSocketType;
 import com.io7m.callisto.prototype0.network.CoNetworkProviderType;
+import com.io7m.callisto.prototype0.replication.CoReplicationMessages;
+import com.io7m.callisto.prototype0.replication.CoReplicator;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolMessages;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolReadableType;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolSnapshot;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolVersionEncoder;
+import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantPoolAcknowledge;
 import com.io7m.callisto.prototype0.transport.CoTransportConnectionUsableType;
 import com.io7m.callisto.prototype0.transport.CoTransportServer;
 import com.io7m.callisto.prototype0.transport.CoTransportServerConfiguration;
 import com.io7m.callisto.prototype0.transport.CoTransportServerListenerType;
+import com.io7m.callisto.prototype0.transport.messages.CoHello;
 import com.io7m.callisto.prototype0.transport.messages.CoPacket;
 import com.io7m.jnull.NullCheck;
 import io.reactivex.Scheduler;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,7 +51,9 @@ import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.time.Clock;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 
 import static com.io7m.callisto.prototype0.transport.CoTransportConnectionUsableType.Reliability;
@@ -51,11 +64,21 @@ public final class CoServerNetworkHandler
   private static final Logger LOG =
     LoggerFactory.getLogger(CoServerNetworkHandler.class);
 
+  private static final int STRING_TABLE_HISTORY = 8;
+
   private final CoNetworkPacketSocketType peer;
   private final CoTransportServer server;
   private final CoStringConstantPoolReadableType strings;
   private final CoEventServiceType events;
   private final CoEventNetworkSerializerRegistryType event_serializers;
+  private final CoCompressionServiceType strings_codecs;
+  private final CoStringConstantPoolVersionEncoder strings_encoder;
+  private final Int2ReferenceOpenHashMap<CoTransportConnectionUsableType> connections;
+  private final Map<ByteString, CoStringConstantPoolSnapshot> strings_history;
+  private final CoServerTickMode mode;
+  private final CoServerFrame frame;
+  private final Optional<CoReplicator> replication;
+  private CoStringConstantPoolSnapshot strings_broadcast;
 
   public CoServerNetworkHandler(
     final Clock in_clock,
@@ -65,7 +88,10 @@ public final class CoServerNetworkHandler
     final CoEventServiceType in_events,
     final CoStringConstantPoolReadableType in_strings,
     final Properties props,
-    final CoTransportServerConfiguration config)
+    final CoTransportServerConfiguration config,
+    final CoServerTickMode in_mode,
+    final CoServerFrame in_frame,
+    final Optional<CoReplicator> in_replication)
   {
     NullCheck.notNull(in_network, "Network");
     NullCheck.notNull(in_clock, "Clock");
@@ -77,15 +103,149 @@ public final class CoServerNetworkHandler
       NullCheck.notNull(in_events, "Events");
     this.event_serializers =
       NullCheck.notNull(in_event_serializers, "Event serializers");
+    this.mode =
+      NullCheck.notNull(in_mode, "Mode");
+    this.frame =
+      NullCheck.notNull(in_frame, "Frame");
+    this.replication =
+      NullCheck.notNull(in_replication, "Replication");
     this.peer =
       in_network.createSocket(props);
     this.server =
       new CoTransportServer(in_clock, in_strings, this, this.peer, config);
+
+    this.strings_codecs =
+      new CoCompressionService(CoCompressionConfiguration.builder().build());
+    this.strings_encoder =
+      new CoStringConstantPoolVersionEncoder(this.strings_codecs);
+    this.connections = new Int2ReferenceOpenHashMap<>();
+    this.strings_history =
+      new LinkedHashMap<ByteString, CoStringConstantPoolSnapshot>()
+      {
+        @Override
+        protected boolean removeEldestEntry(
+          final Map.Entry<ByteString, CoStringConstantPoolSnapshot> eldest)
+        {
+          return this.size() > STRING_TABLE_HISTORY;
+        }
+      };
+
+    this.setStringTableBroadcast(this.strings.snapshot());
+  }
+
+  private void setStringTableBroadcast(
+    final CoStringConstantPoolSnapshot snapshot)
+  {
+    this.strings_broadcast = snapshot;
+    this.strings_history.put(
+      ByteString.copyFrom(snapshot.contentHash()), snapshot);
   }
 
   public void tick()
   {
-    this.server.tick();
+    this.tickReceive();
+    this.tickSend();
+  }
+
+  /**
+   * Receive and decode all pending packets. In pipelined mode, decoded
+   * events are added to the inputs of the current frame.
+   */
+
+  public void tickReceive()
+  {
+    this.server.tickReceive();
+  }
+
+  /**
+   * Encode and send all pending frame outputs, string table changes, and
+   * replication updates, and then flush all connections.
+   */
+
+  public void tickSend()
+  {
+    this.sendStringTableChanges();
+    this.frame.drainOutputs(this::sendFrameOutput);
+    this.sendReplication();
+    this.server.tickSend();
+  }
+
+  private void sendReplication()
+  {
+    if (this.replication.isPresent()) {
+      final CoReplicator r = this.replication.get();
+      for (final CoTransportConnectionUsableType connection :
+        this.connections.values()) {
+        r.send(connection);
+      }
+    }
+  }
+
+  private void sendFrameOutput(
+    final CoServerFrameOutput output)
+  {
+    final CoTransportConnectionUsableType connection =
+      this.connections.get(output.connection());
+    if (connection == null) {
+      return;
+    }
+
+    try {
+      final CoEventNetworkSerializerType serializer =
+        this.event_serializers.lookupSerializer(output.typeName());
+      final CoEventNetworkType event = output.event();
+      connection.send(
+        event.reliability(),
+        0,
+        output.typeName(),
+        serializer.eventSerialize(event));
+    } catch (final CoEventSerializationException e) {
+      LOG.error(
+        "sendFrameOutput: {}: could not serialize event: type {}: ",
+        connection,
+        output.typeName(),
+        e);
+    }
+  }
+
+  /**
+   * If the string table has changed since it was last broadcast, send the
+   * changes to all connected clients. The delta is encoded once and the same
+   * bytes are sent to every connection.
+   */
+
+  private void sendStringTableChanges()
+  {
+    final CoStringConstantPoolSnapshot current = this.strings.snapshot();
+    final CoStringConstantPoolSnapshot previous = this.strings_broadcast;
+    if (current.version() == previous.version()) {
+      return;
+    }
+
+    if (!this.connections.isEmpty()) {
+      final ByteString delta =
+        this.strings_encoder.encodeDelta(previous, current);
+
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(
+          "sending string table delta {} -> {} ({} octets, {} connections)",
+          Long.valueOf(previous.version()),
+          Long.valueOf(current.version()),
+          Integer.valueOf(delta.size()),
+          Integer.valueOf(this.connections.size()));
+      }
+
+      for (final CoTransportConnectionUsableType connection :
+        this.connections.values()) {
+        connection.send(
+          Reliability.MESSAGE_RELIABLE,
+          0,
+          CoStringConstantPoolMessages.eventCompressedUpdateTypeName(),
+          delta.asReadOnlyByteBuffer());
+      }
+    }
+
+    this.setStringTableBroadcast(current);
   }
 
   @Override
@@ -94,6 +254,7 @@ public final class CoServerNetworkHandler
   {
     this.server.close();
     this.peer.close();
+    this.strings_codecs.shutDown();
   }
 
   @Override
@@ -123,30 +284,109 @@ public final class CoServerNetworkHandler
 
   @Override
   public void onClientConnectionCreated(
-    final CoTransportConnectionUsableType connection)
+    final CoTransportConnectionUsableType connection,
+    final CoHello hello)
   {
     LOG.info("onConnectionCreated: {}", connection);
-    this.sendInitialStringTable(connection);
+    this.connections.put(connection.id(), connection);
+    this.replication.ifPresent(r -> r.connectionAdd(connection.id()));
+    this.sendInitialStringTable(connection, hello.getStringTableHash());
     this.events.post(CoServerNetworkEventConnected.of(
       connection.id(),
       connection.remote()));
   }
 
   private void sendInitialStringTable(
-    final CoTransportConnectionUsableType connection)
+    final CoTransportConnectionUsableType connection,
+    final ByteString client_hash)
   {
-    final Map<Integer, String> xs = this.strings.view();
+    /*
+     * The table is sent as of the most recent broadcast, so that the next
+     * broadcast delta applies to it directly. If the client has cached a
+     * table that the server recently broadcast, only the changes since that
+     * table are sent; if nothing has changed, the update is empty.
+     */
+
+    final CoStringConstantPoolSnapshot snapshot = this.strings_broadcast;
+    final CoStringConstantPoolSnapshot cached =
+      client_hash.isEmpty() ? null : this.strings_history.get(client_hash);
+
+    final ByteString table;
+    if (cached != null) {
+      table = this.strings_encoder.encodeDelta(cached, snapshot);
+    } else {
+      table = this.strings_encoder.encodeFull(snapshot);
+    }
+
     if (LOG.isTraceEnabled()) {
       LOG.trace(
-        "sending initial string table ({} strings)",
-        Integer.valueOf(xs.size()));
+        "sending initial string table (version {}, {} strings, {} octets, client cached: {})",
+        Long.valueOf(snapshot.version()),
+        Integer.valueOf(snapshot.size()),
+        Integer.valueOf(table.size()),
+        Boolean.valueOf(cached != null));
     }
 
     connection.send(
       Reliability.MESSAGE_RELIABLE,
       0,
       CoStringConstantPoolMessages.eventCompressedUpdateTypeName(),
-      CoStringConstantPoolMessages.createEventUpdateCompressedSerialized(xs));
+      table.asReadOnlyByteBuffer());
+  }
+
+  private void onStringTableAcknowledged(
+    final CoTransportConnectionUsableType connection,
+    final ByteBuffer data)
+  {
+    try {
+      final CoStringConstantPoolAcknowledge ack =
+        CoStringConstantPoolMessages.parseEventAcknowledge(data);
+
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(
+          "onStringTableAcknowledged: {}: version {} (resend {})",
+          connection,
+          Long.valueOf(ack.getVersion()),
+          Boolean.valueOf(ack.getResend()));
+      }
+
+      if (ack.getResend()) {
+        this.sendInitialStringTable(connection, ByteString.EMPTY);
+      }
+    } catch (final CoEventSerializationException e) {
+      LOG.error(
+        "onStringTableAcknowledged: {}: could not parse acknowledgement: ",
+        connection,
+        e);
+    }
+  }
+
+  private void onReplicationAcknowledged(
+    final CoTransportConnectionUsableType connection,
+    final ByteBuffer data)
+  {
+    if (!this.replication.isPresent()) {
+      LOG.warn(
+        "onReplicationAcknowledged: {}: replication is not enabled",
+        connection);
+      return;
+    }
+
+    try {
+      this.replication.get().acknowledge(connection.id(), data);
+    } catch (final CoEventSerializationException e) {
+      LOG.error(
+        "onReplicationAcknowledged: {}: could not parse acknowledgement: ",
+        connection,
+        e);
+    }
+  }
+
+  private void onConnectionRemoved(
+    final CoTransportConnectionUsableType connection)
+  {
+    this.connections.remove(connection.id());
+    this.replication.ifPresent(r -> r.connectionRemove(connection.id()));
   }
 
   @Override
@@ -155,6 +395,7 @@ public final class CoServerNetworkHandler
     final String message)
   {
     LOG.info("onConnectionClosed: {}", connection);
+    this.onConnectionRemoved(connection);
   }
 
   @Override
@@ -162,6 +403,7 @@ public final class CoServerNetworkHandler
     final CoTransportConnectionUsableType connection)
   {
     LOG.error("onClientConnectionTimedOut: {}", connection);
+    this.onConnectionRemoved(connection);
     this.events.post(CoServerNetworkEventDisconnected.of(
       connection.id(), connection.remote()));
   }
@@ -223,12 +465,22 @@ public final class CoServerNetworkHandler
     final String type_name,
     final ByteBuffer data)
   {
+    if (CoStringConstantPoolMessages.eventAcknowledgeTypeName().equals(type_name)) {
+      this.onStringTableAcknowledged(connection, data);
+      return;
+    }
+
+    if (CoReplicationMessages.acknowledgeTypeName().equals(type_name)) {
+      this.onReplicationAcknowledged(connection, data);
+      return;
+    }
+
     try {
       final CoEventNetworkSerializerType serializer =
         this.event_serializers.lookupSerializer(type_name);
       final CoEventNetworkType event =
         serializer.eventDeserialize(data);
-      this.events.post(event);
+      this.deliverReceived(connection, event);
     } catch (final CoEventSerializationException e) {
       LOG.error(
         "onClientConnectionMessageReceived: {}: could not deserialize event: type {} size {}: ",
@@ -239,6 +491,22 @@ public final class CoServerNetworkHandler
     }
   }
 
+  private void deliverReceived(
+    final CoTransportConnectionUsableType connection,
+    final CoEventNetworkType event)
+  {
+    switch (this.mode) {
+      case TICK_INDEPENDENT: {
+        this.events.post(event);
+        break;
+      }
+      case TICK_PIPELINED: {
+        this.frame.addInput(connection.id(), event);
+        break;
+      }
+    }
+  }
+
   @Override
   public void onClientConnectionPacketIgnoredBye(
     final CoTransportConnectionUsableType connection,
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.server;
+
+/**
+ * The way in which server processes are driven by ticks.
+ */
+
+public enum CoServerTickMode
+{
+  /**
+   * Each process registers its own tick receiver and reacts to ticks on its
+   * own thread, in no fixed order relative to the other processes.
+   */
+
+  TICK_INDEPENDENT,
+
+  /**
+   * Processes are driven by a single frame pipeline that runs the network
+   * receive phase, then the logic phase, then the network send phase. Input
+   * received in a frame is processed and any resulting output is sent
+   * within the same frame.
+   */
+
+  TICK_PIPELINED
+}
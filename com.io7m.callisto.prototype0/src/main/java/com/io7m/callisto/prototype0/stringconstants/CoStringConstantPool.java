@@ -19,26 +19,27 @@ package com.io7m.callisto.prototype0.stringconstants;
 import com.io7m.jnull.NullCheck;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
-import it.unimi.dsi.fastutil.ints.Int2ReferenceRBTreeMap;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
-import net.jcip.annotations.GuardedBy;
 
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free string constant pool. Readers always see an immutable
+ * {@link CoStringConstantPoolSnapshot}; writers produce a modified copy of the
+ * current snapshot and publish it atomically.
+ */
 
 public final class CoStringConstantPool implements CoStringConstantPoolType
 {
-  private final Object lock;
-  private final @GuardedBy("lock") Object2IntOpenHashMap<String> text_to_int;
-  private final @GuardedBy("lock") Int2ReferenceRBTreeMap<String> int_to_text;
+  private final AtomicReference<CoStringConstantPoolSnapshot> snapshot;
   private final ListenerType listener;
 
   public CoStringConstantPool(
     final ListenerType in_listener)
   {
     this.listener = NullCheck.notNull(in_listener, "Listener");
-    this.lock = new Object();
-    this.int_to_text = new Int2ReferenceRBTreeMap<>();
-    this.text_to_int = new Object2IntOpenHashMap<>();
+    this.snapshot =
+      new AtomicReference<>(CoStringConstantPoolSnapshot.empty());
   }
 
   @Override
@@ -46,15 +47,7 @@ public final class CoStringConstantPool implements CoStringConstantPoolType
     final CoStringConstantReference r)
   {
     NullCheck.notNull(r, "Reference");
-
-    synchronized (this.lock) {
-      final int k = r.value();
-      if (this.int_to_text.containsKey(k)) {
-        return Optional.of(this.int_to_text.get(k));
-      }
-    }
-
-    return Optional.empty();
+    return Optional.ofNullable(this.snapshot.get().lookupString(r.value()));
   }
 
   @Override
@@ -62,23 +55,19 @@ public final class CoStringConstantPool implements CoStringConstantPoolType
     final String text)
   {
     NullCheck.notNull(text, "Text");
-
-    synchronized (this.lock) {
-      if (this.text_to_int.containsKey(text)) {
-        return Optional.of(CoStringConstantReference.of(
-          this.text_to_int.getInt(text)));
-      }
-    }
-
-    return Optional.empty();
+    return Optional.ofNullable(this.snapshot.get().lookupReference(text));
   }
 
   @Override
   public Int2ReferenceMap<String> view()
   {
-    synchronized (this.lock) {
-      return new Int2ReferenceOpenHashMap<>(this.int_to_text);
-    }
+    return this.snapshot.get().toMap();
+  }
+
+  @Override
+  public CoStringConstantPoolSnapshot snapshot()
+  {
+    return this.snapshot.get();
   }
 
   @Override
@@ -94,11 +83,12 @@ public final class CoStringConstantPool implements CoStringConstantPoolType
     NullCheck.notNull(text, "Text");
 
     try {
-      synchronized (this.lock) {
-        final int k = this.int_to_text.lastIntKey() + 1;
-        this.int_to_text.put(k, text);
-        this.text_to_int.put(text, k);
-        return CoStringConstantReference.of(k);
+      while (true) {
+        final CoStringConstantPoolSnapshot current = this.snapshot.get();
+        final CoStringConstantPoolSnapshot next = current.withAppended(text);
+        if (this.snapshot.compareAndSet(current, next)) {
+          return CoStringConstantReference.of(current.nextIndex());
+        }
       }
     } finally {
       this.listener.onUpdate();
@@ -115,8 +105,6 @@ public final class CoStringConstantPool implements CoStringConstantPoolType
     private final CoStringConstantPool owner;
     private final Int2ReferenceOpenHashMap<String> update_int_to_text =
       new Int2ReferenceOpenHashMap<>();
-    private final Object2IntOpenHashMap<String> update_text_to_int =
-      new Object2IntOpenHashMap<>();
 
     Update(final CoStringConstantPool in_owner)
     {
@@ -130,20 +118,23 @@ public final class CoStringConstantPool implements CoStringConstantPoolType
     {
       final String text = NullCheck.notNull(value, "Value");
       this.update_int_to_text.put(index, text);
-      this.update_text_to_int.put(text, index);
       return this;
     }
 
     @Override
     public void execute()
     {
-      synchronized (this.owner.lock) {
-        this.owner.int_to_text.putAll(this.update_int_to_text);
-        this.owner.text_to_int.putAll(this.update_text_to_int);
-        this.update_int_to_text.clear();
-        this.update_text_to_int.clear();
+      while (true) {
+        final CoStringConstantPoolSnapshot current =
+          this.owner.snapshot.get();
+        final CoStringConstantPoolSnapshot next =
+          current.withEntries(this.update_int_to_text);
+        if (this.owner.snapshot.compareAndSet(current, next)) {
+          break;
+        }
       }
 
+      this.update_int_to_text.clear();
       this.owner.listener.onUpdate();
     }
   }
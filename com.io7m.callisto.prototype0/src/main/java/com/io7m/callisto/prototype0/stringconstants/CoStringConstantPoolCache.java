@@ -0,0 +1,274 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.stringconstants;
+
+import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantPoolUpdate;
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import com.io7m.jnull.NullCheck;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <p>A persistent cache of string tables received from a server.</p>
+ *
+ * <p>Each table is stored in a file named by its content hash, and the hash
+ * of the most recently stored table is recorded in a separate file. Tables
+ * are read and written through memory-mapped files. A table that does not
+ * match the hash in its name is ignored.</p>
+ *
+ * <p>Only the {@link #TABLES_RETAINED} most recently stored tables are kept;
+ * older tables are deleted each time a table is stored.</p>
+ */
+
+public final class CoStringConstantPoolCache
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoStringConstantPoolCache.class);
+
+  /**
+   * The maximum number of tables kept in the cache directory.
+   */
+
+  public static final int TABLES_RETAINED = 4;
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final int NAME_LENGTH = 64;
+  private static final String SUFFIX = ".table";
+
+  private final Path directory;
+  private final Path latest;
+
+  public CoStringConstantPoolCache(
+    final Path in_directory)
+  {
+    this.directory = NullCheck.notNull(in_directory, "Directory");
+    this.latest = this.directory.resolve("latest");
+  }
+
+  private static String hex(
+    final byte[] data)
+  {
+    final StringBuilder sb = new StringBuilder(data.length * 2);
+    for (final byte x : data) {
+      sb.append(HEX[(x >> 4) & 0xf]);
+      sb.append(HEX[x & 0xf]);
+    }
+    return sb.toString();
+  }
+
+  private static boolean isValidName(
+    final String name)
+  {
+    if (name.length() != NAME_LENGTH) {
+      return false;
+    }
+    for (int index = 0; index < name.length(); ++index) {
+      final char c = name.charAt(index);
+      final boolean digit = c >= '0' && c <= '9';
+      final boolean letter = c >= 'a' && c <= 'f';
+      if (!digit && !letter) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeMapped(
+    final Path file,
+    final byte[] data)
+    throws IOException
+  {
+    final Path temporary =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    try (final FileChannel channel = FileChannel.open(
+      temporary,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.TRUNCATE_EXISTING,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE)) {
+      final MappedByteBuffer map =
+        channel.map(FileChannel.MapMode.READ_WRITE, 0L, (long) data.length);
+      map.put(data);
+      map.force();
+    }
+
+    Files.move(
+      temporary,
+      file,
+      StandardCopyOption.ATOMIC_MOVE,
+      StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static ByteBuffer readMapped(
+    final Path file)
+    throws IOException
+  {
+    try (final FileChannel channel =
+           FileChannel.open(file, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+    }
+  }
+
+  /**
+   * Load the most recently stored table, if any.
+   *
+   * @return The table, or nothing if no valid table is cached
+   */
+
+  public Optional<CoStringConstantPoolSnapshot> load()
+  {
+    if (!Files.isRegularFile(this.latest)) {
+      return Optional.empty();
+    }
+
+    try {
+      final String name =
+        StandardCharsets.US_ASCII.decode(readMapped(this.latest))
+          .toString()
+          .trim();
+
+      if (!isValidName(name)) {
+        LOG.warn("cached string table name is malformed; ignoring it");
+        return Optional.empty();
+      }
+
+      final Path file = this.directory.resolve(name + SUFFIX);
+
+      final CoStringConstantPoolUpdate update =
+        CoStringConstantPoolUpdate.parseFrom(readMapped(file));
+
+      final Int2ReferenceOpenHashMap<String> strings =
+        new Int2ReferenceOpenHashMap<>(update.getStringsCount());
+      for (final Map.Entry<Integer, String> e :
+        update.getStringsMap().entrySet()) {
+        strings.put(e.getKey().intValue(), e.getValue());
+      }
+
+      final CoStringConstantPoolSnapshot snapshot =
+        CoStringConstantPoolSnapshot.empty().withEntries(strings);
+
+      if (!name.equals(hex(snapshot.contentHash()))) {
+        LOG.warn("cached string table {} is corrupt; ignoring it", file);
+        return Optional.empty();
+      }
+
+      LOG.debug(
+        "loaded cached string table {} ({} strings)",
+        name,
+        Integer.valueOf(snapshot.size()));
+      return Optional.of(snapshot);
+    } catch (final IOException | PreconditionViolationException e) {
+      LOG.warn("could not load cached string table: ", e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Store the given table and record it as the most recently stored table.
+   *
+   * @param snapshot The table
+   */
+
+  public void store(
+    final CoStringConstantPoolSnapshot snapshot)
+  {
+    NullCheck.notNull(snapshot, "Snapshot");
+
+    final String name = hex(snapshot.contentHash());
+    try {
+      Files.createDirectories(this.directory);
+
+      final Path file = this.directory.resolve(name + SUFFIX);
+      if (Files.isRegularFile(file)) {
+        Files.setLastModifiedTime(
+          file, FileTime.fromMillis(System.currentTimeMillis()));
+      } else {
+        writeMapped(
+          file,
+          CoStringConstantPoolMessages.createEventUpdate(snapshot.toMap())
+            .toByteArray());
+      }
+
+      writeMapped(this.latest, name.getBytes(StandardCharsets.US_ASCII));
+      this.prune(file);
+
+      LOG.debug(
+        "stored string table {} ({} strings)",
+        name,
+        Integer.valueOf(snapshot.size()));
+    } catch (final IOException e) {
+      LOG.warn("could not store string table: ", e);
+    }
+  }
+
+  /**
+   * Delete all but the {@link #TABLES_RETAINED} most recently stored tables.
+   * The table that was just stored is always kept, regardless of the
+   * modification times of the other tables.
+   */
+
+  private void prune(
+    final Path stored)
+    throws IOException
+  {
+    final List<Path> tables = new ArrayList<>();
+    try (final DirectoryStream<Path> stream =
+           Files.newDirectoryStream(this.directory, "*" + SUFFIX)) {
+      for (final Path path : stream) {
+        if (!path.equals(stored) && Files.isRegularFile(path)) {
+          tables.add(path);
+        }
+      }
+    }
+
+    if (tables.size() < TABLES_RETAINED) {
+      return;
+    }
+
+    final Map<Path, FileTime> times = new HashMap<>(tables.size());
+    for (final Path path : tables) {
+      times.put(path, Files.getLastModifiedTime(path));
+    }
+    tables.sort(Comparator.<Path, FileTime>comparing(times::get).reversed());
+
+    for (int index = TABLES_RETAINED - 1; index < tables.size(); ++index) {
+      final Path path = tables.get(index);
+      LOG.debug("deleting old string table {}", path);
+      Files.deleteIfExists(path);
+    }
+  }
+}
@@ -16,6 +16,9 @@
 
 package com.io7m.callisto.prototype0.stringconstants;
 
+import com.io7m.callisto.prototype0.compression.CoCompressionConfiguration;
+import com.io7m.callisto.prototype0.compression.CoCompressionService;
+import com.io7m.callisto.prototype0.compression.CoCompressionServiceType;
 import com.io7m.callisto.prototype0.events.CoEventNetworkSerializerType;
 import com.io7m.callisto.prototype0.events.CoEventNetworkType;
 import com.io7m.callisto.prototype0.events.CoEventSerializationException;
@@ -27,9 +30,20 @@ import java.nio.ByteBuffer;
 public final class CoStringConstantPoolEventUpdateReceivedSerializer
   implements CoEventNetworkSerializerType
 {
+  private final CoCompressionServiceType codecs;
+
   public CoStringConstantPoolEventUpdateReceivedSerializer()
   {
+    /*
+     * Serializers have no lifecycle and so cannot shut down a service.
+     * Retaining no codecs means that native resources are released at the
+     * end of each operation, so there is nothing to shut down.
+     */
 
+    this.codecs = new CoCompressionService(
+      CoCompressionConfiguration.builder()
+        .setCodecsRetained(0)
+        .build());
   }
 
   @Override
@@ -59,7 +73,7 @@ public final class CoStringConstantPoolEventUpdateReceivedSerializer
 
     final CoStringConstantPoolUpdate update =
       CoStringConstantPoolMessages.parseEventUpdateCompressedDecompressDirectly(
-        data);
+        this.codecs, data);
 
     return CoStringConstantPoolEventUpdateReceived.builder()
       .putAllValues(update.getStringsMap())
@@ -75,6 +89,7 @@ public final class CoStringConstantPoolEventUpdateReceivedSerializer
 
     if (event instanceof CoStringConstantPoolEventUpdateReceived) {
       return CoStringConstantPoolMessages.createEventUpdateCompressedSerialized(
+        this.codecs,
         ((CoStringConstantPoolEventUpdateReceived) event).values());
     }
 
@@ -18,26 +18,24 @@ package com.io7m.callisto.prototype0.stringconstants;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
-import com.io7m.callisto.prototype0.bytebuffers.ByteBufferInputStream;
-import com.io7m.callisto.prototype0.events.CoEventSerializationIOException;
+import com.io7m.callisto.prototype0.compression.CoCompressionException;
+import com.io7m.callisto.prototype0.compression.CoCompressionServiceType;
 import com.io7m.callisto.prototype0.events.CoEventSerializationMalformedException;
 import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantCompression;
+import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantPoolAcknowledge;
 import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantPoolUpdate;
 import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantPoolUpdateCompressed;
 import com.io7m.jnull.NullCheck;
 import com.io7m.junreachable.UnreachableCodeException;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Map;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 public final class CoStringConstantPoolMessages
 {
+  private static final CoStringConstantCompression ALGORITHM =
+    CoStringConstantCompression.COMPRESSION_DEFLATE_DICTIONARY;
+
   private CoStringConstantPoolMessages()
   {
     throw new UnreachableCodeException();
@@ -48,6 +46,11 @@ public final class CoStringConstantPoolMessages
     return "event:com.io7m.callisto.stringconstants.compressed_update";
   }
 
+  public static String eventAcknowledgeTypeName()
+  {
+    return "event:com.io7m.callisto.stringconstants.acknowledge";
+  }
+
   public static CoStringConstantPoolUpdate createEventUpdate(
     final Map<Integer, String> strings)
   {
@@ -58,41 +61,91 @@ public final class CoStringConstantPoolMessages
       .build();
   }
 
+  public static CoStringConstantPoolUpdate createEventUpdateVersioned(
+    final long version_base,
+    final byte[] hash_base,
+    final long version,
+    final Map<Integer, String> strings)
+  {
+    NullCheck.notNull(hash_base, "Hash base");
+    NullCheck.notNull(strings, "Strings");
+
+    return CoStringConstantPoolUpdate.newBuilder()
+      .putAllStrings(strings)
+      .setVersionBase(version_base)
+      .setHashBase(ByteString.copyFrom(hash_base))
+      .setVersion(version)
+      .build();
+  }
+
   public static CoStringConstantPoolUpdateCompressed createEventUpdateCompressed(
+    final CoCompressionServiceType codecs,
     final CoStringConstantPoolUpdate update)
   {
+    return createEventUpdateCompressed(codecs, ALGORITHM, update);
+  }
+
+  public static CoStringConstantPoolUpdateCompressed createEventUpdateCompressed(
+    final CoCompressionServiceType codecs,
+    final CoStringConstantCompression algorithm,
+    final CoStringConstantPoolUpdate update)
+  {
+    NullCheck.notNull(codecs, "Codecs");
+    NullCheck.notNull(algorithm, "Algorithm");
     NullCheck.notNull(update, "Update");
 
-    final Deflater def = new Deflater(9);
-    try (final ByteArrayOutputStream b_out =
-           new ByteArrayOutputStream(1024)) {
-      try (final DeflaterOutputStream out =
-             new DeflaterOutputStream(b_out, def)) {
-        update.writeTo(out);
-        out.finish();
-        out.flush();
-      }
+    final ByteBuffer compressed =
+      codecs.compress(algorithm, update.toByteString().asReadOnlyByteBuffer());
 
-      final byte[] bytes = b_out.toByteArray();
-      return CoStringConstantPoolUpdateCompressed.newBuilder()
-        .setAlgorithm(CoStringConstantCompression.COMPRESSION_DEFLATE)
-        .setData(ByteString.copyFrom(bytes))
-        .build();
-    } catch (final IOException e) {
-      throw new UnreachableCodeException(e);
-    }
+    return CoStringConstantPoolUpdateCompressed.newBuilder()
+      .setAlgorithm(algorithm)
+      .setData(ByteString.copyFrom(compressed))
+      .build();
   }
 
   public static CoStringConstantPoolUpdateCompressed createEventUpdateCompressedDirectly(
+    final CoCompressionServiceType codecs,
     final Map<Integer, String> xs)
   {
-    return createEventUpdateCompressed(createEventUpdate(xs));
+    return createEventUpdateCompressed(codecs, createEventUpdate(xs));
   }
 
   public static ByteBuffer createEventUpdateCompressedSerialized(
+    final CoCompressionServiceType codecs,
     final Map<Integer, String> xs)
   {
-    return createEventUpdateCompressed(createEventUpdate(xs)).toByteString().asReadOnlyByteBuffer();
+    return createEventUpdateCompressed(codecs, createEventUpdate(xs)).toByteString().asReadOnlyByteBuffer();
+  }
+
+  public static ByteBuffer createEventAcknowledgeSerialized(
+    final long version)
+  {
+    return CoStringConstantPoolAcknowledge.newBuilder()
+      .setVersion(version)
+      .build()
+      .toByteString()
+      .asReadOnlyByteBuffer();
+  }
+
+  public static ByteBuffer createEventResendRequestSerialized(
+    final long version)
+  {
+    return CoStringConstantPoolAcknowledge.newBuilder()
+      .setVersion(version)
+      .setResend(true)
+      .build()
+      .toByteString()
+      .asReadOnlyByteBuffer();
+  }
+
+  public static CoStringConstantPoolAcknowledge parseEventAcknowledge(
+    final ByteBuffer data)
+  {
+    try {
+      return CoStringConstantPoolAcknowledge.parseFrom(data);
+    } catch (final InvalidProtocolBufferException ex) {
+      throw new CoEventSerializationMalformedException(ex);
+    }
   }
 
   public static CoStringConstantPoolUpdateCompressed parseEventUpdateCompressed(
@@ -106,12 +159,25 @@ public final class CoStringConstantPoolMessages
   }
 
   public static CoStringConstantPoolUpdate parseEventUpdateCompressedDecompress(
+    final CoCompressionServiceType codecs,
     final CoStringConstantPoolUpdateCompressed update)
   {
+    NullCheck.notNull(codecs, "Codecs");
+    NullCheck.notNull(update, "Update");
+
     switch (update.getAlgorithm()) {
-      case COMPRESSION_DEFLATE: {
-        final ByteBuffer compressed = update.getData().asReadOnlyByteBuffer();
-        return parseEventUpdateCompressedDecompressDeflate(compressed);
+      case COMPRESSION_DEFLATE:
+      case COMPRESSION_DEFLATE_DICTIONARY: {
+        try {
+          final ByteBuffer data =
+            codecs.decompress(
+              update.getAlgorithm(),
+              update.getData().asReadOnlyByteBuffer());
+          return CoStringConstantPoolUpdate.parseFrom(data);
+        } catch (final CoCompressionException
+          | InvalidProtocolBufferException e) {
+          throw new CoEventSerializationMalformedException(e);
+        }
       }
       case UNRECOGNIZED: {
         throw new CoEventSerializationMalformedException(
@@ -121,22 +187,10 @@ public final class CoStringConstantPoolMessages
     throw new UnreachableCodeException();
   }
 
-  private static CoStringConstantPoolUpdate parseEventUpdateCompressedDecompressDeflate(
-    final ByteBuffer data)
-  {
-    final Inflater def = new Inflater();
-    try (final ByteBufferInputStream b_in = new ByteBufferInputStream(data)) {
-      try (final InflaterInputStream in = new InflaterInputStream(b_in, def)) {
-        return CoStringConstantPoolUpdate.parseFrom(in);
-      }
-    } catch (final IOException e) {
-      throw new CoEventSerializationIOException(e);
-    }
-  }
-
   public static CoStringConstantPoolUpdate parseEventUpdateCompressedDecompressDirectly(
+    final CoCompressionServiceType codecs,
     final ByteBuffer data)
   {
-    return parseEventUpdateCompressedDecompress(parseEventUpdateCompressed(data));
+    return parseEventUpdateCompressedDecompress(codecs, parseEventUpdateCompressed(data));
   }
 }
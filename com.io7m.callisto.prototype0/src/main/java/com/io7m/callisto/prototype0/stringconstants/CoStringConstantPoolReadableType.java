@@ -29,4 +29,10 @@ public interface CoStringConstantPoolReadableType
     String text);
 
   Map<Integer, String> view();
+
+  /**
+   * @return The current immutable snapshot of the pool
+   */
+
+  CoStringConstantPoolSnapshot snapshot();
 }
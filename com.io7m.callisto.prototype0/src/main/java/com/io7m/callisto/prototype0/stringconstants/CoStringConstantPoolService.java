@@ -48,11 +48,11 @@ public final class CoStringConstantPoolService
     this.pool = new CoStringConstantPool(() -> this.events.post(UPDATED));
     this.pool.newUpdate()
       .set(0, CoStringConstantPoolMessages.eventCompressedUpdateTypeName())
+      .set(1, CoStringConstantPoolMessages.eventAcknowledgeTypeName())
       .execute();
 
     this.sub_serializers =
-      this.events.events()
-        .ofType(CoEventNetworkSerializerEventType.class)
+      this.events.eventsOfType(CoEventNetworkSerializerEventType.class)
         .subscribe(this::onSerializerRegistered);
   }
 
@@ -96,6 +96,12 @@ public final class CoStringConstantPoolService
     return this.pool.view();
   }
 
+  @Override
+  public CoStringConstantPoolSnapshot snapshot()
+  {
+    return this.pool.snapshot();
+  }
+
   @Override
   public CoStringConstantPoolUpdateType newUpdate()
   {
@@ -0,0 +1,378 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.stringconstants;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * <p>An immutable, versioned snapshot of a string constant pool.</p>
+ *
+ * <p>Constants are stored densely by index so that index to text lookups are
+ * a single array access, and text to index lookups use an open-addressing
+ * table with linear probing. Neither kind of lookup allocates or takes a
+ * lock, and so snapshots are safe to share between any number of threads.
+ * Pools publish a new snapshot each time they are modified.</p>
+ *
+ * <p>Because storage is dense, indices are limited to the range
+ * {@code [0, INDEX_LIMIT)}. Tables received from remote peers are therefore
+ * rejected rather than allowed to allocate arbitrarily large arrays.</p>
+ */
+
+public final class CoStringConstantPoolSnapshot
+{
+  /**
+   * The exclusive upper bound on string constant indices.
+   */
+
+  public static final int INDEX_LIMIT = 1 << 16;
+
+  private static final int TABLE_MINIMUM = 16;
+
+  private static final CoStringConstantPoolSnapshot EMPTY =
+    new CoStringConstantPoolSnapshot(0L, new String[0]);
+
+  private final long version;
+  private final String[] int_to_text;
+  private final CoStringConstantReference[] references;
+  private final String[] table_keys;
+  private final int[] table_values;
+  private final int table_mask;
+  private final int size;
+  private volatile byte[] hash;
+
+  private CoStringConstantPoolSnapshot(
+    final long in_version,
+    final String[] in_int_to_text)
+  {
+    this.version = in_version;
+    this.int_to_text = in_int_to_text;
+    this.references =
+      new CoStringConstantReference[in_int_to_text.length];
+
+    int count = 0;
+    for (int index = 0; index < in_int_to_text.length; ++index) {
+      if (in_int_to_text[index] != null) {
+        this.references[index] = CoStringConstantReference.of(index);
+        ++count;
+      }
+    }
+    this.size = count;
+
+    final int capacity =
+      Math.max(TABLE_MINIMUM, HashCommon.nextPowerOfTwo(count * 2));
+    this.table_keys = new String[capacity];
+    this.table_values = new int[capacity];
+    this.table_mask = capacity - 1;
+
+    for (int index = 0; index < in_int_to_text.length; ++index) {
+      final String text = in_int_to_text[index];
+      if (text != null) {
+        int slot = HashCommon.mix(text.hashCode()) & this.table_mask;
+        while (true) {
+          final String existing = this.table_keys[slot];
+          if (existing == null) {
+            this.table_keys[slot] = text;
+            this.table_values[slot] = index;
+            break;
+          }
+
+          /*
+           * If the same text appears at more than one index, the lowest
+           * index is the one returned by lookups.
+           */
+
+          if (existing.equals(text)) {
+            break;
+          }
+          slot = (slot + 1) & this.table_mask;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return An empty snapshot with version {@code 0}
+   */
+
+  public static CoStringConstantPoolSnapshot empty()
+  {
+    return EMPTY;
+  }
+
+  /**
+   * @return The version of the snapshot; each modification of a pool
+   * increments the version by one
+   */
+
+  public long version()
+  {
+    return this.version;
+  }
+
+  /**
+   * @return The number of constants in the snapshot
+   */
+
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * @return The smallest index that is greater than all indices in use
+   */
+
+  public int nextIndex()
+  {
+    return this.int_to_text.length;
+  }
+
+  /**
+   * The content hash is a SHA-256 hash of the constants in index order, and
+   * does not depend on the version of the snapshot. Two snapshots with the
+   * same constants have the same hash.
+   *
+   * @return The content hash of the snapshot
+   */
+
+  public byte[] contentHash()
+  {
+    return this.hashCached().clone();
+  }
+
+  /**
+   * @param other A content hash
+   *
+   * @return {@code true} iff the content hash of this snapshot is {@code other}
+   */
+
+  public boolean hasContentHash(
+    final byte[] other)
+  {
+    NullCheck.notNull(other, "Hash");
+    return Arrays.equals(this.hashCached(), other);
+  }
+
+  private byte[] hashCached()
+  {
+    byte[] h = this.hash;
+    if (h == null) {
+      h = this.computeHash();
+      this.hash = h;
+    }
+    return h;
+  }
+
+  private byte[] computeHash()
+  {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      final ByteBuffer header = ByteBuffer.allocate(8);
+      for (int index = 0; index < this.int_to_text.length; ++index) {
+        final String text = this.int_to_text[index];
+        if (text != null) {
+          final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+          header.clear();
+          header.putInt(index);
+          header.putInt(bytes.length);
+          digest.update(header.array());
+          digest.update(bytes);
+        }
+      }
+      return digest.digest();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new UnreachableCodeException(e);
+    }
+  }
+
+  /**
+   * @param index The index
+   *
+   * @return The text of the constant at {@code index}, or {@code null} if
+   * there is no such constant
+   */
+
+  public @Nullable String lookupString(
+    final int index)
+  {
+    if (index >= 0 && index < this.int_to_text.length) {
+      return this.int_to_text[index];
+    }
+    return null;
+  }
+
+  /**
+   * @param text The text
+   *
+   * @return The lowest index of a constant with the given text, or {@code -1}
+   * if there is no such constant
+   */
+
+  public int lookupIndex(
+    final String text)
+  {
+    NullCheck.notNull(text, "Text");
+
+    int slot = HashCommon.mix(text.hashCode()) & this.table_mask;
+    while (true) {
+      final String existing = this.table_keys[slot];
+      if (existing == null) {
+        return -1;
+      }
+      if (existing.equals(text)) {
+        return this.table_values[slot];
+      }
+      slot = (slot + 1) & this.table_mask;
+    }
+  }
+
+  /**
+   * @param text The text
+   *
+   * @return A reference to the constant with the given text, or {@code null}
+   * if there is no such constant
+   */
+
+  public @Nullable CoStringConstantReference lookupReference(
+    final String text)
+  {
+    final int index = this.lookupIndex(text);
+    if (index >= 0) {
+      return this.references[index];
+    }
+    return null;
+  }
+
+  /**
+   * @return A freshly allocated map of the constants in the snapshot
+   */
+
+  public Int2ReferenceMap<String> toMap()
+  {
+    final Int2ReferenceOpenHashMap<String> m =
+      new Int2ReferenceOpenHashMap<>(this.size);
+    for (int index = 0; index < this.int_to_text.length; ++index) {
+      final String text = this.int_to_text[index];
+      if (text != null) {
+        m.put(index, text);
+      }
+    }
+    return m;
+  }
+
+  /**
+   * Determine the constants that differ between this snapshot and an older
+   * snapshot of the same pool. Constants are never removed from a pool, so
+   * applying the result to a copy of {@code older} yields a copy of this
+   * snapshot.
+   *
+   * @param older The older snapshot
+   *
+   * @return A freshly allocated map of the constants that were added or
+   * replaced since {@code older}
+   */
+
+  public Int2ReferenceMap<String> changesSince(
+    final CoStringConstantPoolSnapshot older)
+  {
+    NullCheck.notNull(older, "Older");
+
+    final Int2ReferenceOpenHashMap<String> m =
+      new Int2ReferenceOpenHashMap<>();
+    for (int index = 0; index < this.int_to_text.length; ++index) {
+      final String text = this.int_to_text[index];
+      if (text != null && !text.equals(older.lookupString(index))) {
+        m.put(index, text);
+      }
+    }
+    return m;
+  }
+
+  /**
+   * Produce a new snapshot with the given constants added or replaced, and
+   * with a version one greater than the current snapshot.
+   *
+   * @param entries The new constants
+   *
+   * @return A new snapshot
+   *
+   * @throws com.io7m.jaffirm.core.PreconditionViolationException If any
+   * index is outside the range {@code [0, INDEX_LIMIT)}
+   */
+
+  public CoStringConstantPoolSnapshot withEntries(
+    final Int2ReferenceMap<String> entries)
+  {
+    NullCheck.notNull(entries, "Entries");
+
+    int length = this.int_to_text.length;
+    final IntIterator iter = entries.keySet().iterator();
+    while (iter.hasNext()) {
+      final int index = iter.nextInt();
+      Preconditions.checkPreconditionI(
+        index,
+        index >= 0 && index < INDEX_LIMIT,
+        i -> "String constant indices must be in [0, " + INDEX_LIMIT + ")");
+      length = Math.max(length, index + 1);
+    }
+
+    final String[] next = Arrays.copyOf(this.int_to_text, length);
+    for (final Int2ReferenceMap.Entry<String> e : entries.int2ReferenceEntrySet()) {
+      next[e.getIntKey()] = NullCheck.notNull(e.getValue(), "Value");
+    }
+
+    return new CoStringConstantPoolSnapshot(this.version + 1L, next);
+  }
+
+  /**
+   * Produce a new snapshot with the given constant appended at
+   * {@link #nextIndex()}, and with a version one greater than the current
+   * snapshot.
+   *
+   * @param text The new constant
+   *
+   * @return A new snapshot
+   */
+
+  public CoStringConstantPoolSnapshot withAppended(
+    final String text)
+  {
+    NullCheck.notNull(text, "Text");
+    Preconditions.checkPreconditionI(
+      this.int_to_text.length,
+      this.int_to_text.length < INDEX_LIMIT,
+      i -> "String constant indices must be in [0, " + INDEX_LIMIT + ")");
+
+    final String[] next =
+      Arrays.copyOf(this.int_to_text, this.int_to_text.length + 1);
+    next[this.int_to_text.length] = text;
+    return new CoStringConstantPoolSnapshot(this.version + 1L, next);
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.stringconstants;
+
+import com.google.protobuf.ByteString;
+import com.io7m.callisto.prototype0.compression.CoCompressionServiceType;
+import com.io7m.jnull.NullCheck;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.IdentityHashMap;
+
+/**
+ * <p>An encoder that produces compressed full tables and deltas between
+ * versions of a string constant pool.</p>
+ *
+ * <p>The most recently produced table is retained, so that when many
+ * connections require the same version of the table (such as when many
+ * clients connect at once), the table is compressed exactly once and the same
+ * bytes are sent to every connection.</p>
+ *
+ * <p>Deltas are cached separately, keyed by the older snapshot, for as long
+ * as the newer snapshot remains the same. Encoding the delta for a client
+ * that joins with a cached table therefore does not evict the delta that is
+ * broadcast to every other client.</p>
+ */
+
+@NotThreadSafe
+public final class CoStringConstantPoolVersionEncoder
+{
+  private static final int DELTAS_MAXIMUM = 16;
+
+  private final CoCompressionServiceType codecs;
+  private final IdentityHashMap<CoStringConstantPoolSnapshot, ByteString> deltas;
+  private CoStringConstantPoolSnapshot full_snapshot;
+  private ByteString full_bytes;
+  private CoStringConstantPoolSnapshot delta_newer;
+
+  /**
+   * Construct an encoder.
+   *
+   * @param in_codecs The compression service used to compress tables
+   */
+
+  public CoStringConstantPoolVersionEncoder(
+    final CoCompressionServiceType in_codecs)
+  {
+    this.codecs = NullCheck.notNull(in_codecs, "Codecs");
+    this.deltas = new IdentityHashMap<>(DELTAS_MAXIMUM);
+  }
+
+  /**
+   * @param snapshot The snapshot
+   *
+   * @return A compressed, serialized update containing the complete table
+   */
+
+  public ByteString encodeFull(
+    final CoStringConstantPoolSnapshot snapshot)
+  {
+    NullCheck.notNull(snapshot, "Snapshot");
+
+    if (this.full_snapshot != snapshot) {
+      this.full_bytes =
+        CoStringConstantPoolMessages.createEventUpdateCompressed(
+          this.codecs,
+          CoStringConstantPoolMessages.createEventUpdateVersioned(
+            0L,
+            new byte[0],
+            snapshot.version(),
+            snapshot.toMap())).toByteString();
+      this.full_snapshot = snapshot;
+    }
+    return this.full_bytes;
+  }
+
+  /**
+   * @param older The older snapshot
+   * @param newer The newer snapshot
+   *
+   * @return A compressed, serialized update containing the changes between
+   * the two snapshots
+   */
+
+  public ByteString encodeDelta(
+    final CoStringConstantPoolSnapshot older,
+    final CoStringConstantPoolSnapshot newer)
+  {
+    NullCheck.notNull(older, "Older");
+    NullCheck.notNull(newer, "Newer");
+
+    if (this.delta_newer != newer) {
+      this.deltas.clear();
+      this.delta_newer = newer;
+    }
+
+    final ByteString existing = this.deltas.get(older);
+    if (existing != null) {
+      return existing;
+    }
+
+    if (this.deltas.size() >= DELTAS_MAXIMUM) {
+      this.deltas.clear();
+    }
+
+    final ByteString bytes =
+      CoStringConstantPoolMessages.createEventUpdateCompressed(
+        this.codecs,
+        CoStringConstantPoolMessages.createEventUpdateVersioned(
+          older.version(),
+          older.contentHash(),
+          newer.version(),
+          newer.changesSince(older))).toByteString();
+    this.deltas.put(older, bytes);
+    return bytes;
+  }
+}
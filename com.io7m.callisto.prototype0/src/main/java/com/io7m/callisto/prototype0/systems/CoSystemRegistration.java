@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.systems;
+
+import com.codahale.metrics.Timer;
+import com.io7m.callisto.prototype0.entities.CoEntityQueryView;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import io.reactivex.disposables.Disposable;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A system registered with a {@link CoSystemScheduler}.
+ */
+
+public final class CoSystemRegistration implements Disposable
+{
+  private final CoSystemScheduler scheduler;
+  private final CoSystemType system;
+  private final CoEntityQueryView view;
+  private final Timer timer;
+  private final AtomicBoolean disposed;
+  private CoEntityType[] entities;
+  private int entities_count;
+
+  CoSystemRegistration(
+    final CoSystemScheduler in_scheduler,
+    final CoSystemType in_system,
+    final CoEntityQueryView in_view,
+    final Timer in_timer)
+  {
+    this.scheduler = in_scheduler;
+    this.system = in_system;
+    this.view = in_view;
+    this.timer = in_timer;
+    this.disposed = new AtomicBoolean(false);
+    this.entities = new CoEntityType[64];
+    this.entities_count = 0;
+  }
+
+  /**
+   * @return The registered system
+   */
+
+  public CoSystemType system()
+  {
+    return this.system;
+  }
+
+  Timer timer()
+  {
+    return this.timer;
+  }
+
+  /**
+   * Determine whether this system and {@code other} must not run at the same
+   * time. Two systems conflict if either writes a trait type that the other
+   * reads or writes.
+   *
+   * @param other The other system
+   *
+   * @return {@code true} iff the systems conflict
+   */
+
+  boolean conflictsWith(
+    final CoSystemRegistration other)
+  {
+    final CoSystemType a = this.system;
+    final CoSystemType b = other.system;
+    return intersects(a.writes(), b.writes())
+      || intersects(a.writes(), b.reads())
+      || intersects(a.reads(), b.writes());
+  }
+
+  private static boolean intersects(
+    final Set<Class<? extends CoEntityTraitType>> x,
+    final Set<Class<? extends CoEntityTraitType>> y)
+  {
+    for (final Class<? extends CoEntityTraitType> c : x) {
+      if (y.contains(c)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Copy the entities currently matching the system's query into a buffer
+   * owned by this registration, so that the buffer can be split into chunks
+   * without holding the query view's lock.
+   *
+   * @return The number of entities collected
+   */
+
+  int collectEntities()
+  {
+    int count = this.view.copyTo(this.entities);
+    while (count > this.entities.length) {
+      this.entities =
+        new CoEntityType[Math.max(count, this.entities.length * 2)];
+      count = this.view.copyTo(this.entities);
+    }
+    this.entities_count = count;
+    return count;
+  }
+
+  void update(
+    final long frame,
+    final int start,
+    final int end)
+  {
+    final CoSystemType s = this.system;
+    final CoEntityType[] es = this.entities;
+    for (int index = start; index < end; ++index) {
+      s.update(frame, es[index]);
+    }
+  }
+
+  void clearEntities()
+  {
+    Arrays.fill(this.entities, 0, this.entities_count, null);
+    this.entities_count = 0;
+  }
+
+  @Override
+  public void dispose()
+  {
+    if (this.disposed.compareAndSet(false, true)) {
+      this.scheduler.remove(this);
+      this.view.dispose();
+    }
+  }
+
+  @Override
+  public boolean isDisposed()
+  {
+    return this.disposed.get();
+  }
+}
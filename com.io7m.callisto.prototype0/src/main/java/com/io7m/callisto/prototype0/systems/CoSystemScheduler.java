@@ -0,0 +1,294 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.systems;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.io7m.callisto.prototype0.entities.CoEntityServiceType;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A scheduler that runs systems in parallel.</p>
+ *
+ * <p>Systems are ordered by registration. A system depends on every earlier
+ * system with which it conflicts, according to the trait types that the
+ * systems declare that they read and write. Each frame, every system starts
+ * as soon as the systems it depends on have completed, so systems that do
+ * not conflict run at the same time. The entities updated by a single
+ * system are split into chunks that are updated in parallel.</p>
+ *
+ * <p>The dependency graph is rebuilt whenever a system is registered or
+ * removed, rather than on every frame.</p>
+ */
+
+public final class CoSystemScheduler
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoSystemScheduler.class);
+
+  private final ForkJoinPool pool;
+  private final MetricRegistry metrics;
+  private final String name;
+  private final int chunk_size;
+  private final Timer frame_timer;
+  private final Object lock;
+  private final @GuardedBy("lock") ReferenceArrayList<CoSystemRegistration> systems;
+  private volatile Plan plan;
+
+  private CoSystemScheduler(
+    final ForkJoinPool in_pool,
+    final MetricRegistry in_metrics,
+    final String in_name,
+    final int in_chunk_size)
+  {
+    this.pool = in_pool;
+    this.metrics = in_metrics;
+    this.name = in_name;
+    this.chunk_size = in_chunk_size;
+    this.frame_timer =
+      in_metrics.timer(MetricRegistry.name(in_name, "frame"));
+    this.lock = new Object();
+    this.systems = new ReferenceArrayList<>();
+    this.plan = new Plan(new CoSystemRegistration[0], new int[0][]);
+  }
+
+  /**
+   * Create a scheduler.
+   *
+   * @param pool       The pool on which systems are evaluated
+   * @param metrics    A metric registry
+   * @param name       The name used as a prefix for metrics
+   * @param chunk_size The maximum number of entities updated by a single task
+   *
+   * @return A new scheduler
+   */
+
+  public static CoSystemScheduler create(
+    final ForkJoinPool pool,
+    final MetricRegistry metrics,
+    final String name,
+    final int chunk_size)
+  {
+    NullCheck.notNull(pool, "Pool");
+    NullCheck.notNull(metrics, "Metrics");
+    NullCheck.notNull(name, "Name");
+    Preconditions.checkPreconditionI(
+      chunk_size, chunk_size > 0, s -> "Chunk size must be positive");
+    return new CoSystemScheduler(pool, metrics, name, chunk_size);
+  }
+
+  /**
+   * Register a system. The system will update entities from the given
+   * entity service, starting with the next frame.
+   *
+   * @param entities The entity service
+   * @param system   The system
+   *
+   * @return A registration that can be disposed to remove the system
+   */
+
+  public CoSystemRegistration register(
+    final CoEntityServiceType entities,
+    final CoSystemType system)
+  {
+    NullCheck.notNull(entities, "Entities");
+    NullCheck.notNull(system, "System");
+
+    final CoSystemRegistration r =
+      new CoSystemRegistration(
+        this,
+        system,
+        entities.queryView(system.query()),
+        this.metrics.timer(
+          MetricRegistry.name(this.name, "system", system.name())));
+
+    synchronized (this.lock) {
+      this.systems.add(r);
+      this.plan = this.buildPlan();
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("registered system {}", system.name());
+    }
+    return r;
+  }
+
+  void remove(
+    final CoSystemRegistration r)
+  {
+    synchronized (this.lock) {
+      this.systems.remove(r);
+      this.plan = this.buildPlan();
+    }
+  }
+
+  @GuardedBy("lock")
+  private Plan buildPlan()
+  {
+    final int count = this.systems.size();
+    final CoSystemRegistration[] order =
+      this.systems.toArray(new CoSystemRegistration[count]);
+    final int[][] dependencies = new int[count][];
+
+    final IntArrayList deps = new IntArrayList(count);
+    for (int index = 0; index < count; ++index) {
+      deps.clear();
+      for (int earlier = 0; earlier < index; ++earlier) {
+        if (order[index].conflictsWith(order[earlier])) {
+          deps.add(earlier);
+        }
+      }
+      dependencies[index] = deps.toIntArray();
+    }
+
+    return new Plan(order, dependencies);
+  }
+
+  /**
+   * Run all registered systems for the given frame, and wait for them to
+   * complete.
+   *
+   * @param frame The frame number
+   *
+   * @throws CompletionException If any system raises an exception
+   */
+
+  public void tick(
+    final long frame)
+    throws CompletionException
+  {
+    final Plan p = this.plan;
+    final int count = p.order.length;
+    if (count == 0) {
+      return;
+    }
+
+    final long time_start = System.nanoTime();
+    final CompletableFuture<?>[] futures = new CompletableFuture<?>[count];
+    for (int index = 0; index < count; ++index) {
+      final CoSystemRegistration r = p.order[index];
+      final int[] deps = p.dependencies[index];
+      final Runnable task = () -> this.runSystem(r, frame);
+
+      if (deps.length == 0) {
+        futures[index] = CompletableFuture.runAsync(task, this.pool);
+      } else {
+        final CompletableFuture<?>[] waits = new CompletableFuture<?>[deps.length];
+        for (int dep = 0; dep < deps.length; ++dep) {
+          waits[dep] = futures[deps[dep]];
+        }
+        futures[index] =
+          CompletableFuture.allOf(waits).thenRunAsync(task, this.pool);
+      }
+    }
+
+    try {
+      CompletableFuture.allOf(futures).join();
+    } finally {
+      this.frame_timer.update(
+        System.nanoTime() - time_start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void runSystem(
+    final CoSystemRegistration r,
+    final long frame)
+  {
+    final long time_start = System.nanoTime();
+    try {
+      r.system().onFrameStart(frame);
+      final int count = r.collectEntities();
+      if (count <= this.chunk_size) {
+        r.update(frame, 0, count);
+      } else {
+        new Chunk(r, frame, this.chunk_size, 0, count).invoke();
+      }
+    } catch (final Exception e) {
+      throw new CompletionException(
+        new IllegalStateException("System failed: " + r.system().name(), e));
+    } finally {
+      r.clearEntities();
+      r.timer().update(System.nanoTime() - time_start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private static final class Plan
+  {
+    private final CoSystemRegistration[] order;
+    private final int[][] dependencies;
+
+    Plan(
+      final CoSystemRegistration[] in_order,
+      final int[][] in_dependencies)
+    {
+      this.order = in_order;
+      this.dependencies = in_dependencies;
+    }
+  }
+
+  private static final class Chunk extends RecursiveAction
+  {
+    private final CoSystemRegistration registration;
+    private final long frame;
+    private final int chunk_size;
+    private final int start;
+    private final int end;
+
+    Chunk(
+      final CoSystemRegistration in_registration,
+      final long in_frame,
+      final int in_chunk_size,
+      final int in_start,
+      final int in_end)
+    {
+      this.registration = in_registration;
+      this.frame = in_frame;
+      this.chunk_size = in_chunk_size;
+      this.start = in_start;
+      this.end = in_end;
+    }
+
+    @Override
+    protected void compute()
+    {
+      final int size = this.end - this.start;
+      if (size <= this.chunk_size) {
+        this.registration.update(this.frame, this.start, this.end);
+        return;
+      }
+
+      final int middle = this.start + (size >>> 1);
+      invokeAll(
+        new Chunk(
+          this.registration, this.frame, this.chunk_size, this.start, middle),
+        new Chunk(
+          this.registration, this.frame, this.chunk_size, middle, this.end));
+    }
+  }
+}
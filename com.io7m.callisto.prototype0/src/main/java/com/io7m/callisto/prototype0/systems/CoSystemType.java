@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.systems;
+
+import com.io7m.callisto.prototype0.entities.CoEntityQuery;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+
+import java.util.Set;
+
+/**
+ * <p>The type of systems.</p>
+ *
+ * <p>A system updates each entity matching its query once per frame. A
+ * system declares the trait types that it reads and writes, and the
+ * scheduler uses these to decide which systems may run at the same time.
+ * A system must not access traits that it has not declared.</p>
+ */
+
+public interface CoSystemType
+{
+  /**
+   * @return The name of the system
+   */
+
+  String name();
+
+  /**
+   * @return The query that selects the entities that the system updates
+   */
+
+  CoEntityQuery query();
+
+  /**
+   * @return The trait types that the system reads but does not modify
+   */
+
+  Set<Class<? extends CoEntityTraitType>> reads();
+
+  /**
+   * @return The trait types that the system modifies
+   */
+
+  Set<Class<? extends CoEntityTraitType>> writes();
+
+  /**
+   * A frame is starting. This method is called once per frame, before any
+   * calls to {@link #update(long, CoEntityType)}.
+   *
+   * @param frame The frame number
+   */
+
+  default void onFrameStart(
+    final long frame)
+  {
+
+  }
+
+  /**
+   * Update a single entity. This method may be called from several threads
+   * at once, each with a different entity.
+   *
+   * @param frame  The frame number
+   * @param entity The entity
+   */
+
+  void update(
+    long frame,
+    CoEntityType entity);
+}
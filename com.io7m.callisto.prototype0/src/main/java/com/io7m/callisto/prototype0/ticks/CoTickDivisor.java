@@ -41,7 +41,7 @@ public final class CoTickDivisor
     }
     this.accum += this.rate_desired / this.rate_main;
     if (this.accum >= 1.0) {
-      this.accum = 0.0;
+      this.accum -= 1.0;
       return true;
     }
     return false;
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.ticks;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>An ordered tick pipeline.</p>
+ *
+ * <p>Each tick starts a frame, which runs each phase in order. The steps of
+ * a phase are submitted to their executors at the same time, and the next
+ * phase starts when they have all completed. No thread blocks waiting for a
+ * phase. A tick that arrives while the previous frame is still running is
+ * counted as an overrun and does not start a frame.</p>
+ */
+
+public final class CoTickPipeline implements CoTickReceiverType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoTickPipeline.class);
+
+  private final List<CoTickPipelinePhase> phases;
+  private final List<Timer> phase_timers;
+  private final Timer frame_timer;
+  private final Meter overruns;
+  private final AtomicBoolean running;
+
+  private CoTickPipeline(
+    final List<CoTickPipelinePhase> in_phases,
+    final MetricRegistry in_metrics,
+    final String in_name)
+  {
+    this.phases = in_phases;
+    this.running = new AtomicBoolean(false);
+
+    this.frame_timer =
+      in_metrics.timer(MetricRegistry.name(in_name, "frame"));
+    this.overruns =
+      in_metrics.meter(MetricRegistry.name(in_name, "overruns"));
+    this.phase_timers = new ArrayList<>(in_phases.size());
+    for (final CoTickPipelinePhase phase : in_phases) {
+      this.phase_timers.add(
+        in_metrics.timer(MetricRegistry.name(in_name, "phase", phase.name())));
+    }
+  }
+
+  /**
+   * Create a pipeline.
+   *
+   * @param phases  The phases, in execution order
+   * @param metrics A metric registry
+   * @param name    The name used as a prefix for metrics
+   *
+   * @return A new pipeline
+   */
+
+  public static CoTickPipeline create(
+    final List<CoTickPipelinePhase> phases,
+    final MetricRegistry metrics,
+    final String name)
+  {
+    NullCheck.notNull(phases, "Phases");
+    NullCheck.notNull(metrics, "Metrics");
+    NullCheck.notNull(name, "Name");
+    Preconditions.checkPrecondition(
+      phases, !phases.isEmpty(), p -> "Must have at least one phase");
+    return new CoTickPipeline(new ArrayList<>(phases), metrics, name);
+  }
+
+  @Override
+  public void onTick(
+    final long tick,
+    final long skipped)
+  {
+    if (!this.running.compareAndSet(false, true)) {
+      this.overruns.mark();
+      return;
+    }
+
+    final long time_start = System.nanoTime();
+    CompletableFuture<Void> f = CompletableFuture.completedFuture(null);
+    for (int index = 0; index < this.phases.size(); ++index) {
+      final CoTickPipelinePhase phase = this.phases.get(index);
+      final Timer timer = this.phase_timers.get(index);
+      f = f.thenCompose(ignored -> runPhase(phase, timer, tick));
+    }
+
+    f.whenComplete((ignored, ex) -> {
+      if (ex != null) {
+        LOG.error("frame {} failed: ", Long.valueOf(tick), ex);
+      }
+      this.frame_timer.update(
+        System.nanoTime() - time_start, TimeUnit.NANOSECONDS);
+      this.running.set(false);
+    });
+  }
+
+  private static CompletableFuture<Void> runPhase(
+    final CoTickPipelinePhase phase,
+    final Timer timer,
+    final long frame)
+  {
+    final long time_start = System.nanoTime();
+    final List<CoTickPipelineStep> steps = phase.steps();
+
+    final CompletableFuture<?>[] futures =
+      new CompletableFuture<?>[steps.size()];
+    for (int index = 0; index < steps.size(); ++index) {
+      final CoTickPipelineStep step = steps.get(index);
+      futures[index] =
+        CompletableFuture.runAsync(() -> runStep(step, frame), step.executor());
+    }
+
+    return CompletableFuture.allOf(futures).thenRun(
+      () -> timer.update(System.nanoTime() - time_start, TimeUnit.NANOSECONDS));
+  }
+
+  private static void runStep(
+    final CoTickPipelineStep step,
+    final long frame)
+  {
+    try {
+      step.function().execute(frame);
+    } catch (final Exception e) {
+      throw new CompletionException(
+        new IllegalStateException("Step failed: " + step.name(), e));
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.ticks;
+
+import com.io7m.jnull.NullCheck;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A lock-free buffer used to hand values from one pipeline phase to a
+ * later one. Any number of threads may add values; values are removed by
+ * draining.
+ *
+ * @param <T> The type of values
+ */
+
+public final class CoTickPipelineBuffer<T>
+{
+  private final Queue<T> queue;
+
+  public CoTickPipelineBuffer()
+  {
+    this.queue = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Add a value to the buffer.
+   *
+   * @param x The value
+   */
+
+  public void add(
+    final T x)
+  {
+    this.queue.add(NullCheck.notNull(x, "Value"));
+  }
+
+  /**
+   * Remove all values currently in the buffer, passing each to
+   * {@code receiver} in the order in which they were added.
+   *
+   * @param receiver The receiver
+   *
+   * @return The number of values removed
+   */
+
+  public int drain(
+    final Consumer<T> receiver)
+  {
+    int count = 0;
+    while (true) {
+      final T x = this.queue.poll();
+      if (x == null) {
+        return count;
+      }
+      receiver.accept(x);
+      ++count;
+    }
+  }
+
+  /**
+   * @return {@code true} iff the buffer is empty
+   */
+
+  public boolean isEmpty()
+  {
+    return this.queue.isEmpty();
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.ticks;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import com.io7m.jaffirm.core.Preconditions;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+/**
+ * A phase in a tick pipeline. All steps in a phase may run in parallel, and
+ * a phase does not begin until every step of the previous phase has
+ * completed.
+ */
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoTickPipelinePhaseType
+{
+  /**
+   * @return The name of the phase
+   */
+
+  @Value.Parameter
+  String name();
+
+  /**
+   * @return The steps in the phase
+   */
+
+  @Value.Parameter
+  List<CoTickPipelineStep> steps();
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    Preconditions.checkPrecondition(
+      this.steps(),
+      !this.steps().isEmpty(),
+      s -> "A phase must have at least one step");
+  }
+}
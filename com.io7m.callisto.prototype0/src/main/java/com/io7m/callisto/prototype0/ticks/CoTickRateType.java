@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.ticks;
+
+import com.io7m.callisto.core.CoImmutableStyleType;
+import com.io7m.jaffirm.core.Preconditions;
+import org.immutables.value.Value;
+
+/**
+ * A tick rate expressed exactly as a rational number of ticks per second.
+ */
+
+@CoImmutableStyleType
+@Value.Immutable
+public interface CoTickRateType
+{
+  /**
+   * @return The number of ticks
+   */
+
+  @Value.Parameter
+  long ticks();
+
+  /**
+   * @return The number of seconds in which {@link #ticks()} ticks occur
+   */
+
+  @Value.Parameter
+  long seconds();
+
+  /**
+   * @param hz The rate in ticks per second
+   *
+   * @return A rate of {@code hz} ticks per second
+   */
+
+  static CoTickRate hertz(
+    final long hz)
+  {
+    return CoTickRate.of(hz, 1L);
+  }
+
+  /**
+   * @return The exact length of one tick period multiplied by
+   * {@link #ticks()}, in nanoseconds
+   */
+
+  @Value.Derived
+  default long periodNanosecondsScaled()
+  {
+    return this.seconds() * 1_000_000_000L;
+  }
+
+  /**
+   * @return The length of one tick period, rounded down to the nearest
+   * nanosecond
+   */
+
+  @Value.Derived
+  default long periodNanoseconds()
+  {
+    return this.periodNanosecondsScaled() / this.ticks();
+  }
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    Preconditions.checkPreconditionL(
+      this.ticks(), this.ticks() > 0L, x -> "Ticks must be positive");
+    Preconditions.checkPreconditionL(
+      this.seconds(), this.seconds() > 0L, x -> "Seconds must be positive");
+  }
+}
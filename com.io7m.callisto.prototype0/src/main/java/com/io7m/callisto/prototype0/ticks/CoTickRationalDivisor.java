@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.ticks;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+
+/**
+ * <p>An exact divider that derives a slower tick rate from a faster one.</p>
+ *
+ * <p>The divider is evaluated once per tick of the faster rate, and
+ * indicates whether a tick of the slower rate occurs on that tick. The
+ * ratio of the two rates is held as a fraction of integers and any
+ * remainder is carried over to the next tick, so that over any interval the
+ * number of slower ticks differs from the exact value by at most one. The
+ * first tick of the faster rate is always a tick of the slower rate.</p>
+ */
+
+public final class CoTickRationalDivisor
+{
+  private final long step;
+  private final long threshold;
+  private long accum;
+
+  /**
+   * Construct a divider.
+   *
+   * @param rate_main    The faster rate
+   * @param rate_desired The slower rate
+   */
+
+  public CoTickRationalDivisor(
+    final CoTickRateType rate_main,
+    final CoTickRateType rate_desired)
+  {
+    NullCheck.notNull(rate_main, "Main rate");
+    NullCheck.notNull(rate_desired, "Desired rate");
+
+    this.step =
+      Math.multiplyExact(rate_desired.ticks(), rate_main.seconds());
+    this.threshold =
+      Math.multiplyExact(rate_desired.seconds(), rate_main.ticks());
+
+    Preconditions.checkPreconditionL(
+      this.step,
+      this.step <= this.threshold,
+      x -> "Desired rate must not exceed the main rate");
+
+    this.accum = this.threshold - this.step;
+  }
+
+  /**
+   * @return {@code true} iff a tick of the slower rate occurs on the current
+   * tick of the faster rate
+   */
+
+  public boolean tickNow()
+  {
+    this.accum += this.step;
+    if (this.accum >= this.threshold) {
+      this.accum -= this.threshold;
+      return true;
+    }
+    return false;
+  }
+}
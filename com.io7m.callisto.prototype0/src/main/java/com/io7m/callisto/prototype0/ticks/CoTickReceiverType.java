@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.ticks;
+
+/**
+ * A receiver of ticks from a {@link CoTickScheduler}.
+ */
+
+@FunctionalInterface
+public interface CoTickReceiverType
+{
+  /**
+   * A tick has occurred.
+   *
+   * @param tick    The number of ticks delivered to this receiver before this
+   *                one
+   * @param skipped The number of ticks that were not delivered since the
+   *                previous tick because this receiver was still handling an
+   *                earlier tick
+   *
+   * @throws Exception On errors, which are logged
+   */
+
+  void onTick(
+    long tick,
+    long skipped)
+    throws Exception;
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.ticks;
+
+import io.reactivex.disposables.Disposable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A subsystem registered with a {@link CoTickScheduler}.
+ */
+
+public final class CoTickRegistration implements Disposable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoTickRegistration.class);
+
+  private final CoTickScheduler scheduler;
+  private final String name;
+  private final CoTickRateType rate;
+  private final Executor executor;
+  private final CoTickReceiverType receiver;
+  private final CoTickRationalDivisor divisor;
+  private final AtomicBoolean pending;
+  private final AtomicLong delivered;
+  private final AtomicLong skipped;
+  private final AtomicLong skipped_total;
+  private final Runnable deliver;
+  private volatile boolean disposed;
+
+  CoTickRegistration(
+    final CoTickScheduler in_scheduler,
+    final String in_name,
+    final CoTickRateType in_rate,
+    final Executor in_executor,
+    final CoTickReceiverType in_receiver)
+  {
+    this.scheduler = in_scheduler;
+    this.name = in_name;
+    this.rate = in_rate;
+    this.executor = in_executor;
+    this.receiver = in_receiver;
+    this.divisor = new CoTickRationalDivisor(in_scheduler.rate(), in_rate);
+    this.pending = new AtomicBoolean(false);
+    this.delivered = new AtomicLong();
+    this.skipped = new AtomicLong();
+    this.skipped_total = new AtomicLong();
+    this.deliver = this::deliver;
+  }
+
+  /**
+   * @return The name of the subsystem
+   */
+
+  public String name()
+  {
+    return this.name;
+  }
+
+  /**
+   * @return The rate at which the subsystem receives ticks
+   */
+
+  public CoTickRateType rate()
+  {
+    return this.rate;
+  }
+
+  /**
+   * @return The number of ticks delivered to the subsystem
+   */
+
+  public long ticksDelivered()
+  {
+    return this.delivered.get();
+  }
+
+  /**
+   * @return The number of ticks not delivered to the subsystem because it
+   * was still handling an earlier tick
+   */
+
+  public long ticksSkipped()
+  {
+    return this.skipped_total.get();
+  }
+
+  /**
+   * Evaluated on the scheduler thread once per scheduler tick.
+   */
+
+  void onSchedulerTick()
+  {
+    if (this.disposed || !this.divisor.tickNow()) {
+      return;
+    }
+
+    if (!this.pending.compareAndSet(false, true)) {
+      this.skipped.incrementAndGet();
+      this.skipped_total.incrementAndGet();
+      return;
+    }
+
+    try {
+      this.executor.execute(this.deliver);
+    } catch (final RejectedExecutionException e) {
+      LOG.debug("{}: executor rejected tick: ", this.name, e);
+      this.pending.set(false);
+    }
+  }
+
+  private void deliver()
+  {
+    try {
+      if (!this.disposed) {
+        this.receiver.onTick(
+          this.delivered.getAndIncrement(), this.skipped.getAndSet(0L));
+      }
+    } catch (final Exception e) {
+      LOG.error("{}: tick receiver raised exception: ", this.name, e);
+    } finally {
+      this.pending.set(false);
+    }
+  }
+
+  @Override
+  public void dispose()
+  {
+    this.disposed = true;
+    this.scheduler.remove(this);
+  }
+
+  @Override
+  public boolean isDisposed()
+  {
+    return this.disposed;
+  }
+}
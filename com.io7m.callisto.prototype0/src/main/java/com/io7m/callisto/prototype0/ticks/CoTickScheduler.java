@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.ticks;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A fixed-timestep tick scheduler.</p>
+ *
+ * <p>The scheduler runs on a dedicated thread and computes the deadline of
+ * every tick directly from the time at which it was started and the exact
+ * rational tick rate, so that rounding errors do not accumulate. If the
+ * scheduler thread stalls, missed ticks are executed back to back until the
+ * scheduler has caught up, unless it has fallen more than a configured
+ * number of ticks behind, in which case the excess ticks are dropped.</p>
+ *
+ * <p>Subsystems register to receive ticks at a rate no faster than that of
+ * the scheduler. Each tick is submitted directly to the subsystem's own
+ * executor; a subsystem that is still handling its previous tick does not
+ * receive another, and is instead told how many ticks it skipped when it
+ * next receives one.</p>
+ *
+ * <p>The scheduler may be stopped and started again any number of times.
+ * Each start uses a new thread, and the tick deadlines are computed from
+ * the time of the most recent start.</p>
+ */
+
+public final class CoTickScheduler
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CoTickScheduler.class);
+
+  private final CoTickRateType rate;
+  private final int catch_up_limit;
+  private final List<CoTickRegistration> registrations;
+  private final CoTickSchedulerStatistics statistics;
+  private final ThreadFactory threads;
+  private @GuardedBy("this") @Nullable Thread thread;
+  private @GuardedBy("this") @Nullable AtomicBoolean running;
+
+  private CoTickScheduler(
+    final CoTickRateType in_rate,
+    final int in_catch_up_limit,
+    final ThreadFactory in_threads)
+  {
+    this.rate = in_rate;
+    this.catch_up_limit = in_catch_up_limit;
+    this.registrations = new CopyOnWriteArrayList<>();
+    this.statistics = new CoTickSchedulerStatistics();
+    this.threads = in_threads;
+  }
+
+  /**
+   * Create a new scheduler. The scheduler does not run until
+   * {@link #start()} is called.
+   *
+   * @param rate           The rate of the scheduler
+   * @param catch_up_limit The maximum number of missed ticks that will be
+   *                       executed after a stall
+   * @param threads        A factory for the scheduler thread
+   *
+   * @return A new scheduler
+   */
+
+  public static CoTickScheduler create(
+    final CoTickRateType rate,
+    final int catch_up_limit,
+    final ThreadFactory threads)
+  {
+    NullCheck.notNull(rate, "Rate");
+    NullCheck.notNull(threads, "Threads");
+    Preconditions.checkPreconditionI(
+      catch_up_limit,
+      catch_up_limit >= 0,
+      x -> "Catch-up limit must be non-negative");
+    return new CoTickScheduler(rate, catch_up_limit, threads);
+  }
+
+  /**
+   * @return The rate of the scheduler
+   */
+
+  public CoTickRateType rate()
+  {
+    return this.rate;
+  }
+
+  /**
+   * @return The scheduler statistics
+   */
+
+  public CoTickSchedulerStatistics statistics()
+  {
+    return this.statistics;
+  }
+
+  /**
+   * Register a subsystem.
+   *
+   * @param name     The name of the subsystem
+   * @param rate     The rate at which the subsystem receives ticks, which
+   *                 must not exceed the scheduler rate
+   * @param executor The executor on which the receiver is evaluated
+   * @param receiver The receiver
+   *
+   * @return A registration that can be disposed to unregister the subsystem
+   */
+
+  public CoTickRegistration register(
+    final String name,
+    final CoTickRateType rate,
+    final Executor executor,
+    final CoTickReceiverType receiver)
+  {
+    final CoTickRegistration r =
+      new CoTickRegistration(
+        this,
+        NullCheck.notNull(name, "Name"),
+        NullCheck.notNull(rate, "Rate"),
+        NullCheck.notNull(executor, "Executor"),
+        NullCheck.notNull(receiver, "Receiver"));
+    this.registrations.add(r);
+    return r;
+  }
+
+  void remove(
+    final CoTickRegistration r)
+  {
+    this.registrations.remove(r);
+  }
+
+  /**
+   * Start the scheduler thread. Starting a scheduler that is already
+   * running has no effect.
+   */
+
+  public synchronized void start()
+  {
+    if (this.thread != null) {
+      return;
+    }
+
+    final AtomicBoolean r = new AtomicBoolean(true);
+    final Thread t = this.threads.newThread(() -> this.run(r));
+    this.running = r;
+    this.thread = t;
+    t.start();
+  }
+
+  /**
+   * Stop the scheduler thread. No ticks are delivered after this method
+   * returns, but ticks already submitted to subsystem executors may still
+   * be running.
+   *
+   * @throws InterruptedException If interrupted whilst waiting for the
+   *                              scheduler thread to stop
+   */
+
+  public synchronized void stop()
+    throws InterruptedException
+  {
+    final Thread t = this.thread;
+    final AtomicBoolean r = this.running;
+    if (t == null || r == null) {
+      return;
+    }
+
+    this.thread = null;
+    this.running = null;
+    r.set(false);
+    LockSupport.unpark(t);
+    t.join();
+  }
+
+  private void run(
+    final AtomicBoolean active)
+  {
+    final long scaled = this.rate.periodNanosecondsScaled();
+    final long ticks = this.rate.ticks();
+    final long period = this.rate.periodNanoseconds();
+
+    long time_base = System.nanoTime();
+    long tick = 0L;
+
+    while (active.get()) {
+      final long deadline = time_base + (tick * scaled) / ticks;
+      final long now = System.nanoTime();
+      final long lateness = now - deadline;
+
+      if (lateness < 0L) {
+        LockSupport.parkNanos(-lateness);
+        continue;
+      }
+
+      final long behind = lateness / period;
+      if (behind > (long) this.catch_up_limit) {
+        final long dropped = behind - (long) this.catch_up_limit;
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(
+            "fell {} ticks behind, dropping {} ticks",
+            Long.valueOf(behind),
+            Long.valueOf(dropped));
+        }
+
+        this.statistics.onDropped(dropped);
+        time_base = time_base + ((tick + dropped) * scaled) / ticks;
+        tick = 0L;
+        continue;
+      }
+
+      this.statistics.onTick(lateness, period);
+      for (final CoTickRegistration r : this.registrations) {
+        r.onSchedulerTick();
+      }
+
+      ++tick;
+      if (tick == ticks) {
+        time_base = time_base + scaled;
+        tick = 0L;
+      }
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.ticks;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live statistics for a {@link CoTickScheduler}.
+ */
+
+public final class CoTickSchedulerStatistics
+{
+  private final AtomicLong ticks;
+  private final AtomicLong ticks_late;
+  private final AtomicLong ticks_dropped;
+  private final AtomicLong lateness_maximum;
+  private final AtomicLong lateness_last;
+
+  CoTickSchedulerStatistics()
+  {
+    this.ticks = new AtomicLong();
+    this.ticks_late = new AtomicLong();
+    this.ticks_dropped = new AtomicLong();
+    this.lateness_maximum = new AtomicLong();
+    this.lateness_last = new AtomicLong();
+  }
+
+  /**
+   * @return The number of ticks executed
+   */
+
+  public long ticks()
+  {
+    return this.ticks.get();
+  }
+
+  /**
+   * @return The number of ticks that started more than one period after
+   * their deadline, and were therefore executed as part of a catch-up
+   */
+
+  public long ticksLate()
+  {
+    return this.ticks_late.get();
+  }
+
+  /**
+   * @return The number of ticks that were never executed because the
+   * scheduler fell further behind than its catch-up limit
+   */
+
+  public long ticksDropped()
+  {
+    return this.ticks_dropped.get();
+  }
+
+  /**
+   * @return The largest observed difference between a tick's deadline and
+   * the time it started, in nanoseconds
+   */
+
+  public long latenessMaximumNanoseconds()
+  {
+    return this.lateness_maximum.get();
+  }
+
+  /**
+   * @return The difference between the most recent tick's deadline and the
+   * time it started, in nanoseconds
+   */
+
+  public long latenessLastNanoseconds()
+  {
+    return this.lateness_last.get();
+  }
+
+  void onTick(
+    final long lateness,
+    final long period)
+  {
+    this.ticks.incrementAndGet();
+    this.lateness_last.set(lateness);
+    if (lateness > period) {
+      this.ticks_late.incrementAndGet();
+    }
+
+    long m = this.lateness_maximum.get();
+    while (lateness > m) {
+      if (this.lateness_maximum.compareAndSet(m, lateness)) {
+        break;
+      }
+      m = this.lateness_maximum.get();
+    }
+  }
+
+  void onDropped(
+    final long count)
+  {
+    this.ticks_dropped.addAndGet(count);
+  }
+}
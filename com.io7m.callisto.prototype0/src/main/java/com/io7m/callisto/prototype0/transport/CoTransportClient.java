@@ -19,7 +19,6 @@ package com.io7m.callisto.prototype0.transport;
 import com.google.protobuf.ByteString;
 import com.io7m.callisto.prototype0.network.CoNetworkPacketSocketType;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolReadableType;
-import com.io7m.callisto.prototype0.stringconstants.CoStringConstantReference;
 import com.io7m.callisto.prototype0.transport.messages.CoBye;
 import com.io7m.callisto.prototype0.transport.messages.CoHello;
 import com.io7m.callisto.prototype0.transport.messages.CoHelloResponse;
@@ -37,7 +36,6 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.time.Clock;
 import java.util.Objects;
-import java.util.Optional;
 
 public final class CoTransportClient implements CoTransportClientType
 {
@@ -90,11 +88,14 @@ public final class CoTransportClient implements CoTransportClientType
   }
 
   private static ByteBuffer hello(
-    final byte[] password)
+    final byte[] password,
+    final byte[] string_table_hash)
   {
     return ByteBuffer.wrap(
       CoPacket.newBuilder()
-        .setHello(CoHello.newBuilder().setPassword(ByteString.copyFrom(password)))
+        .setHello(CoHello.newBuilder()
+                    .setPassword(ByteString.copyFrom(password))
+                    .setStringTableHash(ByteString.copyFrom(string_table_hash)))
         .build()
         .toByteArray());
   }
@@ -122,7 +123,9 @@ public final class CoTransportClient implements CoTransportClientType
       LOG.trace("{}: sending hello packet", this.remote);
     }
 
-    this.socket.send(this.remote, hello(this.config.password()));
+    this.socket.send(
+      this.remote,
+      hello(this.config.password(), this.config.stringTableHash()));
     ++this.hello_attempts;
     this.listener.onHelloSend(
       this.remote,
@@ -587,21 +590,19 @@ public final class CoTransportClient implements CoTransportClientType
           message);
       }
 
-      final CoStringConstantReference type_ref =
-        CoStringConstantReference.of(message.getMessageType().getValue());
-      final Optional<String> type_name_opt =
-        this.client.strings.lookupString(type_ref);
+      final int type_ref = message.getMessageType().getValue();
+      final String type_name =
+        this.client.strings.snapshot().lookupString(type_ref);
 
-      if (!type_name_opt.isPresent()) {
+      if (type_name == null) {
         LOG.error(
           "onMessageReceived: {}:{} unrecognized string constant {}",
           connection,
           Integer.valueOf(channel),
-          Integer.valueOf(type_ref.value()));
+          Integer.valueOf(type_ref));
         return;
       }
 
-      final String type_name = type_name_opt.get();
       if (LOG.isTraceEnabled()) {
         LOG.trace(
           "onMessageReceived: {}:{} message type {}",
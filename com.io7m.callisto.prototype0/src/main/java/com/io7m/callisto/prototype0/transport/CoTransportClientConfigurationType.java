@@ -56,6 +56,18 @@ public interface CoTransportClientConfigurationType
     return this.ticksPerSecond() * 10;
   }
 
+  /**
+   * @return The content hash of the string table that the client has cached,
+   * or an empty array if the client has no cached table
+   */
+
+  @Value.Parameter
+  @Value.Default
+  default byte[] stringTableHash()
+  {
+    return new byte[0];
+  }
+
   @Value.Check
   default void checkPreconditions()
   {
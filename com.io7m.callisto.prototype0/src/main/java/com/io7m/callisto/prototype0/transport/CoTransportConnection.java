@@ -21,9 +21,12 @@ import com.io7m.callisto.prototype0.network.CoNetworkPacketSendableType;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolReadableType;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantReference;
 import com.io7m.callisto.prototype0.transport.messages.CoDataAck;
+import com.io7m.callisto.prototype0.transport.messages.CoDataAckReceipt;
+import com.io7m.callisto.prototype0.transport.messages.CoDataAckStateReceipt;
 import com.io7m.callisto.prototype0.transport.messages.CoDataReliable;
 import com.io7m.callisto.prototype0.transport.messages.CoDataUnreliable;
 import com.io7m.callisto.prototype0.transport.messages.CoMessage;
+import com.io7m.callisto.prototype0.transport.messages.CoMessageState;
 import com.io7m.callisto.prototype0.transport.messages.CoPacket;
 import com.io7m.callisto.prototype0.transport.messages.CoPing;
 import com.io7m.callisto.prototype0.transport.messages.CoPong;
@@ -36,19 +39,22 @@ import com.io7m.jranges.RangeInclusiveI;
 import com.io7m.junreachable.UnimplementedCodeException;
 import com.io7m.junreachable.UnreachableCodeException;
 import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceRBTreeMap;
 import it.unimi.dsi.fastutil.ints.IntBidirectionalIterator;
 import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.time.Clock;
+import java.time.Instant;
 import java.util.ArrayDeque;
 import java.util.Iterator;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 public final class CoTransportConnection implements CoTransportConnectionType
 {
@@ -66,12 +72,9 @@ public final class CoTransportConnection implements CoTransportConnectionType
   private final CoTransportConnectionListenerType listener;
   private final CoTransportConnectionConfiguration config;
   private final Clock clock;
-  private final ByteString pong;
-  private final ByteString ping;
+  private final CoTransportRoundTripEstimator rtt;
   private long ticks;
   private int ticks_since_receive;
-  private long time_ping_sent_ms;
-  private volatile long round_trip_time;
 
   CoTransportConnection(
     final Clock in_clock,
@@ -90,25 +93,36 @@ public final class CoTransportConnection implements CoTransportConnectionType
     this.remote = NullCheck.notNull(in_remote, "Remote");
     this.id = in_id;
     this.channels = new Int2ReferenceOpenHashMap<>();
-    this.time_ping_sent_ms = 0L;
-    this.round_trip_time = 0L;
-    this.pong = makePong(this.id);
-    this.ping = makePing(this.id);
+    this.rtt = CoTransportRoundTripEstimator.create();
     this.ticks = 0L;
   }
 
   private static ByteString makePong(
-    final int id)
+    final int id,
+    final long time_ping_sent,
+    final long time_ping_received,
+    final long time_pong_sent)
   {
-    final CoPong po = CoPong.newBuilder().setConnectionId(id).build();
+    final CoPong po =
+      CoPong.newBuilder()
+        .setConnectionId(id)
+        .setTimePingSentNs(time_ping_sent)
+        .setTimePingReceivedNs(time_ping_received)
+        .setTimePongSentNs(time_pong_sent)
+        .build();
     final CoPacket p = CoPacket.newBuilder().setPong(po).build();
     return p.toByteString();
   }
 
   private static ByteString makePing(
-    final int id)
+    final int id,
+    final long time_sent)
   {
-    final CoPing pi = CoPing.newBuilder().setConnectionId(id).build();
+    final CoPing pi =
+      CoPing.newBuilder()
+        .setConnectionId(id)
+        .setTimeSentNs(time_sent)
+        .build();
     final CoPacket p = CoPacket.newBuilder().setPing(pi).build();
     return p.toByteString();
   }
@@ -203,26 +217,144 @@ public final class CoTransportConnection implements CoTransportConnectionType
       VALID_CHANNEL_IDS,
       "Valid channel identifiers");
 
-    final Optional<CoStringConstantReference> type_ref_opt =
-      this.strings.lookupReference(type);
+    final CoStringConstantReference type_ref =
+      this.strings.snapshot().lookupReference(type);
 
-    if (!type_ref_opt.isPresent()) {
+    if (type_ref == null) {
       throw new IllegalArgumentException(
         "No string constant for type: " + type);
     }
 
-    final CoStringConstantReference type_ref =
-      type_ref_opt.get();
     final CoTransportConnectionChannel transport_channel =
       this.createOrFindChannel(channel);
 
     transport_channel.enqueue(reliability, type_ref, message);
   }
 
+  @Override
+  public void send(
+    final Reliability reliability,
+    final int channel,
+    final CoStringConstantReference type,
+    final ByteBuffer message)
+  {
+    NullCheck.notNull(reliability, "Reliability");
+    NullCheck.notNull(type, "Type");
+    NullCheck.notNull(message, "Message");
+
+    RangeCheck.checkIncludedInInteger(
+      channel,
+      "Channel ID",
+      VALID_CHANNEL_IDS,
+      "Valid channel identifiers");
+
+    if (this.strings.snapshot().lookupString(type.value()) == null) {
+      throw new IllegalArgumentException(
+        "No string constant for type: " + type.value());
+    }
+
+    final CoTransportConnectionChannel transport_channel =
+      this.createOrFindChannel(channel);
+
+    transport_channel.enqueue(reliability, type, message);
+  }
+
+  @Override
+  public void sendState(
+    final int channel,
+    final String type,
+    final int key,
+    final ByteBuffer state)
+  {
+    NullCheck.notNull(type, "Type");
+    NullCheck.notNull(state, "State");
+
+    RangeCheck.checkIncludedInInteger(
+      channel,
+      "Channel ID",
+      VALID_CHANNEL_IDS,
+      "Valid channel identifiers");
+
+    final CoStringConstantReference type_ref =
+      this.strings.snapshot().lookupReference(type);
+
+    if (type_ref == null) {
+      throw new IllegalArgumentException(
+        "No string constant for type: " + type);
+    }
+
+    final CoTransportConnectionChannel transport_channel =
+      this.createOrFindChannel(channel);
+
+    transport_channel.enqueueState(type_ref, key, state);
+  }
+
+  @Override
+  public void sendState(
+    final int channel,
+    final CoStringConstantReference type,
+    final int key,
+    final ByteBuffer state)
+  {
+    NullCheck.notNull(type, "Type");
+    NullCheck.notNull(state, "State");
+
+    RangeCheck.checkIncludedInInteger(
+      channel,
+      "Channel ID",
+      VALID_CHANNEL_IDS,
+      "Valid channel identifiers");
+
+    if (this.strings.snapshot().lookupString(type.value()) == null) {
+      throw new IllegalArgumentException(
+        "No string constant for type: " + type.value());
+    }
+
+    final CoTransportConnectionChannel transport_channel =
+      this.createOrFindChannel(channel);
+
+    transport_channel.enqueueState(type, key, state);
+  }
+
   @Override
   public long roundTripTime()
   {
-    return this.round_trip_time;
+    return TimeUnit.NANOSECONDS.toMillis(this.rtt.smoothedRoundTrip());
+  }
+
+  @Override
+  public long roundTripTimeSmoothedNanoseconds()
+  {
+    return this.rtt.smoothedRoundTrip();
+  }
+
+  @Override
+  public long roundTripTimeVarianceNanoseconds()
+  {
+    return this.rtt.roundTripVariance();
+  }
+
+  @Override
+  public long retransmissionTimeoutNanoseconds()
+  {
+    return this.rtt.retransmissionTimeout();
+  }
+
+  @Override
+  public long clockOffsetNanoseconds()
+  {
+    return this.rtt.clockOffset();
+  }
+
+  /**
+   * @return The current time in nanoseconds according to the connection's
+   * clock
+   */
+
+  long timeNow()
+  {
+    final Instant now = this.clock.instant();
+    return (now.getEpochSecond() * 1_000_000_000L) + (long) now.getNano();
   }
 
   private CoTransportConnectionChannel createOrFindChannel(
@@ -250,17 +382,36 @@ public final class CoTransportConnection implements CoTransportConnectionType
 
     switch (p.getValueCase()) {
       case PING: {
-        this.sendPacket(this.remote, this.pong.asReadOnlyByteBuffer());
+        final long time_received = this.timeNow();
+        final ByteString pong =
+          makePong(
+            this.id,
+            p.getPing().getTimeSentNs(),
+            time_received,
+            this.timeNow());
+
+        this.sendPacket(this.remote, pong.asReadOnlyByteBuffer());
         this.listener.onReceivePacketPing(this);
         this.listener.onSendPacketPong(this);
         break;
       }
 
       case PONG: {
-        final long time_now =
-          this.clock.millis();
-        this.round_trip_time =
-          Math.max(0L, time_now - this.time_ping_sent_ms);
+        final long time_received = this.timeNow();
+        final CoPong pong = p.getPong();
+
+        /*
+         * A zero timestamp indicates a peer that does not timestamp its
+         * pings; no meaningful sample can be taken.
+         */
+
+        if (pong.getTimePingSentNs() != 0L) {
+          this.rtt.sampleExchange(
+            pong.getTimePingSentNs(),
+            pong.getTimePingReceivedNs(),
+            pong.getTimePongSentNs(),
+            time_received);
+        }
 
         this.listener.onReceivePacketPong(this);
         break;
@@ -301,6 +452,22 @@ public final class CoTransportConnection implements CoTransportConnectionType
 
   @Override
   public void tick()
+  {
+    this.tickReceive();
+    this.tickSend();
+  }
+
+  @Override
+  public void tickReceive()
+  {
+    for (final int key : this.channels.keySet()) {
+      final CoTransportConnectionChannel ch = this.channels.get(key);
+      ch.tickReceive();
+    }
+  }
+
+  @Override
+  public void tickSend()
   {
     ++this.ticks;
 
@@ -315,14 +482,14 @@ public final class CoTransportConnection implements CoTransportConnectionType
     }
 
     if (this.ticks % (long) this.config.ticksPingRate() == 0L) {
-      this.time_ping_sent_ms = this.clock.millis();
-      this.sendPacket(this.remote, this.ping.asReadOnlyByteBuffer());
+      final ByteString ping = makePing(this.id, this.timeNow());
+      this.sendPacket(this.remote, ping.asReadOnlyByteBuffer());
       this.listener.onSendPacketPing(this);
     }
 
     for (final int key : this.channels.keySet()) {
       final CoTransportConnectionChannel ch = this.channels.get(key);
-      ch.tick();
+      ch.tickSend();
     }
   }
 
@@ -338,6 +505,13 @@ public final class CoTransportConnection implements CoTransportConnectionType
     private final CoTransportSequenceNumberTracker sequences;
     private final Int2ReferenceOpenHashMap<CoPacket> q_sent_reliable;
     private final Int2IntOpenHashMap q_sent_reliable_ttls;
+    private final Int2LongOpenHashMap q_sent_reliable_times;
+    private final IntOpenHashSet q_sent_reliable_resent;
+    private final CoTransportStateSender states_sent;
+    private final CoTransportStateReceiver states_received;
+    private boolean receipt_pending;
+    private int receipt_sequence;
+    private long receipt_time;
 
     CoTransportConnectionChannel(
       final CoTransportConnection in_connection,
@@ -358,6 +532,16 @@ public final class CoTransportConnection implements CoTransportConnectionType
         new Int2ReferenceOpenHashMap<>();
       this.q_sent_reliable_ttls =
         new Int2IntOpenHashMap();
+      this.q_sent_reliable_times =
+        new Int2LongOpenHashMap();
+      this.q_sent_reliable_resent =
+        new IntOpenHashSet();
+      this.states_sent =
+        new CoTransportStateSender();
+      this.states_received =
+        new CoTransportStateReceiver(
+          this.connection.socket.maximumTransferUnit(),
+          CoTransportStateReceiver.KEYS_MAXIMUM);
 
       this.packets =
         new CoTransportPacketBuilder(
@@ -384,6 +568,22 @@ public final class CoTransportConnection implements CoTransportConnectionType
       }
     }
 
+    void enqueueState(
+      final CoStringConstantReference message_type,
+      final int key,
+      final ByteBuffer state)
+    {
+      final int mtu = this.connection.socket.maximumTransferUnit();
+      Preconditions.checkPreconditionI(
+        state.remaining(),
+        state.remaining() < mtu,
+        size -> "State size must be < " + mtu);
+
+      final CoMessageState header = this.states_sent.encode(key, state);
+      this.packets.unreliableAppendState(
+        this, message_type, header, this.states_sent.encoded());
+    }
+
     private void handleReceives()
     {
       this.handleReceivesScanQueue();
@@ -414,13 +614,74 @@ public final class CoTransportConnection implements CoTransportConnectionType
     }
 
     /**
-     * Send an ack for any missing packets.
+     * Send an ack for any missing packets. If any reliable packets have been
+     * received since the last ack, the ack also carries a receipt for the
+     * most recent one so that the sender can sample the round trip time.
+     * Receipts for any keyed states received since the last ack are also
+     * sent.
      */
 
     private void handleReceivesEnqueueAck()
     {
-      if (this.ackRequired()) {
-        this.packets.acks(this);
+      if (this.receipt_pending) {
+        this.receipt_pending = false;
+        this.packets.acksWithReceipt(
+          this,
+          this.receipt_sequence,
+          this.connection.timeNow() - this.receipt_time,
+          this.states_received);
+        return;
+      }
+
+      if (this.ackRequired() || this.states_received.receiptsPending()) {
+        this.packets.acks(this, this.states_received);
+      }
+    }
+
+    private void receiptNoteReceived(
+      final int sequence)
+    {
+      if (!this.receipt_pending
+        || this.sequences.serial().compare(sequence, this.receipt_sequence) > 0) {
+        this.receipt_pending = true;
+        this.receipt_sequence = sequence;
+        this.receipt_time = this.connection.timeNow();
+      }
+    }
+
+    /**
+     * Take a round trip time sample from the receipt in the given ack, if
+     * there is one. Following Karn's algorithm, packets that have been
+     * retransmitted are never sampled, as it is not possible to tell which
+     * transmission the receipt refers to.
+     */
+
+    private void receiptReceived(
+      final CoDataAck ack)
+    {
+      if (ack.hasReceipt()) {
+        final CoDataAckReceipt receipt = ack.getReceipt();
+        final int sequence = receipt.getSequence();
+        if (this.q_sent_reliable_times.containsKey(sequence)) {
+          final long time_sent =
+            this.q_sent_reliable_times.remove(sequence);
+          this.connection.rtt.sampleRoundTrip(
+            this.connection.timeNow() - time_sent - receipt.getDelayNs());
+        }
+      }
+    }
+
+    /**
+     * Pass any keyed state receipts in the given ack to the state sender, so
+     * that subsequent states can be encoded against the confirmed versions.
+     */
+
+    private void stateReceiptsReceived(
+      final CoDataAck ack)
+    {
+      for (int index = 0; index < ack.getStateReceiptsCount(); ++index) {
+        final CoDataAckStateReceipt receipt = ack.getStateReceipts(index);
+        this.states_sent.receipt(receipt.getKey(), receipt.getVersion());
       }
     }
 
@@ -504,9 +765,14 @@ public final class CoTransportConnection implements CoTransportConnectionType
         while (iter.hasNext()) {
           final int message_id = iter.nextInt();
           final CoMessage message = this.q_receive_messages.get(message_id);
-          this.connection.listener.onMessageReceived(
-            this.connection, this.channel, message);
           iter.remove();
+
+          if (message.hasState()) {
+            this.handleReceivesDeliverState(message);
+          } else {
+            this.connection.listener.onMessageReceived(
+              this.connection, this.channel, message);
+          }
         }
       }
 
@@ -518,6 +784,30 @@ public final class CoTransportConnection implements CoTransportConnectionType
       this.sequences.reliableReceiverWindow().reset();
     }
 
+    /**
+     * Decode a keyed state and deliver it to the application as an ordinary
+     * message. States that are stale, or that were encoded against a
+     * baseline that is no longer held, are dropped.
+     */
+
+    private void handleReceivesDeliverState(
+      final CoMessage message)
+    {
+      final ByteString data =
+        this.states_received.decode(
+          message.getState(), message.getMessageData());
+
+      if (data != null) {
+        this.connection.listener.onMessageReceived(
+          this.connection,
+          this.channel,
+          message.toBuilder()
+            .setMessageData(data)
+            .clearState()
+            .build());
+      }
+    }
+
     /**
      * Drop all unreliable packets from the queue.
      */
@@ -634,6 +924,8 @@ public final class CoTransportConnection implements CoTransportConnectionType
           "Must be reliable packet");
 
         this.q_sending.add(p);
+        this.q_sent_reliable_times.remove(not_received);
+        this.q_sent_reliable_resent.add(not_received);
         this.connection.listener.onEnqueuePacketReliableRequeue(
           this.connection, this.channel, not_received, p.getSerializedSize());
         return;
@@ -726,6 +1018,9 @@ public final class CoTransportConnection implements CoTransportConnectionType
       this.q_sent_reliable.put(sequence, p);
       final int ttl = this.connection.config.ticksReliableTTL();
       this.q_sent_reliable_ttls.put(sequence, ttl);
+      if (!this.q_sent_reliable_resent.contains(sequence)) {
+        this.q_sent_reliable_times.put(sequence, this.connection.timeNow());
+      }
 
       this.connection.listener.onSavedPacketReliableSave(
         this.connection, this.channel, sequence, p.getSerializedSize());
@@ -793,10 +1088,12 @@ public final class CoTransportConnection implements CoTransportConnectionType
         }
 
         case DATA_RELIABLE: {
+          final int sequence = p.getDataReliable().getId().getSequence();
+          this.receiptNoteReceived(sequence);
           this.connection.listener.onReceivePacketReliable(
             this.connection,
             this.channel,
-            p.getDataReliable().getId().getSequence(),
+            sequence,
             p.getSerializedSize());
           break;
         }
@@ -820,6 +1117,8 @@ public final class CoTransportConnection implements CoTransportConnectionType
         }
 
         case DATA_ACK: {
+          this.receiptReceived(p.getDataAck());
+          this.stateReceiptsReceived(p.getDataAck());
           this.connection.listener.onReceivePacketAck(
             this.connection,
             this.channel,
@@ -839,9 +1138,13 @@ public final class CoTransportConnection implements CoTransportConnectionType
       return this.sequences.serial().compare(s0.intValue(), s1.intValue());
     }
 
-    public void tick()
+    void tickReceive()
     {
       this.handleReceives();
+    }
+
+    void tickSend()
+    {
       this.handleSends();
       this.handlePacketExpirations();
     }
@@ -868,6 +1171,8 @@ public final class CoTransportConnection implements CoTransportConnectionType
         final int time_next = time - 1;
         if (time_next <= 0) {
           this.q_sent_reliable.remove(sequence);
+          this.q_sent_reliable_times.remove(sequence);
+          this.q_sent_reliable_resent.remove(sequence);
           iter.remove();
           this.connection.listener.onSavedPacketReliableExpire(
             this.connection, this.channel, sequence, p.getSerializedSize());
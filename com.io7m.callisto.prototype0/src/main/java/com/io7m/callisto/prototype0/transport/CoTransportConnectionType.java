@@ -24,5 +24,23 @@ public interface CoTransportConnectionType
   void receive(
     CoPacket p);
 
+  /**
+   * Equivalent to {@link #tickReceive()} followed by {@link #tickSend()}.
+   */
+
   void tick();
+
+  /**
+   * Process the packets received since the previous tick, delivering any
+   * messages that are now complete.
+   */
+
+  void tickReceive();
+
+  /**
+   * Check for timeouts, send pings, send queued packets, and expire saved
+   * reliable packets.
+   */
+
+  void tickSend();
 }
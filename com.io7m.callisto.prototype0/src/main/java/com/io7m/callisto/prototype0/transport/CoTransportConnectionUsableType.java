@@ -16,6 +16,7 @@
 
 package com.io7m.callisto.prototype0.transport;
 
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantReference;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 
@@ -31,8 +32,97 @@ public interface CoTransportConnectionUsableType
     String type,
     ByteBuffer data);
 
+  /**
+   * Send a message whose type has already been resolved to a string
+   * constant. This avoids a string constant lookup per message.
+   *
+   * @param r       The reliability
+   * @param channel The channel
+   * @param type    The message type
+   * @param data    The message data
+   */
+
+  void send(
+    Reliability r,
+    int channel,
+    CoStringConstantReference type,
+    ByteBuffer data);
+
+  /**
+   * <p>Send a new version of the keyed state with the given key. States are
+   * delivered unreliably, but are delta-encoded against the most recent
+   * version of the state with the same key that the peer has confirmed
+   * receiving. If the peer has not confirmed receiving any recent version of
+   * the state, the state is sent in full.</p>
+   *
+   * <p>Each state must fit into a single packet, and must therefore be
+   * smaller than the maximum transfer unit of the connection's socket. Keys
+   * are expected to be drawn from a small, bounded set: A history of recent
+   * versions is kept for every key that has been used, and at most 1024 keys
+   * may be used on each channel.</p>
+   *
+   * @param channel The channel
+   * @param type    The message type
+   * @param key     The state key
+   * @param state   The state
+   */
+
+  void sendState(
+    int channel,
+    String type,
+    int key,
+    ByteBuffer state);
+
+  /**
+   * Send a keyed state whose type has already been resolved to a string
+   * constant.
+   *
+   * @param channel The channel
+   * @param type    The message type
+   * @param key     The state key
+   * @param state   The state
+   *
+   * @see #sendState(int, String, int, ByteBuffer)
+   */
+
+  void sendState(
+    int channel,
+    CoStringConstantReference type,
+    int key,
+    ByteBuffer state);
+
+  /**
+   * @return The smoothed round trip time in milliseconds
+   */
+
   long roundTripTime();
 
+  /**
+   * @return The smoothed round trip time in nanoseconds
+   */
+
+  long roundTripTimeSmoothedNanoseconds();
+
+  /**
+   * @return The round trip time variance in nanoseconds
+   */
+
+  long roundTripTimeVarianceNanoseconds();
+
+  /**
+   * @return The retransmission timeout in nanoseconds, derived from the
+   * smoothed round trip time and variance
+   */
+
+  long retransmissionTimeoutNanoseconds();
+
+  /**
+   * @return The estimated offset in nanoseconds that must be added to a local
+   * time to obtain the corresponding time on the remote side
+   */
+
+  long clockOffsetNanoseconds();
+
   enum Reliability
   {
     MESSAGE_RELIABLE,
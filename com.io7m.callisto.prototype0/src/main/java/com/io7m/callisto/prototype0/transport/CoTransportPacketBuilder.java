@@ -20,16 +20,20 @@ import com.google.protobuf.ByteString;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantReference;
 import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstant;
 import com.io7m.callisto.prototype0.transport.messages.CoDataAck;
+import com.io7m.callisto.prototype0.transport.messages.CoDataAckReceipt;
+import com.io7m.callisto.prototype0.transport.messages.CoDataAckStateReceipt;
 import com.io7m.callisto.prototype0.transport.messages.CoDataReliable;
 import com.io7m.callisto.prototype0.transport.messages.CoDataReliableFragment;
 import com.io7m.callisto.prototype0.transport.messages.CoDataUnreliable;
 import com.io7m.callisto.prototype0.transport.messages.CoMessage;
+import com.io7m.callisto.prototype0.transport.messages.CoMessageState;
 import com.io7m.callisto.prototype0.transport.messages.CoPacket;
 import com.io7m.callisto.prototype0.transport.messages.CoPacketID;
 import com.io7m.jaffirm.core.Invariants;
 import com.io7m.jaffirm.core.Postconditions;
 import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
 import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.ints.IntSet;
 
@@ -98,6 +102,10 @@ public final class CoTransportPacketBuilder
       .setDataAck(
         CoDataAck.newBuilder()
           .setId(packetIDLargest())
+          .setReceipt(
+            CoDataAckReceipt.newBuilder()
+              .setSequence(0xffffffff)
+              .setDelayNs(0xffffffffffffffffL))
           .build())
       .build()
       .getSerializedSize();
@@ -197,6 +205,7 @@ public final class CoTransportPacketBuilder
 
   private void unreliableMessageAppend(
     final CoStringConstantReference message_type,
+    final @Nullable CoMessageState message_state,
     final ByteBuffer message_data)
   {
     final CoStringConstant p_type =
@@ -207,13 +216,17 @@ public final class CoTransportPacketBuilder
     final ByteString p_data =
       ByteString.copyFrom(message_data, message_data.remaining());
 
-    final CoMessage message =
+    final CoMessage.Builder message_builder =
       CoMessage.newBuilder()
         .setMessageId(this.sequences.messageToSendNext())
         .setMessageType(p_type)
-        .setMessageData(p_data)
-        .build();
+        .setMessageData(p_data);
+
+    if (message_state != null) {
+      message_builder.setState(message_state);
+    }
 
+    final CoMessage message = message_builder.build();
     this.packet_unreliable.addMessages(message);
     this.packet_unreliable_size += message.getSerializedSize() + PER_MESSAGE_OVERHEAD;
     this.sequences.messageSend();
@@ -298,7 +311,7 @@ public final class CoTransportPacketBuilder
     NullCheck.notNull(message_data, "Message data");
 
     if (this.unreliableMessageCanFit(message_data)) {
-      this.unreliableMessageAppend(message_type, message_data);
+      this.unreliableMessageAppend(message_type, null, message_data);
       return;
     }
 
@@ -312,7 +325,43 @@ public final class CoTransportPacketBuilder
       return;
     }
 
-    this.unreliableMessageAppend(message_type, message_data);
+    this.unreliableMessageAppend(message_type, null, message_data);
+  }
+
+  /**
+   * Append a keyed state to the current unreliable packet. Unlike ordinary
+   * unreliable messages, states are never fragmented: A state that cannot
+   * fit into a single packet is rejected.
+   *
+   * @param output        A queue that will receive any completed packets
+   * @param message_type  The message type
+   * @param message_state The state header
+   * @param message_data  The encoded state
+   */
+
+  public void unreliableAppendState(
+    final CoTransportPacketBuilderListenerType output,
+    final CoStringConstantReference message_type,
+    final CoMessageState message_state,
+    final ByteBuffer message_data)
+  {
+    NullCheck.notNull(output, "Output");
+    NullCheck.notNull(message_type, "Message type");
+    NullCheck.notNull(message_state, "Message state");
+    NullCheck.notNull(message_data, "Message data");
+
+    Preconditions.checkPreconditionI(
+      message_data.remaining(),
+      !this.messageRequiresFragmentation(message_data),
+      value -> "State size must be < " + this.packet_size_limit);
+
+    if (!this.unreliableMessageCanFit(message_data)
+      && this.unreliableAnyRemaining()) {
+      output.onCreatedPacketUnreliable(this.unreliableFinish());
+      this.unreliableStart();
+    }
+
+    this.unreliableMessageAppend(message_type, message_state, message_data);
   }
 
   /**
@@ -491,11 +540,84 @@ public final class CoTransportPacketBuilder
 
   public void acks(
     final CoTransportPacketBuilderListenerType output)
+  {
+    this.acks(output, null);
+  }
+
+  /**
+   * Create any ack packets that are needed, including receipts for any
+   * keyed states that have been received.
+   *
+   * @param output A listener that will receive any completed packets
+   * @param states The received states, if any
+   */
+
+  void acks(
+    final CoTransportPacketBuilderListenerType output,
+    final @Nullable CoTransportStateReceiver states)
   {
     NullCheck.notNull(output, "Output");
 
-    final IntSet missing = this.sequences.reliableReceiverWindow().missed();
     this.ackStart();
+    this.acksMissing(output, states);
+  }
+
+  /**
+   * Create any ack packets that are needed. The first ack packet will
+   * additionally carry a receipt for the given reliable packet, allowing the
+   * sender to take a round trip time sample.
+   *
+   * @param output   A listener that will receive any completed packets
+   * @param sequence The sequence number of the most recently received
+   *                 reliable packet
+   * @param delay_ns The time in nanoseconds that elapsed between receiving
+   *                 the reliable packet and producing this ack
+   */
+
+  public void acksWithReceipt(
+    final CoTransportPacketBuilderListenerType output,
+    final int sequence,
+    final long delay_ns)
+  {
+    this.acksWithReceipt(output, sequence, delay_ns, null);
+  }
+
+  /**
+   * Create any ack packets that are needed, including receipts for any
+   * keyed states that have been received.
+   *
+   * @param output   A listener that will receive any completed packets
+   * @param sequence The sequence number of the most recently received
+   *                 reliable packet
+   * @param delay_ns The time in nanoseconds that elapsed between receiving
+   *                 the reliable packet and producing this ack
+   * @param states   The received states, if any
+   *
+   * @see #acksWithReceipt(CoTransportPacketBuilderListenerType, int, long)
+   */
+
+  void acksWithReceipt(
+    final CoTransportPacketBuilderListenerType output,
+    final int sequence,
+    final long delay_ns,
+    final @Nullable CoTransportStateReceiver states)
+  {
+    NullCheck.notNull(output, "Output");
+
+    this.ackStart();
+    this.packet_ack.setReceipt(
+      CoDataAckReceipt.newBuilder()
+        .setSequence(sequence)
+        .setDelayNs(Math.max(0L, delay_ns))
+        .build());
+    this.acksMissing(output, states);
+  }
+
+  private void acksMissing(
+    final CoTransportPacketBuilderListenerType output,
+    final @Nullable CoTransportStateReceiver states)
+  {
+    final IntSet missing = this.sequences.reliableReceiverWindow().missed();
 
     final IntIterator iter = missing.iterator();
     while (iter.hasNext()) {
@@ -508,9 +630,27 @@ public final class CoTransportPacketBuilder
       }
     }
 
+    if (states != null) {
+      states.receiptsTake(receipt -> this.ackStateReceipt(output, receipt));
+    }
+
     output.onCreatedPacketAck(this.ackFinish());
   }
 
+  private void ackStateReceipt(
+    final CoTransportPacketBuilderListenerType output,
+    final CoDataAckStateReceipt receipt)
+  {
+    final int size = receipt.getSerializedSize() + PER_MESSAGE_OVERHEAD;
+    if (this.packet_ack_size + size >= this.packet_size_limit) {
+      output.onCreatedPacketAck(this.ackFinish());
+      this.ackStart();
+    }
+
+    this.packet_ack.addStateReceipts(receipt);
+    this.packet_ack_size += size;
+  }
+
   private CoPacket ackFinish()
   {
     final CoDataAck pd = this.packet_ack.build();
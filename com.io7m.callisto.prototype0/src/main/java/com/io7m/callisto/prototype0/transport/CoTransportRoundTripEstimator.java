@@ -0,0 +1,254 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.transport;
+
+import com.io7m.jaffirm.core.Preconditions;
+
+/**
+ * <p>An estimator of round trip time and remote clock offset.</p>
+ *
+ * <p>The smoothed round trip time, round trip time variance, and
+ * retransmission timeout are calculated as specified by RFC 6298. The clock
+ * offset is calculated from four-timestamp ping/pong exchanges in the same
+ * manner as NTP: of the most recent exchanges, the offset measured by the
+ * exchange with the smallest round trip time is used, as that exchange
+ * suffered the least queueing delay and is therefore the most accurate.</p>
+ *
+ * <p>All times are in nanoseconds. Estimates are published via volatile
+ * fields so that they can be read from threads other than the one supplying
+ * samples, but samples must only be supplied from a single thread.</p>
+ */
+
+public final class CoTransportRoundTripEstimator
+{
+  private static final int OFFSET_WINDOW = 8;
+  private static final long GRANULARITY_NS = 1_000_000L;
+
+  private final long rto_min;
+  private final long rto_max;
+  private final long rto_initial;
+  private final long[] offset_samples;
+  private final long[] offset_delays;
+  private int offset_index;
+  private int offset_count;
+  private long samples;
+  private volatile long srtt;
+  private volatile long rttvar;
+  private volatile long rto;
+  private volatile long rtt_latest;
+  private volatile long offset;
+
+  /**
+   * Construct an estimator.
+   *
+   * @param in_rto_initial The retransmission timeout used before any samples
+   *                       have been taken
+   * @param in_rto_min     The minimum retransmission timeout
+   * @param in_rto_max     The maximum retransmission timeout
+   */
+
+  public CoTransportRoundTripEstimator(
+    final long in_rto_initial,
+    final long in_rto_min,
+    final long in_rto_max)
+  {
+    Preconditions.checkPrecondition(
+      in_rto_min > 0L, "Minimum RTO must be positive");
+    Preconditions.checkPrecondition(
+      in_rto_min <= in_rto_max, "Minimum RTO must be <= maximum RTO");
+
+    this.rto_min = in_rto_min;
+    this.rto_max = in_rto_max;
+    this.rto_initial = clamp(in_rto_initial, in_rto_min, in_rto_max);
+    this.offset_samples = new long[OFFSET_WINDOW];
+    this.offset_delays = new long[OFFSET_WINDOW];
+    this.reset();
+  }
+
+  /**
+   * @return An estimator with an initial timeout of one second, a minimum
+   * timeout of 50ms, and a maximum timeout of ten seconds
+   */
+
+  public static CoTransportRoundTripEstimator create()
+  {
+    return new CoTransportRoundTripEstimator(
+      1_000_000_000L, 50_000_000L, 10_000_000_000L);
+  }
+
+  private static long clamp(
+    final long x,
+    final long lo,
+    final long hi)
+  {
+    return Math.max(lo, Math.min(hi, x));
+  }
+
+  /**
+   * Discard all samples.
+   */
+
+  public void reset()
+  {
+    this.samples = 0L;
+    this.offset_index = 0;
+    this.offset_count = 0;
+    this.srtt = 0L;
+    this.rttvar = 0L;
+    this.rtt_latest = 0L;
+    this.offset = 0L;
+    this.rto = this.rto_initial;
+  }
+
+  /**
+   * Supply a round trip time sample.
+   *
+   * @param rtt The measured round trip time
+   *
+   * @return {@code false} iff the sample was rejected as being invalid
+   */
+
+  public boolean sampleRoundTrip(
+    final long rtt)
+  {
+    if (rtt < 0L) {
+      return false;
+    }
+
+    if (this.samples == 0L) {
+      this.srtt = rtt;
+      this.rttvar = rtt / 2L;
+    } else {
+      final long s = this.srtt;
+      final long v = this.rttvar;
+      this.rttvar = v - (v >> 2) + (Math.abs(s - rtt) >> 2);
+      this.srtt = s - (s >> 3) + (rtt >> 3);
+    }
+
+    ++this.samples;
+    this.rtt_latest = rtt;
+    this.rto = clamp(
+      this.srtt + Math.max(GRANULARITY_NS, 4L * this.rttvar),
+      this.rto_min,
+      this.rto_max);
+    return true;
+  }
+
+  /**
+   * Supply the four timestamps of a completed ping/pong exchange. The
+   * round trip time is sampled, excluding the time the remote side spent
+   * processing the ping, and the clock offset is updated.
+   *
+   * @param t_ping_sent     The local time at which the ping was sent
+   * @param t_ping_received The remote time at which the ping was received
+   * @param t_pong_sent     The remote time at which the pong was sent
+   * @param t_pong_received The local time at which the pong was received
+   *
+   * @return {@code false} iff the sample was rejected as being invalid
+   */
+
+  public boolean sampleExchange(
+    final long t_ping_sent,
+    final long t_ping_received,
+    final long t_pong_sent,
+    final long t_pong_received)
+  {
+    final long remote_processing = t_pong_sent - t_ping_received;
+    if (remote_processing < 0L) {
+      return false;
+    }
+
+    final long delay =
+      (t_pong_received - t_ping_sent) - remote_processing;
+    if (!this.sampleRoundTrip(delay)) {
+      return false;
+    }
+
+    final long sample =
+      ((t_ping_received - t_ping_sent) + (t_pong_sent - t_pong_received)) / 2L;
+
+    this.offset_samples[this.offset_index] = sample;
+    this.offset_delays[this.offset_index] = delay;
+    this.offset_index = (this.offset_index + 1) % OFFSET_WINDOW;
+    this.offset_count = Math.min(this.offset_count + 1, OFFSET_WINDOW);
+
+    int best = 0;
+    for (int index = 1; index < this.offset_count; ++index) {
+      if (this.offset_delays[index] < this.offset_delays[best]) {
+        best = index;
+      }
+    }
+
+    this.offset = this.offset_samples[best];
+    return true;
+  }
+
+  /**
+   * @return The number of round trip time samples accepted so far
+   */
+
+  public long sampleCount()
+  {
+    return this.samples;
+  }
+
+  /**
+   * @return The smoothed round trip time
+   */
+
+  public long smoothedRoundTrip()
+  {
+    return this.srtt;
+  }
+
+  /**
+   * @return The round trip time variance
+   */
+
+  public long roundTripVariance()
+  {
+    return this.rttvar;
+  }
+
+  /**
+   * @return The most recently sampled round trip time
+   */
+
+  public long latestRoundTrip()
+  {
+    return this.rtt_latest;
+  }
+
+  /**
+   * @return The current retransmission timeout
+   */
+
+  public long retransmissionTimeout()
+  {
+    return this.rto;
+  }
+
+  /**
+   * @return The estimated offset that must be added to a local time to
+   * obtain the corresponding remote time
+   */
+
+  public long clockOffset()
+  {
+    return this.offset;
+  }
+}
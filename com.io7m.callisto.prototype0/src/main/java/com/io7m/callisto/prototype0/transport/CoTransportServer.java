@@ -20,7 +20,6 @@ import com.google.protobuf.ByteString;
 import com.io7m.callisto.prototype0.idpool.CoIDPoolUnpredictable;
 import com.io7m.callisto.prototype0.network.CoNetworkPacketSocketType;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolReadableType;
-import com.io7m.callisto.prototype0.stringconstants.CoStringConstantReference;
 import com.io7m.callisto.prototype0.transport.messages.CoBye;
 import com.io7m.callisto.prototype0.transport.messages.CoHello;
 import com.io7m.callisto.prototype0.transport.messages.CoHelloResponse;
@@ -39,7 +38,6 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.time.Clock;
 import java.util.Objects;
-import java.util.Optional;
 
 public final class CoTransportServer implements CoTransportServerType
 {
@@ -198,12 +196,28 @@ public final class CoTransportServer implements CoTransportServerType
 
   @Override
   public void tick()
+  {
+    this.tickReceive();
+    this.tickSend();
+  }
+
+  @Override
+  public void tickReceive()
   {
     this.socket.poll(this::onReceivePacket);
 
     for (final int id : this.connections.keySet()) {
       final CoTransportConnection connection = this.connections.get(id);
-      connection.tick();
+      connection.tickReceive();
+    }
+  }
+
+  @Override
+  public void tickSend()
+  {
+    for (final int id : this.connections.keySet()) {
+      final CoTransportConnection connection = this.connections.get(id);
+      connection.tickSend();
     }
   }
 
@@ -329,7 +343,7 @@ public final class CoTransportServer implements CoTransportServerType
 
     this.connections.put(connection_id, connection);
     this.socket.send(address, this.helloOK(connection_id));
-    this.listener.onClientConnectionCreated(connection);
+    this.listener.onClientConnectionCreated(connection, hello);
   }
 
   private void onConnectionClosed(
@@ -592,21 +606,19 @@ public final class CoTransportServer implements CoTransportServerType
           message);
       }
 
-      final CoStringConstantReference type_ref =
-        CoStringConstantReference.of(message.getMessageType().getValue());
-      final Optional<String> type_name_opt =
-        this.server.strings.lookupString(type_ref);
+      final int type_ref = message.getMessageType().getValue();
+      final String type_name =
+        this.server.strings.snapshot().lookupString(type_ref);
 
-      if (!type_name_opt.isPresent()) {
+      if (type_name == null) {
         LOG.error(
           "onMessageReceived: {}:{} unrecognized string constant {}",
           connection,
           Integer.valueOf(channel),
-          Integer.valueOf(type_ref.value()));
+          Integer.valueOf(type_ref));
         return;
       }
 
-      final String type_name = type_name_opt.get();
       if (LOG.isTraceEnabled()) {
         LOG.trace(
           "onMessageReceived: {}:{} message type {}",
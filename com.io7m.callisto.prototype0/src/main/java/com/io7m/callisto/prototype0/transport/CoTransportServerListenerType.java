@@ -16,6 +16,7 @@
 
 package com.io7m.callisto.prototype0.transport;
 
+import com.io7m.callisto.prototype0.transport.messages.CoHello;
 import com.io7m.callisto.prototype0.transport.messages.CoPacket;
 
 import java.net.SocketAddress;
@@ -37,7 +38,8 @@ public interface CoTransportServerListenerType
     CoPacket packet);
 
   void onClientConnectionCreated(
-    CoTransportConnectionUsableType connection);
+    CoTransportConnectionUsableType connection,
+    CoHello hello);
 
   void onClientConnectionClosed(
     CoTransportConnectionUsableType connection,
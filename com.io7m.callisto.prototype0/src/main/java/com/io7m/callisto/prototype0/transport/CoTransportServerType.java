@@ -20,8 +20,25 @@ import java.io.Closeable;
 
 public interface CoTransportServerType extends Closeable
 {
+  /**
+   * Equivalent to {@link #tickReceive()} followed by {@link #tickSend()}.
+   */
+
   void tick();
 
+  /**
+   * Read all pending packets from the socket and deliver any messages that
+   * are now complete on every connection.
+   */
+
+  void tickReceive();
+
+  /**
+   * Send all queued packets on every connection.
+   */
+
+  void tickSend();
+
   void closeConnection(
     int id,
     String message);
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.transport;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>Functions to delta-encode a state blob against an earlier version of
+ * the same blob.</p>
+ *
+ * <p>The state and the baseline are compared as sequences of 64 bit words;
+ * a baseline shorter than the state is treated as being padded with zeroes,
+ * as is a final partial word. The words of the XOR of the state and the
+ * baseline are written in groups of eight: each group consists of a mask
+ * octet in which bit {@code n} is set iff word {@code n} of the group is
+ * non-zero, followed by the non-zero words. Trailing groups that contain no
+ * non-zero words are omitted. A state that differs from its baseline in a
+ * few octets therefore encodes to a few octets per changed word, plus one
+ * octet per 64 octets of state.</p>
+ */
+
+public final class CoTransportStateDelta
+{
+  private static final int WORD = 8;
+  private static final int GROUP = 8;
+
+  private CoTransportStateDelta()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * @param size The size of a state
+   *
+   * @return The maximum size of the delta encoding of a state of the given
+   * size
+   */
+
+  public static int encodedSizeMaximum(
+    final int size)
+  {
+    final int words = (size + WORD - 1) / WORD;
+    final int groups = (words + GROUP - 1) / GROUP;
+    return groups + (words * WORD);
+  }
+
+  private static long word(
+    final ByteBuffer buffer,
+    final int length,
+    final int offset)
+  {
+    if (offset + WORD <= length) {
+      return buffer.getLong(offset);
+    }
+    if (offset >= length) {
+      return 0L;
+    }
+
+    long w = 0L;
+    for (int index = 0; index < WORD; ++index) {
+      w <<= 8;
+      if (offset + index < length) {
+        w |= (long) buffer.get(offset + index) & 0xffL;
+      }
+    }
+    return w;
+  }
+
+  /**
+   * Encode the remaining octets of {@code state} against the remaining
+   * octets of {@code baseline}, writing the result to {@code out}. The
+   * positions of {@code state} and {@code baseline} are not changed.
+   *
+   * @param baseline The baseline
+   * @param state    The state
+   * @param out      The output buffer, which must have at least
+   *                 {@link #encodedSizeMaximum(int)} octets remaining
+   *
+   * @return The number of octets written
+   */
+
+  public static int encode(
+    final ByteBuffer baseline,
+    final ByteBuffer state,
+    final ByteBuffer out)
+  {
+    NullCheck.notNull(baseline, "Baseline");
+    NullCheck.notNull(state, "State");
+    NullCheck.notNull(out, "Output");
+
+    final ByteBuffer b = baseline.slice();
+    final ByteBuffer s = state.slice();
+    final int b_size = b.remaining();
+    final int s_size = s.remaining();
+
+    Preconditions.checkPreconditionI(
+      out.remaining(),
+      out.remaining() >= encodedSizeMaximum(s_size),
+      r -> "Output buffer must have at least "
+        + encodedSizeMaximum(s_size) + " octets remaining");
+
+    final ByteBuffer o = out.duplicate();
+    o.order(ByteOrder.BIG_ENDIAN);
+
+    final int start = o.position();
+    final int words = (s_size + WORD - 1) / WORD;
+    int end = start;
+
+    for (int group = 0; group < words; group += GROUP) {
+      final int mask_position = o.position();
+      o.put((byte) 0);
+
+      int mask = 0;
+      final int count = Math.min(GROUP, words - group);
+      for (int index = 0; index < count; ++index) {
+        final int offset = (group + index) * WORD;
+        final long x = word(s, s_size, offset) ^ word(b, b_size, offset);
+        if (x != 0L) {
+          mask |= 1 << index;
+          o.putLong(x);
+        }
+      }
+
+      if (mask != 0) {
+        o.put(mask_position, (byte) mask);
+        end = o.position();
+      }
+    }
+
+    out.position(end);
+    return end - start;
+  }
+
+  /**
+   * Decode a state of {@code size} octets from the remaining octets of
+   * {@code delta}, against the remaining octets of {@code baseline}, writing
+   * the result to {@code out}. The positions of {@code baseline} and
+   * {@code delta} are not changed.
+   *
+   * @param baseline The baseline
+   * @param delta    The delta encoding
+   * @param size     The size of the state
+   * @param out      The output buffer, which must have at least {@code size}
+   *                 octets remaining
+   *
+   * @throws java.nio.BufferUnderflowException If the delta is truncated
+   */
+
+  public static void decode(
+    final ByteBuffer baseline,
+    final ByteBuffer delta,
+    final int size,
+    final ByteBuffer out)
+  {
+    NullCheck.notNull(baseline, "Baseline");
+    NullCheck.notNull(delta, "Delta");
+    NullCheck.notNull(out, "Output");
+
+    Preconditions.checkPreconditionI(
+      size,
+      size >= 0 && out.remaining() >= size,
+      s -> "Output buffer must have at least " + s + " octets remaining");
+
+    final ByteBuffer b = baseline.slice();
+    final ByteBuffer d = delta.slice();
+    final int b_size = b.remaining();
+    final int words = (size + WORD - 1) / WORD;
+
+    final ByteBuffer o = out.duplicate();
+    o.order(ByteOrder.BIG_ENDIAN);
+
+    for (int group = 0; group < words; group += GROUP) {
+      final int mask = d.hasRemaining() ? (int) d.get() & 0xff : 0;
+      final int count = Math.min(GROUP, words - group);
+      for (int index = 0; index < count; ++index) {
+        final int offset = (group + index) * WORD;
+        final long x = ((mask >>> index) & 1) != 0 ? d.getLong() : 0L;
+        final long w = word(b, b_size, offset) ^ x;
+
+        final int remaining = size - offset;
+        if (remaining >= WORD) {
+          o.putLong(w);
+        } else {
+          for (int octet = 0; octet < remaining; ++octet) {
+            o.put((byte) (w >>> (56 - (octet * 8))));
+          }
+        }
+      }
+    }
+
+    out.position(o.position());
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.transport;
+
+import com.google.protobuf.ByteString;
+import com.io7m.callisto.prototype0.transport.messages.CoDataAckStateReceipt;
+import com.io7m.callisto.prototype0.transport.messages.CoMessageState;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * <p>The receiving side of the keyed state messages of a single channel.</p>
+ *
+ * <p>For each key, the most recent {@link CoTransportStateSender#BASELINES}
+ * decoded versions of the state are kept so that deltas can be applied to
+ * them. A receipt is queued for each decoded version; receipts are sent to
+ * the peer alongside ordinary acknowledgements.</p>
+ *
+ * <p>The headers of received states are not trusted: States that claim a
+ * size that could not have been sent in a single packet, and states for new
+ * keys once the maximum number of keys are held, are dropped.</p>
+ */
+
+public final class CoTransportStateReceiver
+{
+  /**
+   * The maximum number of keys per channel. The sending side rejects new
+   * keys beyond this number.
+   */
+
+  public static final int KEYS_MAXIMUM = 1024;
+
+  private static final int MASK = CoTransportStateSender.BASELINES - 1;
+
+  private final int size_limit;
+  private final int keys_maximum;
+  private final Int2ReferenceOpenHashMap<Key> keys;
+  private final Int2IntOpenHashMap receipts;
+  private final CoDataAckStateReceipt.Builder receipt;
+
+  /**
+   * Construct a receiver.
+   *
+   * @param in_size_limit   The exclusive upper bound on the size of states,
+   *                        typically the maximum transfer unit
+   * @param in_keys_maximum The maximum number of keys held
+   */
+
+  public CoTransportStateReceiver(
+    final int in_size_limit,
+    final int in_keys_maximum)
+  {
+    Preconditions.checkPreconditionI(
+      in_size_limit, in_size_limit > 0, s -> "Size limit must be positive");
+    Preconditions.checkPreconditionI(
+      in_keys_maximum,
+      in_keys_maximum > 0,
+      k -> "Key maximum must be positive");
+
+    this.size_limit = in_size_limit;
+    this.keys_maximum = in_keys_maximum;
+    this.keys = new Int2ReferenceOpenHashMap<>();
+    this.receipts = new Int2IntOpenHashMap();
+    this.receipt = CoDataAckStateReceipt.newBuilder();
+  }
+
+  private static final class Key
+  {
+    private final int[] versions;
+    private final byte[][] states;
+    private int newest;
+
+    Key()
+    {
+      this.versions = new int[CoTransportStateSender.BASELINES];
+      this.states = new byte[CoTransportStateSender.BASELINES][];
+    }
+
+    @Nullable byte[] version(
+      final int version)
+    {
+      final int slot = version & MASK;
+      return this.versions[slot] == version ? this.states[slot] : null;
+    }
+  }
+
+  /**
+   * Decode a received state.
+   *
+   * @param header The state header
+   * @param data   The message data
+   *
+   * @return The decoded state, or {@code null} if the state is older than
+   * one already received, refers to a baseline that is no longer held, has a
+   * size outside {@code [0, size_limit)}, or has a new key and the maximum
+   * number of keys are already held
+   */
+
+  public @Nullable ByteString decode(
+    final CoMessageState header,
+    final ByteString data)
+  {
+    NullCheck.notNull(header, "Header");
+    NullCheck.notNull(data, "Data");
+
+    final int key = header.getKey();
+    final int version = header.getVersion();
+    final int size = header.getSize();
+
+    /*
+     * The size is an unsigned 32-bit value chosen by the peer, and must be
+     * checked before anything is allocated.
+     */
+
+    if (version == 0 || size < 0 || size >= this.size_limit) {
+      return null;
+    }
+
+    Key k = this.keys.get(key);
+    if (k == null) {
+      if (this.keys.size() >= this.keys_maximum) {
+        return null;
+      }
+      k = new Key();
+      this.keys.put(key, k);
+    }
+
+    if (k.newest != 0 && (version - k.newest) <= 0) {
+      return null;
+    }
+
+    final byte[] result = new byte[size];
+    final int baseline = header.getBaseline();
+
+    if (baseline == 0) {
+      if (data.size() != size) {
+        return this.rejected(key, k);
+      }
+      data.copyTo(result, 0);
+    } else {
+      final byte[] base = k.version(baseline);
+      if (base == null) {
+        return this.rejected(key, k);
+      }
+
+      try {
+        CoTransportStateDelta.decode(
+          ByteBuffer.wrap(base),
+          data.asReadOnlyByteBuffer(),
+          size,
+          ByteBuffer.wrap(result));
+      } catch (final BufferUnderflowException e) {
+        return this.rejected(key, k);
+      }
+    }
+
+    final int slot = version & MASK;
+    k.versions[slot] = version;
+    k.states[slot] = result;
+    k.newest = version;
+    this.receipts.put(key, version);
+    return ByteString.copyFrom(result);
+  }
+
+  /**
+   * The state could not be decoded; the peer may not have seen the receipt
+   * for the newest held version, so send it again.
+   */
+
+  private @Nullable ByteString rejected(
+    final int key,
+    final Key k)
+  {
+    if (k.newest != 0) {
+      this.receipts.put(key, k.newest);
+    }
+    return null;
+  }
+
+  /**
+   * @return {@code true} iff there are receipts that have not been sent
+   */
+
+  public boolean receiptsPending()
+  {
+    return !this.receipts.isEmpty();
+  }
+
+  /**
+   * Pass all pending receipts to the given consumer and discard them.
+   *
+   * @param consumer The receiver of receipts
+   */
+
+  public void receiptsTake(
+    final Consumer<CoDataAckStateReceipt> consumer)
+  {
+    NullCheck.notNull(consumer, "Consumer");
+
+    for (final Int2IntOpenHashMap.Entry e :
+      this.receipts.int2IntEntrySet()) {
+      this.receipt.clear();
+      this.receipt.setKey(e.getIntKey());
+      this.receipt.setVersion(e.getIntValue());
+      consumer.accept(this.receipt.build());
+    }
+    this.receipts.clear();
+  }
+}
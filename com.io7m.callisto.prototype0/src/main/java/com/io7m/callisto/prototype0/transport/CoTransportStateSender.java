@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.prototype0.transport;
+
+import com.io7m.callisto.prototype0.transport.messages.CoMessageState;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The sending side of the keyed state messages of a single channel.</p>
+ *
+ * <p>For each key, the most recent {@link #BASELINES} versions of the state
+ * are kept. Each new version is delta-encoded against the most recent
+ * version that the peer has confirmed receiving, if that version is still
+ * held, and is sent in full otherwise.</p>
+ */
+
+final class CoTransportStateSender
+{
+  /**
+   * The number of versions of each state that are kept; must be a power of
+   * two.
+   */
+
+  static final int BASELINES = 16;
+
+  private final Int2ReferenceOpenHashMap<Key> keys;
+  private final CoMessageState.Builder header;
+  private ByteBuffer encoded;
+
+  CoTransportStateSender()
+  {
+    this.keys = new Int2ReferenceOpenHashMap<>();
+    this.header = CoMessageState.newBuilder();
+    this.encoded = ByteBuffer.allocate(256);
+  }
+
+  private static final class Key
+  {
+    private final int[] versions;
+    private final byte[][] states;
+    private int version;
+    private int acknowledged;
+
+    Key()
+    {
+      this.versions = new int[BASELINES];
+      this.states = new byte[BASELINES][];
+    }
+
+    @Nullable byte[] baseline()
+    {
+      final int a = this.acknowledged;
+      if (a == 0) {
+        return null;
+      }
+      final int slot = a & (BASELINES - 1);
+      return this.versions[slot] == a ? this.states[slot] : null;
+    }
+  }
+
+  /**
+   * Encode a new version of the state with the given key. The encoded
+   * message data is available from {@link #encoded()} until the next call.
+   *
+   * @param key   The key
+   * @param state The state
+   *
+   * @return The state header
+   */
+
+  CoMessageState encode(
+    final int key,
+    final ByteBuffer state)
+  {
+    NullCheck.notNull(state, "State");
+
+    Key k = this.keys.get(key);
+    if (k == null) {
+      final int maximum = CoTransportStateReceiver.KEYS_MAXIMUM;
+      Preconditions.checkPreconditionI(
+        this.keys.size(),
+        this.keys.size() < maximum,
+        n -> "Number of keys must be < " + maximum);
+      k = new Key();
+      this.keys.put(key, k);
+    }
+
+    /*
+     * The baseline must be chosen before the new version is stored, as
+     * the new version may occupy the slot of the acknowledged version.
+     */
+
+    final @Nullable byte[] baseline = k.baseline();
+    final int baseline_version = k.acknowledged;
+
+    int version = k.version + 1;
+    if (version == 0) {
+      version = 1;
+    }
+    k.version = version;
+
+    final int size = state.remaining();
+    final int slot = version & (BASELINES - 1);
+    byte[] copy = k.states[slot];
+    if (copy == null || copy.length != size || copy == baseline) {
+      copy = new byte[size];
+    }
+    state.duplicate().get(copy);
+    k.states[slot] = copy;
+    k.versions[slot] = version;
+
+    this.header.clear();
+    this.header.setKey(key);
+    this.header.setVersion(version);
+    this.header.setSize(size);
+
+    if (baseline != null) {
+      this.encoded = ensureCapacity(
+        this.encoded, CoTransportStateDelta.encodedSizeMaximum(size));
+      this.encoded.clear();
+      final int written =
+        CoTransportStateDelta.encode(
+          ByteBuffer.wrap(baseline), state, this.encoded);
+      this.encoded.flip();
+
+      if (written < size) {
+        this.header.setBaseline(baseline_version);
+        return this.header.build();
+      }
+    }
+
+    this.encoded = ensureCapacity(this.encoded, size);
+    this.encoded.clear();
+    this.encoded.put(copy);
+    this.encoded.flip();
+    this.header.setBaseline(0);
+    return this.header.build();
+  }
+
+  private static ByteBuffer ensureCapacity(
+    final ByteBuffer buffer,
+    final int size)
+  {
+    if (buffer.capacity() >= size) {
+      return buffer;
+    }
+    return ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+  }
+
+  /**
+   * @return The message data produced by the most recent call to
+   * {@link #encode(int, ByteBuffer)}
+   */
+
+  ByteBuffer encoded()
+  {
+    return this.encoded;
+  }
+
+  /**
+   * The peer has confirmed receiving the given version of the state with the
+   * given key.
+   *
+   * @param key     The key
+   * @param version The version
+   */
+
+  void receipt(
+    final int key,
+    final int version)
+  {
+    final Key k = this.keys.get(key);
+    if (k == null || version == 0) {
+      return;
+    }
+
+    final boolean sent = (k.version - version) >= 0;
+    final boolean newer = k.acknowledged == 0 || (version - k.acknowledged) > 0;
+    if (sent && newer) {
+      k.acknowledged = version;
+    }
+  }
+}
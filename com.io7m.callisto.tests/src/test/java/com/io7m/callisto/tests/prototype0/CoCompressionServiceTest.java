@@ -0,0 +1,242 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.compression.CoCompressionConfiguration;
+import com.io7m.callisto.prototype0.compression.CoCompressionDictionaries;
+import com.io7m.callisto.prototype0.compression.CoCompressionException;
+import com.io7m.callisto.prototype0.compression.CoCompressionService;
+import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantCompression;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class CoCompressionServiceTest
+{
+  private CoCompressionService service;
+
+  private static ByteBuffer sample()
+  {
+    final StringBuilder sb = new StringBuilder(4096);
+    for (int index = 0; index < 100; ++index) {
+      sb.append("event:com.io7m.callisto.example.");
+      sb.append(index);
+      sb.append('\n');
+    }
+    return ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Before
+  public void setUp()
+  {
+    this.service =
+      new CoCompressionService(CoCompressionConfiguration.builder().build());
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.service.shutDown();
+  }
+
+  @Test
+  public void testIdentityDeflate()
+  {
+    final ByteBuffer data = sample();
+    final ByteBuffer compressed =
+      this.service.compress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE, data);
+
+    Assert.assertTrue(compressed.remaining() < data.remaining());
+    Assert.assertEquals(
+      data,
+      this.service.decompress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE, compressed));
+  }
+
+  @Test
+  public void testIdentityDictionary()
+  {
+    final ByteBuffer data = sample();
+    final ByteBuffer compressed_plain =
+      this.service.compress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE, data);
+    final ByteBuffer compressed =
+      this.service.compress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE_DICTIONARY, data);
+
+    Assert.assertTrue(compressed.remaining() <= compressed_plain.remaining());
+    Assert.assertEquals(
+      data,
+      this.service.decompress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE_DICTIONARY,
+        compressed));
+  }
+
+  @Test
+  public void testIdentityDirectBuffer()
+  {
+    final ByteBuffer heap = sample();
+    final ByteBuffer data = ByteBuffer.allocateDirect(heap.remaining());
+    data.put(heap.duplicate());
+    data.flip();
+
+    final ByteBuffer compressed =
+      this.service.compress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE, data);
+    Assert.assertEquals(
+      heap,
+      this.service.decompress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE, compressed));
+  }
+
+  @Test(expected = CoCompressionException.class)
+  public void testDictionaryMissing()
+  {
+    final ByteBuffer compressed =
+      this.service.compress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE_DICTIONARY, sample());
+    this.service.decompress(
+      CoStringConstantCompression.COMPRESSION_DEFLATE, compressed);
+  }
+
+  @Test(expected = CoCompressionException.class)
+  public void testTruncated()
+  {
+    final ByteBuffer compressed =
+      this.service.compress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE, sample());
+    compressed.limit(compressed.limit() / 2);
+    this.service.decompress(
+      CoStringConstantCompression.COMPRESSION_DEFLATE, compressed);
+  }
+
+  @Test(expected = CoCompressionException.class)
+  public void testSizeLimit()
+  {
+    final CoCompressionService limited =
+      new CoCompressionService(
+        CoCompressionConfiguration.builder()
+          .setDecompressedSizeLimit(128)
+          .build());
+
+    try {
+      final ByteBuffer compressed =
+        limited.compress(
+          CoStringConstantCompression.COMPRESSION_DEFLATE, sample());
+      limited.decompress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE, compressed);
+    } finally {
+      limited.shutDown();
+    }
+  }
+
+  @Test
+  public void testCodecsRetainedNone()
+  {
+    final CoCompressionService unpooled =
+      new CoCompressionService(
+        CoCompressionConfiguration.builder()
+          .setCodecsRetained(0)
+          .build());
+
+    try {
+      for (int index = 0; index < 4; ++index) {
+        final ByteBuffer data = sample();
+        final ByteBuffer compressed =
+          unpooled.compress(
+            CoStringConstantCompression.COMPRESSION_DEFLATE_DICTIONARY, data);
+        Assert.assertEquals(
+          data,
+          unpooled.decompress(
+            CoStringConstantCompression.COMPRESSION_DEFLATE_DICTIONARY,
+            compressed));
+      }
+    } finally {
+      unpooled.shutDown();
+    }
+  }
+
+  @Test
+  public void testThreadsTerminated()
+    throws Exception
+  {
+    final List<Thread> threads = new ArrayList<>();
+    final List<Throwable> errors = new ArrayList<>();
+    for (int index = 0; index < 16; ++index) {
+      final Thread th = new Thread(() -> {
+        try {
+          final ByteBuffer data = sample();
+          final ByteBuffer compressed =
+            this.service.compress(
+              CoStringConstantCompression.COMPRESSION_DEFLATE, data);
+          Assert.assertEquals(
+            data,
+            this.service.decompress(
+              CoStringConstantCompression.COMPRESSION_DEFLATE, compressed));
+        } catch (final Throwable e) {
+          synchronized (errors) {
+            errors.add(e);
+          }
+        }
+      });
+      threads.add(th);
+      th.start();
+    }
+
+    for (final Thread th : threads) {
+      th.join();
+    }
+    Assert.assertEquals(0L, (long) errors.size());
+  }
+
+  @Test
+  public void testUseAfterShutDown()
+  {
+    this.service.shutDown();
+
+    final ByteBuffer data = sample();
+    final ByteBuffer compressed =
+      this.service.compress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE, data);
+    Assert.assertEquals(
+      data,
+      this.service.decompress(
+        CoStringConstantCompression.COMPRESSION_DEFLATE, compressed));
+  }
+
+  @Test
+  public void testTrain()
+  {
+    final List<byte[]> samples = new ArrayList<>();
+    for (int index = 0; index < 10; ++index) {
+      samples.add(
+        ("event:com.io7m.callisto.example." + index)
+          .getBytes(StandardCharsets.UTF_8));
+    }
+
+    final byte[] dictionary = CoCompressionDictionaries.train(samples, 64);
+    Assert.assertTrue(dictionary.length > 0);
+    Assert.assertTrue(dictionary.length <= 64);
+  }
+}
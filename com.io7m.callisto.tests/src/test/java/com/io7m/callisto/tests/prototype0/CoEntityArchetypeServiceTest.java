@@ -0,0 +1,374 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.entities.CoAssemblyName;
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityArchetype;
+import com.io7m.callisto.prototype0.entities.CoEntityArchetypeService;
+import com.io7m.callisto.prototype0.entities.CoEntityColumn;
+import com.io7m.callisto.prototype0.entities.CoEntityColumnKind;
+import com.io7m.callisto.prototype0.entities.CoEntityColumnarTraitAbstract;
+import com.io7m.callisto.prototype0.entities.CoEntityColumnarTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityDestroyedException;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitOnDestroyException;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventService;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class CoEntityArchetypeServiceTest
+{
+  private CoEventService events;
+  private CoEntityArchetypeService entities;
+
+  @Before
+  public void setUp()
+  {
+    this.events = new CoEventService();
+    this.events.onActivate();
+    this.entities = new CoEntityArchetypeService(this.events);
+    this.entities.onActivate();
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.entities.shutDown();
+    this.events.shutDown();
+  }
+
+  private int visibleEntities()
+  {
+    final AtomicInteger count = new AtomicInteger();
+    this.entities.forEachArchetype(
+      Collections.emptySet(), a -> count.addAndGet(a.size()));
+    return count.get();
+  }
+
+  @Test
+  public void testCreateNotVisibleUntilTraitsCreated()
+  {
+    final PositionProvider positions = new PositionProvider(23);
+    positions.on_create = () ->
+      Assert.assertEquals(0L, (long) this.visibleEntities());
+
+    final CoEntityType e = this.entities.createEntity(new Assembly(positions));
+    Assert.assertEquals(1L, (long) this.visibleEntities());
+    Assert.assertEquals(23L, (long) e.traitGet(Position.class).x());
+
+    this.entities.forEachArchetype(
+      Collections.singleton(Position.class),
+      a -> {
+        Assert.assertEquals(1L, (long) a.size());
+        Assert.assertNotNull(a.trait(Position.class, 0));
+        Assert.assertEquals(23L, (long) a.columnInts(Position.class, 0)[0]);
+      });
+  }
+
+  @Test
+  public void testCreateBatchNotVisibleUntilTraitsCreated()
+  {
+    final PositionProvider positions = new PositionProvider(23);
+    positions.on_create = () ->
+      Assert.assertEquals(0L, (long) this.visibleEntities());
+
+    final List<CoEntityType> es =
+      this.entities.createEntities(new Assembly(positions), 10);
+    Assert.assertEquals(10L, (long) this.visibleEntities());
+    for (final CoEntityType e : es) {
+      Assert.assertEquals(23L, (long) e.traitGet(Position.class).x());
+    }
+  }
+
+  @Test
+  public void testMoveBetweenArchetypes()
+  {
+    final Assembly assembly = new Assembly(new PositionProvider(0));
+    final List<CoEntityType> es = new ArrayList<>();
+    for (int index = 0; index < 3; ++index) {
+      final CoEntityType e = this.entities.createEntity(assembly);
+      e.traitGet(Position.class).setX(index);
+      es.add(e);
+    }
+
+    final CoEntityType e0 = es.get(0);
+    final Tag tag = new Tag(e0);
+    e0.traitSet(Tag.class, tag);
+
+    Assert.assertSame(tag, e0.traitGet(Tag.class));
+    for (int index = 0; index < 3; ++index) {
+      Assert.assertEquals(
+        (long) index, (long) es.get(index).traitGet(Position.class).x());
+    }
+
+    final List<CoEntityArchetype> with_tag = new ArrayList<>();
+    this.entities.forEachArchetype(
+      Collections.singleton(Tag.class), with_tag::add);
+    Assert.assertEquals(1L, (long) with_tag.size());
+    Assert.assertEquals(1L, (long) with_tag.get(0).size());
+    Assert.assertSame(e0, with_tag.get(0).entity(0));
+
+    e0.traitDestroy(Tag.class);
+    Assert.assertEquals(1L, (long) tag.destroyed.get());
+    Assert.assertFalse(e0.trait(Tag.class).isPresent());
+    for (int index = 0; index < 3; ++index) {
+      Assert.assertEquals(
+        (long) index, (long) es.get(index).traitGet(Position.class).x());
+    }
+
+    with_tag.clear();
+    this.entities.forEachArchetype(
+      Collections.singleton(Tag.class), with_tag::add);
+    Assert.assertEquals(0L, (long) with_tag.size());
+  }
+
+  @Test
+  public void testTraitDestroyFails()
+  {
+    final CoEntityType e =
+      this.entities.createEntity(new Assembly(new PositionProvider(0)));
+    final Tag tag = new Tag(e);
+    tag.fail = true;
+    e.traitSet(Tag.class, tag);
+
+    try {
+      e.traitDestroy(Tag.class);
+      Assert.fail();
+    } catch (final CoEntityTraitOnDestroyException ex) {
+      // Expected
+    }
+
+    Assert.assertFalse(e.trait(Tag.class).isPresent());
+    Assert.assertTrue(e.trait(Position.class).isPresent());
+  }
+
+  @Test
+  public void testDestroy()
+  {
+    final Assembly assembly = new Assembly(new PositionProvider(0));
+    final CoEntityType e0 = this.entities.createEntity(assembly);
+    final CoEntityType e1 = this.entities.createEntity(assembly);
+    e1.traitGet(Position.class).setX(17);
+
+    final Position p0 = e0.traitGet(Position.class);
+    e0.destroy();
+    e0.destroy();
+
+    Assert.assertTrue(e0.isDestroyed());
+    Assert.assertFalse(this.entities.isLive(e0.id()));
+    Assert.assertTrue(this.entities.isLive(e1.id()));
+    Assert.assertEquals(1L, (long) this.visibleEntities());
+    Assert.assertEquals(17L, (long) e1.traitGet(Position.class).x());
+
+    try {
+      p0.x();
+      Assert.fail();
+    } catch (final CoEntityDestroyedException ex) {
+      // Expected
+    }
+
+    try {
+      p0.setX(1);
+      Assert.fail();
+    } catch (final CoEntityDestroyedException ex) {
+      // Expected
+    }
+
+    try {
+      e0.traitGet(Position.class);
+      Assert.fail();
+    } catch (final CoEntityDestroyedException ex) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testDestroyBatch()
+  {
+    final Assembly assembly = new Assembly(new PositionProvider(0));
+    final List<CoEntityType> es = this.entities.createEntities(assembly, 8);
+    final CoEntityType kept = this.entities.createEntity(assembly);
+    kept.traitGet(Position.class).setX(99);
+
+    this.entities.destroyEntities(es);
+    Assert.assertEquals(1L, (long) this.visibleEntities());
+    Assert.assertEquals(99L, (long) kept.traitGet(Position.class).x());
+    for (final CoEntityType e : es) {
+      Assert.assertTrue(e.isDestroyed());
+      Assert.assertFalse(this.entities.isLive(e.id()));
+    }
+  }
+
+  private static final class Assembly implements CoAssemblyType
+  {
+    private final Map<Class<?>, CoEntityTraitProviderType<?>> providers;
+
+    Assembly(
+      final CoEntityTraitProviderType<?> provider)
+    {
+      this.providers = LinkedHashMap.of(provider.type(), provider);
+    }
+
+    @Override
+    public CoAssemblyName name()
+    {
+      return CoAssemblyName.of("test");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends CoEntityTraitType>
+    Map<Class<T>, CoEntityTraitProviderType<T>> traitProviders()
+    {
+      return (Map<Class<T>, CoEntityTraitProviderType<T>>) (Object) this.providers;
+    }
+  }
+
+  private static final class PositionProvider
+    implements CoEntityColumnarTraitProviderType<Position>
+  {
+    private final int initial;
+    private Runnable on_create;
+
+    PositionProvider(
+      final int in_initial)
+    {
+      this.initial = in_initial;
+      this.on_create = () -> { };
+    }
+
+    @Override
+    public List<CoEntityColumn> columns()
+    {
+      return Collections.singletonList(
+        CoEntityColumn.of("x", CoEntityColumnKind.COLUMN_INT));
+    }
+
+    @Override
+    public Class<Position> type()
+    {
+      return Position.class;
+    }
+
+    @Override
+    public Position create(
+      final CoEntityType e)
+    {
+      this.on_create.run();
+      final Position p = new Position(e, this);
+      p.setX(this.initial);
+      return p;
+    }
+  }
+
+  private static final class Position extends CoEntityColumnarTraitAbstract
+  {
+    Position(
+      final CoEntityType in_owner,
+      final PositionProvider in_provider)
+    {
+      super(in_owner, in_provider);
+    }
+
+    int x()
+    {
+      return this.getInt(0);
+    }
+
+    void setX(
+      final int x)
+    {
+      this.setInt(0, x);
+    }
+
+    @Override
+    public void onDestroy()
+    {
+
+    }
+  }
+
+  private static final class TagProvider
+    implements CoEntityTraitProviderType<Tag>
+  {
+    TagProvider()
+    {
+
+    }
+
+    @Override
+    public Class<Tag> type()
+    {
+      return Tag.class;
+    }
+
+    @Override
+    public Tag create(
+      final CoEntityType e)
+    {
+      return new Tag(e);
+    }
+  }
+
+  private static final class Tag implements CoEntityTraitType
+  {
+    private final CoEntityType owner;
+    private final AtomicInteger destroyed;
+    private boolean fail;
+
+    Tag(
+      final CoEntityType in_owner)
+    {
+      this.owner = in_owner;
+      this.destroyed = new AtomicInteger();
+    }
+
+    @Override
+    public CoEntityType owner()
+    {
+      return this.owner;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends CoEntityTraitType> CoEntityTraitProviderType<T> provider()
+    {
+      return (CoEntityTraitProviderType<T>) (Object) new TagProvider();
+    }
+
+    @Override
+    public void onDestroy()
+    {
+      this.destroyed.incrementAndGet();
+      if (this.fail) {
+        throw new IllegalStateException("Failed");
+      }
+    }
+  }
+}
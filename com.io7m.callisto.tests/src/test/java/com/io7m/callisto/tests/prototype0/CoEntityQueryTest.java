@@ -0,0 +1,409 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.entities.CoAssemblyName;
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityArchetypeService;
+import com.io7m.callisto.prototype0.entities.CoEntityQuery;
+import com.io7m.callisto.prototype0.entities.CoEntityQueryView;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitDuplicateException;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventService;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public final class CoEntityQueryTest
+{
+  private CoEventService events;
+  private CoEntityArchetypeService entities;
+
+  @Before
+  public void setUp()
+  {
+    this.events = new CoEventService();
+    this.events.onActivate();
+    this.entities = new CoEntityArchetypeService(this.events);
+    this.entities.onActivate();
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.entities.shutDown();
+    this.events.shutDown();
+  }
+
+  private Set<CoEntityType> query(
+    final CoEntityQuery query)
+  {
+    final Set<CoEntityType> results = new HashSet<>();
+    this.entities.query(query, results::add);
+    return results;
+  }
+
+  private static Set<CoEntityType> view(
+    final CoEntityQueryView view)
+  {
+    final Set<CoEntityType> results = new HashSet<>();
+    view.forEach(results::add);
+    Assert.assertEquals((long) results.size(), (long) view.size());
+    return results;
+  }
+
+  @Test
+  public void testQueryRequiredExcluded()
+  {
+    final CoEntityType e_a = this.entities.createEntity(new Assembly());
+    final CoEntityType e_ab = this.entities.createEntity(new Assembly());
+    final CoEntityType e_b = this.entities.createEntity(new Assembly());
+
+    e_a.traitSet(A.class, new A(e_a));
+    e_ab.traitSet(A.class, new A(e_ab));
+    e_ab.traitSet(B.class, new B(e_ab));
+    e_b.traitSet(B.class, new B(e_b));
+
+    final Set<CoEntityType> with_a =
+      this.query(CoEntityQuery.builder().addRequired(A.class).build());
+    Assert.assertEquals(2L, (long) with_a.size());
+    Assert.assertTrue(with_a.contains(e_a));
+    Assert.assertTrue(with_a.contains(e_ab));
+
+    final Set<CoEntityType> a_not_b =
+      this.query(CoEntityQuery.builder()
+                   .addRequired(A.class)
+                   .addExcluded(B.class)
+                   .build());
+    Assert.assertEquals(1L, (long) a_not_b.size());
+    Assert.assertTrue(a_not_b.contains(e_a));
+
+    final Set<CoEntityType> a_and_b =
+      this.query(CoEntityQuery.builder()
+                   .addRequired(A.class)
+                   .addRequired(B.class)
+                   .build());
+    Assert.assertEquals(1L, (long) a_and_b.size());
+    Assert.assertTrue(a_and_b.contains(e_ab));
+  }
+
+  @Test
+  public void testQueryUnknownTrait()
+  {
+    final CoEntityType e = this.entities.createEntity(new Assembly());
+    e.traitSet(A.class, new A(e));
+
+    Assert.assertTrue(
+      this.query(CoEntityQuery.builder().addRequired(B.class).build())
+        .isEmpty());
+    Assert.assertEquals(
+      1L,
+      (long) this.query(CoEntityQuery.builder()
+                          .addRequired(A.class)
+                          .addExcluded(B.class)
+                          .build()).size());
+  }
+
+  @Test
+  public void testViewUpdated()
+  {
+    final CoEntityQueryView view =
+      this.entities.queryView(
+        CoEntityQuery.builder()
+          .addRequired(A.class)
+          .addExcluded(B.class)
+          .build());
+
+    final CoEntityType e0 = this.entities.createEntity(new Assembly());
+    final CoEntityType e1 = this.entities.createEntity(new Assembly());
+    Assert.assertTrue(view(view).isEmpty());
+
+    e0.traitSet(A.class, new A(e0));
+    e1.traitSet(A.class, new A(e1));
+    Assert.assertEquals(2L, (long) view(view).size());
+
+    e1.traitSet(B.class, new B(e1));
+    Assert.assertEquals(1L, (long) view(view).size());
+    Assert.assertTrue(view(view).contains(e0));
+
+    e1.traitDestroy(B.class);
+    Assert.assertEquals(2L, (long) view(view).size());
+
+    e0.destroy();
+    Assert.assertEquals(1L, (long) view(view).size());
+    Assert.assertTrue(view(view).contains(e1));
+
+    view.dispose();
+    Assert.assertTrue(view.isDisposed());
+  }
+
+  @Test
+  public void testViewSlotReused()
+  {
+    final CoEntityQueryView view =
+      this.entities.queryView(
+        CoEntityQuery.builder().addRequired(A.class).build());
+
+    final CoEntityType e0 = this.entities.createEntity(new Assembly());
+    e0.traitSet(A.class, new A(e0));
+    e0.destroy();
+
+    final CoEntityType e1 = this.entities.createEntity(new Assembly());
+    Assert.assertEquals(
+      (long) e0.id().index(), (long) e1.id().index());
+    Assert.assertTrue(view(view).isEmpty());
+    Assert.assertTrue(
+      this.query(CoEntityQuery.builder().addRequired(A.class).build())
+        .isEmpty());
+  }
+
+  @Test
+  public void testViewConcurrentChanges()
+    throws Exception
+  {
+    final CoEntityQueryView view =
+      this.entities.queryView(
+        CoEntityQuery.builder().addRequired(A.class).build());
+
+    final List<CoEntityType> es = new ArrayList<>();
+    for (int index = 0; index < 16; ++index) {
+      es.add(this.entities.createEntity(new Assembly()));
+    }
+
+    final ExecutorService exec = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; ++thread) {
+        futures.add(exec.submit(() -> {
+          for (int round = 0; round < 1000; ++round) {
+            for (final CoEntityType e : es) {
+              if (e.trait(A.class).isPresent()) {
+                e.traitDestroy(A.class);
+              } else {
+                try {
+                  e.traitSet(A.class, new A(e));
+                } catch (final CoEntityTraitDuplicateException ex) {
+                  // Another thread added the trait first
+                }
+              }
+            }
+          }
+          return null;
+        }));
+      }
+      for (final Future<?> f : futures) {
+        f.get(30L, TimeUnit.SECONDS);
+      }
+    } finally {
+      exec.shutdown();
+      exec.awaitTermination(10L, TimeUnit.SECONDS);
+    }
+
+    final Set<CoEntityType> expected = new HashSet<>();
+    for (final CoEntityType e : es) {
+      if (e.trait(A.class).isPresent()) {
+        expected.add(e);
+      }
+    }
+
+    Assert.assertEquals(expected, view(view));
+    Assert.assertEquals(
+      expected,
+      this.query(CoEntityQuery.builder().addRequired(A.class).build()));
+  }
+
+  @Test(timeout = 10_000L)
+  public void testQueryReceiverModifies()
+  {
+    final List<CoEntityType> es = new ArrayList<>();
+    for (int index = 0; index < 4; ++index) {
+      final CoEntityType e = this.entities.createEntity(new Assembly());
+      e.traitSet(A.class, new A(e));
+      es.add(e);
+    }
+
+    final List<CoEntityType> visited = new ArrayList<>();
+    this.entities.query(
+      CoEntityQuery.builder().addRequired(A.class).build(),
+      e -> {
+        visited.add(e);
+        e.traitDestroy(A.class);
+        e.traitSet(B.class, new B(e));
+        this.entities.createEntity(new Assembly());
+      });
+
+    Assert.assertEquals(new HashSet<>(es), new HashSet<>(visited));
+    Assert.assertTrue(
+      this.query(CoEntityQuery.builder().addRequired(A.class).build())
+        .isEmpty());
+    Assert.assertEquals(
+      new HashSet<>(es),
+      this.query(CoEntityQuery.builder().addRequired(B.class).build()));
+  }
+
+  @Test(timeout = 10_000L)
+  public void testViewReceiverModifies()
+  {
+    final CoEntityQueryView view =
+      this.entities.queryView(
+        CoEntityQuery.builder().addRequired(A.class).build());
+
+    final List<CoEntityType> es = new ArrayList<>();
+    for (int index = 0; index < 4; ++index) {
+      final CoEntityType e = this.entities.createEntity(new Assembly());
+      e.traitSet(A.class, new A(e));
+      es.add(e);
+    }
+
+    final List<CoEntityType> visited = new ArrayList<>();
+    view.forEach(e -> {
+      visited.add(e);
+      e.destroy();
+    });
+
+    Assert.assertEquals(new HashSet<>(es), new HashSet<>(visited));
+    Assert.assertEquals(0L, (long) view.size());
+
+    final CoEntityType e = this.entities.createEntity(new Assembly());
+    e.traitSet(A.class, new A(e));
+
+    final List<Integer> indices = new ArrayList<>();
+    view.forEachIndex(index -> {
+      indices.add(Integer.valueOf(index));
+      e.traitDestroy(A.class);
+    });
+
+    Assert.assertEquals(1L, (long) indices.size());
+    Assert.assertEquals(
+      (long) e.id().index(), (long) indices.get(0).intValue());
+    Assert.assertEquals(0L, (long) view.size());
+  }
+
+  @Test
+  public void testViewCopyTo()
+  {
+    final CoEntityQueryView view =
+      this.entities.queryView(
+        CoEntityQuery.builder().addRequired(A.class).build());
+
+    final Set<CoEntityType> es = new HashSet<>();
+    for (int index = 0; index < 4; ++index) {
+      final CoEntityType e = this.entities.createEntity(new Assembly());
+      e.traitSet(A.class, new A(e));
+      es.add(e);
+    }
+
+    final CoEntityType[] small = new CoEntityType[2];
+    Assert.assertEquals(4L, (long) view.copyTo(small));
+    Assert.assertNull(small[0]);
+
+    final CoEntityType[] large = new CoEntityType[8];
+    Assert.assertEquals(4L, (long) view.copyTo(large));
+    final Set<CoEntityType> copied = new HashSet<>();
+    for (int index = 0; index < 4; ++index) {
+      copied.add(large[index]);
+    }
+    Assert.assertEquals(es, copied);
+    Assert.assertNull(large[4]);
+  }
+
+  private static final class Assembly implements CoAssemblyType
+  {
+    private final Map<Class<?>, CoEntityTraitProviderType<?>> providers;
+
+    Assembly()
+    {
+      this.providers = LinkedHashMap.empty();
+    }
+
+    @Override
+    public CoAssemblyName name()
+    {
+      return CoAssemblyName.of("test");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends CoEntityTraitType>
+    Map<Class<T>, CoEntityTraitProviderType<T>> traitProviders()
+    {
+      return (Map<Class<T>, CoEntityTraitProviderType<T>>) (Object) this.providers;
+    }
+  }
+
+  private abstract static class Trait implements CoEntityTraitType
+  {
+    private final CoEntityType owner;
+
+    Trait(
+      final CoEntityType in_owner)
+    {
+      this.owner = in_owner;
+    }
+
+    @Override
+    public final CoEntityType owner()
+    {
+      return this.owner;
+    }
+
+    @Override
+    public final <T extends CoEntityTraitType>
+    CoEntityTraitProviderType<T> provider()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final void onDestroy()
+    {
+
+    }
+  }
+
+  private static final class A extends Trait
+  {
+    A(
+      final CoEntityType in_owner)
+    {
+      super(in_owner);
+    }
+  }
+
+  private static final class B extends Trait
+  {
+    B(
+      final CoEntityType in_owner)
+    {
+      super(in_owner);
+    }
+  }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.entities.CoAssemblyName;
+import com.io7m.callisto.prototype0.entities.CoAssemblyPooling;
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityDestroyedException;
+import com.io7m.callisto.prototype0.entities.CoEntityService;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitOnCreateException;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitRecyclableType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventService;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public final class CoEntityServicePoolingTest
+{
+  private CoEventService events;
+  private CoEntityService entities;
+
+  @Before
+  public void setUp()
+  {
+    this.events = new CoEventService();
+    this.events.onActivate();
+    this.entities = new CoEntityService();
+    this.entities.onEventServiceRegister(this.events);
+    this.entities.onActivate();
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.entities.shutDown();
+    this.events.shutDown();
+  }
+
+  @Test
+  public void testTraitsReusedByNewEntity()
+  {
+    final CounterProvider provider = new CounterProvider();
+    final Assembly assembly =
+      new Assembly(provider, CoAssemblyPooling.of(16, 4));
+
+    final CoEntityType e0 = this.entities.createEntity(assembly);
+    final Counter c0 = e0.traitGet(Counter.class);
+    c0.value = 23;
+    e0.destroy();
+
+    Assert.assertEquals(1L, (long) c0.recycled);
+    Assert.assertEquals(0L, (long) c0.destroyed);
+
+    final CoEntityType e1 = this.entities.createEntity(assembly);
+    final Counter c1 = e1.traitGet(Counter.class);
+
+    Assert.assertSame(c0, c1);
+    Assert.assertSame(e1, c1.owner());
+    Assert.assertEquals(0L, (long) c1.value);
+    Assert.assertEquals(1L, (long) provider.created);
+
+    Assert.assertNotSame(e0, e1);
+    Assert.assertNotEquals(e0, e1);
+    Assert.assertNotEquals(e0.id(), e1.id());
+    Assert.assertTrue(e0.isDestroyed());
+    Assert.assertFalse(e1.isDestroyed());
+    Assert.assertFalse(this.entities.isLive(e0.id()));
+    Assert.assertTrue(this.entities.isLive(e1.id()));
+  }
+
+  @Test(expected = CoEntityDestroyedException.class)
+  public void testStaleReferenceStaysDestroyed()
+  {
+    final Assembly assembly =
+      new Assembly(new CounterProvider(), CoAssemblyPooling.of(16, 4));
+
+    final CoEntityType e0 = this.entities.createEntity(assembly);
+    e0.destroy();
+    this.entities.createEntity(assembly);
+    e0.traitGet(Counter.class);
+  }
+
+  @Test
+  public void testTraitsReusedBatch()
+  {
+    final CounterProvider provider = new CounterProvider();
+    final Assembly assembly =
+      new Assembly(provider, CoAssemblyPooling.of(16, 4));
+
+    final List<CoEntityType> es = this.entities.createEntities(assembly, 4);
+    this.entities.destroyEntities(es);
+    Assert.assertEquals(4L, (long) provider.created);
+
+    final List<CoEntityType> reused = new ArrayList<>();
+    for (int index = 0; index < 4; ++index) {
+      reused.add(this.entities.createEntity(assembly));
+    }
+
+    Assert.assertEquals(4L, (long) provider.created);
+    for (final CoEntityType e : reused) {
+      Assert.assertFalse(es.contains(e));
+      Assert.assertSame(e, e.traitGet(Counter.class).owner());
+    }
+    for (final CoEntityType e : es) {
+      Assert.assertTrue(e.isDestroyed());
+    }
+  }
+
+  @Test
+  public void testNotPooled()
+  {
+    final CounterProvider provider = new CounterProvider();
+    final Assembly assembly = new Assembly(provider, null);
+
+    final CoEntityType e0 = this.entities.createEntity(assembly);
+    final Counter c0 = e0.traitGet(Counter.class);
+    e0.destroy();
+
+    Assert.assertEquals(0L, (long) c0.recycled);
+    Assert.assertEquals(1L, (long) c0.destroyed);
+
+    final CoEntityType e1 = this.entities.createEntity(assembly);
+    Assert.assertNotSame(c0, e1.traitGet(Counter.class));
+    Assert.assertEquals(2L, (long) provider.created);
+  }
+
+  @Test
+  public void testRecycleRefused()
+  {
+    final CounterProvider provider = new CounterProvider();
+    provider.recyclable = false;
+    final Assembly assembly =
+      new Assembly(provider, CoAssemblyPooling.of(16, 4));
+
+    final CoEntityType e0 = this.entities.createEntity(assembly);
+    final Counter c0 = e0.traitGet(Counter.class);
+    e0.destroy();
+
+    Assert.assertEquals(1L, (long) c0.recycled);
+    Assert.assertEquals(1L, (long) c0.destroyed);
+
+    final CoEntityType e1 = this.entities.createEntity(assembly);
+    Assert.assertNotSame(c0, e1.traitGet(Counter.class));
+    Assert.assertEquals(2L, (long) provider.created);
+  }
+
+  @Test
+  public void testLayoutChangedNotPooled()
+  {
+    final CounterProvider provider = new CounterProvider();
+    final Assembly assembly =
+      new Assembly(provider, CoAssemblyPooling.of(16, 4));
+
+    final CoEntityType e0 = this.entities.createEntity(assembly);
+    final Counter c0 = e0.traitGet(Counter.class);
+    final Extra extra = new Extra(e0);
+    e0.traitSet(Extra.class, extra);
+    e0.destroy();
+
+    Assert.assertEquals(1L, (long) c0.destroyed);
+    Assert.assertEquals(1L, (long) extra.destroyed);
+
+    final CoEntityType e1 = this.entities.createEntity(assembly);
+    Assert.assertNotSame(c0, e1.traitGet(Counter.class));
+    Assert.assertFalse(e1.trait(Extra.class).isPresent());
+  }
+
+  @Test
+  public void testPoolFull()
+  {
+    final CounterProvider provider = new CounterProvider();
+    final Assembly assembly =
+      new Assembly(provider, CoAssemblyPooling.of(0, 0));
+
+    final CoEntityType e0 = this.entities.createEntity(assembly);
+    final Counter c0 = e0.traitGet(Counter.class);
+    e0.destroy();
+
+    Assert.assertEquals(1L, (long) c0.recycled);
+    Assert.assertEquals(1L, (long) c0.destroyed);
+
+    this.entities.createEntity(assembly);
+    Assert.assertEquals(2L, (long) provider.created);
+  }
+
+  @Test
+  public void testReuseFails()
+  {
+    final CounterProvider provider = new CounterProvider();
+    final Assembly assembly =
+      new Assembly(provider, CoAssemblyPooling.of(16, 4));
+
+    final CoEntityType e0 = this.entities.createEntity(assembly);
+    final Counter c0 = e0.traitGet(Counter.class);
+    e0.destroy();
+
+    c0.fail_reuse = true;
+    try {
+      this.entities.createEntity(assembly);
+      Assert.fail();
+    } catch (final CoEntityTraitOnCreateException e) {
+      // Expected
+    }
+
+    Assert.assertEquals(1L, (long) c0.destroyed);
+    Assert.assertSame(e0, c0.owner());
+
+    final CoEntityType e1 = this.entities.createEntity(assembly);
+    Assert.assertNotSame(c0, e1.traitGet(Counter.class));
+    Assert.assertEquals(2L, (long) provider.created);
+  }
+
+  @Test
+  public void testNotRecyclableNotPooled()
+  {
+    final PlainProvider provider = new PlainProvider();
+    final Assembly assembly =
+      new Assembly(provider, CoAssemblyPooling.of(16, 4));
+
+    final CoEntityType e0 = this.entities.createEntity(assembly);
+    final Plain p0 = e0.traitGet(Plain.class);
+    e0.destroy();
+
+    Assert.assertEquals(1L, (long) p0.destroyed);
+
+    final CoEntityType e1 = this.entities.createEntity(assembly);
+    Assert.assertNotSame(p0, e1.traitGet(Plain.class));
+    Assert.assertEquals(2L, (long) provider.created);
+  }
+
+  private static final class Assembly implements CoAssemblyType
+  {
+    private final Map<Class<?>, CoEntityTraitProviderType<?>> providers;
+    private final Optional<CoAssemblyPooling> pooling;
+
+    Assembly(
+      final CoEntityTraitProviderType<?> provider,
+      final CoAssemblyPooling in_pooling)
+    {
+      this.providers = LinkedHashMap.of(provider.type(), provider);
+      this.pooling = Optional.ofNullable(in_pooling);
+    }
+
+    @Override
+    public CoAssemblyName name()
+    {
+      return CoAssemblyName.of("test");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends CoEntityTraitType>
+    Map<Class<T>, CoEntityTraitProviderType<T>> traitProviders()
+    {
+      return (Map<Class<T>, CoEntityTraitProviderType<T>>) (Object) this.providers;
+    }
+
+    @Override
+    public Optional<CoAssemblyPooling> pooling()
+    {
+      return this.pooling;
+    }
+  }
+
+  private static final class CounterProvider
+    implements CoEntityTraitProviderType<Counter>
+  {
+    private int created;
+    private boolean recyclable;
+
+    CounterProvider()
+    {
+      this.recyclable = true;
+    }
+
+    @Override
+    public Class<Counter> type()
+    {
+      return Counter.class;
+    }
+
+    @Override
+    public Counter create(
+      final CoEntityType e)
+    {
+      ++this.created;
+      return new Counter(e, this);
+    }
+  }
+
+  private static final class Counter implements CoEntityTraitRecyclableType
+  {
+    private final CounterProvider provider;
+    private CoEntityType owner;
+    private int value;
+    private int recycled;
+    private int destroyed;
+    private boolean fail_reuse;
+
+    Counter(
+      final CoEntityType in_owner,
+      final CounterProvider in_provider)
+    {
+      this.owner = in_owner;
+      this.provider = in_provider;
+    }
+
+    @Override
+    public CoEntityType owner()
+    {
+      return this.owner;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends CoEntityTraitType> CoEntityTraitProviderType<T> provider()
+    {
+      return (CoEntityTraitProviderType<T>) (Object) this.provider;
+    }
+
+    @Override
+    public void onDestroy()
+    {
+      ++this.destroyed;
+    }
+
+    @Override
+    public boolean onRecycle()
+    {
+      ++this.recycled;
+      this.value = 0;
+      return this.provider.recyclable;
+    }
+
+    @Override
+    public void onReuse(
+      final CoEntityType in_owner)
+    {
+      if (this.fail_reuse) {
+        throw new IllegalStateException("Failed");
+      }
+      this.owner = in_owner;
+    }
+  }
+
+  private static final class PlainProvider
+    implements CoEntityTraitProviderType<Plain>
+  {
+    private int created;
+
+    PlainProvider()
+    {
+
+    }
+
+    @Override
+    public Class<Plain> type()
+    {
+      return Plain.class;
+    }
+
+    @Override
+    public Plain create(
+      final CoEntityType e)
+    {
+      ++this.created;
+      return new Plain(e);
+    }
+  }
+
+  private static final class Plain implements CoEntityTraitType
+  {
+    private final CoEntityType owner;
+    private int destroyed;
+
+    Plain(
+      final CoEntityType in_owner)
+    {
+      this.owner = in_owner;
+    }
+
+    @Override
+    public CoEntityType owner()
+    {
+      return this.owner;
+    }
+
+    @Override
+    public <T extends CoEntityTraitType> CoEntityTraitProviderType<T> provider()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void onDestroy()
+    {
+      ++this.destroyed;
+    }
+  }
+
+  private static final class Extra implements CoEntityTraitType
+  {
+    private final CoEntityType owner;
+    private int destroyed;
+
+    Extra(
+      final CoEntityType in_owner)
+    {
+      this.owner = in_owner;
+    }
+
+    @Override
+    public CoEntityType owner()
+    {
+      return this.owner;
+    }
+
+    @Override
+    public <T extends CoEntityTraitType> CoEntityTraitProviderType<T> provider()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void onDestroy()
+    {
+      ++this.destroyed;
+    }
+  }
+}
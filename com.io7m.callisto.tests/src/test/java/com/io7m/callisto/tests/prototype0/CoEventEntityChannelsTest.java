@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.entities.CoAssemblyName;
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityService;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventEntityChannels;
+import com.io7m.callisto.prototype0.events.CoEventService;
+import com.io7m.callisto.prototype0.events.CoEventType;
+import io.reactivex.disposables.Disposable;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class CoEventEntityChannelsTest
+{
+  private CoEventService events;
+  private CoEntityService entities;
+
+  @Before
+  public void setUp()
+  {
+    this.events = new CoEventService();
+    this.events.onActivate();
+    this.entities = new CoEntityService();
+    this.entities.onEventServiceRegister(this.events);
+    this.entities.onActivate();
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.entities.shutDown();
+    this.events.shutDown();
+  }
+
+  @Test
+  public void testChannelsCreatedLazily()
+  {
+    final CoEventEntityChannels channels = new CoEventEntityChannels();
+    Assert.assertEquals(0L, (long) channels.size());
+    Assert.assertFalse(channels.post(23, new Event(0)));
+
+    final List<CoEventType> received = new ArrayList<>();
+    final Disposable d0 = channels.events(23).subscribe(received::add);
+    final Disposable d1 = channels.events(23).subscribe(received::add);
+    Assert.assertEquals(1L, (long) channels.size());
+
+    Assert.assertTrue(channels.post(23, new Event(0)));
+    Assert.assertEquals(2L, (long) received.size());
+
+    d0.dispose();
+    Assert.assertEquals(1L, (long) channels.size());
+    d1.dispose();
+    Assert.assertEquals(0L, (long) channels.size());
+    Assert.assertFalse(channels.post(23, new Event(0)));
+  }
+
+  @Test
+  public void testCloseWithoutChannel()
+  {
+    final CoEventEntityChannels channels = new CoEventEntityChannels();
+    channels.close(23);
+    Assert.assertEquals(0L, (long) channels.size());
+  }
+
+  @Test
+  public void testCreateDoesNotOpenChannel()
+  {
+    final CoEntityType e = this.entities.createEntity(new Assembly());
+    final List<CoEntityType> es =
+      this.entities.createEntities(new Assembly(), 100);
+
+    Assert.assertFalse(this.events.postToEntity(e.id(), new Event(0)));
+    for (final CoEntityType x : es) {
+      Assert.assertFalse(this.events.postToEntity(x.id(), new Event(0)));
+    }
+  }
+
+  @Test
+  public void testRoutingPerEntity()
+  {
+    final CoEntityType e0 = this.entities.createEntity(new Assembly());
+    final CoEntityType e1 = this.entities.createEntity(new Assembly());
+
+    final List<CoEventType> received0 = new ArrayList<>();
+    final List<CoEventType> received1 = new ArrayList<>();
+    final List<CoEventType> received_global = new ArrayList<>();
+
+    final Disposable d0 =
+      this.events.eventsForEntity(e0.id()).subscribe(received0::add);
+    final Disposable d1 =
+      this.events.eventsForEntity(e1.id()).subscribe(received1::add);
+    final Disposable dg =
+      this.events.eventsOfType(Event.class).subscribe(received_global::add);
+
+    try {
+      Assert.assertTrue(this.events.postToEntity(e0.id(), new Event(0)));
+      Assert.assertTrue(this.events.postToEntity(e1.id(), new Event(1)));
+      Assert.assertTrue(this.events.postToEntity(e0.id(), new Event(2)));
+
+      Assert.assertEquals(2L, (long) received0.size());
+      Assert.assertEquals(0L, (long) ((Event) received0.get(0)).value);
+      Assert.assertEquals(2L, (long) ((Event) received0.get(1)).value);
+      Assert.assertEquals(1L, (long) received1.size());
+      Assert.assertEquals(1L, (long) ((Event) received1.get(0)).value);
+      Assert.assertEquals(0L, (long) received_global.size());
+    } finally {
+      d0.dispose();
+      d1.dispose();
+      dg.dispose();
+    }
+  }
+
+  @Test
+  public void testDestroyCompletes()
+  {
+    final CoEntityType e0 = this.entities.createEntity(new Assembly());
+    final CoEntityType e1 = this.entities.createEntity(new Assembly());
+
+    final AtomicBoolean completed0 = new AtomicBoolean(false);
+    final AtomicBoolean completed1 = new AtomicBoolean(false);
+    final Disposable d0 = this.events.eventsForEntity(e0.id())
+      .subscribe(x -> { }, x -> { }, () -> completed0.set(true));
+    final Disposable d1 = this.events.eventsForEntity(e1.id())
+      .subscribe(x -> { }, x -> { }, () -> completed1.set(true));
+
+    try {
+      e0.destroy();
+      Assert.assertTrue(completed0.get());
+      Assert.assertFalse(completed1.get());
+      Assert.assertFalse(this.events.postToEntity(e0.id(), new Event(0)));
+      Assert.assertTrue(this.events.postToEntity(e1.id(), new Event(0)));
+    } finally {
+      d0.dispose();
+      d1.dispose();
+    }
+  }
+
+  @Test
+  public void testDestroyBatchCompletes()
+  {
+    final List<CoEntityType> es =
+      this.entities.createEntities(new Assembly(), 4);
+
+    final List<Disposable> subscriptions = new ArrayList<>();
+    final AtomicBoolean[] completed = new AtomicBoolean[es.size()];
+    for (int index = 0; index < es.size(); ++index) {
+      final AtomicBoolean c = new AtomicBoolean(false);
+      completed[index] = c;
+      subscriptions.add(this.events.eventsForEntity(es.get(index).id())
+        .subscribe(x -> { }, x -> { }, () -> c.set(true)));
+    }
+
+    try {
+      this.entities.destroyEntities(es);
+      for (int index = 0; index < es.size(); ++index) {
+        Assert.assertTrue(completed[index].get());
+      }
+    } finally {
+      subscriptions.forEach(Disposable::dispose);
+    }
+  }
+
+  @Test
+  public void testDeliveryAfterDestroy()
+  {
+    final CoEntityType e = this.entities.createEntity(new Assembly());
+
+    final List<CoEventType> received_before = new ArrayList<>();
+    final Disposable d0 =
+      this.events.eventsForEntity(e.id()).subscribe(received_before::add);
+    e.destroy();
+
+    final List<CoEventType> received_after = new ArrayList<>();
+    final Disposable d1 =
+      this.events.eventsForEntity(e.id()).subscribe(received_after::add);
+
+    try {
+      this.events.postToEntity(e.id(), new Event(0));
+      Assert.assertEquals(0L, (long) received_before.size());
+      Assert.assertEquals(1L, (long) received_after.size());
+    } finally {
+      d0.dispose();
+      d1.dispose();
+    }
+
+    Assert.assertFalse(this.events.postToEntity(e.id(), new Event(0)));
+  }
+
+  private static final class Event implements CoEventType
+  {
+    private final int value;
+
+    Event(
+      final int in_value)
+    {
+      this.value = in_value;
+    }
+  }
+
+  private static final class Assembly implements CoAssemblyType
+  {
+    Assembly()
+    {
+
+    }
+
+    @Override
+    public CoAssemblyName name()
+    {
+      return CoAssemblyName.of("test");
+    }
+
+    @Override
+    public <T extends CoEntityTraitType>
+    Map<Class<T>, CoEntityTraitProviderType<T>> traitProviders()
+    {
+      return LinkedHashMap.empty();
+    }
+  }
+}
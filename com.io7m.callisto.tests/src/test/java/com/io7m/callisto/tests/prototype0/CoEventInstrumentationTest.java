@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.codahale.metrics.MetricRegistry;
+import com.io7m.callisto.prototype0.events.CoEventDeliveryPolicy;
+import com.io7m.callisto.prototype0.events.CoEventInstrumentation;
+import com.io7m.callisto.prototype0.events.CoEventService;
+import com.io7m.callisto.prototype0.events.CoEventType;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public final class CoEventInstrumentationTest
+{
+  private MetricRegistry metrics;
+  private CoEventService events;
+
+  @Before
+  public void setUp()
+  {
+    this.metrics = new MetricRegistry();
+    this.events = new CoEventService(
+      CoEventInstrumentation.create(this.metrics, "events"));
+    this.events.onActivate();
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.events.shutDown();
+  }
+
+  @Test
+  public void testSubscribeBounded()
+    throws Exception
+  {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Disposable d = this.events.subscribeBounded(
+      "x",
+      Event.class,
+      CoEventDeliveryPolicy.dropOldest(4),
+      Schedulers.single(),
+      e -> latch.countDown());
+
+    try {
+      this.events.post(new Event());
+      Assert.assertTrue(latch.await(10L, TimeUnit.SECONDS));
+
+      Assert.assertTrue(this.metrics.getGauges().containsKey(
+        "events.subscribers.x.Event.queue_depth_bounded"));
+      Assert.assertTrue(this.metrics.getTimers().containsKey(
+        "events.subscribers.x.Event.handler_time"));
+      Assert.assertFalse(this.metrics.getCounters().containsKey(
+        "events.subscribers.x.Event.queue_depth"));
+    } finally {
+      d.dispose();
+    }
+  }
+
+  @Test
+  public void testSubscribeBoundedAndUnbounded()
+    throws Exception
+  {
+    final CountDownLatch latch = new CountDownLatch(2);
+    final Disposable d0 = this.events.subscribeBounded(
+      "x",
+      Event.class,
+      CoEventDeliveryPolicy.block(4),
+      Schedulers.single(),
+      e -> latch.countDown());
+    final Disposable d1 = this.events.subscribe(
+      "x",
+      Event.class,
+      Schedulers.single(),
+      e -> latch.countDown());
+
+    try {
+      this.events.post(new Event());
+      Assert.assertTrue(latch.await(10L, TimeUnit.SECONDS));
+
+      Assert.assertTrue(this.metrics.getGauges().containsKey(
+        "events.subscribers.x.Event.queue_depth_bounded"));
+      Assert.assertTrue(this.metrics.getCounters().containsKey(
+        "events.subscribers.x.Event.queue_depth"));
+    } finally {
+      d0.dispose();
+      d1.dispose();
+    }
+  }
+
+  private static final class Event implements CoEventType
+  {
+    Event()
+    {
+
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.events.CoEventRing;
+import com.io7m.callisto.prototype0.events.CoEventRingConsumer;
+import com.io7m.callisto.prototype0.events.CoEventRingTranslatorType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class CoEventRingTest
+{
+  private static final CoEventRingTranslatorType<long[], Long, Void> SET =
+    (slot, value, unused) -> slot[0] = value.longValue();
+
+  private ExecutorService exec;
+
+  @Before
+  public void setUp()
+  {
+    this.exec = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown()
+    throws Exception
+  {
+    this.exec.shutdown();
+    this.exec.awaitTermination(10L, TimeUnit.SECONDS);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testCapacityNotPowerOfTwo()
+  {
+    CoEventRing.create(3, () -> new long[1]);
+  }
+
+  @Test
+  public void testNoConsumers()
+  {
+    final CoEventRing<long[]> ring = CoEventRing.create(4, () -> new long[1]);
+    Assert.assertFalse(ring.hasConsumers());
+
+    for (long index = 0L; index < 100L; ++index) {
+      ring.publish(SET, Long.valueOf(index), null);
+    }
+  }
+
+  @Test
+  public void testDrainDirect()
+  {
+    final CoEventRing<long[]> ring = CoEventRing.create(8, () -> new long[1]);
+    final List<Long> received = new ArrayList<>();
+    final List<Boolean> ends = new ArrayList<>();
+
+    final CoEventRingConsumer<long[]> c =
+      ring.consumer(r -> { }, (slot, seq, end) -> {
+        received.add(Long.valueOf(slot[0]));
+        ends.add(Boolean.valueOf(end));
+      });
+
+    Assert.assertTrue(ring.hasConsumers());
+    ring.publish(SET, Long.valueOf(10L), null);
+    ring.publish(SET, Long.valueOf(20L), null);
+    ring.publish(SET, Long.valueOf(30L), null);
+
+    Assert.assertEquals(3L, (long) c.drain());
+    Assert.assertEquals(0L, (long) c.drain());
+    Assert.assertEquals(2L, c.sequence());
+    Assert.assertEquals(3L, (long) received.size());
+    Assert.assertEquals(Long.valueOf(10L), received.get(0));
+    Assert.assertEquals(Long.valueOf(30L), received.get(2));
+    Assert.assertEquals(Boolean.FALSE, ends.get(0));
+    Assert.assertEquals(Boolean.TRUE, ends.get(2));
+
+    c.dispose();
+    Assert.assertTrue(c.isDisposed());
+    Assert.assertFalse(ring.hasConsumers());
+  }
+
+  @Test
+  public void testBatchedDeliveryManyProducers()
+    throws Exception
+  {
+    final int producers = 4;
+    final int per_producer = 20000;
+    final int total = producers * per_producer;
+
+    final CoEventRing<long[]> ring = CoEventRing.create(64, () -> new long[1]);
+    final CountDownLatch done = new CountDownLatch(total);
+    final AtomicInteger batches = new AtomicInteger();
+    final long[] last = new long[producers];
+    final AtomicInteger out_of_order = new AtomicInteger();
+
+    for (int p = 0; p < producers; ++p) {
+      last[p] = -1L;
+    }
+
+    ring.consumer(this.exec, (slot, seq, end) -> {
+      final int p = (int) (slot[0] / (long) per_producer);
+      if (slot[0] <= last[p]) {
+        out_of_order.incrementAndGet();
+      }
+      last[p] = slot[0];
+      if (end) {
+        batches.incrementAndGet();
+      }
+      done.countDown();
+    });
+
+    final List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; ++p) {
+      final long base = (long) p * (long) per_producer;
+      final Thread t = new Thread(() -> {
+        for (int index = 0; index < per_producer; ++index) {
+          ring.publish(SET, Long.valueOf(base + (long) index), null);
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+
+    for (final Thread t : threads) {
+      t.join();
+    }
+
+    Assert.assertTrue(done.await(30L, TimeUnit.SECONDS));
+    Assert.assertEquals(0L, (long) out_of_order.get());
+    Assert.assertTrue(batches.get() > 0);
+    Assert.assertTrue(batches.get() <= total);
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.idpool.CoIDPoolGenerational;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public final class CoIDPoolGenerationalTest
+{
+  @Test
+  public void testReuseChangesGeneration()
+  {
+    final CoIDPoolGenerational pool = new CoIDPoolGenerational();
+    final int id0 = pool.fresh();
+    Assert.assertTrue(pool.isLive(id0));
+
+    pool.release(id0);
+    Assert.assertFalse(pool.isLive(id0));
+
+    final int id1 = pool.fresh();
+    Assert.assertEquals(
+      (long) CoIDPoolGenerational.index(id0),
+      (long) CoIDPoolGenerational.index(id1));
+    Assert.assertNotEquals((long) id0, (long) id1);
+    Assert.assertTrue(pool.isLive(id1));
+    Assert.assertFalse(pool.isLive(id0));
+  }
+
+  @Test
+  public void testGenerationSaturatedRetired()
+  {
+    final CoIDPoolGenerational pool = new CoIDPoolGenerational();
+    final int id0 = pool.fresh();
+    final int index0 = CoIDPoolGenerational.index(id0);
+
+    final IntOpenHashSet issued = new IntOpenHashSet();
+    int id = id0;
+    while (CoIDPoolGenerational.index(id) == index0) {
+      Assert.assertTrue(issued.add(id));
+      pool.release(id);
+      id = pool.fresh();
+    }
+
+    Assert.assertEquals(
+      (long) CoIDPoolGenerational.GENERATION_LIVE_COUNT, (long) issued.size());
+    for (final int x : issued) {
+      Assert.assertFalse(pool.isLive(x));
+    }
+    Assert.assertTrue(pool.isLive(id));
+  }
+
+  @Test
+  public void testGenerationSaturatedRetiredBulk()
+  {
+    final CoIDPoolGenerational pool = new CoIDPoolGenerational();
+    final int[] ids = new int[2];
+    pool.freshBulk(ids, 0, 2);
+
+    final IntOpenHashSet issued = new IntOpenHashSet();
+    int cycles = 0;
+    while (CoIDPoolGenerational.index(ids[0]) < 2) {
+      Assert.assertTrue(issued.add(ids[0]));
+      Assert.assertTrue(issued.add(ids[1]));
+      pool.releaseBulk(ids, 0, 2);
+      pool.freshBulk(ids, 0, 2);
+      ++cycles;
+    }
+
+    Assert.assertEquals(
+      (long) CoIDPoolGenerational.GENERATION_LIVE_COUNT, (long) cycles);
+    Assert.assertTrue(CoIDPoolGenerational.index(ids[1]) >= 2);
+    for (final int x : issued) {
+      Assert.assertFalse(pool.isLive(x));
+    }
+  }
+
+  @Test
+  public void testNeverAllocatedNotLive()
+  {
+    final CoIDPoolGenerational pool = new CoIDPoolGenerational();
+    Assert.assertFalse(pool.isLive(0));
+    Assert.assertFalse(pool.isLive(1 << CoIDPoolGenerational.INDEX_BITS));
+    Assert.assertFalse(pool.isLive(-1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReleaseTwice()
+  {
+    final CoIDPoolGenerational pool = new CoIDPoolGenerational();
+    final int id = pool.fresh();
+    pool.release(id);
+    pool.release(id);
+  }
+
+  @Test
+  public void testReleasedReusedFirst()
+  {
+    final CoIDPoolGenerational pool = new CoIDPoolGenerational();
+    final int id0 = pool.fresh();
+    final int id1 = pool.fresh();
+    pool.fresh();
+    pool.release(id0);
+    pool.release(id1);
+
+    Assert.assertEquals(
+      (long) CoIDPoolGenerational.index(id1),
+      (long) CoIDPoolGenerational.index(pool.fresh()));
+    Assert.assertEquals(
+      (long) CoIDPoolGenerational.index(id0),
+      (long) CoIDPoolGenerational.index(pool.fresh()));
+  }
+
+  @Test
+  public void testBulkReusesReleased()
+  {
+    final CoIDPoolGenerational pool = new CoIDPoolGenerational();
+    final int[] ids0 = new int[100];
+    pool.freshBulk(ids0, 0, ids0.length);
+
+    final IntOpenHashSet indices = new IntOpenHashSet();
+    for (final int id : ids0) {
+      Assert.assertTrue(pool.isLive(id));
+      Assert.assertTrue(indices.add(CoIDPoolGenerational.index(id)));
+    }
+
+    pool.releaseBulk(ids0, 0, 50);
+    for (int index = 0; index < ids0.length; ++index) {
+      Assert.assertEquals(index >= 50, pool.isLive(ids0[index]));
+    }
+
+    final int[] ids1 = new int[60];
+    pool.freshBulk(ids1, 0, ids1.length);
+
+    int reused = 0;
+    for (final int id : ids1) {
+      Assert.assertTrue(pool.isLive(id));
+      if (CoIDPoolGenerational.index(id) < 100) {
+        ++reused;
+      }
+    }
+    Assert.assertEquals(50L, (long) reused);
+  }
+
+  @Test
+  public void testConcurrentUnique()
+    throws Exception
+  {
+    final CoIDPoolGenerational pool = new CoIDPoolGenerational();
+    final ExecutorService exec = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<int[]>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; ++thread) {
+        futures.add(exec.submit(() -> {
+          final int[] kept = new int[1000];
+          for (int index = 0; index < 1000; ++index) {
+            pool.release(pool.fresh());
+            kept[index] = pool.fresh();
+          }
+          return kept;
+        }));
+      }
+
+      final IntOpenHashSet ids = new IntOpenHashSet();
+      for (final Future<int[]> f : futures) {
+        for (final int id : f.get(10L, TimeUnit.SECONDS)) {
+          Assert.assertTrue(pool.isLive(id));
+          Assert.assertTrue(ids.add(CoIDPoolGenerational.index(id)));
+        }
+      }
+      Assert.assertEquals(4000L, (long) ids.size());
+    } finally {
+      exec.shutdown();
+    }
+  }
+}
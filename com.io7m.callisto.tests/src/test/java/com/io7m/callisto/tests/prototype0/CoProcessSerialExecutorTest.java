@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.process.CoProcessSerialExecutor;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class CoProcessSerialExecutorTest
+{
+  @Test
+  public void testSerialOrdered()
+    throws Exception
+  {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      final CoProcessSerialExecutor e0 = new CoProcessSerialExecutor(pool);
+      final CoProcessSerialExecutor e1 = new CoProcessSerialExecutor(pool);
+      final AtomicInteger active = new AtomicInteger();
+      final AtomicInteger overlaps = new AtomicInteger();
+      final IntArrayList order0 = new IntArrayList();
+      final IntArrayList order1 = new IntArrayList();
+
+      for (int index = 0; index < 1000; ++index) {
+        final int x = index;
+        e0.execute(() -> {
+          if (active.incrementAndGet() != 1) {
+            overlaps.incrementAndGet();
+          }
+          order0.add(x);
+          active.decrementAndGet();
+        });
+        e1.execute(() -> order1.add(x));
+      }
+
+      e0.shutdown();
+      e1.shutdown();
+      Assert.assertTrue(e0.awaitTermination(10L, TimeUnit.SECONDS));
+      Assert.assertTrue(e1.awaitTermination(10L, TimeUnit.SECONDS));
+      Assert.assertTrue(e0.isTerminated());
+
+      Assert.assertEquals(0L, (long) overlaps.get());
+      Assert.assertEquals(1000L, (long) order0.size());
+      Assert.assertEquals(1000L, (long) order1.size());
+      for (int index = 0; index < 1000; ++index) {
+        Assert.assertEquals((long) index, (long) order0.getInt(index));
+        Assert.assertEquals((long) index, (long) order1.getInt(index));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testShutdownWhileRunning()
+    throws Exception
+  {
+    final ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      final CoProcessSerialExecutor e = new CoProcessSerialExecutor(pool);
+      final AtomicInteger count = new AtomicInteger();
+      e.execute(count::incrementAndGet);
+      e.execute(e::shutdown);
+      Assert.assertTrue(e.awaitTermination(10L, TimeUnit.SECONDS));
+      Assert.assertTrue(e.isShutdown());
+      Assert.assertEquals(1L, (long) count.get());
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
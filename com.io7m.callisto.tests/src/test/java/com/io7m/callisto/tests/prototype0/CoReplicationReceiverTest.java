@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.replication.CoReplicatedTraitType;
+import com.io7m.callisto.prototype0.replication.CoReplicationConfiguration;
+import com.io7m.callisto.prototype0.replication.CoReplicationMessages;
+import com.io7m.callisto.prototype0.replication.CoReplicationReceiver;
+import com.io7m.callisto.prototype0.replication.CoReplicationReceiverListenerType;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public final class CoReplicationReceiverTest
+{
+  private static ByteBuffer removals(
+    final int sequence,
+    final int... entities)
+  {
+    final ByteBuffer data = ByteBuffer.allocate(16 + (entities.length * 4));
+    data.putInt(sequence);
+    data.putLong((long) sequence);
+    data.putShort((short) entities.length);
+    for (final int entity : entities) {
+      data.putInt(entity);
+    }
+    data.putShort((short) 0);
+    data.flip();
+    return data;
+  }
+
+  private static final class Removed
+    implements CoReplicationReceiverListenerType
+  {
+    private final IntArrayList removed = new IntArrayList();
+
+    @Override
+    public void onEntityRemoved(
+      final int entity)
+    {
+      this.removed.add(entity);
+    }
+
+    @Override
+    public CoReplicatedTraitType onEntityTrait(
+      final int entity,
+      final Class<? extends CoReplicatedTraitType> trait)
+    {
+      throw new AssertionError("Unreachable");
+    }
+  }
+
+  @Test
+  public void testAcknowledgeOutOfOrder()
+  {
+    final CoReplicationReceiver receiver =
+      new CoReplicationReceiver(
+        CoReplicationConfiguration.builder()
+          .addTraits(CoReplicatedTraitType.class)
+          .build());
+    final Removed listener = new Removed();
+
+    Assert.assertFalse(receiver.hasReceived());
+    Assert.assertTrue(receiver.receive(removals(0, 10), listener));
+    Assert.assertTrue(receiver.receive(removals(1, 11), listener));
+    Assert.assertTrue(receiver.receive(removals(3, 13), listener));
+    Assert.assertFalse(receiver.receive(removals(2, 12), listener));
+    Assert.assertFalse(receiver.receive(removals(3, 13), listener));
+    Assert.assertEquals(3L, receiver.frame());
+    Assert.assertEquals(IntArrayList.wrap(new int[]{10, 11, 13}), listener.removed);
+
+    ByteBuffer ack = receiver.acknowledgement();
+    Assert.assertEquals(
+      (long) CoReplicationMessages.ACKNOWLEDGE_SIZE, (long) ack.remaining());
+    Assert.assertEquals(3L, (long) ack.getInt());
+    Assert.assertEquals(0b110L, (long) ack.getInt());
+
+    Assert.assertTrue(receiver.receive(removals(40), listener));
+    ack = receiver.acknowledgement();
+    Assert.assertEquals(40L, (long) ack.getInt());
+    Assert.assertEquals(0L, (long) ack.getInt());
+  }
+}
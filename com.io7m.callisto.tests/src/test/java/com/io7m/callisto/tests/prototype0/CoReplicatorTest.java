@@ -0,0 +1,591 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.entities.CoAssemblyName;
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventService;
+import com.io7m.callisto.prototype0.replication.CoReplicatedTraitAbstract;
+import com.io7m.callisto.prototype0.replication.CoReplicationConfiguration;
+import com.io7m.callisto.prototype0.replication.CoReplicationMessages;
+import com.io7m.callisto.prototype0.replication.CoReplicator;
+import com.io7m.callisto.prototype0.rooms.CoRoomService;
+import com.io7m.callisto.prototype0.rooms.CoRoomType;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolService;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantReference;
+import com.io7m.callisto.prototype0.transport.CoTransportConnectionUsableType;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class CoReplicatorTest
+{
+  private static final int CONNECTION = 0;
+
+  private CoEventService events;
+  private CoStringConstantPoolService strings;
+  private CoRoomService rooms;
+  private CoRoomType room;
+  private Connection connection;
+
+  @Before
+  public void setUp()
+  {
+    this.events = new CoEventService();
+    this.events.onActivate();
+    this.strings = new CoStringConstantPoolService(this.events);
+    this.rooms = new CoRoomService();
+    this.rooms.onEventServiceRegister(this.events);
+    this.rooms.onActivate();
+    this.room = this.rooms.roomCreate(10.0);
+    this.room.observerPut(CONNECTION, 0.0, 0.0, 100.0);
+    this.connection = new Connection(CONNECTION);
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.rooms.shutDown();
+    this.strings.shutDown();
+    this.events.shutDown();
+  }
+
+  private CoReplicator replicator(
+    final int bytes_per_tick)
+  {
+    final CoReplicator r = CoReplicator.create(
+      CoReplicationConfiguration.builder()
+        .addTraits(Position.class)
+        .setBytesPerTick(bytes_per_tick)
+        .build(),
+      this.strings);
+    this.rooms.systemAddShared(r.roomSystem());
+    r.connectionAdd(CONNECTION);
+    return r;
+  }
+
+  private Position create(
+    final double x,
+    final double y)
+  {
+    final CoEntityType e = this.room.entityCreate(new Assembly(), x, y);
+    final Position p = new Position(e);
+    e.traitSet(Position.class, p);
+    return p;
+  }
+
+  private List<Message> tick(
+    final CoReplicator r,
+    final long frame)
+  {
+    this.rooms.tick(frame);
+    r.send(this.connection);
+
+    final List<Message> messages = new ArrayList<>();
+    for (final ByteBuffer data : this.connection.sent) {
+      messages.add(Message.decode(data));
+    }
+    this.connection.sent.clear();
+    return messages;
+  }
+
+  private static Message single(
+    final List<Message> messages)
+  {
+    Assert.assertEquals(1L, (long) messages.size());
+    return messages.get(0);
+  }
+
+  private static void acknowledge(
+    final CoReplicator r,
+    final int sequence,
+    final int received)
+  {
+    r.acknowledge(
+      CONNECTION,
+      CoReplicationMessages.createAcknowledgeSerialized(sequence, received));
+  }
+
+  @Test
+  public void testVisibleSentInFullThenDirty()
+  {
+    final CoReplicator r = this.replicator(1000);
+    final Position p = this.create(1.0, 1.0);
+    p.setX(10);
+    p.setY(20);
+    p.setZ(30);
+
+    {
+      final Message m = single(this.tick(r, 1L));
+      Assert.assertEquals(0L, (long) m.sequence);
+      Assert.assertEquals(1L, m.frame);
+      Assert.assertEquals(1L, (long) m.updates.size());
+
+      final Update u = m.updates.get(0);
+      Assert.assertEquals((long) p.owner().id().value(), (long) u.entity);
+      Assert.assertEquals(0b111L, u.mask);
+      Assert.assertEquals(10L, (long) u.values[0]);
+      Assert.assertEquals(20L, (long) u.values[1]);
+      Assert.assertEquals(30L, (long) u.values[2]);
+    }
+
+    Assert.assertTrue(this.tick(r, 2L).isEmpty());
+
+    p.setY(21);
+
+    {
+      final Message m = single(this.tick(r, 3L));
+      Assert.assertEquals(1L, (long) m.sequence);
+      Assert.assertEquals(1L, (long) m.updates.size());
+
+      final Update u = m.updates.get(0);
+      Assert.assertEquals(0b010L, u.mask);
+      Assert.assertEquals(21L, (long) u.values[1]);
+    }
+
+    Assert.assertTrue(this.tick(r, 4L).isEmpty());
+  }
+
+  @Test
+  public void testNotVisibleNotSent()
+  {
+    final CoReplicator r = this.replicator(1000);
+    final Position near = this.create(1.0, 1.0);
+    this.create(500.0, 500.0);
+
+    final Message m = single(this.tick(r, 1L));
+    Assert.assertEquals(1L, (long) m.updates.size());
+    Assert.assertEquals(
+      (long) near.owner().id().value(), (long) m.updates.get(0).entity);
+  }
+
+  @Test
+  public void testLeftRemoved()
+  {
+    final CoReplicator r = this.replicator(1000);
+    final Position p = this.create(1.0, 1.0);
+    single(this.tick(r, 1L));
+
+    this.room.entityMove(p.owner().id(), 500.0, 500.0);
+
+    final Message m = single(this.tick(r, 2L));
+    Assert.assertEquals(
+      IntArrayList.wrap(new int[]{p.owner().id().value()}), m.removed);
+    Assert.assertTrue(m.updates.isEmpty());
+  }
+
+  @Test
+  public void testBudgetDefersByPriority()
+  {
+    /*
+     * A 64 octet message has room for exactly one complete entity. The
+     * entities are at distances 0, 8, and 32 from the observer and therefore
+     * accumulate priority at rates 1.0, 0.8, and 0.5 per tick. All fields
+     * of the nearest entity change on every tick, but the others must still
+     * eventually be sent as their accumulated priority overtakes it.
+     */
+
+    final CoReplicator r = this.replicator(64);
+    final Position near = this.create(0.0, 0.0);
+    final Position middle = this.create(8.0, 0.0);
+    final Position far = this.create(32.0, 0.0);
+
+    final IntArrayList sent = new IntArrayList();
+    for (long frame = 1L; frame <= 4L; ++frame) {
+      near.setX((int) frame);
+      near.setY((int) frame);
+      near.setZ((int) frame);
+      final Message m = single(this.tick(r, frame));
+      Assert.assertEquals(1L, (long) m.updates.size());
+      sent.add(m.updates.get(0).entity);
+    }
+
+    Assert.assertEquals(
+      IntArrayList.wrap(new int[]{
+        near.owner().id().value(),
+        middle.owner().id().value(),
+        near.owner().id().value(),
+        far.owner().id().value(),
+      }),
+      sent);
+
+    final Message m = single(this.tick(r, 5L));
+    Assert.assertEquals(
+      (long) near.owner().id().value(), (long) m.updates.get(0).entity);
+    Assert.assertEquals(0b111L, m.updates.get(0).mask);
+  }
+
+  @Test
+  public void testUnacknowledgedResent()
+  {
+    final CoReplicator r = this.replicator(1000);
+    final Position p = this.create(1.0, 1.0);
+
+    Assert.assertEquals(0L, (long) single(this.tick(r, 1L)).sequence);
+    acknowledge(r, 0, 0);
+
+    p.setX(11);
+    Assert.assertEquals(0b001L, single(this.tick(r, 2L)).updates.get(0).mask);
+    p.setY(22);
+    Assert.assertEquals(0b010L, single(this.tick(r, 3L)).updates.get(0).mask);
+
+    /*
+     * Message 2 is acknowledged without message 1: the fields of message 1
+     * are pending again, and only those are resent.
+     */
+
+    acknowledge(r, 2, 0);
+
+    final Message m = single(this.tick(r, 4L));
+    Assert.assertEquals(3L, (long) m.sequence);
+    Assert.assertEquals(1L, (long) m.updates.size());
+    Assert.assertEquals(0b001L, m.updates.get(0).mask);
+    Assert.assertEquals(11L, (long) m.updates.get(0).values[0]);
+
+    acknowledge(r, 3, 0b111);
+    Assert.assertTrue(this.tick(r, 5L).isEmpty());
+  }
+
+  @Test
+  public void testAcknowledgedRecordReused()
+  {
+    final CoReplicator r = this.replicator(1000);
+    final int history = r.configuration().history();
+    final Position p = this.create(1.0, 1.0);
+
+    single(this.tick(r, 0L));
+    acknowledge(r, 0, 0);
+
+    for (int frame = 1; frame <= history; ++frame) {
+      p.setY(frame);
+      final Message m = single(this.tick(r, (long) frame));
+      Assert.assertEquals((long) frame, (long) m.sequence);
+      Assert.assertEquals(0b010L, m.updates.get(0).mask);
+      acknowledge(r, frame, -1);
+    }
+
+    Assert.assertTrue(this.tick(r, (long) history + 1L).isEmpty());
+  }
+
+  @Test
+  public void testUnacknowledgedRecordReused()
+  {
+    final CoReplicator r = this.replicator(1000);
+    final int history = r.configuration().history();
+    final Position p = this.create(1.0, 1.0);
+
+    Assert.assertEquals(0b111L, single(this.tick(r, 0L)).updates.get(0).mask);
+
+    for (int frame = 1; frame < history; ++frame) {
+      p.setY(frame);
+      final Message m = single(this.tick(r, (long) frame));
+      Assert.assertEquals((long) frame, (long) m.sequence);
+      Assert.assertEquals(0b010L, m.updates.get(0).mask);
+    }
+
+    /*
+     * The record of message 0 is reused by message 64, at which point
+     * message 0 is considered lost and all of its fields are resent.
+     */
+
+    p.setY(history);
+    final Message m = single(this.tick(r, (long) history));
+    Assert.assertEquals((long) history, (long) m.sequence);
+    Assert.assertEquals(0b111L, m.updates.get(0).mask);
+  }
+
+  private static final class Update
+  {
+    private final int entity;
+    private final long mask;
+    private final int[] values;
+
+    Update(
+      final int in_entity,
+      final long in_mask,
+      final int[] in_values)
+    {
+      this.entity = in_entity;
+      this.mask = in_mask;
+      this.values = in_values;
+    }
+  }
+
+  private static final class Message
+  {
+    private final int sequence;
+    private final long frame;
+    private final IntArrayList removed;
+    private final List<Update> updates;
+
+    private Message(
+      final int in_sequence,
+      final long in_frame)
+    {
+      this.sequence = in_sequence;
+      this.frame = in_frame;
+      this.removed = new IntArrayList();
+      this.updates = new ArrayList<>();
+    }
+
+    static Message decode(
+      final ByteBuffer data)
+    {
+      final Message m = new Message(data.getInt(), data.getLong());
+
+      final int removed_count = (int) data.getShort() & 0xffff;
+      for (int index = 0; index < removed_count; ++index) {
+        m.removed.add(data.getInt());
+      }
+
+      final int updated_count = (int) data.getShort() & 0xffff;
+      for (int index = 0; index < updated_count; ++index) {
+        final int entity = data.getInt();
+        final int trait_count = (int) data.get();
+        Assert.assertEquals(1L, (long) trait_count);
+        Assert.assertEquals(0L, (long) data.get());
+
+        final long mask = data.getLong();
+        final int[] values = new int[Position.FIELDS];
+        for (int field = 0; field < Position.FIELDS; ++field) {
+          if ((mask & (1L << field)) != 0L) {
+            values[field] = data.getInt();
+          }
+        }
+        m.updates.add(new Update(entity, mask, values));
+      }
+
+      Assert.assertEquals(0L, (long) data.remaining());
+      return m;
+    }
+  }
+
+  private static final class Connection
+    implements CoTransportConnectionUsableType
+  {
+    private final int id;
+    private final List<ByteBuffer> sent;
+
+    Connection(
+      final int in_id)
+    {
+      this.id = in_id;
+      this.sent = new ArrayList<>();
+    }
+
+    @Override
+    public SocketAddress remote()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int id()
+    {
+      return this.id;
+    }
+
+    @Override
+    public void send(
+      final Reliability r,
+      final int channel,
+      final String type,
+      final ByteBuffer data)
+    {
+      Assert.assertEquals(Reliability.MESSAGE_UNRELIABLE, r);
+      Assert.assertEquals(CoReplicationMessages.updateTypeName(), type);
+      this.sent.add(data);
+    }
+
+    @Override
+    public void send(
+      final Reliability r,
+      final int channel,
+      final CoStringConstantReference type,
+      final ByteBuffer data)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendState(
+      final int channel,
+      final String type,
+      final int key,
+      final ByteBuffer state)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendState(
+      final int channel,
+      final CoStringConstantReference type,
+      final int key,
+      final ByteBuffer state)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long roundTripTime()
+    {
+      return 0L;
+    }
+
+    @Override
+    public long roundTripTimeSmoothedNanoseconds()
+    {
+      return 0L;
+    }
+
+    @Override
+    public long roundTripTimeVarianceNanoseconds()
+    {
+      return 0L;
+    }
+
+    @Override
+    public long retransmissionTimeoutNanoseconds()
+    {
+      return 0L;
+    }
+
+    @Override
+    public long clockOffsetNanoseconds()
+    {
+      return 0L;
+    }
+  }
+
+  private static final class Position extends CoReplicatedTraitAbstract
+  {
+    private static final int FIELDS = 3;
+
+    private final int[] values;
+
+    Position(
+      final CoEntityType in_owner)
+    {
+      super(in_owner, new PositionProvider(), FIELDS);
+      this.values = new int[FIELDS];
+    }
+
+    void setX(
+      final int x)
+    {
+      this.set(0, x);
+    }
+
+    void setY(
+      final int y)
+    {
+      this.set(1, y);
+    }
+
+    void setZ(
+      final int z)
+    {
+      this.set(2, z);
+    }
+
+    private void set(
+      final int field,
+      final int value)
+    {
+      this.values[field] = value;
+      this.fieldChanged(field);
+    }
+
+    @Override
+    public void replicatedFieldSerialize(
+      final int field,
+      final ByteBuffer buffer)
+    {
+      buffer.putInt(this.values[field]);
+    }
+
+    @Override
+    public void replicatedFieldDeserialize(
+      final int field,
+      final ByteBuffer buffer)
+    {
+      this.values[field] = buffer.getInt();
+    }
+
+    @Override
+    public void onDestroy()
+    {
+
+    }
+  }
+
+  private static final class PositionProvider
+    implements CoEntityTraitProviderType<Position>
+  {
+    PositionProvider()
+    {
+
+    }
+
+    @Override
+    public Class<Position> type()
+    {
+      return Position.class;
+    }
+
+    @Override
+    public Position create(
+      final CoEntityType e)
+    {
+      return new Position(e);
+    }
+  }
+
+  private static final class Assembly implements CoAssemblyType
+  {
+    Assembly()
+    {
+
+    }
+
+    @Override
+    public CoAssemblyName name()
+    {
+      return CoAssemblyName.of("replicated");
+    }
+
+    @Override
+    public <T extends CoEntityTraitType>
+    Map<Class<T>, CoEntityTraitProviderType<T>> traitProviders()
+    {
+      return HashMap.empty();
+    }
+  }
+}
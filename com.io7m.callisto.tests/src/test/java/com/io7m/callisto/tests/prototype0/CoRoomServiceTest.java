@@ -0,0 +1,358 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.entities.CoAssemblyName;
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityID;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventService;
+import com.io7m.callisto.prototype0.events.CoEventType;
+import com.io7m.callisto.prototype0.rooms.CoRoomMessage;
+import com.io7m.callisto.prototype0.rooms.CoRoomService;
+import com.io7m.callisto.prototype0.rooms.CoRoomSystemType;
+import com.io7m.callisto.prototype0.rooms.CoRoomType;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+public final class CoRoomServiceTest
+{
+  private CoEventService events;
+  private CoRoomService rooms;
+
+  @Before
+  public void setUp()
+  {
+    this.events = new CoEventService();
+    this.events.onActivate();
+    this.rooms = new CoRoomService();
+    this.rooms.onEventServiceRegister(this.events);
+    this.rooms.onActivate();
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.rooms.shutDown();
+    this.events.shutDown();
+  }
+
+  @Test
+  public void testTickOnDedicatedPool()
+  {
+    final CoRoomType r0 = this.rooms.roomCreate(10.0);
+    final CoRoomType r1 = this.rooms.roomCreate(10.0);
+    final Recorder s0 = new Recorder();
+    final Recorder s1 = new Recorder();
+    r0.systemAdd(s0);
+    r1.systemAdd(s1);
+
+    this.rooms.tick(23L);
+
+    Assert.assertEquals(1L, (long) s0.frames.size());
+    Assert.assertEquals(23L, s0.frames.get(0).longValue());
+    Assert.assertEquals(1L, (long) s1.frames.size());
+    Assert.assertEquals(23L, s1.frames.get(0).longValue());
+
+    for (final String thread : s0.threads) {
+      Assert.assertTrue(thread.startsWith("com.io7m.callisto.rooms."));
+    }
+    for (final String thread : s1.threads) {
+      Assert.assertTrue(thread.startsWith("com.io7m.callisto.rooms."));
+    }
+  }
+
+  @Test
+  public void testTickCallerPool()
+  {
+    final ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      final CoRoomService service = new CoRoomService(this.events, pool);
+      service.onActivate();
+
+      final Recorder s0 = new Recorder();
+      service.roomCreate(10.0).systemAdd(s0);
+      service.tick(1L);
+      service.shutDown();
+
+      Assert.assertEquals(1L, (long) s0.frames.size());
+      Assert.assertFalse(pool.isShutdown());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testPostDeliveredNextTick()
+  {
+    final CoRoomType r0 = this.rooms.roomCreate(10.0);
+    final Recorder s0 = new Recorder();
+    r0.systemAdd(s0);
+
+    final Event e = new Event();
+    r0.post(e);
+    Assert.assertTrue(s0.messages.isEmpty());
+
+    this.rooms.tick(1L);
+    Assert.assertEquals(1L, (long) s0.messages.size());
+
+    final CoRoomMessage m = s0.messages.get(0);
+    Assert.assertSame(e, m.content());
+    Assert.assertEquals(r0.id(), m.source());
+    Assert.assertEquals(r0.id(), m.target());
+
+    this.rooms.tick(2L);
+    Assert.assertEquals(1L, (long) s0.messages.size());
+  }
+
+  @Test
+  public void testSendCrossRoom()
+  {
+    final CoRoomType r0 = this.rooms.roomCreate(10.0);
+    final CoRoomType r1 = this.rooms.roomCreate(10.0);
+    final Recorder s0 = new Recorder();
+    final Recorder s1 = new Recorder();
+    r0.systemAdd(s0);
+    r1.systemAdd(s1);
+
+    final Event e = new Event();
+    Assert.assertTrue(r0.send(r1.id(), e));
+    this.rooms.tick(1L);
+
+    Assert.assertTrue(s0.messages.isEmpty());
+    Assert.assertEquals(1L, (long) s1.messages.size());
+    Assert.assertEquals(r0.id(), s1.messages.get(0).source());
+    Assert.assertEquals(r1.id(), s1.messages.get(0).target());
+  }
+
+  @Test
+  public void testMessagesQueuedDuringTickDeferred()
+  {
+    final CoRoomType r0 = this.rooms.roomCreate(10.0);
+    final Recorder s0 = new Recorder();
+    s0.post_on_message = true;
+    r0.systemAdd(s0);
+
+    r0.post(new Event());
+    this.rooms.tick(1L);
+    Assert.assertEquals(1L, (long) s0.messages.size());
+    this.rooms.tick(2L);
+    Assert.assertEquals(2L, (long) s0.messages.size());
+  }
+
+  @Test
+  public void testSharedSystems()
+  {
+    final CoRoomType r0 = this.rooms.roomCreate(10.0);
+    final Recorder shared = new Recorder();
+    this.rooms.systemAddShared(shared);
+    final CoRoomType r1 = this.rooms.roomCreate(10.0);
+
+    r0.post(new Event());
+    this.rooms.tick(1L);
+
+    Assert.assertEquals(2L, (long) shared.frames.size());
+    Assert.assertEquals(2L, (long) shared.interest.size());
+    Assert.assertEquals(1L, (long) shared.messages.size());
+
+    Assert.assertTrue(this.rooms.systemRemoveShared(shared));
+    this.rooms.tick(2L);
+    Assert.assertEquals(2L, (long) shared.frames.size());
+    Assert.assertEquals(0L, (long) r1.entityCount());
+  }
+
+  @Test
+  public void testInterestUpdatedAfterTick()
+  {
+    final CoRoomType r0 = this.rooms.roomCreate(10.0);
+    final CoEntityType e0 = r0.entityCreate(new Assembly(), 100.0, 0.0);
+    r0.observerPut(0, 0.0, 0.0, 10.0);
+
+    final Recorder s0 = new Recorder();
+    s0.on_tick = room -> room.entityMove(e0.id(), 1.0, 0.0);
+    r0.systemAdd(s0);
+
+    this.rooms.tick(1L);
+
+    Assert.assertEquals(1L, (long) s0.interest.size());
+    Assert.assertEquals(1L, (long) s0.entered.size());
+    Assert.assertEquals(
+      (long) e0.id().value(), (long) s0.entered.get(0).intValue());
+  }
+
+  @Test
+  public void testFailingRoomIsolated()
+  {
+    final CoRoomType r0 = this.rooms.roomCreate(10.0);
+    final CoRoomType r1 = this.rooms.roomCreate(10.0);
+    final Recorder s0 = new Recorder();
+    s0.fail = true;
+    final Recorder s1 = new Recorder();
+    r0.systemAdd(s0);
+    r1.systemAdd(s1);
+
+    this.rooms.tick(1L);
+    this.rooms.tick(2L);
+
+    Assert.assertEquals(2L, (long) s0.frames.size());
+    Assert.assertEquals(2L, (long) s1.frames.size());
+  }
+
+  @Test
+  public void testEntitiesOwnedByRoom()
+  {
+    final CoRoomType r0 = this.rooms.roomCreate(10.0);
+    final CoRoomType r1 = this.rooms.roomCreate(10.0);
+
+    final CoEntityType e0 = r0.entityCreate(new Assembly(), 0.0, 0.0);
+    final CoEntityType e1 = r0.entityCreate(new Assembly(), 1.0, 1.0);
+    Assert.assertEquals(2L, (long) r0.entityCount());
+    Assert.assertEquals(0L, (long) r1.entityCount());
+    Assert.assertSame(e0, r0.entity(e0.id().value()).get());
+    Assert.assertFalse(r1.entity(e0.id().value()).isPresent());
+
+    Assert.assertTrue(r0.entityMove(e1.id(), 5.0, 5.0));
+    Assert.assertFalse(r0.entityMove(CoEntityID.of(1000), 5.0, 5.0));
+
+    Assert.assertTrue(r0.entityDestroy(e0.id()));
+    Assert.assertFalse(r0.entityDestroy(e0.id()));
+    Assert.assertTrue(e0.isDestroyed());
+    Assert.assertEquals(1L, (long) r0.entityCount());
+  }
+
+  @Test
+  public void testRoomDestroy()
+  {
+    final CoRoomType r0 = this.rooms.roomCreate(10.0);
+    final CoRoomType r1 = this.rooms.roomCreate(10.0);
+    final Recorder s1 = new Recorder();
+    r1.systemAdd(s1);
+
+    Assert.assertTrue(this.rooms.roomDestroy(r1.id()));
+    Assert.assertFalse(this.rooms.roomDestroy(r1.id()));
+    Assert.assertFalse(this.rooms.room(r1.id()).isPresent());
+    Assert.assertFalse(r0.send(r1.id(), new Event()));
+
+    this.rooms.tick(1L);
+    Assert.assertTrue(s1.frames.isEmpty());
+  }
+
+  private static final class Event implements CoEventType
+  {
+    Event()
+    {
+
+    }
+  }
+
+  private static final class Recorder implements CoRoomSystemType
+  {
+    private final List<Long> frames;
+    private final List<String> threads;
+    private final List<CoRoomMessage> messages;
+    private final List<Long> interest;
+    private final List<Integer> entered;
+    private Consumer<CoRoomType> on_tick;
+    private boolean fail;
+    private boolean post_on_message;
+
+    Recorder()
+    {
+      this.frames = new ArrayList<>();
+      this.threads = new ArrayList<>();
+      this.messages = new ArrayList<>();
+      this.interest = new ArrayList<>();
+      this.entered = new ArrayList<>();
+      this.on_tick = room -> { };
+    }
+
+    @Override
+    public String name()
+    {
+      return "recorder";
+    }
+
+    @Override
+    public void onMessage(
+      final CoRoomType room,
+      final CoRoomMessage message)
+    {
+      this.messages.add(message);
+      if (this.post_on_message) {
+        room.post(message.content());
+      }
+    }
+
+    @Override
+    public void tick(
+      final CoRoomType room,
+      final long frame)
+    {
+      this.frames.add(Long.valueOf(frame));
+      this.threads.add(Thread.currentThread().getName());
+      this.on_tick.accept(room);
+      if (this.fail) {
+        throw new IllegalStateException("Failed");
+      }
+    }
+
+    @Override
+    public void onInterestUpdated(
+      final CoRoomType room,
+      final long frame)
+    {
+      this.interest.add(Long.valueOf(frame));
+      room.observer(0).ifPresent(o -> {
+        for (int index = 0; index < o.entered().size(); ++index) {
+          this.entered.add(Integer.valueOf(o.entered().getInt(index)));
+        }
+      });
+    }
+  }
+
+  private static final class Assembly implements CoAssemblyType
+  {
+    Assembly()
+    {
+
+    }
+
+    @Override
+    public CoAssemblyName name()
+    {
+      return CoAssemblyName.of("empty");
+    }
+
+    @Override
+    public <T extends CoEntityTraitType>
+    Map<Class<T>, CoEntityTraitProviderType<T>> traitProviders()
+    {
+      return HashMap.empty();
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.entities.CoAssemblyName;
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventService;
+import com.io7m.callisto.prototype0.rooms.CoRoomObserver;
+import com.io7m.callisto.prototype0.rooms.CoRoomService;
+import com.io7m.callisto.prototype0.rooms.CoRoomSpatialHash;
+import com.io7m.callisto.prototype0.rooms.CoRoomType;
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class CoRoomSpatialHashTest
+{
+  private static IntOpenHashSet query(
+    final CoRoomSpatialHash grid,
+    final double x,
+    final double y,
+    final double radius)
+  {
+    final IntOpenHashSet results = new IntOpenHashSet();
+    grid.query(x, y, radius, results::add);
+    return results;
+  }
+
+  @Test
+  public void testQueryRadius()
+  {
+    final CoRoomSpatialHash grid = new CoRoomSpatialHash(10.0);
+    Assert.assertTrue(grid.put(1, 0.0, 0.0));
+    Assert.assertTrue(grid.put(2, 5.0, 5.0));
+    Assert.assertTrue(grid.put(3, -15.0, 0.0));
+    Assert.assertTrue(grid.put(4, 100.0, 100.0));
+
+    final IntOpenHashSet near = query(grid, 0.0, 0.0, 16.0);
+    Assert.assertEquals(3L, (long) near.size());
+    Assert.assertTrue(near.contains(1));
+    Assert.assertTrue(near.contains(2));
+    Assert.assertTrue(near.contains(3));
+
+    final IntOpenHashSet tight = query(grid, 0.0, 0.0, 7.0);
+    Assert.assertEquals(1L, (long) tight.size());
+    Assert.assertTrue(tight.contains(1));
+  }
+
+  @Test
+  public void testMoveAndRemove()
+  {
+    final CoRoomSpatialHash grid = new CoRoomSpatialHash(10.0);
+    grid.put(1, 0.0, 0.0);
+    grid.put(2, 1.0, 1.0);
+
+    Assert.assertFalse(grid.put(1, 55.0, 55.0));
+    Assert.assertEquals(2L, (long) grid.size());
+
+    IntOpenHashSet results = query(grid, 0.0, 0.0, 5.0);
+    Assert.assertFalse(results.contains(1));
+    Assert.assertTrue(results.contains(2));
+
+    results = query(grid, 55.0, 55.0, 1.0);
+    Assert.assertTrue(results.contains(1));
+
+    Assert.assertTrue(grid.remove(2));
+    Assert.assertFalse(grid.remove(2));
+    Assert.assertFalse(grid.contains(2));
+    Assert.assertTrue(query(grid, 0.0, 0.0, 5.0).isEmpty());
+  }
+
+  @Test
+  public void testQueryHugeRadius()
+  {
+    final CoRoomSpatialHash grid = new CoRoomSpatialHash(1.0);
+    grid.put(1, 0.0, 0.0);
+    grid.put(2, -1.0e9, 1.0e9);
+    grid.put(3, Double.MAX_VALUE, -Double.MAX_VALUE);
+
+    final IntOpenHashSet results = query(grid, 0.0, 0.0, Double.MAX_VALUE);
+    Assert.assertEquals(3L, (long) results.size());
+
+    final IntOpenHashSet near = query(grid, 0.0, 0.0, 2.0e9);
+    Assert.assertEquals(2L, (long) near.size());
+    Assert.assertTrue(near.contains(1));
+    Assert.assertTrue(near.contains(2));
+  }
+
+  @Test(expected = PreconditionViolationException.class)
+  public void testQueryInfiniteRadius()
+  {
+    final CoRoomSpatialHash grid = new CoRoomSpatialHash(1.0);
+    query(grid, 0.0, 0.0, Double.POSITIVE_INFINITY);
+  }
+
+  @Test(expected = PreconditionViolationException.class)
+  public void testQueryNaNRadius()
+  {
+    final CoRoomSpatialHash grid = new CoRoomSpatialHash(1.0);
+    query(grid, 0.0, 0.0, Double.NaN);
+  }
+
+  @Test(expected = PreconditionViolationException.class)
+  public void testPutNonFinite()
+  {
+    final CoRoomSpatialHash grid = new CoRoomSpatialHash(1.0);
+    grid.put(1, Double.NEGATIVE_INFINITY, 0.0);
+  }
+
+  @Test
+  public void testObserverEnteredLeftVisible()
+  {
+    final CoEventService events = new CoEventService();
+    events.onActivate();
+    final CoRoomService rooms = new CoRoomService();
+    rooms.onEventServiceRegister(events);
+    rooms.onActivate();
+
+    try {
+      final CoRoomType room = rooms.roomCreate(10.0);
+      final CoEntityType e0 = room.entityCreate(new Assembly(), 0.0, 0.0);
+      final CoEntityType e1 = room.entityCreate(new Assembly(), 50.0, 0.0);
+      final int k0 = e0.id().value();
+      final int k1 = e1.id().value();
+
+      final CoRoomObserver observer = room.observerPut(23, 0.0, 0.0, 10.0);
+      room.updateInterest();
+      Assert.assertEquals(1L, (long) observer.entered().size());
+      Assert.assertEquals(k0, observer.entered().getInt(0));
+      Assert.assertTrue(observer.left().isEmpty());
+      Assert.assertEquals(1L, (long) observer.visible().size());
+      Assert.assertTrue(observer.visible().contains(k0));
+
+      /*
+       * Nothing changed, so nothing entered or left.
+       */
+
+      room.updateInterest();
+      Assert.assertTrue(observer.entered().isEmpty());
+      Assert.assertTrue(observer.left().isEmpty());
+      Assert.assertTrue(observer.visible().contains(k0));
+
+      /*
+       * Moving the observer makes one entity leave and the other enter.
+       */
+
+      room.observerPut(23, 45.0, 0.0, 10.0);
+      room.updateInterest();
+      Assert.assertEquals(1L, (long) observer.entered().size());
+      Assert.assertEquals(k1, observer.entered().getInt(0));
+      Assert.assertEquals(1L, (long) observer.left().size());
+      Assert.assertEquals(k0, observer.left().getInt(0));
+      Assert.assertEquals(1L, (long) observer.visible().size());
+      Assert.assertTrue(observer.visible().contains(k1));
+      Assert.assertEquals(5.0, observer.distanceTo(k1), 0.0);
+
+      /*
+       * Moving and removing entities is seen by a stationary observer.
+       */
+
+      Assert.assertTrue(room.entityMove(e0.id(), 40.0, 0.0));
+      Assert.assertTrue(room.entityDestroy(e1.id()));
+      Assert.assertTrue(e1.isDestroyed());
+      room.updateInterest();
+      Assert.assertEquals(1L, (long) observer.entered().size());
+      Assert.assertEquals(k0, observer.entered().getInt(0));
+      Assert.assertEquals(1L, (long) observer.left().size());
+      Assert.assertEquals(k1, observer.left().getInt(0));
+      Assert.assertEquals(1L, (long) observer.visible().size());
+      Assert.assertTrue(observer.visible().contains(k0));
+      Assert.assertEquals(
+        Double.POSITIVE_INFINITY, observer.distanceTo(k1), 0.0);
+    } finally {
+      rooms.shutDown();
+      events.shutDown();
+    }
+  }
+
+  @Test(expected = PreconditionViolationException.class)
+  public void testObserverInfiniteRadius()
+  {
+    final CoEventService events = new CoEventService();
+    events.onActivate();
+    final CoRoomService rooms = new CoRoomService();
+    rooms.onEventServiceRegister(events);
+    rooms.onActivate();
+
+    try {
+      rooms.roomCreate(10.0)
+        .observerPut(0, 0.0, 0.0, Double.POSITIVE_INFINITY);
+    } finally {
+      rooms.shutDown();
+      events.shutDown();
+    }
+  }
+
+  private static final class Assembly implements CoAssemblyType
+  {
+    Assembly()
+    {
+
+    }
+
+    @Override
+    public CoAssemblyName name()
+    {
+      return CoAssemblyName.of("empty");
+    }
+
+    @Override
+    public <T extends CoEntityTraitType>
+    Map<Class<T>, CoEntityTraitProviderType<T>> traitProviders()
+    {
+      return HashMap.empty();
+    }
+  }
+}
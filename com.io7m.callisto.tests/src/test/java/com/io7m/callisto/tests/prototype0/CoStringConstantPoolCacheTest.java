@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolCache;
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolSnapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+public final class CoStringConstantPoolCacheTest
+{
+  private static int countTables(
+    final Path directory)
+    throws IOException
+  {
+    int count = 0;
+    try (final DirectoryStream<Path> stream =
+           Files.newDirectoryStream(directory, "*.table")) {
+      for (final Path ignored : stream) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testStoreLoad()
+    throws Exception
+  {
+    final Path directory = Files.createTempDirectory("callisto-cache-");
+    final CoStringConstantPoolCache cache =
+      new CoStringConstantPoolCache(directory);
+
+    Assert.assertFalse(cache.load().isPresent());
+
+    final CoStringConstantPoolSnapshot s =
+      CoStringConstantPoolSnapshot.empty()
+        .withAppended("a")
+        .withAppended("b");
+    cache.store(s);
+
+    final Optional<CoStringConstantPoolSnapshot> r = cache.load();
+    Assert.assertTrue(r.isPresent());
+    Assert.assertTrue(
+      Arrays.equals(s.contentHash(), r.get().contentHash()));
+  }
+
+  @Test
+  public void testStorePrunes()
+    throws Exception
+  {
+    final Path directory = Files.createTempDirectory("callisto-cache-");
+    final CoStringConstantPoolCache cache =
+      new CoStringConstantPoolCache(directory);
+
+    CoStringConstantPoolSnapshot s = CoStringConstantPoolSnapshot.empty();
+    for (int index = 0; index < 20; ++index) {
+      s = s.withAppended("constant-" + index);
+      cache.store(s);
+      Assert.assertTrue(
+        (long) countTables(directory)
+          <= (long) CoStringConstantPoolCache.TABLES_RETAINED);
+    }
+
+    final Optional<CoStringConstantPoolSnapshot> r = cache.load();
+    Assert.assertTrue(r.isPresent());
+    Assert.assertTrue(
+      Arrays.equals(s.contentHash(), r.get().contentHash()));
+  }
+
+  @Test
+  public void testLoadMalformedName()
+    throws Exception
+  {
+    final Path directory = Files.createTempDirectory("callisto-cache-");
+    final Path outside = Files.createTempDirectory("callisto-outside-");
+    final CoStringConstantPoolCache cache =
+      new CoStringConstantPoolCache(directory);
+
+    cache.store(CoStringConstantPoolSnapshot.empty().withAppended("a"));
+
+    final String escape =
+      directory.relativize(outside.resolve("x")).toString();
+    Files.write(
+      directory.resolve("latest"),
+      escape.getBytes(StandardCharsets.US_ASCII));
+    Assert.assertFalse(cache.load().isPresent());
+
+    Files.write(
+      directory.resolve("latest"),
+      "ABCDEF".getBytes(StandardCharsets.US_ASCII));
+    Assert.assertFalse(cache.load().isPresent());
+  }
+}
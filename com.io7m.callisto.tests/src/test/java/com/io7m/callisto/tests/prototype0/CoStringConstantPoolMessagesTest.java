@@ -16,6 +16,8 @@
 
 package com.io7m.callisto.tests.prototype0;
 
+import com.io7m.callisto.prototype0.compression.CoCompressionConfiguration;
+import com.io7m.callisto.prototype0.compression.CoCompressionService;
 import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolMessages;
 import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantPoolUpdate;
 import com.io7m.callisto.prototype0.stringconstants.messages.CoStringConstantPoolUpdateCompressed;
@@ -36,6 +38,9 @@ public final class CoStringConstantPoolMessagesTest
   @Test
   public void testIdentity()
   {
+    final CoCompressionService codecs =
+      new CoCompressionService(CoCompressionConfiguration.builder().build());
+
     final Map<Integer, String> values = new HashMap<>();
     values.put(
       Integer.valueOf(0),
@@ -53,7 +58,7 @@ public final class CoStringConstantPoolMessagesTest
       Integer.valueOf(update.getSerializedSize()));
 
     final CoStringConstantPoolUpdateCompressed update_compressed =
-      CoStringConstantPoolMessages.createEventUpdateCompressed(update);
+      CoStringConstantPoolMessages.createEventUpdateCompressed(codecs, update);
 
     LOG.debug(
       "compressed: algorithm {} data size {} (size {})",
@@ -74,8 +79,9 @@ public final class CoStringConstantPoolMessagesTest
 
     final CoStringConstantPoolUpdate decompressed =
       CoStringConstantPoolMessages.parseEventUpdateCompressedDecompress(
-        update_compressed_parsed);
+        codecs, update_compressed_parsed);
 
     Assert.assertEquals(update, decompressed);
+    codecs.shutDown();
   }
 }
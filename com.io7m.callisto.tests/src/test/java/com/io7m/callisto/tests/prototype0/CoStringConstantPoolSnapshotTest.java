@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.stringconstants.CoStringConstantPoolSnapshot;
+import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class CoStringConstantPoolSnapshotTest
+{
+  @Test
+  public void testEmpty()
+  {
+    final CoStringConstantPoolSnapshot s =
+      CoStringConstantPoolSnapshot.empty();
+
+    Assert.assertEquals(0L, s.version());
+    Assert.assertEquals(0, s.size());
+    Assert.assertEquals(0, s.nextIndex());
+    Assert.assertNull(s.lookupString(0));
+    Assert.assertEquals(-1, s.lookupIndex("x"));
+    Assert.assertNull(s.lookupReference("x"));
+  }
+
+  @Test
+  public void testAppend()
+  {
+    CoStringConstantPoolSnapshot s = CoStringConstantPoolSnapshot.empty();
+    for (int index = 0; index < 1000; ++index) {
+      s = s.withAppended("constant-" + index);
+    }
+
+    Assert.assertEquals(1000L, s.version());
+    Assert.assertEquals(1000, s.size());
+    for (int index = 0; index < 1000; ++index) {
+      final String text = "constant-" + index;
+      Assert.assertEquals(text, s.lookupString(index));
+      Assert.assertEquals(index, s.lookupIndex(text));
+      Assert.assertEquals(index, s.lookupReference(text).value());
+    }
+  }
+
+  @Test
+  public void testEntriesReplace()
+  {
+    final Int2ReferenceOpenHashMap<String> m0 = new Int2ReferenceOpenHashMap<>();
+    m0.put(0, "a");
+    m0.put(3, "b");
+
+    final CoStringConstantPoolSnapshot s0 =
+      CoStringConstantPoolSnapshot.empty().withEntries(m0);
+
+    Assert.assertEquals(1L, s0.version());
+    Assert.assertEquals(2, s0.size());
+    Assert.assertEquals(4, s0.nextIndex());
+    Assert.assertNull(s0.lookupString(1));
+    Assert.assertEquals(3, s0.lookupIndex("b"));
+
+    final Int2ReferenceOpenHashMap<String> m1 = new Int2ReferenceOpenHashMap<>();
+    m1.put(3, "c");
+
+    final CoStringConstantPoolSnapshot s1 = s0.withEntries(m1);
+    Assert.assertEquals(2L, s1.version());
+    Assert.assertEquals(-1, s1.lookupIndex("b"));
+    Assert.assertEquals(3, s1.lookupIndex("c"));
+    Assert.assertEquals(3, s0.lookupIndex("b"));
+    Assert.assertEquals(m0, s0.toMap());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testEntriesNegative()
+  {
+    final Int2ReferenceOpenHashMap<String> m = new Int2ReferenceOpenHashMap<>();
+    m.put(-1, "a");
+    CoStringConstantPoolSnapshot.empty().withEntries(m);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testEntriesTooLarge()
+  {
+    final Int2ReferenceOpenHashMap<String> m = new Int2ReferenceOpenHashMap<>();
+    m.put(CoStringConstantPoolSnapshot.INDEX_LIMIT, "a");
+    CoStringConstantPoolSnapshot.empty().withEntries(m);
+  }
+
+  @Test
+  public void testEntriesDuplicateLowestIndex()
+  {
+    final Int2ReferenceOpenHashMap<String> m = new Int2ReferenceOpenHashMap<>();
+    m.put(5, "a");
+    m.put(2, "a");
+    m.put(9, "a");
+
+    final CoStringConstantPoolSnapshot s =
+      CoStringConstantPoolSnapshot.empty().withEntries(m);
+    Assert.assertEquals(2, s.lookupIndex("a"));
+    Assert.assertEquals(2, s.lookupReference("a").value());
+  }
+
+  @Test
+  public void testChangesSince()
+  {
+    final CoStringConstantPoolSnapshot s0 =
+      CoStringConstantPoolSnapshot.empty()
+        .withAppended("a")
+        .withAppended("b");
+
+    final Int2ReferenceOpenHashMap<String> m = new Int2ReferenceOpenHashMap<>();
+    m.put(1, "c");
+    m.put(2, "d");
+
+    final CoStringConstantPoolSnapshot s1 = s0.withEntries(m);
+    Assert.assertEquals(m, s1.changesSince(s0));
+    Assert.assertTrue(s1.changesSince(s1).isEmpty());
+    Assert.assertEquals(s1.toMap(), s1.changesSince(
+      CoStringConstantPoolSnapshot.empty()));
+  }
+
+  @Test
+  public void testContentHash()
+  {
+    final CoStringConstantPoolSnapshot s0 =
+      CoStringConstantPoolSnapshot.empty()
+        .withAppended("a")
+        .withAppended("b");
+
+    final Int2ReferenceOpenHashMap<String> m = new Int2ReferenceOpenHashMap<>();
+    m.put(0, "a");
+    m.put(1, "b");
+
+    final CoStringConstantPoolSnapshot s1 =
+      CoStringConstantPoolSnapshot.empty().withEntries(m);
+
+    Assert.assertNotEquals(s0.version(), s1.version());
+    Assert.assertArrayEquals(s0.contentHash(), s1.contentHash());
+    Assert.assertTrue(s1.hasContentHash(s0.contentHash()));
+
+    final CoStringConstantPoolSnapshot s2 = s1.withAppended("c");
+    Assert.assertFalse(s2.hasContentHash(s1.contentHash()));
+  }
+}
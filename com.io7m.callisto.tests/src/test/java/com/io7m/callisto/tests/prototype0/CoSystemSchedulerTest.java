@@ -0,0 +1,402 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.codahale.metrics.MetricRegistry;
+import com.io7m.callisto.prototype0.entities.CoAssemblyName;
+import com.io7m.callisto.prototype0.entities.CoAssemblyType;
+import com.io7m.callisto.prototype0.entities.CoEntityQuery;
+import com.io7m.callisto.prototype0.entities.CoEntityService;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitProviderType;
+import com.io7m.callisto.prototype0.entities.CoEntityTraitType;
+import com.io7m.callisto.prototype0.entities.CoEntityType;
+import com.io7m.callisto.prototype0.events.CoEventService;
+import com.io7m.callisto.prototype0.systems.CoSystemRegistration;
+import com.io7m.callisto.prototype0.systems.CoSystemScheduler;
+import com.io7m.callisto.prototype0.systems.CoSystemType;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class CoSystemSchedulerTest
+{
+  private CoEventService events;
+  private CoEntityService entities;
+  private ForkJoinPool pool;
+
+  @Before
+  public void setUp()
+  {
+    this.events = new CoEventService();
+    this.events.onActivate();
+    this.entities = new CoEntityService();
+    this.entities.onEventServiceRegister(this.events);
+    this.entities.onActivate();
+    this.pool = new ForkJoinPool(4);
+  }
+
+  @After
+  public void tearDown()
+    throws Exception
+  {
+    this.pool.shutdown();
+    this.pool.awaitTermination(10L, TimeUnit.SECONDS);
+    this.entities.shutDown();
+    this.events.shutDown();
+  }
+
+  private CoSystemScheduler scheduler(
+    final int chunk_size)
+  {
+    return CoSystemScheduler.create(
+      this.pool, new MetricRegistry(), "systems", chunk_size);
+  }
+
+  private Set<CoEntityType> createEntities(
+    final int count)
+  {
+    final Set<CoEntityType> result = new HashSet<>();
+    for (int index = 0; index < count; ++index) {
+      final CoEntityType e = this.entities.createEntity(new Assembly());
+      e.traitSet(A.class, new A(e));
+      result.add(e);
+    }
+    return result;
+  }
+
+  @Test(timeout = 30_000L)
+  public void testWriterBeforeLaterReader()
+  {
+    this.createEntities(64);
+
+    final AtomicInteger written = new AtomicInteger(0);
+    final AtomicInteger read_early = new AtomicInteger(0);
+
+    final CoSystemScheduler s = this.scheduler(8);
+    s.register(this.entities, new TestSystem(
+      "writer",
+      Collections.emptySet(),
+      Collections.singleton(A.class))
+    {
+      @Override
+      public void update(
+        final long frame,
+        final CoEntityType entity)
+      {
+        pause(1L);
+        written.incrementAndGet();
+      }
+    });
+
+    s.register(this.entities, new TestSystem(
+      "reader",
+      Collections.singleton(A.class),
+      Collections.emptySet())
+    {
+      @Override
+      public void update(
+        final long frame,
+        final CoEntityType entity)
+      {
+        if (written.get() != 64 * (int) (frame + 1L)) {
+          read_early.incrementAndGet();
+        }
+      }
+    });
+
+    for (long frame = 0L; frame < 4L; ++frame) {
+      s.tick(frame);
+    }
+
+    Assert.assertEquals(64L * 4L, (long) written.get());
+    Assert.assertEquals(0L, (long) read_early.get());
+  }
+
+  @Test(timeout = 30_000L)
+  public void testNonConflictingParallel()
+  {
+    this.createEntities(1);
+
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    final CoSystemScheduler s = this.scheduler(8);
+    for (int index = 0; index < 2; ++index) {
+      s.register(this.entities, new TestSystem(
+        "reader" + index,
+        Collections.singleton(A.class),
+        Collections.emptySet())
+      {
+        @Override
+        public void onFrameStart(
+          final long frame)
+        {
+          await(barrier);
+        }
+
+        @Override
+        public void update(
+          final long frame,
+          final CoEntityType entity)
+        {
+
+        }
+      });
+    }
+
+    s.tick(0L);
+  }
+
+  @Test(timeout = 30_000L)
+  public void testChunksCoverAllEntities()
+  {
+    final Set<CoEntityType> expected = this.createEntities(103);
+
+    final ConcurrentHashMap<CoEntityType, AtomicInteger> updates =
+      new ConcurrentHashMap<>();
+
+    final CoSystemScheduler s = this.scheduler(4);
+    s.register(this.entities, new TestSystem(
+      "counter",
+      Collections.emptySet(),
+      Collections.singleton(A.class))
+    {
+      @Override
+      public void update(
+        final long frame,
+        final CoEntityType entity)
+      {
+        updates.computeIfAbsent(entity, k -> new AtomicInteger(0))
+          .incrementAndGet();
+      }
+    });
+
+    s.tick(0L);
+    s.tick(1L);
+
+    Assert.assertEquals(expected, updates.keySet());
+    for (final AtomicInteger count : updates.values()) {
+      Assert.assertEquals(2L, (long) count.get());
+    }
+  }
+
+  @Test(timeout = 30_000L)
+  public void testChunksParallel()
+  {
+    this.createEntities(2);
+
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    final CoSystemScheduler s = this.scheduler(1);
+    s.register(this.entities, new TestSystem(
+      "chunked",
+      Collections.emptySet(),
+      Collections.singleton(A.class))
+    {
+      @Override
+      public void update(
+        final long frame,
+        final CoEntityType entity)
+      {
+        await(barrier);
+      }
+    });
+
+    s.tick(0L);
+  }
+
+  @Test(timeout = 30_000L)
+  public void testFailurePropagates()
+  {
+    this.createEntities(16);
+
+    final AtomicInteger dependent_updates = new AtomicInteger(0);
+    final CoSystemScheduler s = this.scheduler(4);
+    final CoSystemRegistration failing =
+      s.register(this.entities, new TestSystem(
+        "failing",
+        Collections.emptySet(),
+        Collections.singleton(A.class))
+      {
+        @Override
+        public void update(
+          final long frame,
+          final CoEntityType entity)
+        {
+          throw new IllegalArgumentException("Failed!");
+        }
+      });
+
+    s.register(this.entities, new TestSystem(
+      "dependent",
+      Collections.singleton(A.class),
+      Collections.emptySet())
+    {
+      @Override
+      public void update(
+        final long frame,
+        final CoEntityType entity)
+      {
+        dependent_updates.incrementAndGet();
+      }
+    });
+
+    try {
+      s.tick(0L);
+      Assert.fail();
+    } catch (final CompletionException e) {
+      Throwable cause = e;
+      boolean named = false;
+      boolean original = false;
+      while (cause != null) {
+        final String message = cause.getMessage();
+        named = named || (message != null && message.contains("failing"));
+        original = original || cause instanceof IllegalArgumentException;
+        cause = cause.getCause();
+      }
+      Assert.assertTrue(named);
+      Assert.assertTrue(original);
+    }
+
+    Assert.assertEquals(0L, (long) dependent_updates.get());
+
+    failing.dispose();
+    s.tick(1L);
+    Assert.assertEquals(16L, (long) dependent_updates.get());
+  }
+
+  private static void pause(
+    final long millis)
+  {
+    try {
+      Thread.sleep(millis);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void await(
+    final CyclicBarrier barrier)
+  {
+    try {
+      barrier.await(10L, TimeUnit.SECONDS);
+    } catch (final Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private abstract static class TestSystem implements CoSystemType
+  {
+    private final String name;
+    private final Set<Class<? extends CoEntityTraitType>> reads;
+    private final Set<Class<? extends CoEntityTraitType>> writes;
+
+    TestSystem(
+      final String in_name,
+      final Set<Class<? extends CoEntityTraitType>> in_reads,
+      final Set<Class<? extends CoEntityTraitType>> in_writes)
+    {
+      this.name = in_name;
+      this.reads = in_reads;
+      this.writes = in_writes;
+    }
+
+    @Override
+    public final String name()
+    {
+      return this.name;
+    }
+
+    @Override
+    public final CoEntityQuery query()
+    {
+      return CoEntityQuery.builder().addRequired(A.class).build();
+    }
+
+    @Override
+    public final Set<Class<? extends CoEntityTraitType>> reads()
+    {
+      return this.reads;
+    }
+
+    @Override
+    public final Set<Class<? extends CoEntityTraitType>> writes()
+    {
+      return this.writes;
+    }
+  }
+
+  private static final class Assembly implements CoAssemblyType
+  {
+    Assembly()
+    {
+
+    }
+
+    @Override
+    public CoAssemblyName name()
+    {
+      return CoAssemblyName.of("test");
+    }
+
+    @Override
+    public <T extends CoEntityTraitType>
+    Map<Class<T>, CoEntityTraitProviderType<T>> traitProviders()
+    {
+      return LinkedHashMap.empty();
+    }
+  }
+
+  private static final class A implements CoEntityTraitType
+  {
+    private final CoEntityType owner;
+
+    A(
+      final CoEntityType in_owner)
+    {
+      this.owner = in_owner;
+    }
+
+    @Override
+    public CoEntityType owner()
+    {
+      return this.owner;
+    }
+
+    @Override
+    public <T extends CoEntityTraitType> CoEntityTraitProviderType<T> provider()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void onDestroy()
+    {
+
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.ticks.CoTickRate;
+import com.io7m.callisto.prototype0.ticks.CoTickRateType;
+import com.io7m.callisto.prototype0.ticks.CoTickRationalDivisor;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class CoTickRationalDivisorTest
+{
+  private static int count(
+    final CoTickRationalDivisor div,
+    final int ticks)
+  {
+    int fired = 0;
+    for (int index = 0; index < ticks; ++index) {
+      if (div.tickNow()) {
+        ++fired;
+      }
+    }
+    return fired;
+  }
+
+  @Test
+  public void testDivisor60_30()
+  {
+    final CoTickRationalDivisor div =
+      new CoTickRationalDivisor(
+        CoTickRateType.hertz(60L), CoTickRateType.hertz(30L));
+
+    Assert.assertTrue(div.tickNow());
+    for (int index = 0; index < 60; ++index) {
+      Assert.assertFalse(div.tickNow());
+      Assert.assertTrue(div.tickNow());
+    }
+  }
+
+  @Test
+  public void testDivisor60_60()
+  {
+    final CoTickRationalDivisor div =
+      new CoTickRationalDivisor(
+        CoTickRateType.hertz(60L), CoTickRateType.hertz(60L));
+
+    for (int index = 0; index < 120; ++index) {
+      Assert.assertTrue(div.tickNow());
+    }
+  }
+
+  @Test
+  public void testDivisor60_24Exact()
+  {
+    final CoTickRationalDivisor div =
+      new CoTickRationalDivisor(
+        CoTickRateType.hertz(60L), CoTickRateType.hertz(24L));
+
+    for (int second = 0; second < 100; ++second) {
+      Assert.assertEquals(24L, (long) count(div, 60));
+    }
+  }
+
+  @Test
+  public void testDivisorRational()
+  {
+    final CoTickRationalDivisor div =
+      new CoTickRationalDivisor(
+        CoTickRateType.hertz(60L), CoTickRate.of(7L, 3L));
+
+    for (int period = 0; period < 100; ++period) {
+      Assert.assertEquals(7L, (long) count(div, 180));
+    }
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testDivisorTooFast()
+  {
+    new CoTickRationalDivisor(
+      CoTickRateType.hertz(30L), CoTickRateType.hertz(60L));
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.ticks.CoTickRateType;
+import com.io7m.callisto.prototype0.ticks.CoTickRegistration;
+import com.io7m.callisto.prototype0.ticks.CoTickScheduler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class CoTickSchedulerTest
+{
+  @Test
+  public void testSubRates()
+    throws Exception
+  {
+    final ExecutorService exec = Executors.newFixedThreadPool(2);
+    try {
+      final CoTickScheduler s =
+        CoTickScheduler.create(CoTickRateType.hertz(1000L), 10, Thread::new);
+
+      final CountDownLatch latch = new CountDownLatch(100);
+      final AtomicLong fast = new AtomicLong();
+      final CoTickRegistration r_fast =
+        s.register("fast", CoTickRateType.hertz(1000L), exec,
+                   (tick, skipped) -> {
+                     fast.incrementAndGet();
+                     latch.countDown();
+                   });
+      final CoTickRegistration r_slow =
+        s.register("slow", CoTickRateType.hertz(250L), exec,
+                   (tick, skipped) -> { });
+
+      s.start();
+      Assert.assertTrue(latch.await(10L, TimeUnit.SECONDS));
+      s.stop();
+      exec.shutdown();
+      Assert.assertTrue(exec.awaitTermination(10L, TimeUnit.SECONDS));
+
+      final long total = s.statistics().ticks();
+      Assert.assertTrue(total >= 100L);
+      Assert.assertEquals(
+        total, r_fast.ticksDelivered() + r_fast.ticksSkipped());
+      Assert.assertEquals(
+        (total + 3L) / 4L, r_slow.ticksDelivered() + r_slow.ticksSkipped());
+
+      r_fast.dispose();
+      Assert.assertTrue(r_fast.isDisposed());
+    } finally {
+      exec.shutdown();
+      exec.awaitTermination(10L, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testBusyReceiverSkips()
+    throws Exception
+  {
+    final ExecutorService exec = Executors.newSingleThreadExecutor();
+    try {
+      final CoTickScheduler s =
+        CoTickScheduler.create(CoTickRateType.hertz(1000L), 10, Thread::new);
+
+      final AtomicLong skipped_seen = new AtomicLong();
+      final CountDownLatch latch = new CountDownLatch(3);
+      s.register("slow", CoTickRateType.hertz(1000L), exec,
+                 (tick, skipped) -> {
+                   skipped_seen.addAndGet(skipped);
+                   latch.countDown();
+                   Thread.sleep(20L);
+                 });
+
+      s.start();
+      Assert.assertTrue(latch.await(10L, TimeUnit.SECONDS));
+      s.stop();
+
+      Assert.assertTrue(skipped_seen.get() > 0L);
+    } finally {
+      exec.shutdown();
+      exec.awaitTermination(10L, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testRestart()
+    throws Exception
+  {
+    final ExecutorService exec = Executors.newSingleThreadExecutor();
+    try {
+      final CoTickScheduler s =
+        CoTickScheduler.create(CoTickRateType.hertz(1000L), 10, Thread::new);
+
+      final AtomicReference<CountDownLatch> latch =
+        new AtomicReference<>(new CountDownLatch(10));
+      s.register("x", CoTickRateType.hertz(1000L), exec,
+                 (tick, skipped) -> latch.get().countDown());
+
+      s.start();
+      s.start();
+      Assert.assertTrue(latch.get().await(10L, TimeUnit.SECONDS));
+      s.stop();
+      s.stop();
+
+      final long stopped = s.statistics().ticks();
+      Thread.sleep(20L);
+      Assert.assertEquals(stopped, s.statistics().ticks());
+
+      latch.set(new CountDownLatch(10));
+      s.start();
+      Assert.assertTrue(latch.get().await(10L, TimeUnit.SECONDS));
+      s.stop();
+
+      Assert.assertTrue(s.statistics().ticks() > stopped);
+    } finally {
+      exec.shutdown();
+      exec.awaitTermination(10L, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.transport.CoTransportRoundTripEstimator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class CoTransportRoundTripEstimatorTest
+{
+  @Test
+  public void testInitial()
+  {
+    final CoTransportRoundTripEstimator e =
+      new CoTransportRoundTripEstimator(1000L, 10L, 10000L);
+
+    Assert.assertEquals(0L, e.sampleCount());
+    Assert.assertEquals(0L, e.smoothedRoundTrip());
+    Assert.assertEquals(1000L, e.retransmissionTimeout());
+  }
+
+  @Test
+  public void testFirstSample()
+  {
+    final CoTransportRoundTripEstimator e =
+      new CoTransportRoundTripEstimator(1_000_000_000L, 1L, 10_000_000_000L);
+
+    Assert.assertTrue(e.sampleRoundTrip(100_000_000L));
+    Assert.assertEquals(1L, e.sampleCount());
+    Assert.assertEquals(100_000_000L, e.smoothedRoundTrip());
+    Assert.assertEquals(50_000_000L, e.roundTripVariance());
+    Assert.assertEquals(300_000_000L, e.retransmissionTimeout());
+  }
+
+  @Test
+  public void testConverges()
+  {
+    final CoTransportRoundTripEstimator e =
+      new CoTransportRoundTripEstimator(1_000_000_000L, 1L, 10_000_000_000L);
+
+    Assert.assertTrue(e.sampleRoundTrip(500_000_000L));
+    for (int index = 0; index < 200; ++index) {
+      Assert.assertTrue(e.sampleRoundTrip(20_000_000L));
+    }
+
+    Assert.assertEquals(20_000_000.0, (double) e.smoothedRoundTrip(), 1000.0);
+    Assert.assertEquals(0.0, (double) e.roundTripVariance(), 1000.0);
+    Assert.assertEquals(
+      21_000_000.0, (double) e.retransmissionTimeout(), 10000.0);
+  }
+
+  @Test
+  public void testRejectNegative()
+  {
+    final CoTransportRoundTripEstimator e =
+      CoTransportRoundTripEstimator.create();
+
+    Assert.assertFalse(e.sampleRoundTrip(-1L));
+    Assert.assertEquals(0L, e.sampleCount());
+  }
+
+  @Test
+  public void testExchangeOffset()
+  {
+    final CoTransportRoundTripEstimator e =
+      CoTransportRoundTripEstimator.create();
+
+    /*
+     * The remote clock is 1000 ahead, the path delay is 10 each way, and the
+     * remote side takes 5 to respond.
+     */
+
+    Assert.assertTrue(e.sampleExchange(0L, 1010L, 1015L, 25L));
+    Assert.assertEquals(20L, e.latestRoundTrip());
+    Assert.assertEquals(1000L, e.clockOffset());
+  }
+
+  @Test
+  public void testExchangeOffsetMinimumDelay()
+  {
+    final CoTransportRoundTripEstimator e =
+      CoTransportRoundTripEstimator.create();
+
+    /*
+     * An exchange with asymmetric queueing delay is ignored in favour of the
+     * one with the smallest delay.
+     */
+
+    Assert.assertTrue(e.sampleExchange(0L, 1010L, 1015L, 25L));
+    Assert.assertTrue(e.sampleExchange(100L, 1150L, 1155L, 165L));
+    Assert.assertEquals(1000L, e.clockOffset());
+  }
+
+  @Test
+  public void testExchangeRejectBackwards()
+  {
+    final CoTransportRoundTripEstimator e =
+      CoTransportRoundTripEstimator.create();
+
+    Assert.assertFalse(e.sampleExchange(0L, 1015L, 1010L, 25L));
+    Assert.assertEquals(0L, e.sampleCount());
+  }
+}
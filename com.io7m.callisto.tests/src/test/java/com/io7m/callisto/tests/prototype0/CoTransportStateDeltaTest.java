@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.io7m.callisto.prototype0.transport.CoTransportStateDelta;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public final class CoTransportStateDeltaTest
+{
+  private static byte[] roundTrip(
+    final byte[] baseline,
+    final byte[] state)
+  {
+    final ByteBuffer delta = ByteBuffer.allocate(
+      CoTransportStateDelta.encodedSizeMaximum(state.length));
+    final int written = CoTransportStateDelta.encode(
+      ByteBuffer.wrap(baseline), ByteBuffer.wrap(state), delta);
+    Assert.assertEquals((long) written, (long) delta.position());
+    delta.flip();
+
+    final byte[] result = new byte[state.length];
+    CoTransportStateDelta.decode(
+      ByteBuffer.wrap(baseline), delta, state.length, ByteBuffer.wrap(result));
+    return result;
+  }
+
+  private static int encodedSize(
+    final byte[] baseline,
+    final byte[] state)
+  {
+    final ByteBuffer delta = ByteBuffer.allocate(
+      CoTransportStateDelta.encodedSizeMaximum(state.length));
+    return CoTransportStateDelta.encode(
+      ByteBuffer.wrap(baseline), ByteBuffer.wrap(state), delta);
+  }
+
+  @Test
+  public void testIdentical()
+  {
+    final byte[] state = new byte[200];
+    new Random(0L).nextBytes(state);
+
+    Assert.assertEquals(0L, (long) encodedSize(state, state));
+    Assert.assertArrayEquals(state, roundTrip(state, state));
+  }
+
+  @Test
+  public void testSparse()
+  {
+    final byte[] baseline = new byte[512];
+    new Random(1L).nextBytes(baseline);
+    final byte[] state = baseline.clone();
+    state[3] = (byte) (state[3] + 1);
+    state[300] = (byte) (state[300] + 1);
+
+    Assert.assertTrue(encodedSize(baseline, state) < 32);
+    Assert.assertArrayEquals(state, roundTrip(baseline, state));
+  }
+
+  @Test
+  public void testSizeChanges()
+  {
+    final Random random = new Random(2L);
+    for (int trial = 0; trial < 200; ++trial) {
+      final byte[] baseline = new byte[random.nextInt(100)];
+      final byte[] state = new byte[random.nextInt(100)];
+      random.nextBytes(baseline);
+      random.nextBytes(state);
+      for (int index = 0; index < Math.min(baseline.length, state.length);
+           ++index) {
+        if (random.nextBoolean()) {
+          state[index] = baseline[index];
+        }
+      }
+
+      Assert.assertArrayEquals(state, roundTrip(baseline, state));
+    }
+  }
+
+  @Test
+  public void testBuffersUnmodified()
+  {
+    final ByteBuffer baseline = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5});
+    final ByteBuffer state = ByteBuffer.wrap(new byte[]{1, 2, 9, 4, 5, 6});
+    baseline.position(1);
+    state.position(1);
+
+    final ByteBuffer delta = ByteBuffer.allocate(
+      CoTransportStateDelta.encodedSizeMaximum(state.remaining()));
+    CoTransportStateDelta.encode(baseline, state, delta);
+
+    Assert.assertEquals(1L, (long) baseline.position());
+    Assert.assertEquals(1L, (long) state.position());
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2017 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.callisto.tests.prototype0;
+
+import com.google.protobuf.ByteString;
+import com.io7m.callisto.prototype0.transport.CoTransportStateReceiver;
+import com.io7m.callisto.prototype0.transport.messages.CoDataAckStateReceipt;
+import com.io7m.callisto.prototype0.transport.messages.CoMessageState;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class CoTransportStateReceiverTest
+{
+  private static CoMessageState header(
+    final int key,
+    final int version,
+    final int baseline,
+    final int size)
+  {
+    return CoMessageState.newBuilder()
+      .setKey(key)
+      .setVersion(version)
+      .setBaseline(baseline)
+      .setSize(size)
+      .build();
+  }
+
+  private static List<CoDataAckStateReceipt> receipts(
+    final CoTransportStateReceiver receiver)
+  {
+    final List<CoDataAckStateReceipt> results = new ArrayList<>();
+    receiver.receiptsTake(results::add);
+    return results;
+  }
+
+  @Test
+  public void testFull()
+  {
+    final CoTransportStateReceiver receiver =
+      new CoTransportStateReceiver(1200, 16);
+    final ByteString data = ByteString.copyFrom(new byte[]{1, 2, 3, 4});
+
+    Assert.assertEquals(data, receiver.decode(header(7, 1, 0, 4), data));
+
+    final List<CoDataAckStateReceipt> r = receipts(receiver);
+    Assert.assertEquals(1L, (long) r.size());
+    Assert.assertEquals(7L, (long) r.get(0).getKey());
+    Assert.assertEquals(1L, (long) r.get(0).getVersion());
+  }
+
+  @Test
+  public void testSizeNegative()
+  {
+    final CoTransportStateReceiver receiver =
+      new CoTransportStateReceiver(1200, 16);
+
+    Assert.assertNull(
+      receiver.decode(header(0, 1, 0, 0xffffffff), ByteString.EMPTY));
+    Assert.assertNull(
+      receiver.decode(header(0, 1, 0, Integer.MIN_VALUE), ByteString.EMPTY));
+    Assert.assertFalse(receiver.receiptsPending());
+  }
+
+  @Test
+  public void testSizeTooLarge()
+  {
+    final CoTransportStateReceiver receiver =
+      new CoTransportStateReceiver(1200, 16);
+
+    Assert.assertNull(
+      receiver.decode(header(0, 1, 0, 1200), ByteString.EMPTY));
+    Assert.assertNull(
+      receiver.decode(header(0, 1, 0, Integer.MAX_VALUE), ByteString.EMPTY));
+    Assert.assertNull(
+      receiver.decode(header(0, 1, 1, Integer.MAX_VALUE), ByteString.EMPTY));
+    Assert.assertFalse(receiver.receiptsPending());
+  }
+
+  @Test
+  public void testSizeMismatch()
+  {
+    final CoTransportStateReceiver receiver =
+      new CoTransportStateReceiver(1200, 16);
+
+    Assert.assertNull(
+      receiver.decode(
+        header(0, 1, 0, 8), ByteString.copyFrom(new byte[]{1, 2, 3})));
+    Assert.assertFalse(receiver.receiptsPending());
+  }
+
+  @Test
+  public void testVersionZero()
+  {
+    final CoTransportStateReceiver receiver =
+      new CoTransportStateReceiver(1200, 16);
+
+    Assert.assertNull(
+      receiver.decode(header(0, 0, 0, 0), ByteString.EMPTY));
+    Assert.assertFalse(receiver.receiptsPending());
+  }
+
+  @Test
+  public void testStale()
+  {
+    final CoTransportStateReceiver receiver =
+      new CoTransportStateReceiver(1200, 16);
+    final ByteString data = ByteString.copyFrom(new byte[]{1});
+
+    Assert.assertNotNull(receiver.decode(header(0, 2, 0, 1), data));
+    receipts(receiver);
+    Assert.assertNull(receiver.decode(header(0, 1, 0, 1), data));
+    Assert.assertNull(receiver.decode(header(0, 2, 0, 1), data));
+    Assert.assertFalse(receiver.receiptsPending());
+  }
+
+  @Test
+  public void testBaselineMissing()
+  {
+    final CoTransportStateReceiver receiver =
+      new CoTransportStateReceiver(1200, 16);
+    final ByteString data = ByteString.copyFrom(new byte[]{1});
+
+    Assert.assertNotNull(receiver.decode(header(0, 1, 0, 1), data));
+    receipts(receiver);
+
+    Assert.assertNull(receiver.decode(header(0, 3, 2, 1), ByteString.EMPTY));
+
+    final List<CoDataAckStateReceipt> r = receipts(receiver);
+    Assert.assertEquals(1L, (long) r.size());
+    Assert.assertEquals(1L, (long) r.get(0).getVersion());
+  }
+
+  @Test
+  public void testDeltaTruncated()
+  {
+    final CoTransportStateReceiver receiver =
+      new CoTransportStateReceiver(1200, 16);
+    final ByteString data = ByteString.copyFrom(new byte[16]);
+
+    Assert.assertNotNull(receiver.decode(header(0, 1, 0, 16), data));
+    receipts(receiver);
+
+    /*
+     * The group mask claims that both words are present, but neither is.
+     */
+
+    Assert.assertNull(
+      receiver.decode(
+        header(0, 2, 1, 16), ByteString.copyFrom(new byte[]{(byte) 0x3})));
+  }
+
+  @Test
+  public void testKeysBounded()
+  {
+    final CoTransportStateReceiver receiver =
+      new CoTransportStateReceiver(1200, 4);
+    final ByteString data = ByteString.copyFrom(new byte[]{1});
+
+    for (int key = 0; key < 4; ++key) {
+      Assert.assertNotNull(receiver.decode(header(key, 1, 0, 1), data));
+    }
+
+    Assert.assertNull(receiver.decode(header(4, 1, 0, 1), data));
+    Assert.assertNull(receiver.decode(header(-1, 1, 0, 1), data));
+    Assert.assertNotNull(receiver.decode(header(3, 2, 0, 1), data));
+    Assert.assertEquals(4L, (long) receipts(receiver).size());
+  }
+}